@@ -0,0 +1,224 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Encoding;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.page.DictionaryPage;
+import org.apache.parquet.column.page.PageWriteStore;
+import org.apache.parquet.column.page.PageWriter;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.column.values.bloomfilter.BlockSplitBloomFilter;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
+import org.apache.parquet.column.values.bloomfilter.BloomFilterWriteStore;
+import org.apache.parquet.column.values.bloomfilter.BloomFilterWriter;
+import org.apache.parquet.io.ParquetEncodingException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wraps the page store of a row group to size the bloom filter of every column chunk by its
+ * observed number of distinct values.
+ *
+ * <p>The column writers fill bloom filters of the configured size. When a column chunk is
+ * finalized, its number of distinct values is estimated from the fraction of unset bits, and the
+ * filter is folded to the smallest size reaching the false positive probability of the column.
+ * Folding merges the two halves of every pair of adjacent blocks, which gives the same filter as
+ * inserting the values into a filter of half the size. A column chunk whose data pages are all
+ * dictionary encoded gets no bloom filter, as its dictionary already answers the same lookups.
+ */
+public class AdaptiveBloomFilterStore implements PageWriteStore, BloomFilterWriteStore {
+
+  private static final int BYTES_PER_BLOCK = 32;
+
+  private final PageWriteStore pageStore;
+  private final BloomFilterWriteStore bloomFilterStore;
+  private final ParquetProperties props;
+  private final Map<ColumnDescriptor, ColumnChunk> chunks = new ConcurrentHashMap<>();
+
+  public AdaptiveBloomFilterStore(PageWriteStore pageStore, BloomFilterWriteStore bloomFilterStore, ParquetProperties props) {
+    this.pageStore = pageStore;
+    this.bloomFilterStore = bloomFilterStore;
+    this.props = props;
+  }
+
+  @Override
+  public PageWriter getPageWriter(ColumnDescriptor path) {
+    return new TrackingPageWriter(pageStore.getPageWriter(path), chunk(path));
+  }
+
+  @Override
+  public BloomFilterWriter getBloomFilterWriter(ColumnDescriptor path) {
+    BloomFilterWriter writer = bloomFilterStore.getBloomFilterWriter(path);
+    ColumnChunk chunk = chunk(path);
+    double fpp = props.getBloomFilterFPP(path).orElse(BlockSplitBloomFilter.DEFAULT_FPP);
+    return bloomFilter -> {
+      if (chunk.dictionaryPage && chunk.dictionaryEncoded) {
+        return;
+      }
+      writer.writeBloomFilter(shrink(bloomFilter, fpp));
+    };
+  }
+
+  private ColumnChunk chunk(ColumnDescriptor path) {
+    return chunks.computeIfAbsent(path, p -> new ColumnChunk());
+  }
+
+  /**
+   * Fold a split block bloom filter to the smallest size reaching the given false positive
+   * probability for its estimated number of distinct values.
+   *
+   * @param bloomFilter the filter to shrink
+   * @param fpp         the target false positive probability
+   * @return the folded filter, or the given one if it cannot be shrunk
+   */
+  public static BloomFilter shrink(BloomFilter bloomFilter, double fpp) {
+    if (!(bloomFilter instanceof BlockSplitBloomFilter)) {
+      return bloomFilter;
+    }
+    byte[] bitset = toBitset(bloomFilter);
+    long ndv = estimateDistinctValues(bitset);
+    if (ndv < 0) {
+      return bloomFilter;
+    }
+    int numBytes = Math.max(BlockSplitBloomFilter.LOWER_BOUND_BYTES, BlockSplitBloomFilter.optimalNumOfBits(Math.max(1, ndv), fpp) / 8);
+    if ((numBytes & (numBytes - 1)) != 0) {
+      numBytes = Integer.highestOneBit(numBytes) << 1;
+    }
+    if (numBytes >= bitset.length) {
+      return bloomFilter;
+    }
+    while (bitset.length > numBytes) {
+      bitset = fold(bitset);
+    }
+    return new BlockSplitBloomFilter(bitset);
+  }
+
+  /**
+   * Estimate the number of distinct values inserted into a split block bloom filter. Every
+   * insertion sets one bit in each of the eight words of one block, so a bit stays unset with
+   * probability {@code (31/32)^(n/blocks)}.
+   *
+   * @param bitset the bitset of the filter
+   * @return the estimated number of distinct values, or -1 if the filter is saturated
+   */
+  public static long estimateDistinctValues(byte[] bitset) {
+    IntBuffer words = ByteBuffer.wrap(bitset).order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+    long setBits = 0;
+    while (words.hasRemaining()) {
+      setBits += Integer.bitCount(words.get());
+    }
+    long totalBits = bitset.length * 8L;
+    if (setBits == totalBits) {
+      return -1;
+    }
+    double unset = (double) (totalBits - setBits) / totalBits;
+    long blocks = bitset.length / BYTES_PER_BLOCK;
+    return Math.round(blocks * Math.log(unset) / Math.log(31.0 / 32.0));
+  }
+
+  private static byte[] fold(byte[] bitset) {
+    byte[] folded = new byte[bitset.length / 2];
+    for (int block = 0; block < folded.length / BYTES_PER_BLOCK; block++) {
+      int low = 2 * block * BYTES_PER_BLOCK;
+      int high = low + BYTES_PER_BLOCK;
+      for (int i = 0; i < BYTES_PER_BLOCK; i++) {
+        folded[block * BYTES_PER_BLOCK + i] = (byte) (bitset[low + i] | bitset[high + i]);
+      }
+    }
+    return folded;
+  }
+
+  private static byte[] toBitset(BloomFilter bloomFilter) {
+    ByteArrayOutputStream out = new ByteArrayOutputStream(bloomFilter.getBitsetSize());
+    try {
+      bloomFilter.writeTo(out);
+    } catch (IOException e) {
+      throw new ParquetEncodingException("could not read the bloom filter bitset", e);
+    }
+    return out.toByteArray();
+  }
+
+  /**
+   * The encodings seen in the pages of a column chunk.
+   */
+  private static final class ColumnChunk {
+    private volatile boolean dictionaryPage = false;
+    private volatile boolean dictionaryEncoded = true;
+  }
+
+  private static final class TrackingPageWriter implements PageWriter {
+
+    private final PageWriter delegate;
+    private final ColumnChunk chunk;
+
+    private TrackingPageWriter(PageWriter delegate, ColumnChunk chunk) {
+      this.delegate = delegate;
+      this.chunk = chunk;
+    }
+
+    @Override
+    @Deprecated
+    public void writePage(BytesInput bytesInput, int valueCount, Statistics<?> statistics, Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) throws IOException {
+      chunk.dictionaryEncoded &= valuesEncoding.usesDictionary();
+      delegate.writePage(bytesInput, valueCount, statistics, rlEncoding, dlEncoding, valuesEncoding);
+    }
+
+    @Override
+    public void writePage(BytesInput bytesInput, int valueCount, int rowCount, Statistics<?> statistics, Encoding rlEncoding, Encoding dlEncoding, Encoding valuesEncoding) throws IOException {
+      chunk.dictionaryEncoded &= valuesEncoding.usesDictionary();
+      delegate.writePage(bytesInput, valueCount, rowCount, statistics, rlEncoding, dlEncoding, valuesEncoding);
+    }
+
+    @Override
+    public void writePageV2(int rowCount, int nullCount, int valueCount, BytesInput repetitionLevels, BytesInput definitionLevels, Encoding dataEncoding, BytesInput data, Statistics<?> statistics) throws IOException {
+      chunk.dictionaryEncoded &= dataEncoding.usesDictionary();
+      delegate.writePageV2(rowCount, nullCount, valueCount, repetitionLevels, definitionLevels, dataEncoding, data, statistics);
+    }
+
+    @Override
+    public long getMemSize() {
+      return delegate.getMemSize();
+    }
+
+    @Override
+    public long allocatedSize() {
+      return delegate.allocatedSize();
+    }
+
+    @Override
+    public void writeDictionaryPage(DictionaryPage dictionaryPage) throws IOException {
+      chunk.dictionaryPage = true;
+      delegate.writeDictionaryPage(dictionaryPage);
+    }
+
+    @Override
+    public String memUsageString(String prefix) {
+      return delegate.memUsageString(prefix);
+    }
+  }
+}
@@ -0,0 +1,177 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The current row of a {@link FlatRowReader}. Every leaf column of the requested schema has one
+ * slot, which holds its value unboxed: booleans, ints and longs as a long, floats and doubles as a
+ * double, and the other types as a {@link Binary}.
+ *
+ * <p>The row is overwritten when the next row is read. The accessors do not check the type of the
+ * column, so the accessor must match the primitive type of the column.
+ *
+ * <p>Binary values of dictionary encoded pages are kept as their id in the dictionary of the column
+ * chunk, which is shared by all the rows of the row group. Grouping or joining on
+ * {@link #getDictionaryId(int)} under the same {@link #getDictionary(int)} needs no per-row lookup
+ * or allocation. Values of the columns of the record filter are never given as ids.
+ */
+public class FlatRow {
+
+  private final MessageType schema;
+  private final List<ColumnDescriptor> columns;
+  private final Map<String, Integer> indexes = new HashMap<>();
+  final long[] longs;
+  final double[] doubles;
+  final Binary[] binaries;
+  final boolean[] nulls;
+  final int[] dictionaryIds;
+  final Dictionary[] dictionaries;
+
+  FlatRow(MessageType schema) {
+    this.schema = schema;
+    this.columns = schema.getColumns();
+    for (int i = 0; i < columns.size(); i++) {
+      ColumnDescriptor column = columns.get(i);
+      if (column.getMaxRepetitionLevel() > 0) {
+        throw new IllegalArgumentException("Repeated columns are not supported: " + Arrays.toString(column.getPath()));
+      }
+      indexes.put(String.join(".", column.getPath()), i);
+    }
+    this.longs = new long[columns.size()];
+    this.doubles = new double[columns.size()];
+    this.binaries = new Binary[columns.size()];
+    this.nulls = new boolean[columns.size()];
+    this.dictionaryIds = new int[columns.size()];
+    this.dictionaries = new Dictionary[columns.size()];
+    clear();
+  }
+
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public int getColumnCount() {
+    return columns.size();
+  }
+
+  /**
+   * @param column the path of the column (dot-string)
+   * @return the index of the column in the row
+   */
+  public int indexOf(String column) {
+    Integer index = indexes.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException("Column not found: " + column);
+    }
+    return index;
+  }
+
+  public boolean isNull(int column) {
+    return nulls[column];
+  }
+
+  public boolean getBoolean(int column) {
+    return longs[column] != 0;
+  }
+
+  public int getInt(int column) {
+    return (int) longs[column];
+  }
+
+  public long getLong(int column) {
+    return longs[column];
+  }
+
+  public float getFloat(int column) {
+    return (float) doubles[column];
+  }
+
+  public double getDouble(int column) {
+    return doubles[column];
+  }
+
+  /**
+   * @param column the index of a binary, fixed length byte array or int96 column
+   * @return the value, which may be backed by the page and must be copied to be kept, or null if
+   * the value is null
+   */
+  public Binary getBinary(int column) {
+    if (nulls[column]) {
+      return null;
+    }
+    int id = dictionaryIds[column];
+    return id < 0 ? binaries[column] : dictionaries[column].decodeToBinary(id);
+  }
+
+  /**
+   * @param column the index of a binary, fixed length byte array or int96 column
+   * @return the id of the value in {@link #getDictionary(int) the dictionary}, or -1 if the value is
+   * null or its page is not dictionary encoded
+   */
+  public int getDictionaryId(int column) {
+    return dictionaryIds[column];
+  }
+
+  /**
+   * @param column the index of a binary, fixed length byte array or int96 column
+   * @return the dictionary of the column chunk of the current row, only meaningful if
+   * {@link #getDictionaryId(int)} is not -1
+   */
+  public Dictionary getDictionary(int column) {
+    return dictionaries[column];
+  }
+
+  /**
+   * Copy the value of a binary, fixed length byte array or int96 column into a buffer.
+   *
+   * @param column the index of the column
+   * @param reuse  the buffer to fill if it is large enough, or null
+   * @return the given buffer or a new one, flipped for reading, or null if the value is null
+   */
+  public ByteBuffer getBinary(int column, ByteBuffer reuse) {
+    Binary value = getBinary(column);
+    if (value == null) {
+      return null;
+    }
+    ByteBuffer buffer = reuse == null || reuse.capacity() < value.length()
+        ? ByteBuffer.allocate(value.length())
+        : reuse;
+    buffer.clear();
+    buffer.put(value.toByteBuffer());
+    buffer.flip();
+    return buffer;
+  }
+
+  void clear() {
+    Arrays.fill(nulls, true);
+    Arrays.fill(binaries, null);
+    Arrays.fill(dictionaryIds, -1);
+  }
+}
@@ -0,0 +1,182 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Materializes every record into the same {@link FlatRow}, whose slots are filled by one
+ * converter per leaf column. Binary columns take the dictionary ids of dictionary encoded pages.
+ */
+class FlatRowMaterializer extends RecordMaterializer<FlatRow> {
+
+  private final FlatRow row;
+  private final GroupConverter root;
+
+  FlatRowMaterializer(MessageType schema) {
+    this.row = new FlatRow(schema);
+    this.root = new FlatGroupConverter(schema, new int[1], true);
+  }
+
+  @Override
+  public FlatRow getCurrentRecord() {
+    return row;
+  }
+
+  @Override
+  public GroupConverter getRootConverter() {
+    return root;
+  }
+
+  private final class FlatGroupConverter extends GroupConverter {
+    private final Converter[] converters;
+    private final boolean root;
+
+    /**
+     * @param nextColumn the index of the next leaf column, advanced while the fields are visited
+     */
+    private FlatGroupConverter(GroupType type, int[] nextColumn, boolean root) {
+      this.root = root;
+      this.converters = new Converter[type.getFieldCount()];
+      for (int i = 0; i < converters.length; i++) {
+        Type field = type.getType(i);
+        if (field.isPrimitive()) {
+          converters[i] = newConverter(field.asPrimitiveType().getPrimitiveTypeName(), nextColumn[0]++);
+        } else {
+          converters[i] = new FlatGroupConverter(field.asGroupType(), nextColumn, false);
+        }
+      }
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+      if (root) {
+        row.clear();
+      }
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+
+  private PrimitiveConverter newConverter(PrimitiveTypeName type, int column) {
+    switch (type) {
+      case BOOLEAN:
+      case INT32:
+      case INT64:
+        return new LongConverter(column);
+      case FLOAT:
+      case DOUBLE:
+        return new DoubleConverter(column);
+      default:
+        return new BinaryConverter(column);
+    }
+  }
+
+  private final class LongConverter extends PrimitiveConverter {
+    private final int column;
+
+    private LongConverter(int column) {
+      this.column = column;
+    }
+
+    @Override
+    public void addBoolean(boolean value) {
+      row.longs[column] = value ? 1 : 0;
+      row.nulls[column] = false;
+    }
+
+    @Override
+    public void addInt(int value) {
+      row.longs[column] = value;
+      row.nulls[column] = false;
+    }
+
+    @Override
+    public void addLong(long value) {
+      row.longs[column] = value;
+      row.nulls[column] = false;
+    }
+  }
+
+  private final class DoubleConverter extends PrimitiveConverter {
+    private final int column;
+
+    private DoubleConverter(int column) {
+      this.column = column;
+    }
+
+    @Override
+    public void addFloat(float value) {
+      row.doubles[column] = value;
+      row.nulls[column] = false;
+    }
+
+    @Override
+    public void addDouble(double value) {
+      row.doubles[column] = value;
+      row.nulls[column] = false;
+    }
+  }
+
+  private final class BinaryConverter extends PrimitiveConverter {
+    private final int column;
+
+    private BinaryConverter(int column) {
+      this.column = column;
+    }
+
+    @Override
+    public boolean hasDictionarySupport() {
+      return true;
+    }
+
+    @Override
+    public void setDictionary(Dictionary dictionary) {
+      row.dictionaries[column] = dictionary;
+    }
+
+    @Override
+    public void addValueFromDictionary(int dictionaryId) {
+      row.dictionaryIds[column] = dictionaryId;
+      row.nulls[column] = false;
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      row.binaries[column] = value;
+      row.nulls[column] = false;
+    }
+  }
+}
@@ -0,0 +1,93 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Reads the rows of a flat schema into a single {@link FlatRow}, without boxing values or building
+ * a record per row. Every {@link #read()} returns the same row, filled with the next record. The
+ * requested schema may contain nested groups but no repeated fields.
+ */
+public class FlatRowReader extends ParquetReader<FlatRow> {
+
+  private final ExportedParquetRecordReader<FlatRow> recordReader;
+
+  protected FlatRowReader(ExportedParquetRecordReader<FlatRow> recordReader) {
+    super(recordReader);
+    this.recordReader = recordReader;
+  }
+
+  public static Builder builder(Path path) {
+    return new Builder(new LocalInputFile(path));
+  }
+
+  public ParquetMetadata getFooter() {
+    return recordReader.getReader().getFooter();
+  }
+
+  /**
+   * Move to the next row which passes the filter.
+   *
+   * @return false if finished
+   * @throws IOException if there is an error while reading
+   */
+  public boolean next() throws IOException {
+    return read() != null;
+  }
+
+  /**
+   * @return the row filled by the last read, which is the same for the whole file
+   */
+  public FlatRow getRow() {
+    return recordReader.getRecordMaterializer().getCurrentRecord();
+  }
+
+  public static class Builder extends ParquetReader.Builder<FlatRow, FlatRowReader, Builder> {
+    private final InputFile file;
+
+    public Builder(InputFile file) {
+      this.file = file;
+    }
+
+    @Override
+    protected Builder self() {
+      return this;
+    }
+
+    @Override
+    protected RecordMaterializer<FlatRow> materializer(MessageType schema, Map<String, String> extra) {
+      return new FlatRowMaterializer(schema);
+    }
+
+    @Override
+    public FlatRowReader build() throws IOException {
+      return new FlatRowReader(build(file, readFooter(file)));
+    }
+  }
+}
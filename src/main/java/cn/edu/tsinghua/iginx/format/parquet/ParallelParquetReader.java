@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads the row groups of one file on a pool of worker threads. Every row group is read by its own
+ * {@link ExportedParquetRecordReader} and handed over in batches of records.
+ *
+ * <p>In ordered mode, records are returned in file order: at most {@code readAhead} row groups are
+ * read ahead, each through a bounded queue. In unordered mode, batches are returned as soon as any
+ * worker produces them.
+ *
+ * <p>If an external executor is used, it must be able to run {@code readAhead} tasks concurrently
+ * or run its tasks in submission order, otherwise ordered reading may stall.
+ *
+ * @param <T> the type of the materialized records
+ */
+public class ParallelParquetReader<T> implements Closeable {
+
+  static final int BATCH_SIZE = 1024;
+  private static final int QUEUE_CAPACITY = 4;
+
+  private final RowGroupReaderFactory<T> factory;
+  private final ExecutorService executor;
+  private final boolean ownsExecutor;
+  private final boolean ordered;
+  private final int readAhead;
+  private final List<BlockMetaData> rowGroups;
+  // the submitted row groups which are not fully consumed yet, in file order
+  private final Deque<Split> inFlight = new ArrayDeque<>();
+  private final BlockingQueue<Object> completed;
+  private int nextRowGroup = 0;
+  private volatile boolean closed = false;
+  private IOException failure = null; // rethrown by every read after a split failed
+
+  private Batch<T> current = null;
+  private int position = 0;
+
+  ParallelParquetReader(RowGroupReaderFactory<T> factory, ExecutorService executor, int parallelism, int readAhead, boolean ordered) {
+    if (parallelism <= 0) {
+      throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+    }
+    this.factory = Objects.requireNonNull(factory);
+    this.ordered = ordered;
+    this.readAhead = readAhead > 0 ? readAhead : parallelism;
+    this.rowGroups = factory.getRowGroups();
+    this.ownsExecutor = executor == null;
+    this.executor = executor == null ? Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory()) : executor;
+    this.completed = ordered ? null : new ArrayBlockingQueue<>(this.readAhead * QUEUE_CAPACITY);
+  }
+
+  /**
+   * Read the next record from the file
+   *
+   * @return the next record or null if finished
+   * @throws IOException if there is an error while reading
+   */
+  public T read() throws IOException {
+    while (current == null || position == current.size()) {
+      current = nextBatch();
+      position = 0;
+      if (current == null) {
+        return null;
+      }
+    }
+    return current.records.get(position++);
+  }
+
+  /**
+   * @return the row index in the file of the last read row. If no row has been processed, returns
+   * -1.
+   */
+  public long getCurrentRowIndex() {
+    if (current == null || position == 0) {
+      return -1;
+    }
+    return current.rowIndexes[position - 1];
+  }
+
+  @SuppressWarnings("unchecked")
+  private Batch<T> nextBatch() throws IOException {
+    if (closed) {
+      throw new IOException("The reader is closed");
+    }
+    if (failure != null) {
+      throw failure;
+    }
+    while (true) {
+      submit();
+      Split head = inFlight.peekFirst();
+      if (head == null) {
+        return null;
+      }
+      Object item = take(head.queue);
+      if (item instanceof ParallelParquetReader.Split) {
+        inFlight.remove(item);
+        continue;
+      }
+      if (item instanceof Throwable) {
+        failure = new IOException("Failed to read " + factory.getFile(), (Throwable) item);
+        cancel();
+        throw failure;
+      }
+      return (Batch<T>) item;
+    }
+  }
+
+  private void submit() {
+    while (nextRowGroup < rowGroups.size() && inFlight.size() < readAhead) {
+      Split split = new Split(rowGroups.get(nextRowGroup++));
+      split.future = executor.submit(split);
+      inFlight.addLast(split);
+    }
+  }
+
+  private static Object take(BlockingQueue<Object> queue) throws IOException {
+    try {
+      return queue.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for row groups");
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    cancel();
+    if (ownsExecutor) {
+      executor.shutdownNow();
+    }
+  }
+
+  private void cancel() {
+    for (Split split : inFlight) {
+      split.future.cancel(true);
+    }
+    inFlight.clear();
+    nextRowGroup = rowGroups.size();
+    if (completed != null) {
+      completed.clear();
+    }
+  }
+
+  /**
+   * Reads one row group, then puts itself into the queue to mark the end of the row group.
+   */
+  private final class Split implements Runnable {
+
+    private final BlockMetaData rowGroup;
+    private final BlockingQueue<Object> queue;
+    private Future<?> future;
+
+    private Split(BlockMetaData rowGroup) {
+      this.rowGroup = rowGroup;
+      this.queue = ordered ? new ArrayBlockingQueue<>(QUEUE_CAPACITY) : completed;
+    }
+
+    @Override
+    public void run() {
+      try {
+        try (ExportedParquetRecordReader<T> reader = factory.open(Collections.singletonList(rowGroup))) {
+          Batch<T> batch = new Batch<>();
+          while (!closed && reader.nextKeyValue()) {
+            batch.add(reader.getCurrentValue(), reader.getCurrentRowIndex());
+            if (batch.size() == BATCH_SIZE) {
+              queue.put(batch);
+              batch = new Batch<>();
+            }
+          }
+          if (batch.size() > 0) {
+            queue.put(batch);
+          }
+        } catch (InterruptedException e) {
+          return;
+        } catch (Throwable e) {
+          queue.put(e);
+        }
+        queue.put(this);
+      } catch (InterruptedException e) {
+        // closed while waiting for the consumer
+      }
+    }
+  }
+
+  static final class Batch<T> {
+
+    private final List<T> records = new ArrayList<>(BATCH_SIZE);
+    private final long[] rowIndexes = new long[BATCH_SIZE];
+
+    void add(T record, long rowIndex) {
+      rowIndexes[records.size()] = rowIndex;
+      records.add(record);
+    }
+
+    int size() {
+      return records.size();
+    }
+  }
+
+  private static final class WorkerThreadFactory implements ThreadFactory {
+
+    private static final AtomicInteger POOL_ID = new AtomicInteger();
+
+    private final int poolId = POOL_ID.incrementAndGet();
+    private final AtomicInteger threadId = new AtomicInteger();
+
+    @Override
+    public Thread newThread(Runnable runnable) {
+      Thread thread = new Thread(runnable, "parquet-reader-" + poolId + "-" + threadId.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    }
+  }
+}
@@ -0,0 +1,940 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.filter.ColumnVectors;
+import cn.edu.tsinghua.iginx.format.parquet.filter.CompiledPredicate;
+import cn.edu.tsinghua.iginx.format.parquet.filter.RowRangesUtils;
+import cn.edu.tsinghua.iginx.format.parquet.filter.SchemaUtils;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterApi;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.LogicalInverter;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.filter2.predicate.UserDefinedPredicate;
+import org.apache.parquet.filter2.statisticslevel.StatisticsFilter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.internal.column.columnindex.ColumnIndex;
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.internal.filter2.columnindex.ColumnIndexFilter;
+import org.apache.parquet.internal.filter2.columnindex.ColumnIndexStore;
+import org.apache.parquet.internal.filter2.columnindex.RowRanges;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.RecordReader;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+/**
+ * Answers {@code count}, {@code min}, {@code max} and {@code null count} aggregates over a parquet
+ * file from its metadata where possible.
+ *
+ * <p>Row counts come from the row groups, min/max/null counts from the column chunk statistics or
+ * from the column indexes. Under a filter, rows whose pages provably match it are answered from
+ * metadata as well; only the pages that cannot be answered this way are decoded, in batches with a
+ * {@link CompiledPredicate} when the filter columns are not repeated.
+ */
+public class ParquetAggregator {
+
+  private static final int BATCH_SIZE = 1024;
+
+  private final ParquetFileReader reader;
+  private final MessageType fileSchema;
+  private final String createdBy;
+  private final List<ColumnDescriptor> columns = new ArrayList<>();
+  private final Map<ColumnPath, Statistics<?>> statistics = new LinkedHashMap<>();
+  private MessageType projection;
+  private CompiledPredicate compiledFilter; // null if the filter is evaluated record by record
+  private ColumnVectors vectors;
+  private long count = 0;
+  private long decodedRowCount = 0;
+
+  private ParquetAggregator(ParquetFileReader reader, Collection<ColumnPath> paths) {
+    this.reader = Objects.requireNonNull(reader);
+    this.fileSchema = reader.getFileMetaData().getSchema();
+    this.createdBy = reader.getFileMetaData().getCreatedBy();
+    for (ColumnPath path : paths) {
+      if (!fileSchema.containsPath(path.toArray())) {
+        throw new IllegalArgumentException("Column " + path.toDotString() + " is not in the file schema");
+      }
+      Type type = fileSchema.getType(path.toArray());
+      if (!type.isPrimitive()) {
+        throw new IllegalArgumentException("Column " + path.toDotString() + " is not a primitive column");
+      }
+      ColumnDescriptor column = fileSchema.getColumnDescription(path.toArray());
+      columns.add(column);
+      statistics.put(path, Statistics.createStats(column.getPrimitiveType()));
+    }
+  }
+
+  public static Builder builder(InputFile file) {
+    return new Builder(file);
+  }
+
+  /**
+   * Aggregates the row groups of the reader which pass its row group filters. The requested schema
+   * of the reader is replaced.
+   *
+   * @param reader  the reader of the file
+   * @param columns the columns to compute min/max/null count of
+   * @return the aggregates
+   * @throws IOException if an error occurs while reading
+   */
+  public static Result aggregate(ParquetFileReader reader, Collection<ColumnPath> columns) throws IOException {
+    return new ParquetAggregator(reader, columns).aggregate();
+  }
+
+  private Result aggregate() throws IOException {
+    ParquetReadOptions options = reader.getOptions();
+    FilterCompat.Filter filter = options.getRecordFilter();
+    boolean filtering = FilterCompat.isFilteringRequired(filter);
+    FilterPredicate predicate = null;
+    Map<ColumnPath, Operators.Column<?>> filterColumns = new LinkedHashMap<>();
+    if (filter instanceof FilterCompat.FilterPredicateCompat) {
+      predicate = ((FilterCompat.FilterPredicateCompat) filter).getFilterPredicate();
+      predicate.accept(new ColumnCollector(filterColumns));
+      filterColumns.keySet().removeIf(path -> !fileSchema.containsPath(path.toArray()));
+    }
+    if (filtering) {
+      for (ColumnDescriptor column : columns) {
+        if (column.getMaxRepetitionLevel() > 0) {
+          throw new IllegalArgumentException("Filtered aggregation of repeated column " + ColumnPath.get(column.getPath()).toDotString() + " is not supported");
+        }
+      }
+    }
+
+    Set<ColumnPath> projected = new LinkedHashSet<>(statistics.keySet());
+    projected.addAll(filterColumns.keySet());
+    projection = SchemaUtils.project(fileSchema, projected);
+    reader.setRequestedSchema(projection);
+    if (filtering) {
+      compiledFilter = CompiledPredicate.compile(filter, projection);
+    }
+
+    // Rows without nulls in the filter columns match the predicate iff they do not match its
+    // inverse, so the pages dropped by the inverse (or any null) provably match the predicate.
+    FilterPredicate mismatch = null;
+    if (predicate != null) {
+      mismatch = LogicalInverter.invert(predicate);
+      for (Operators.Column<?> column : filterColumns.values()) {
+        mismatch = FilterApi.or(mismatch, isNull(column));
+      }
+    }
+
+    List<BlockMetaData> blocks = reader.getRowGroups();
+    for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+      BlockMetaData block = blocks.get(blockIndex);
+      if (block.getRowCount() == 0) {
+        continue;
+      }
+      if (filtering) {
+        aggregateFiltered(blockIndex, block, options, filter, predicate, mismatch, projected);
+      } else {
+        aggregateUnfiltered(blockIndex, block);
+      }
+    }
+    return new Result(count, statistics, decodedRowCount);
+  }
+
+  private void aggregateUnfiltered(int blockIndex, BlockMetaData block) throws IOException {
+    long rowCount = block.getRowCount();
+    count += rowCount;
+    for (ColumnDescriptor column : columns) {
+      ColumnPath path = ColumnPath.get(column.getPath());
+      ColumnChunkMetaData chunk = findChunk(block, path);
+      if (isUsable(chunk)) {
+        merge(path, chunk.getStatistics());
+        continue;
+      }
+      RowRanges pending = RowRangesUtils.all(rowCount);
+      PageStatistics pages = readPageStatistics(blockIndex, column);
+      if (pages != null) {
+        long[] from = new long[pages.size()];
+        long[] to = new long[pages.size()];
+        int size = 0;
+        for (int page = 0; page < pages.size(); page++) {
+          if (pages.statistics[page] != null) {
+            merge(path, pages.statistics[page]);
+          } else {
+            from[size] = pages.getFirstRowIndex(page);
+            to[size] = pages.getLastRowIndex(page, rowCount);
+            size++;
+          }
+        }
+        pending = RowRangesUtils.create(from, to, size);
+      }
+      decodeColumn(blockIndex, column, pending);
+    }
+  }
+
+  private void aggregateFiltered(
+      int blockIndex,
+      BlockMetaData block,
+      ParquetReadOptions options,
+      FilterCompat.Filter filter,
+      FilterPredicate predicate,
+      FilterPredicate mismatch,
+      Set<ColumnPath> projected)
+      throws IOException {
+    long rowCount = block.getRowCount();
+    RowRanges candidate = RowRangesUtils.all(rowCount);
+    RowRanges matched = RowRanges.EMPTY;
+    if (predicate != null) {
+      if (options.useStatsFilter() && StatisticsFilter.canDrop(mismatch, block.getColumns())) {
+        matched = candidate;
+      } else if (options.useColumnIndexFilter()) {
+        ColumnIndexStore store = reader.getColumnIndexStore(blockIndex);
+        candidate = ColumnIndexFilter.calculateRowRanges(filter, store, projected, rowCount);
+        RowRanges unsure = ColumnIndexFilter.calculateRowRanges(FilterCompat.get(mismatch), store, projected, rowCount);
+        matched = RowRangesUtils.subtract(candidate, unsure, rowCount);
+      }
+    }
+
+    // shrink the matched rows until every column can answer all of them from metadata
+    Map<ColumnDescriptor, PageStatistics> pageStatistics = new HashMap<>();
+    RowRanges known = matched;
+    long knownRowCount;
+    do {
+      knownRowCount = known.rowCount();
+      for (ColumnDescriptor column : columns) {
+        if (known.rowCount() == 0) {
+          break;
+        }
+        known = RowRanges.intersection(known, answerable(blockIndex, block, column, known, pageStatistics));
+      }
+    } while (known.rowCount() != knownRowCount);
+
+    if (known.rowCount() > 0) {
+      count += known.rowCount();
+      for (ColumnDescriptor column : columns) {
+        ColumnPath path = ColumnPath.get(column.getPath());
+        ColumnChunkMetaData chunk = findChunk(block, path);
+        if (known.rowCount() == rowCount && isUsable(chunk)) {
+          merge(path, chunk.getStatistics());
+          continue;
+        }
+        PageStatistics pages = pageStatistics.get(column);
+        for (int page = 0; page < pages.size(); page++) {
+          if (RowRangesUtils.contains(known, pages.getFirstRowIndex(page), pages.getLastRowIndex(page, rowCount))) {
+            merge(path, pages.statistics[page]);
+          }
+        }
+      }
+    }
+
+    decodeRecords(blockIndex, RowRangesUtils.subtract(candidate, known, rowCount), filter);
+  }
+
+  /**
+   * @return the rows of {@code known} whose min/max/null count of the column can be answered from
+   * the chunk statistics or from whole pages of the column index
+   */
+  private RowRanges answerable(
+      int blockIndex,
+      BlockMetaData block,
+      ColumnDescriptor column,
+      RowRanges known,
+      Map<ColumnDescriptor, PageStatistics> pageStatistics) {
+    long rowCount = block.getRowCount();
+    if (known.rowCount() == rowCount && isUsable(findChunk(block, ColumnPath.get(column.getPath())))) {
+      return known;
+    }
+    PageStatistics pages = pageStatistics.get(column);
+    if (pages == null) {
+      pages = readPageStatistics(blockIndex, column);
+      if (pages == null) {
+        return RowRanges.EMPTY;
+      }
+      pageStatistics.put(column, pages);
+    }
+    long[] from = new long[pages.size()];
+    long[] to = new long[pages.size()];
+    int size = 0;
+    for (int page = 0; page < pages.size(); page++) {
+      long first = pages.getFirstRowIndex(page);
+      long last = pages.getLastRowIndex(page, rowCount);
+      if (pages.statistics[page] != null && RowRangesUtils.contains(known, first, last)) {
+        from[size] = first;
+        to[size] = last;
+        size++;
+      }
+    }
+    return RowRangesUtils.create(from, to, size);
+  }
+
+  /**
+   * Decodes one column over whole pages, without any filter.
+   */
+  private void decodeColumn(int blockIndex, ColumnDescriptor column, RowRanges rows) throws IOException {
+    if (rows.rowCount() == 0) {
+      return;
+    }
+    ColumnPath path = ColumnPath.get(column.getPath());
+    MessageType schema = SchemaUtils.project(fileSchema, Collections.singleton(path));
+    reader.setRequestedSchema(schema);
+    try {
+      PageReadStore pages = reader.readFilteredRowGroup(blockIndex, rows);
+      if (pages == null) {
+        return;
+      }
+      decodedRowCount += pages.getRowCount();
+      GroupConverter converter = new CollectingGroupConverter(schema, new ArrayList<>(), Collections.emptyMap(), null);
+      ColumnReader columnReader = new ColumnReadStoreImpl(pages, converter, schema, createdBy).getColumnReader(column);
+      Statistics<?> stats = statistics.get(path);
+      int maxDefinitionLevel = column.getMaxDefinitionLevel();
+      for (long row = 0, n = pages.getRowCount(); row < n; row++) {
+        // a row holds several values of a repeated column, the next row starts at level 0
+        do {
+          if (columnReader.getCurrentDefinitionLevel() == maxDefinitionLevel) {
+            update(stats, column.getPrimitiveType().getPrimitiveTypeName(), columnReader);
+          } else {
+            stats.incrementNumNulls();
+          }
+          columnReader.consume();
+        } while (columnReader.getCurrentRepetitionLevel() > 0);
+      }
+    } finally {
+      reader.setRequestedSchema(projection);
+    }
+  }
+
+  /**
+   * Assembles the records of the given rows, counting and collecting the ones matching the filter.
+   */
+  private void decodeRecords(int blockIndex, RowRanges rows, FilterCompat.Filter filter) throws IOException {
+    if (rows.rowCount() == 0) {
+      return;
+    }
+    PageReadStore pages = reader.readFilteredRowGroup(blockIndex, rows);
+    if (pages == null) {
+      return;
+    }
+    decodedRowCount += pages.getRowCount();
+    if (compiledFilter != null) {
+      decodeBatches(pages);
+      return;
+    }
+    StatisticsMaterializer materializer = new StatisticsMaterializer();
+    MessageColumnIO columnIO = new ColumnIOFactory(createdBy).getColumnIO(projection, fileSchema, true);
+    RecordReader<Boolean> recordReader = columnIO.getRecordReader(pages, materializer, filter);
+    for (long i = 0, n = pages.getRowCount(); i < n; i++) {
+      Boolean record = recordReader.read();
+      if (record != null && !recordReader.shouldSkipCurrentRecord()) {
+        count++;
+      }
+    }
+  }
+
+  /**
+   * Decodes the projected columns in batches of vectors, and evaluates the compiled filter over each
+   * batch at once.
+   */
+  private void decodeBatches(PageReadStore pages) {
+    if (vectors == null) {
+      vectors = new ColumnVectors(projection, BATCH_SIZE);
+    }
+    vectors.open(pages, createdBy);
+    int[] indexes = new int[columns.size()];
+    for (int i = 0; i < indexes.length; i++) {
+      indexes[i] = vectors.indexOf(ColumnPath.get(columns.get(i).getPath()));
+    }
+    long[] selection = new long[CompiledPredicate.words(BATCH_SIZE)];
+    for (long remaining = pages.getRowCount(); remaining > 0; remaining -= vectors.getSize()) {
+      vectors.read((int) Math.min(remaining, BATCH_SIZE));
+      int matched = compiledFilter.evaluate(vectors, selection);
+      if (matched == 0) {
+        continue;
+      }
+      count += matched;
+      int words = CompiledPredicate.words(vectors.getSize());
+      for (int i = 0; i < indexes.length; i++) {
+        ColumnDescriptor column = columns.get(i);
+        Statistics<?> stats = statistics.get(ColumnPath.get(column.getPath()));
+        PrimitiveType.PrimitiveTypeName type = column.getPrimitiveType().getPrimitiveTypeName();
+        for (int word = 0; word < words; word++) {
+          for (long bits = selection[word]; bits != 0; bits &= bits - 1) {
+            int row = (word << 6) + Long.numberOfTrailingZeros(bits);
+            if (vectors.isNull(indexes[i], row)) {
+              stats.incrementNumNulls();
+            } else {
+              update(stats, type, vectors, indexes[i], row);
+            }
+          }
+        }
+      }
+    }
+  }
+
+  /**
+   * @return the statistics of every page of the column, where a page which cannot be answered
+   * from the column index has null statistics, or null if there is no usable column index
+   */
+  private PageStatistics readPageStatistics(int blockIndex, ColumnDescriptor column) {
+    PrimitiveType type = column.getPrimitiveType();
+    switch (type.getPrimitiveTypeName()) {
+      case BINARY:
+      case FIXED_LEN_BYTE_ARRAY:
+      case INT96:
+        // min/max of binary values may be truncated in column indexes
+        return null;
+      default:
+        break;
+    }
+    ColumnPath path = ColumnPath.get(column.getPath());
+    ColumnIndexStore store = reader.getColumnIndexStore(blockIndex);
+    ColumnIndex columnIndex = store.getColumnIndex(path);
+    OffsetIndex offsetIndex;
+    try {
+      offsetIndex = store.getOffsetIndex(path);
+    } catch (ColumnIndexStore.MissingOffsetIndexException e) {
+      return null;
+    }
+    if (columnIndex == null || offsetIndex == null || columnIndex.getNullCounts() == null) {
+      return null;
+    }
+    List<Boolean> nullPages = columnIndex.getNullPages();
+    List<Long> nullCounts = columnIndex.getNullCounts();
+    List<ByteBuffer> minValues = columnIndex.getMinValues();
+    List<ByteBuffer> maxValues = columnIndex.getMaxValues();
+    Statistics<?>[] pages = new Statistics<?>[offsetIndex.getPageCount()];
+    for (int page = 0; page < pages.length; page++) {
+      Statistics.Builder builder = Statistics.getBuilderForReading(type).withNumNulls(nullCounts.get(page));
+      if (nullPages.get(page)) {
+        pages[page] = builder.build();
+        continue;
+      }
+      Statistics<?> stats = builder
+          .withMin(toBytes(minValues.get(page)))
+          .withMax(toBytes(maxValues.get(page)))
+          .build();
+      pages[page] = stats.hasNonNullValue() ? stats : null;
+    }
+    return new PageStatistics(offsetIndex, pages);
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private void merge(ColumnPath path, Statistics<?> stats) {
+    ((Statistics) statistics.get(path)).mergeStatistics(stats);
+  }
+
+  private static boolean isUsable(ColumnChunkMetaData chunk) {
+    Statistics<?> stats = chunk.getStatistics();
+    if (stats == null || !stats.isNumNullsSet()) {
+      return false;
+    }
+    if (stats.getNumNulls() == chunk.getValueCount()) {
+      return true;
+    }
+    switch (chunk.getPrimitiveType().getPrimitiveTypeName()) {
+      case BINARY:
+      case FIXED_LEN_BYTE_ARRAY:
+      case INT96:
+        // min/max of binary values may be truncated by the writer
+        return false;
+      default:
+        return stats.hasNonNullValue();
+    }
+  }
+
+  private static ColumnChunkMetaData findChunk(BlockMetaData block, ColumnPath path) {
+    for (ColumnChunkMetaData chunk : block.getColumns()) {
+      if (chunk.getPath().equals(path)) {
+        return chunk;
+      }
+    }
+    throw new IllegalStateException("Column " + path.toDotString() + " is missing in row group " + block.getOrdinal());
+  }
+
+  private static void update(Statistics<?> stats, PrimitiveType.PrimitiveTypeName type, ColumnReader reader) {
+    switch (type) {
+      case BOOLEAN:
+        stats.updateStats(reader.getBoolean());
+        break;
+      case INT32:
+        stats.updateStats(reader.getInteger());
+        break;
+      case INT64:
+        stats.updateStats(reader.getLong());
+        break;
+      case FLOAT:
+        stats.updateStats(reader.getFloat());
+        break;
+      case DOUBLE:
+        stats.updateStats(reader.getDouble());
+        break;
+      default:
+        stats.updateStats(reader.getBinary());
+        break;
+    }
+  }
+
+  private static void update(Statistics<?> stats, PrimitiveType.PrimitiveTypeName type, ColumnVectors vectors, int column, int row) {
+    switch (type) {
+      case BOOLEAN:
+        stats.updateStats(vectors.getLong(column, row) != 0);
+        break;
+      case INT32:
+        stats.updateStats((int) vectors.getLong(column, row));
+        break;
+      case INT64:
+        stats.updateStats(vectors.getLong(column, row));
+        break;
+      case FLOAT:
+        stats.updateStats((float) vectors.getDouble(column, row));
+        break;
+      case DOUBLE:
+        stats.updateStats(vectors.getDouble(column, row));
+        break;
+      default:
+        stats.updateStats(vectors.getBinary(column, row));
+        break;
+    }
+  }
+
+  private static byte[] toBytes(ByteBuffer buffer) {
+    ByteBuffer duplicate = buffer.duplicate();
+    byte[] bytes = new byte[duplicate.remaining()];
+    duplicate.get(bytes);
+    return bytes;
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static FilterPredicate isNull(Operators.Column<?> column) {
+    return new Operators.Eq((Operators.Column) column, null);
+  }
+
+  public static class Result {
+
+    private final long count;
+    private final Map<ColumnPath, Statistics<?>> statistics;
+    private final long decodedRowCount;
+
+    private Result(long count, Map<ColumnPath, Statistics<?>> statistics, long decodedRowCount) {
+      this.count = count;
+      this.statistics = Collections.unmodifiableMap(statistics);
+      this.decodedRowCount = decodedRowCount;
+    }
+
+    /**
+     * @return the number of rows matching the filter
+     */
+    public long getCount() {
+      return count;
+    }
+
+    /**
+     * @param column the dot path of the column
+     * @return the min, max and null count of the column over the rows matching the filter
+     */
+    public Statistics<?> getStatistics(String column) {
+      return getStatistics(ColumnPath.fromDotString(column));
+    }
+
+    public Statistics<?> getStatistics(ColumnPath column) {
+      Statistics<?> stats = statistics.get(column);
+      if (stats == null) {
+        throw new IllegalArgumentException("Column " + column.toDotString() + " was not aggregated");
+      }
+      return stats;
+    }
+
+    /**
+     * @return the number of rows read from data pages instead of being answered from metadata. A
+     * row is counted once per pass over its pages, so it may be counted for several columns.
+     */
+    public long getDecodedRowCount() {
+      return decodedRowCount;
+    }
+  }
+
+  public static class Builder {
+
+    private final InputFile file;
+    private final ParquetReadOptions.Builder optionsBuilder = ParquetReadOptions.builder();
+    private DictionaryCache dictionaryCache = null;
+    private String dictionaryCacheKey = null;
+
+    private Builder(InputFile file) {
+      this.file = Objects.requireNonNull(file);
+      optionsBuilder.withCodecFactory(new DefaultCodecFactory());
+    }
+
+    public Builder withFilter(FilterCompat.Filter filter) {
+      optionsBuilder.withRecordFilter(filter);
+      return this;
+    }
+
+    public Builder withAllocator(ByteBufferAllocator allocator) {
+      optionsBuilder.withAllocator(allocator);
+      return this;
+    }
+
+    public Builder useDictionaryFilter(boolean useDictionaryFiltering) {
+      optionsBuilder.useDictionaryFilter(useDictionaryFiltering);
+      return this;
+    }
+
+    public Builder useStatsFilter(boolean useStatsFiltering) {
+      optionsBuilder.useStatsFilter(useStatsFiltering);
+      return this;
+    }
+
+    public Builder useColumnIndexFilter(boolean useColumnIndexFilter) {
+      optionsBuilder.useColumnIndexFilter(useColumnIndexFilter);
+      return this;
+    }
+
+    public Builder withFileRange(long rangeStart, long rangeEnd) {
+      optionsBuilder.withRange(rangeStart, rangeEnd);
+      return this;
+    }
+
+    public Builder withCodecFactory(CompressionCodecFactory codecFactory) {
+      optionsBuilder.withCodecFactory(codecFactory);
+      return this;
+    }
+
+    public Builder withDictionaryCache(DictionaryCache dictionaryCache) {
+      return withDictionaryCache(dictionaryCache, null);
+    }
+
+    /**
+     * @param fileKey the identity of the file in the cache, or null to use the default identity of
+     * the file, see {@link ParquetFileReader#dictionaryCacheKey(InputFile)}
+     */
+    public Builder withDictionaryCache(DictionaryCache dictionaryCache, String fileKey) {
+      this.dictionaryCache = dictionaryCache;
+      this.dictionaryCacheKey = fileKey;
+      return this;
+    }
+
+    /**
+     * @param columns the dot paths of the columns to compute min/max/null count of
+     * @return the aggregates
+     * @throws IOException if an error occurs while reading
+     */
+    public Result aggregate(String... columns) throws IOException {
+      List<ColumnPath> paths = new ArrayList<>();
+      for (String column : columns) {
+        paths.add(ColumnPath.fromDotString(column));
+      }
+      ParquetReadOptions options = optionsBuilder.build();
+      ParquetMetadata footer;
+      try (SeekableInputStream in = file.newStream()) {
+        footer = ParquetFileReader.readFooter(file, options, in);
+      }
+      String cacheKey = dictionaryCacheKey;
+      if (dictionaryCache != null && cacheKey == null) {
+        cacheKey = ParquetFileReader.dictionaryCacheKey(file);
+      }
+      try (ParquetFileReader reader =
+          new ParquetFileReader(file, footer, options, dictionaryCache, cacheKey)) {
+        return ParquetAggregator.aggregate(reader, paths);
+      }
+    }
+  }
+
+  private static final class PageStatistics {
+
+    private final OffsetIndex offsetIndex;
+    private final Statistics<?>[] statistics;
+
+    private PageStatistics(OffsetIndex offsetIndex, Statistics<?>[] statistics) {
+      this.offsetIndex = offsetIndex;
+      this.statistics = statistics;
+    }
+
+    int size() {
+      return statistics.length;
+    }
+
+    long getFirstRowIndex(int page) {
+      return offsetIndex.getFirstRowIndex(page);
+    }
+
+    long getLastRowIndex(int page, long rowCount) {
+      return offsetIndex.getLastRowIndex(page, rowCount);
+    }
+  }
+
+  private static final class ColumnCollector implements FilterPredicate.Visitor<Void> {
+
+    private final Map<ColumnPath, Operators.Column<?>> columns;
+
+    private ColumnCollector(Map<ColumnPath, Operators.Column<?>> columns) {
+      this.columns = columns;
+    }
+
+    private Void add(Operators.Column<?> column) {
+      columns.putIfAbsent(column.getColumnPath(), column);
+      return null;
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Eq<T> eq) {
+      return add(eq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotEq<T> notEq) {
+      return add(notEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Lt<T> lt) {
+      return add(lt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.LtEq<T> ltEq) {
+      return add(ltEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.Gt<T> gt) {
+      return add(gt.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.GtEq<T> gtEq) {
+      return add(gtEq.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.In<T> in) {
+      return add(in.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>> Void visit(Operators.NotIn<T> notIn) {
+      return add(notIn.getColumn());
+    }
+
+    @Override
+    public Void visit(Operators.And and) {
+      and.getLeft().accept(this);
+      return and.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Or or) {
+      or.getLeft().accept(this);
+      return or.getRight().accept(this);
+    }
+
+    @Override
+    public Void visit(Operators.Not not) {
+      return not.getPredicate().accept(this);
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(Operators.UserDefined<T, U> udp) {
+      return add(udp.getColumn());
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Void visit(Operators.LogicalNotUserDefined<T, U> udp) {
+      return add(udp.getUserDefined().getColumn());
+    }
+  }
+
+  private final class StatisticsMaterializer extends RecordMaterializer<Boolean> {
+
+    private final Map<ColumnPath, ValueCollector> collectors = new HashMap<>();
+    private final GroupConverter root;
+
+    private StatisticsMaterializer() {
+      for (ColumnDescriptor column : columns) {
+        ColumnPath path = ColumnPath.get(column.getPath());
+        collectors.put(path, new ValueCollector(statistics.get(path), column.getPrimitiveType().getPrimitiveTypeName()));
+      }
+      this.root = new CollectingGroupConverter(projection, new ArrayList<>(), collectors, () -> collectors.values().forEach(ValueCollector::reset));
+    }
+
+    @Override
+    public Boolean getCurrentRecord() {
+      for (ValueCollector collector : collectors.values()) {
+        collector.commit();
+      }
+      return Boolean.TRUE;
+    }
+
+    @Override
+    public GroupConverter getRootConverter() {
+      return root;
+    }
+  }
+
+  private static final class CollectingGroupConverter extends GroupConverter {
+
+    private final Converter[] converters;
+    private final Runnable onStart;
+
+    private CollectingGroupConverter(GroupType type, List<String> path, Map<ColumnPath, ValueCollector> collectors, Runnable onStart) {
+      this.onStart = onStart;
+      this.converters = new Converter[type.getFieldCount()];
+      for (int i = 0; i < converters.length; i++) {
+        Type field = type.getType(i);
+        List<String> fieldPath = new ArrayList<>(path);
+        fieldPath.add(field.getName());
+        if (field.isPrimitive()) {
+          ValueCollector collector = collectors.get(ColumnPath.get(fieldPath.toArray(new String[0])));
+          converters[i] = collector == null ? new ValueCollector(null, field.asPrimitiveType().getPrimitiveTypeName()) : collector;
+        } else {
+          converters[i] = new CollectingGroupConverter(field.asGroupType(), fieldPath, collectors, null);
+        }
+      }
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+      if (onStart != null) {
+        onStart.run();
+      }
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+
+  /**
+   * Holds the value of a non-repeated column in the current record until the record is accepted.
+   */
+  private static final class ValueCollector extends PrimitiveConverter {
+
+    private final Statistics<?> statistics; // null if the column is not aggregated
+    private final PrimitiveType.PrimitiveTypeName type;
+    private boolean present = false;
+    private boolean booleanValue;
+    private int intValue;
+    private long longValue;
+    private float floatValue;
+    private double doubleValue;
+    private Binary binaryValue;
+
+    private ValueCollector(Statistics<?> statistics, PrimitiveType.PrimitiveTypeName type) {
+      this.statistics = statistics;
+      this.type = type;
+    }
+
+    void reset() {
+      present = false;
+      binaryValue = null;
+    }
+
+    void commit() {
+      if (statistics == null) {
+        return;
+      }
+      if (!present) {
+        statistics.incrementNumNulls();
+        return;
+      }
+      switch (type) {
+        case BOOLEAN:
+          statistics.updateStats(booleanValue);
+          break;
+        case INT32:
+          statistics.updateStats(intValue);
+          break;
+        case INT64:
+          statistics.updateStats(longValue);
+          break;
+        case FLOAT:
+          statistics.updateStats(floatValue);
+          break;
+        case DOUBLE:
+          statistics.updateStats(doubleValue);
+          break;
+        default:
+          statistics.updateStats(binaryValue);
+          break;
+      }
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      present = true;
+      binaryValue = value;
+    }
+
+    @Override
+    public void addBoolean(boolean value) {
+      present = true;
+      booleanValue = value;
+    }
+
+    @Override
+    public void addDouble(double value) {
+      present = true;
+      doubleValue = value;
+    }
+
+    @Override
+    public void addFloat(float value) {
+      present = true;
+      floatValue = value;
+    }
+
+    @Override
+    public void addInt(int value) {
+      present = true;
+      intValue = value;
+    }
+
+    @Override
+    public void addLong(long value) {
+      present = true;
+      longValue = value;
+    }
+  }
+}
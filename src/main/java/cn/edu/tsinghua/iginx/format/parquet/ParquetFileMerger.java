@@ -0,0 +1,436 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.io.AbortableOutputFile;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalOutputFile;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.Version;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.crypto.FileEncryptionProperties;
+import org.apache.parquet.example.DummyRecordConverter;
+import org.apache.parquet.hadoop.ColumnChunkPageWriteStore;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Merge Parquet files of the same schema into one file by copying their column chunks
+ * byte-for-byte. Only the offsets in the footer are rewritten; pages, dictionaries, bloom filters,
+ * column indexes and offset indexes are kept as they are.
+ *
+ * <p>Chunks are only copied from files written by the same writer version as the merged file,
+ * since the statistics of a chunk are trusted according to the version recorded in its footer
+ * (see PARQUET-251). The row groups of other files are re-encoded like small row groups.
+ *
+ * <p>Optionally, consecutive row groups smaller than {@link Builder#withMinRowGroupSize(long)} are
+ * decoded and re-encoded together into row groups of {@link Builder#withRowGroupSize(long)}, so
+ * that compacting many small flushes does not keep their small row groups. The order of the rows
+ * is kept.
+ */
+public class ParquetFileMerger {
+
+  private final OutputFile output;
+  private final ParquetFileWriter.Mode mode;
+  private final long rowGroupSize;
+  private final long minRowGroupSize;
+  private final int maxPaddingSize;
+  private final CompressionCodecFactory codecFactory;
+  private final CompressionCodecName codecName;
+  private final ParquetProperties props;
+  private final ParquetReadOptions options;
+
+  private ParquetFileMerger(Builder builder) {
+    this.output = builder.output;
+    this.mode = builder.enableOverwrite ? ParquetFileWriter.Mode.OVERWRITE : ParquetFileWriter.Mode.CREATE;
+    this.rowGroupSize = builder.rowGroupSize;
+    this.minRowGroupSize = builder.minRowGroupSize;
+    this.maxPaddingSize = builder.maxPaddingSize;
+    this.codecFactory = builder.codecFactory;
+    this.codecName = builder.codecName;
+    this.props = builder.parquetPropertiesBuilder.build();
+    this.options = ParquetReadOptions.builder()
+        .withAllocator(props.getAllocator())
+        .withCodecFactory(builder.codecFactory)
+        .build();
+  }
+
+  public static Builder builder(Path output) {
+    return new Builder(new LocalOutputFile(output, new HeapByteBufferAllocator(), Integer.MAX_VALUE));
+  }
+
+  public static Builder builder(OutputFile output) {
+    return new Builder(output);
+  }
+
+  /**
+   * Merge the given files into the output file, in the given order. The key-value metadata of the
+   * output is the union of the inputs', where the first file wins on conflicts.
+   *
+   * @param inputs the files to merge, which must all have the same schema
+   * @return the footer of the merged file
+   * @throws IOException              if a file cannot be read or written, in which case the output
+   *                                  is closed and a local output file is deleted
+   * @throws IllegalArgumentException if there is no input or the schemas differ
+   */
+  public ParquetMetadata merge(List<Path> inputs) throws IOException {
+    List<InputFile> files = new ArrayList<>(inputs.size());
+    for (Path input : inputs) {
+      files.add(new LocalInputFile(input));
+    }
+    return mergeFiles(files);
+  }
+
+  /**
+   * @see #merge(List)
+   */
+  public ParquetMetadata mergeFiles(List<? extends InputFile> inputs) throws IOException {
+    if (inputs.isEmpty()) {
+      throw new IllegalArgumentException("No file to merge");
+    }
+    List<ParquetMetadata> footers = new ArrayList<>(inputs.size());
+    for (InputFile input : inputs) {
+      try (SeekableInputStream in = input.newStream()) {
+        footers.add(ParquetFileReader.readFooter(input, options, in));
+      }
+    }
+
+    MessageType schema = footers.get(0).getFileMetaData().getSchema();
+    Map<String, String> extra = new LinkedHashMap<>();
+    ParquetProperties.Builder reencodeProps = ParquetProperties.copy(props);
+    for (int i = 0; i < inputs.size(); i++) {
+      MessageType fileSchema = footers.get(i).getFileMetaData().getSchema();
+      if (!schema.equals(fileSchema)) {
+        throw new IllegalArgumentException(String.format(
+            "Schema of %s differs from the schema of %s: %s", inputs.get(i), inputs.get(0), fileSchema));
+      }
+      footers.get(i).getFileMetaData().getKeyValueMetaData().forEach(extra::putIfAbsent);
+      for (BlockMetaData block : footers.get(i).getBlocks()) {
+        for (ColumnChunkMetaData chunk : block.getColumns()) {
+          if (chunk.getBloomFilterOffset() >= 0) {
+            reencodeProps.withBloomFilterEnabled(chunk.getPath().toDotString(), true);
+          }
+        }
+      }
+    }
+
+    AbortableOutputFile file = new AbortableOutputFile(output);
+    try {
+      ParquetFileWriter writer = new ParquetFileWriter(file, schema, mode, rowGroupSize, maxPaddingSize,
+          props.getColumnIndexTruncateLength(), props.getStatisticsTruncateLength(),
+          props.getPageWriteChecksumEnabled(), (FileEncryptionProperties) null);
+      writer.start();
+      write(writer, inputs, footers, schema, reencodeProps.build());
+      writer.end(extra);
+      return writer.getFooter();
+    } catch (IOException | RuntimeException e) {
+      try {
+        file.abort();
+      } catch (IOException suppressed) {
+        e.addSuppressed(suppressed);
+      }
+      throw e;
+    }
+  }
+
+  private void write(
+      ParquetFileWriter writer,
+      List<? extends InputFile> inputs,
+      List<ParquetMetadata> footers,
+      MessageType schema,
+      ParquetProperties reencodeProps) throws IOException {
+    Reencoder reencoder = new Reencoder(writer, schema, reencodeProps);
+    try {
+      for (int i = 0; i < inputs.size(); i++) {
+        InputFile input = inputs.get(i);
+        ParquetMetadata footer = footers.get(i);
+        String createdBy = footer.getFileMetaData().getCreatedBy();
+        boolean copyable = Version.FULL_VERSION.equals(createdBy);
+        try (ParquetFileReader reader = new ParquetFileReader(input, footer, options);
+             SeekableInputStream in = input.newStream()) {
+          List<BlockMetaData> blocks = reader.getRowGroups();
+          for (int blockIndex = 0; blockIndex < blocks.size(); blockIndex++) {
+            BlockMetaData block = blocks.get(blockIndex);
+            if (block.getRowCount() == 0) {
+              continue;
+            }
+            if (!copyable || block.getTotalByteSize() < minRowGroupSize) {
+              reencoder.append(reader.readRowGroup(blockIndex), block, createdBy);
+            } else {
+              reencoder.flush();
+              copyRowGroup(writer, reader, in, schema, block);
+            }
+          }
+        }
+      }
+      reencoder.flush();
+    } finally {
+      reencoder.release();
+    }
+  }
+
+  private static void copyRowGroup(
+      ParquetFileWriter writer,
+      ParquetFileReader reader,
+      SeekableInputStream in,
+      MessageType schema,
+      BlockMetaData block) throws IOException {
+    Map<ColumnPath, ColumnChunkMetaData> chunks = new HashMap<>();
+    for (ColumnChunkMetaData chunk : block.getColumns()) {
+      chunks.put(chunk.getPath(), chunk);
+    }
+    writer.startBlock(block.getRowCount());
+    for (ColumnDescriptor column : schema.getColumns()) {
+      ColumnChunkMetaData chunk = chunks.get(ColumnPath.get(column.getPath()));
+      writer.appendColumnChunk(column, in, chunk,
+          reader.readBloomFilter(chunk), reader.readColumnIndex(chunk), reader.readOffsetIndex(chunk));
+    }
+    writer.endBlock();
+  }
+
+  /**
+   * Re-encodes small row groups into one row group, copying the values of every column record by
+   * record without assembling the records.
+   */
+  private final class Reencoder {
+
+    private final ParquetFileWriter writer;
+    private final MessageType schema;
+    private final List<ColumnDescriptor> columns;
+    private final ParquetProperties props;
+    private BytesInputCompressor compressor;
+    private ColumnChunkPageWriteStore pageStore;
+    private ColumnWriteStore columnStore;
+    private long rowCount;
+
+    private Reencoder(ParquetFileWriter writer, MessageType schema, ParquetProperties props) {
+      this.writer = writer;
+      this.schema = schema;
+      this.columns = schema.getColumns();
+      this.props = props;
+    }
+
+    private void append(PageReadStore pages, BlockMetaData block, String createdBy) throws IOException {
+      if (compressor == null) {
+        CompressionCodecName codec = codecName != null ? codecName : block.getColumns().get(0).getCodec();
+        compressor = codecFactory.getCompressor(codec);
+      }
+      ColumnReadStoreImpl readStore = new ColumnReadStoreImpl(
+          pages, new DummyRecordConverter(schema).getRootConverter(), schema, createdBy);
+      ColumnReader[] readers = new ColumnReader[columns.size()];
+      for (int i = 0; i < readers.length; i++) {
+        readers[i] = readStore.getColumnReader(columns.get(i));
+      }
+      for (long row = 0; row < pages.getRowCount(); row++) {
+        if (columnStore == null) {
+          pageStore = new ColumnChunkPageWriteStore(DefaultCodecFactory.wrap(compressor), schema, props.getAllocator(),
+              props.getColumnIndexTruncateLength(), props.getPageWriteChecksumEnabled());
+          columnStore = props.newColumnWriteStore(schema, pageStore, pageStore);
+        }
+        for (int i = 0; i < readers.length; i++) {
+          ColumnDescriptor column = columns.get(i);
+          ColumnWriter columnWriter = columnStore.getColumnWriter(column);
+          // the repetition level is 0 at the start of the next row and at the end of the column
+          do {
+            copyValue(column, readers[i], columnWriter);
+            readers[i].consume();
+          } while (readers[i].getCurrentRepetitionLevel() != 0);
+        }
+        columnStore.endRecord();
+        rowCount++;
+        if (columnStore.getBufferedSize() >= rowGroupSize) {
+          flush();
+        }
+      }
+    }
+
+    private void flush() throws IOException {
+      if (columnStore == null) {
+        return;
+      }
+      try {
+        if (rowCount > 0) {
+          writer.startBlock(rowCount);
+          columnStore.flush();
+          pageStore.flushToFileWriter(writer);
+          writer.endBlock();
+        }
+      } finally {
+        columnStore.close();
+        columnStore = null;
+        pageStore = null;
+        rowCount = 0;
+      }
+    }
+
+    private void release() {
+      if (columnStore != null) {
+        columnStore.close();
+        columnStore = null;
+      }
+      if (compressor != null) {
+        compressor.release();
+        compressor = null;
+      }
+    }
+  }
+
+  private static void copyValue(ColumnDescriptor column, ColumnReader reader, ColumnWriter writer) {
+    int repetitionLevel = reader.getCurrentRepetitionLevel();
+    int definitionLevel = reader.getCurrentDefinitionLevel();
+    if (definitionLevel < column.getMaxDefinitionLevel()) {
+      writer.writeNull(repetitionLevel, definitionLevel);
+      return;
+    }
+    switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+      case BOOLEAN:
+        writer.write(reader.getBoolean(), repetitionLevel, definitionLevel);
+        break;
+      case INT32:
+        writer.write(reader.getInteger(), repetitionLevel, definitionLevel);
+        break;
+      case INT64:
+        writer.write(reader.getLong(), repetitionLevel, definitionLevel);
+        break;
+      case FLOAT:
+        writer.write(reader.getFloat(), repetitionLevel, definitionLevel);
+        break;
+      case DOUBLE:
+        writer.write(reader.getDouble(), repetitionLevel, definitionLevel);
+        break;
+      default:
+        writer.write(reader.getBinary(), repetitionLevel, definitionLevel);
+        break;
+    }
+  }
+
+  public static class Builder {
+    private final OutputFile output;
+    private final ParquetProperties.Builder parquetPropertiesBuilder = ParquetProperties.builder();
+    private CompressionCodecFactory codecFactory = new DefaultCodecFactory();
+    private CompressionCodecName codecName = null;
+    private long rowGroupSize = 128 * 1024 * 1024; // 128MB
+    private long minRowGroupSize = 0;
+    private int maxPaddingSize = 8 * 1024 * 1024; // 8MB
+    private boolean enableOverwrite = false;
+
+    private Builder(OutputFile output) {
+      this.output = Objects.requireNonNull(output);
+    }
+
+    public Builder withOverwrite(boolean enableOverwrite) {
+      this.enableOverwrite = enableOverwrite;
+      return this;
+    }
+
+    public Builder withAllocator(ByteBufferAllocator allocator) {
+      Objects.requireNonNull(allocator);
+      parquetPropertiesBuilder.withAllocator(allocator);
+      return this;
+    }
+
+    public Builder withCodecFactory(CompressionCodecFactory codecFactory) {
+      this.codecFactory = Objects.requireNonNull(codecFactory);
+      return this;
+    }
+
+    /**
+     * Set the codec of the re-encoded row groups. By default, the codec of the first column chunk
+     * of the first re-encoded row group is used.
+     *
+     * @param codecName the codec of the re-encoded row groups
+     * @return this builder for method chaining.
+     */
+    public Builder withCodec(CompressionCodecName codecName) {
+      this.codecName = Objects.requireNonNull(codecName);
+      return this;
+    }
+
+    /**
+     * Set the size of the re-encoded row groups, which is also used to align the row groups.
+     *
+     * @param rowGroupSize a long size in bytes
+     * @return this builder for method chaining.
+     */
+    public Builder withRowGroupSize(long rowGroupSize) {
+      this.rowGroupSize = rowGroupSize;
+      return this;
+    }
+
+    /**
+     * Set the size below which row groups are re-encoded instead of copied. It is compared with the
+     * uncompressed size of the row groups. By default, all row groups are copied.
+     *
+     * @param minRowGroupSize a long size in bytes
+     * @return this builder for method chaining.
+     */
+    public Builder withMinRowGroupSize(long minRowGroupSize) {
+      this.minRowGroupSize = minRowGroupSize;
+      return this;
+    }
+
+    public Builder withMaxPaddingSize(int maxPaddingSize) {
+      this.maxPaddingSize = maxPaddingSize;
+      return this;
+    }
+
+    public Builder withPageSize(int pageSize) {
+      parquetPropertiesBuilder.withPageSize(pageSize);
+      return this;
+    }
+
+    public Builder withDictionaryEncoding(boolean enableDictionary) {
+      parquetPropertiesBuilder.withDictionaryEncoding(enableDictionary);
+      return this;
+    }
+
+    public ParquetFileMerger build() {
+      return new ParquetFileMerger(this);
+    }
+  }
+}
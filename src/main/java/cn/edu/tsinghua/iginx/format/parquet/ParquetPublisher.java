@@ -0,0 +1,244 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Publishes the records of a file in batches to reactive subscribers. Every subscription reads the
+ * row groups of the file on its own record reader, on tasks of a shared executor. A batch is read
+ * only when it is demanded, or when it is among the {@code prefetch} batches read ahead of the
+ * demand, so a subscription without demand holds no thread and does no I/O.
+ *
+ * <p>The publisher has its own subscriber and subscription interfaces, shaped like those of
+ * {@code java.util.concurrent.Flow}, which is not available on Java 8. No {@code Flow} adapter is
+ * provided, callers bridge to their reactive library themselves.
+ *
+ * @param <T> the type of the materialized records
+ */
+public class ParquetPublisher<T> {
+
+  /**
+   * Receives the batches of a subscription, like {@code Flow.Subscriber}. The methods of a
+   * subscriber are never called concurrently.
+   */
+  public interface Subscriber<T> {
+    void onSubscribe(Subscription subscription);
+
+    void onNext(T item);
+
+    void onError(Throwable throwable);
+
+    void onComplete();
+  }
+
+  /**
+   * The link between a publisher and a subscriber, like {@code Flow.Subscription}.
+   */
+  public interface Subscription {
+    /**
+     * @param n the number of additional batches demanded, which must be positive
+     */
+    void request(long n);
+
+    void cancel();
+  }
+
+  private final RowGroupReaderFactory<T> factory;
+  private final Executor executor;
+  private final int batchSize;
+  private final int prefetch;
+
+  /**
+   * @param factory   the factory of the record readers
+   * @param executor  the executor running the reads and the signals
+   * @param batchSize the maximum number of records of a batch
+   * @param prefetch  the number of batches read ahead of the demand
+   */
+  ParquetPublisher(RowGroupReaderFactory<T> factory, Executor executor, int batchSize, int prefetch) {
+    if (batchSize <= 0) {
+      throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+    }
+    if (prefetch < 0) {
+      throw new IllegalArgumentException("prefetch must not be negative: " + prefetch);
+    }
+    this.factory = Objects.requireNonNull(factory);
+    this.executor = Objects.requireNonNull(executor);
+    this.batchSize = batchSize;
+    this.prefetch = prefetch;
+  }
+
+  /**
+   * Start a new scan of the file for the given subscriber. The subscriber is signaled on the
+   * executor, apart from {@link Subscriber#onSubscribe} which is called by this thread.
+   *
+   * @param subscriber the subscriber of the batches
+   */
+  public void subscribe(Subscriber<? super List<T>> subscriber) {
+    Objects.requireNonNull(subscriber);
+    ScanSubscription subscription = new ScanSubscription(subscriber);
+    subscriber.onSubscribe(subscription);
+  }
+
+  /**
+   * Reads and emits the batches of one subscriber. The steps are serialized by the work counter: a
+   * step is scheduled only by the caller which increments the counter from zero, and a step which
+   * made progress schedules the next one, so that a long scan yields the executor between batches.
+   */
+  private final class ScanSubscription implements Subscription, Runnable {
+
+    private final Subscriber<? super List<T>> subscriber;
+    private final AtomicLong demand = new AtomicLong();
+    private final AtomicInteger work = new AtomicInteger();
+    // accessed by the steps only
+    private final Deque<List<T>> ready = new ArrayDeque<>();
+    private ExportedParquetRecordReader<T> reader = null;
+    private boolean exhausted = false;
+    private boolean terminated = false;
+    private volatile boolean cancelled = false;
+    private volatile Throwable invalidRequest = null;
+
+    private ScanSubscription(Subscriber<? super List<T>> subscriber) {
+      this.subscriber = subscriber;
+    }
+
+    @Override
+    public void request(long n) {
+      if (n <= 0) {
+        invalidRequest = new IllegalArgumentException("non-positive request: " + n);
+      } else {
+        demand.getAndUpdate(d -> d + n < 0 ? Long.MAX_VALUE : d + n);
+      }
+      schedule();
+    }
+
+    @Override
+    public void cancel() {
+      cancelled = true;
+      schedule();
+    }
+
+    private void schedule() {
+      if (work.getAndIncrement() == 0) {
+        executor.execute(this);
+      }
+    }
+
+    @Override
+    public void run() {
+      int missed = work.get();
+      boolean progressed;
+      try {
+        progressed = step();
+      } catch (Throwable e) {
+        terminate();
+        subscriber.onError(e);
+        progressed = false;
+      }
+      if (progressed || work.addAndGet(-missed) != 0) {
+        executor.execute(this);
+      }
+    }
+
+    /**
+     * Emit a ready batch, read a batch or complete the subscription.
+     *
+     * @return true if there may be more to do
+     */
+    private boolean step() throws IOException {
+      if (terminated) {
+        return false;
+      }
+      if (cancelled) {
+        terminate();
+        return false;
+      }
+      Throwable error = invalidRequest;
+      if (error != null) {
+        terminate();
+        subscriber.onError(error);
+        return false;
+      }
+      long requested = demand.get();
+      if (requested > 0 && !ready.isEmpty()) {
+        if (requested != Long.MAX_VALUE) {
+          demand.decrementAndGet();
+        }
+        subscriber.onNext(ready.poll());
+        return true;
+      }
+      if (exhausted) {
+        if (ready.isEmpty()) {
+          terminate();
+          subscriber.onComplete();
+        }
+        return false;
+      }
+      if (ready.size() - prefetch < requested) {
+        List<T> batch = readBatch();
+        if (batch.isEmpty()) {
+          exhausted = true;
+        } else {
+          ready.add(batch);
+        }
+        return true;
+      }
+      return false;
+    }
+
+    private List<T> readBatch() throws IOException {
+      if (reader == null) {
+        reader = factory.open(factory.getRowGroups());
+      }
+      List<T> batch = new ArrayList<>();
+      while (batch.size() < batchSize && reader.nextKeyValue()) {
+        batch.add(reader.getCurrentValue());
+      }
+      if (batch.size() < batchSize) {
+        reader.close();
+        reader = null;
+        exhausted = true;
+      }
+      return batch;
+    }
+
+    private void terminate() {
+      terminated = true;
+      ready.clear();
+      if (reader != null) {
+        try {
+          reader.close();
+        } catch (IOException e) {
+          // the subscription is over, nothing to report to
+        }
+        reader = null;
+      }
+    }
+  }
+}
@@ -18,31 +18,58 @@
  */
 package cn.edu.tsinghua.iginx.format.parquet;
 
+import cn.edu.tsinghua.iginx.format.parquet.api.ReusableRecordMaterializer;
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
 import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.filter.SchemaUtils;
 import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
 import org.apache.parquet.compression.CompressionCodecFactory;
 import org.apache.parquet.filter2.compat.FilterCompat;
 import org.apache.parquet.hadoop.ExportedParquetRecordReader;
 import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
 import org.apache.parquet.hadoop.metadata.ParquetMetadata;
 import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.SeekableInputStream;
 import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 import java.util.function.Function;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class ParquetReader<T> implements Closeable {
 
   private final ExportedParquetRecordReader<T> recordReader;
+  private final RowGroupReaderFactory<T> readerFactory;
 
   protected ParquetReader(ExportedParquetRecordReader<T> recordReader) {
+    this(recordReader, null);
+  }
+
+  /**
+   * @param readerFactory the factory of the readers of {@link #stream()}, or null if the reader
+   *                      cannot be streamed
+   */
+  protected ParquetReader(ExportedParquetRecordReader<T> recordReader, RowGroupReaderFactory<T> readerFactory) {
     this.recordReader = Objects.requireNonNull(recordReader);
+    this.readerFactory = readerFactory;
   }
 
   @Override
@@ -63,6 +90,69 @@ public class ParquetReader<T> implements Closeable {
     return recordReader.getCurrentValue();
   }
 
+  /**
+   * Read the next record from the file into the given record, if the record materializer of the
+   * reader is a {@link ReusableRecordMaterializer}. Otherwise, the given record is ignored.
+   *
+   * <p>Reusing a record avoids building an object graph per row when scanning. The values of the
+   * given record are overwritten, so it must not be used anymore by the caller.
+   *
+   * @param reuse a record previously returned by this reader, or null
+   * @return the next record, which may be the given one, or null if finished
+   * @throws IOException if there is an error while reading
+   */
+  @SuppressWarnings("unchecked")
+  public T read(T reuse) throws IOException {
+    RecordMaterializer<T> materializer = recordReader.getRecordMaterializer();
+    if (!(materializer instanceof ReusableRecordMaterializer)) {
+      return read();
+    }
+    ReusableRecordMaterializer<T> reusable = (ReusableRecordMaterializer<T>) materializer;
+    reusable.reuse(reuse);
+    try {
+      return read();
+    } finally {
+      reusable.reuse(null);
+    }
+  }
+
+  /**
+   * Stream the records of the file which pass the filter, in file order. The stream is split on row
+   * group boundaries and every split opens its own file reader, so the stream can be read in
+   * parallel. Without a record filter, the stream is sized from the row counts of the row groups.
+   *
+   * <p>The stream is independent of this reader: it starts at the first row group, and the offset
+   * and the limit of the reader are not applied. Closing the stream closes the readers of the splits
+   * which are not exhausted.
+   *
+   * @return the stream of the records
+   * @throws UnsupportedOperationException if the reader was not built with a reader factory
+   */
+  public Stream<T> stream() {
+    if (readerFactory == null) {
+      throw new UnsupportedOperationException(getClass().getSimpleName() + " cannot be streamed");
+    }
+    RowGroupSpliterator<T> spliterator = new RowGroupSpliterator<>(readerFactory);
+    return StreamSupport.stream(spliterator, false).onClose(() -> {
+      try {
+        spliterator.close();
+      } catch (IOException e) {
+        throw new UncheckedIOException(e);
+      }
+    });
+  }
+
+  /**
+   * Read the bloom filter of a column chunk of the file.
+   *
+   * @param column the metadata of the column chunk
+   * @return the bloom filter, or null if the column chunk has none
+   * @throws IOException if there is an error while reading
+   */
+  public BloomFilter readBloomFilter(ColumnChunkMetaData column) throws IOException {
+    return recordReader.getReader().readBloomFilter(column);
+  }
+
   /**
    * @return the row index of the last read row. If no row has been processed, returns -1.
    */
@@ -70,10 +160,86 @@ public class ParquetReader<T> implements Closeable {
     return recordReader.getCurrentRowIndex();
   }
 
+  /**
+   * Positions the reader so that the next {@link #read()} returns the first row at or after the
+   * given row index which passes the filter. Only the pages from that row on are read. The offset
+   * and the limit of the reader are discarded.
+   *
+   * @param rowIndex the row index in the file
+   */
+  public void seekToRow(long rowIndex) {
+    if (rowIndex < 0) {
+      throw new IllegalArgumentException("row index must not be negative: " + rowIndex);
+    }
+    recordReader.selectRows(new long[] {rowIndex}, new long[] {Long.MAX_VALUE});
+  }
+
+  /**
+   * Reads the rows at the given row indexes which pass the filter. Only the pages containing these
+   * rows are read. Afterwards, the reader is positioned after the last requested row. The result is
+   * shorter than the row indexes if rows do not pass the filter or are out of the file range of the
+   * reader.
+   *
+   * @param sortedRowIndexes the row indexes in the file, in strictly ascending order
+   * @return the records of the requested rows in the same order
+   * @throws IOException if there is an error while reading
+   * @throws IllegalArgumentException if a row index is duplicated, out of order or out of the file
+   */
+  public List<T> readRows(long[] sortedRowIndexes) throws IOException {
+    long rowCount = getFileRowCount();
+    long[] from = new long[sortedRowIndexes.length];
+    long[] to = new long[sortedRowIndexes.length];
+    int size = 0;
+    for (long rowIndex : sortedRowIndexes) {
+      if (rowIndex < 0 || rowIndex >= rowCount) {
+        throw new IllegalArgumentException(
+            String.format("row index %s is out of the %s rows of the file", rowIndex, rowCount));
+      }
+      if (size > 0 && rowIndex <= to[size - 1]) {
+        throw new IllegalArgumentException("row indexes must be sorted in strictly ascending order");
+      }
+      if (size > 0 && rowIndex <= to[size - 1] + 1) {
+        to[size - 1] = rowIndex;
+      } else {
+        from[size] = rowIndex;
+        to[size] = rowIndex;
+        size++;
+      }
+    }
+    List<T> records = new ArrayList<>();
+    if (size == 0) {
+      return records;
+    }
+    recordReader.selectRows(Arrays.copyOf(from, size), Arrays.copyOf(to, size));
+    T record;
+    while ((record = read()) != null) {
+      records.add(record);
+    }
+    seekToRow(to[size - 1] + 1);
+    return records;
+  }
+
+  private long getFileRowCount() {
+    long rowCount = 0;
+    for (BlockMetaData block : recordReader.getReader().getFooter().getBlocks()) {
+      long first = block.getRowIndexOffset();
+      rowCount = Math.max(rowCount, (first < 0 ? rowCount : first) + block.getRowCount());
+    }
+    return rowCount;
+  }
+
   public abstract static class Builder<T, READER extends ParquetReader<T>, BUILDER extends ParquetReader.Builder<T, READER, BUILDER>> {
 
     private final ParquetReadOptions.Builder optionsBuilder = ParquetReadOptions.builder();
     private Function<MessageType, MessageType> schemaConverter = Function.identity();
+    private DictionaryCache dictionaryCache = null;
+    private String dictionaryCacheKey = null;
+    private long offset = 0;
+    private long limit = Long.MAX_VALUE;
+    private int parallelism = Runtime.getRuntime().availableProcessors();
+    private int readAhead = 0;
+    private boolean ordered = true;
+    private ExecutorService executor = null;
 
     protected Builder() {
       optionsBuilder.withCodecFactory(new DefaultCodecFactory());
@@ -110,13 +276,70 @@ public class ParquetReader<T> implements Closeable {
 
       ParquetReadOptions options = optionsBuilder.build();
 
-      ParquetFileReader reader = new ParquetFileReader(file, footer, options);
+      ParquetFileReader reader =
+          new ParquetFileReader(file, footer, options, dictionaryCache, dictionaryCacheKey(file));
       ParquetMetadata metadata = reader.getFooter();
       MessageType schema = metadata.getFileMetaData().getSchema();
       MessageType requestedSchema = schemaConverter.apply(schema);
 
-      RecordMaterializer<T> recordMaterializer = materializer(requestedSchema, metadata.getFileMetaData().getKeyValueMetaData());
-      return new ExportedParquetRecordReader<>(recordMaterializer, reader, requestedSchema, options);
+      RecordMaterializer<T> recordMaterializer;
+      try {
+        recordMaterializer = materializer(requestedSchema, metadata.getFileMetaData().getKeyValueMetaData());
+      } catch (IOException | RuntimeException e) {
+        reader.close();
+        throw e;
+      }
+      return new ExportedParquetRecordReader<>(recordMaterializer, reader, requestedSchema, options, offset, limit);
+    }
+
+    protected RowGroupReaderFactory<T> readerFactory(InputFile file, ParquetMetadata footer) throws IOException {
+      Objects.requireNonNull(file);
+      Objects.requireNonNull(footer);
+
+      return new RowGroupReaderFactory<>(
+          file,
+          footer,
+          optionsBuilder.build(),
+          dictionaryCache,
+          dictionaryCacheKey(file),
+          schemaConverter,
+          this::materializer);
+    }
+
+    /**
+     * Create the factory of the readers of {@link ParquetReader#stream()} for a record reader built
+     * by this builder. The row groups filtered by the record reader are reused.
+     */
+    protected RowGroupReaderFactory<T> readerFactory(InputFile file, ExportedParquetRecordReader<T> recordReader) {
+      ParquetFileReader reader = recordReader.getReader();
+      return new RowGroupReaderFactory<>(
+          file, reader.getFooter(), reader.getRowGroups(), reader.getOptions(), reader.getDictionaryCache(),
+          reader.getDictionaryCacheKey(), schemaConverter, this::materializer);
+    }
+
+    /**
+     * Build a reader which reads the row groups of the file on several threads. The offset and the
+     * limit of this builder are not applied.
+     */
+    protected ParallelParquetReader<T> buildParallel(InputFile file, ParquetMetadata footer) throws IOException {
+      return new ParallelParquetReader<>(readerFactory(file, footer), executor, parallelism, readAhead, ordered);
+    }
+
+    /**
+     * Build a publisher which reads the row groups of the file in batches on demand, on the executor
+     * of this builder, which must be set. The read ahead of this builder is the number of batches
+     * read ahead of the demand, which defaults to none. The offset and the limit of this builder are
+     * not applied.
+     */
+    protected ParquetPublisher<T> buildPublisher(InputFile file, ParquetMetadata footer) throws IOException {
+      if (executor == null) {
+        throw new IllegalStateException("A publisher requires an executor, see withExecutor");
+      }
+      return new ParquetPublisher<>(
+          readerFactory(file, footer),
+          executor,
+          ParallelParquetReader.BATCH_SIZE,
+          readAhead);
     }
 
     public BUILDER withFilter(FilterCompat.Filter filter) {
@@ -139,6 +362,11 @@ public class ParquetReader<T> implements Closeable {
       return self();
     }
 
+    public BUILDER useBloomFilter(boolean useBloomFilter) {
+      optionsBuilder.useBloomFilter(useBloomFilter);
+      return self();
+    }
+
     public BUILDER useRecordFilter(boolean useRecordFiltering) {
       optionsBuilder.useRecordFilter(useRecordFiltering);
       return self();
@@ -149,6 +377,20 @@ public class ParquetReader<T> implements Closeable {
       return self();
     }
 
+    /**
+     * Evaluate the record filter in batches over the decoded filter columns before the records are
+     * assembled, so that only the matching rows of the other columns are read. Applies to filters
+     * without repeated columns over row groups with offset indexes.
+     *
+     * @param useCompiledFilter whether to enable the compiled filter
+     * @return this builder for method chaining
+     * @see ParquetFileReader#COMPILED_FILTER_ENABLED
+     */
+    public BUILDER useCompiledFilter(boolean useCompiledFilter) {
+      optionsBuilder.set(ParquetFileReader.COMPILED_FILTER_ENABLED, String.valueOf(useCompiledFilter));
+      return self();
+    }
+
     public BUILDER withFileRange(long rangeStart, long rangeEnd) {
       optionsBuilder.withRange(rangeStart, rangeEnd);
       return self();
@@ -159,9 +401,183 @@ public class ParquetReader<T> implements Closeable {
       return self();
     }
 
+    /**
+     * Read only the given columns. A path naming a group reads all of its leaves, and the repeated
+     * levels of lists and maps may be left out, so that {@code "tags.name"} selects the field
+     * {@code name} of the elements of the list {@code tags}. Only the column chunks of the selected
+     * leaves are read. Replaces the schema converter of this builder.
+     *
+     * @param columns the paths of the columns (dot-strings)
+     * @return this builder for method chaining
+     */
+    public BUILDER withProjection(String... columns) {
+      List<String> paths = Arrays.asList(columns.clone());
+      this.schemaConverter = schema -> project(schema, paths);
+      return self();
+    }
+
+    private static MessageType project(MessageType schema, List<String> columns) {
+      List<ColumnPath> paths = new ArrayList<>();
+      for (String column : columns) {
+        paths.add(resolve(schema, column));
+      }
+      return SchemaUtils.project(schema, paths);
+    }
+
+    /**
+     * Resolve a dot-string against the schema, descending through the repeated levels of lists and
+     * maps which are not named in the path.
+     */
+    private static ColumnPath resolve(MessageType schema, String column) {
+      List<String> path = new ArrayList<>();
+      Type type = schema;
+      for (String name : column.split("\\.")) {
+        while (true) {
+          if (type.isPrimitive()) {
+            throw new IllegalArgumentException("Column not found: " + column);
+          }
+          GroupType group = type.asGroupType();
+          if (group.containsField(name)) {
+            type = group.getType(name);
+            path.add(name);
+            break;
+          }
+          boolean wrapper = group.isRepetition(Type.Repetition.REPEATED)
+              || group.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.ListLogicalTypeAnnotation
+              || group.getLogicalTypeAnnotation() instanceof LogicalTypeAnnotation.MapLogicalTypeAnnotation
+              || (group.getFieldCount() == 1 && group.getType(0).isRepetition(Type.Repetition.REPEATED));
+          if (group == schema || group.getFieldCount() != 1 || !wrapper) {
+            throw new IllegalArgumentException("Column not found: " + column);
+          }
+          type = group.getType(0);
+          path.add(type.getName());
+        }
+      }
+      return ColumnPath.get(path.toArray(new String[0]));
+    }
+
     public BUILDER withCodecFactory(CompressionCodecFactory codecFactory) {
       optionsBuilder.withCodecFactory(codecFactory);
       return self();
     }
+
+    /**
+     * Share decompressed dictionary pages between readers through the given cache. The cache is used
+     * both by dictionary filtering of row groups and by page decoding. Only local files are keyed by
+     * default, the cache is bypassed for other files unless a key is given.
+     *
+     * @param dictionaryCache the cache shared by readers, or null to disable caching
+     * @return this builder for method chaining
+     */
+    public BUILDER withDictionaryCache(DictionaryCache dictionaryCache) {
+      return withDictionaryCache(dictionaryCache, null);
+    }
+
+    /**
+     * Share decompressed dictionary pages between readers through the given cache, keyed by the
+     * given identity of the file.
+     *
+     * @param dictionaryCache the cache shared by readers, or null to disable caching
+     * @param fileKey the identity of the file in the cache, which must change whenever the content
+     * of the file does, or null to use the default identity of the file
+     * @return this builder for method chaining
+     */
+    public BUILDER withDictionaryCache(DictionaryCache dictionaryCache, String fileKey) {
+      this.dictionaryCache = dictionaryCache;
+      this.dictionaryCacheKey = fileKey;
+      return self();
+    }
+
+    private String dictionaryCacheKey(InputFile file) throws IOException {
+      if (dictionaryCache == null || dictionaryCacheKey != null) {
+        return dictionaryCacheKey;
+      }
+      return ParquetFileReader.dictionaryCacheKey(file);
+    }
+
+    /**
+     * Skip the leading records. Without a record filter, the skipped row groups and pages are not
+     * read at all; otherwise the offset counts the records matching the filter.
+     *
+     * @param offset the number of records to skip
+     * @return this builder for method chaining
+     */
+    public BUILDER withOffset(long offset) {
+      if (offset < 0) {
+        throw new IllegalArgumentException("offset must not be negative: " + offset);
+      }
+      this.offset = offset;
+      return self();
+    }
+
+    /**
+     * Stop after the given number of records. Without a record filter, the row groups and pages
+     * after the limit are not read at all.
+     *
+     * @param limit the maximum number of records to read
+     * @return this builder for method chaining
+     */
+    public BUILDER withLimit(long limit) {
+      if (limit < 0) {
+        throw new IllegalArgumentException("limit must not be negative: " + limit);
+      }
+      this.limit = limit;
+      return self();
+    }
+
+    /**
+     * Set the number of threads reading row groups of a parallel reader. Ignored if an executor is
+     * given.
+     *
+     * @param parallelism the number of worker threads
+     * @return this builder for method chaining
+     */
+    public BUILDER withParallelism(int parallelism) {
+      if (parallelism <= 0) {
+        throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+      }
+      this.parallelism = parallelism;
+      return self();
+    }
+
+    /**
+     * Run the workers of a parallel reader on the given executor instead of an own thread pool, and
+     * the reads of a publisher, which requires an executor. The executor is not shut down when the
+     * reader is closed.
+     *
+     * @param executor the executor, or null to use an own thread pool
+     * @return this builder for method chaining
+     */
+    public BUILDER withExecutor(ExecutorService executor) {
+      this.executor = executor;
+      return self();
+    }
+
+    /**
+     * Set the maximum number of row groups read ahead by a parallel reader, which defaults to the
+     * parallelism, or the number of batches read ahead of the demand by a publisher.
+     *
+     * @param readAhead the number of row groups or batches
+     * @return this builder for method chaining
+     */
+    public BUILDER withReadAhead(int readAhead) {
+      if (readAhead <= 0) {
+        throw new IllegalArgumentException("readAhead must be positive: " + readAhead);
+      }
+      this.readAhead = readAhead;
+      return self();
+    }
+
+    /**
+     * Whether a parallel reader returns the records in file order. Unordered reading returns the
+     * records of a row group as soon as they are ready.
+     *
+     * @param ordered true to keep the file order, which is the default
+     * @return this builder for method chaining
+     */
+    public BUILDER withOrdered(boolean ordered) {
+      this.ordered = ordered;
+      return self();
+    }
   }
 }
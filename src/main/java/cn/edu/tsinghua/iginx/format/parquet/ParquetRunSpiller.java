@@ -0,0 +1,131 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.codec.NoopBytesInputCompressor;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalOutputFile;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.crypto.FileEncryptionProperties;
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.ExportedParquetRecordWriter;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+
+/**
+ * Spills the sorted runs of an external sort to uncompressed Parquet files in a directory, and
+ * reads them back with a fresh materializer per run. A spill file is deleted when its run is
+ * closed.
+ */
+class ParquetRunSpiller<T> implements ExportedParquetRecordWriter.RunSpiller<T> {
+
+  private static final long SPILL_ROW_GROUP_SIZE = 4 * 1024 * 1024; // 4MB
+
+  private final Path directory;
+  private final MessageType schema;
+  private final DematerializerFactory<T> dematerializerFactory;
+  private final MaterializerFactory<T> materializerFactory;
+  private final ParquetProperties props = ParquetProperties.builder()
+      .withAllocator(new HeapByteBufferAllocator())
+      .build();
+  private final ParquetReadOptions options = ParquetReadOptions.builder()
+      .withAllocator(new HeapByteBufferAllocator())
+      .withCodecFactory(new DefaultCodecFactory())
+      .build();
+
+  /**
+   * @param directory the directory of the spill files, or null for the default temporary directory
+   */
+  ParquetRunSpiller(
+      Path directory,
+      MessageType schema,
+      DematerializerFactory<T> dematerializerFactory,
+      MaterializerFactory<T> materializerFactory) {
+    this.directory = directory;
+    this.schema = schema;
+    this.dematerializerFactory = dematerializerFactory;
+    this.materializerFactory = materializerFactory;
+  }
+
+  @Override
+  public ExportedParquetRecordWriter.Run<T> spill(ExportedParquetRecordWriter.Run<T> records) throws IOException {
+    Path file = directory == null
+        ? Files.createTempFile("parquet-sort-", ".parquet")
+        : Files.createTempFile(directory, "parquet-sort-", ".parquet");
+    try {
+      ParquetFileWriter fileWriter = new ParquetFileWriter(
+          new LocalOutputFile(file, props.getAllocator(), props.getPageSizeThreshold()), schema,
+          ParquetFileWriter.Mode.OVERWRITE, SPILL_ROW_GROUP_SIZE, 0, props.getColumnIndexTruncateLength(),
+          props.getStatisticsTruncateLength(), false, (FileEncryptionProperties) null);
+      fileWriter.start();
+      try (ExportedParquetRecordWriter<T> writer = new ExportedParquetRecordWriter<>(
+          fileWriter, dematerializerFactory.create(), schema, Collections.emptyMap(), SPILL_ROW_GROUP_SIZE,
+          new NoopBytesInputCompressor(), false, props)) {
+        for (T record = records.next(); record != null; record = records.next()) {
+          writer.write(record);
+        }
+      }
+      ParquetFileReader reader = new ParquetFileReader(new LocalInputFile(file), fileWriter.getFooter(), options);
+      ExportedParquetRecordReader<T> recordReader;
+      try {
+        recordReader = new ExportedParquetRecordReader<>(materializerFactory.create(schema), reader, schema, options);
+      } catch (IOException | RuntimeException e) {
+        reader.close();
+        throw e;
+      }
+      return new ExportedParquetRecordWriter.Run<T>() {
+        @Override
+        public T next() throws IOException {
+          return recordReader.nextKeyValue() ? recordReader.getCurrentValue() : null;
+        }
+
+        @Override
+        public void close() throws IOException {
+          try {
+            recordReader.close();
+          } finally {
+            Files.deleteIfExists(file);
+          }
+        }
+      };
+    } catch (IOException | RuntimeException e) {
+      Files.deleteIfExists(file);
+      throw e;
+    }
+  }
+
+  interface DematerializerFactory<T> {
+    RecordDematerializer<T> create() throws IOException;
+  }
+
+  interface MaterializerFactory<T> {
+    RecordMaterializer<T> create(MessageType schema) throws IOException;
+  }
+}
@@ -19,7 +19,9 @@
 package cn.edu.tsinghua.iginx.format.parquet;
 
 import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
+import cn.edu.tsinghua.iginx.format.parquet.codec.ConcurrentBytesInputCompressor;
 import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.io.AbortableOutputFile;
 import org.apache.parquet.bytes.ByteBufferAllocator;
 import org.apache.parquet.column.ParquetProperties;
 import org.apache.parquet.compression.CompressionCodecFactory;
@@ -28,13 +30,18 @@ import org.apache.parquet.crypto.FileEncryptionProperties;
 import org.apache.parquet.hadoop.ExportedParquetRecordWriter;
 import org.apache.parquet.hadoop.ParquetFileWriter;
 import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
 import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
 import org.apache.parquet.schema.MessageType;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Comparator;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ExecutorService;
 
 /**
  * Write records to a Parquet file.
@@ -64,6 +71,27 @@ public class ParquetWriter<T> implements Closeable {
     recordWriter.close();
   }
 
+  /**
+   * @return the footer of the file, available after the writer is closed
+   */
+  public ParquetMetadata getFooter() {
+    return recordWriter.getWriter().getFooter();
+  }
+
+  /**
+   * The scope in which the records are sorted.
+   */
+  public enum SortScope {
+    /**
+     * Sort the records of every sort buffer and write them as a row group of their own.
+     */
+    ROW_GROUP,
+    /**
+     * Sort all records of the file, spilling sorted runs to disk and merging them on close.
+     */
+    FILE
+  }
+
   /**
    * the abstract builder for the ParquetWriter
    *
@@ -79,6 +107,15 @@ public class ParquetWriter<T> implements Closeable {
     private int maxPaddingSize = 8 * 1024 * 1024; // 8MB
     private boolean enableValidation = true;
     private boolean enableOverwrite = false;
+    private int encodingThreads = 0;
+    private ExecutorService encodingExecutor = null;
+    private int maxInFlightRowGroups = 0;
+    private WriterMemoryManager memoryManager = null;
+    private boolean adaptiveBloomFilter = false;
+    private Comparator<? super T> sortOrder = null;
+    private SortScope sortScope = SortScope.ROW_GROUP;
+    private int sortBufferSize = 64 * 1024;
+    private Path spillDirectory = null;
 
 
     /**
@@ -96,6 +133,25 @@ public class ParquetWriter<T> implements Closeable {
      */
     protected abstract RecordDematerializer<T> dematerializer() throws IOException;
 
+    /**
+     * get the record materializer reading back the records spilled when sorting the whole file,
+     * which is only called if {@link #hasMaterializer()} returns true
+     *
+     * @param schema the schema of the records
+     * @return the record materializer
+     * @throws IOException if the materializer cannot be created
+     */
+    protected RecordMaterializer<T> materializer(MessageType schema) throws IOException {
+      throw new UnsupportedOperationException("No materializer: " + getClass().getName());
+    }
+
+    /**
+     * @return whether {@link #materializer(MessageType)} is implemented
+     */
+    protected boolean hasMaterializer() {
+      return false;
+    }
+
     /**
      * build the parquet writer
      *
@@ -118,21 +174,60 @@ public class ParquetWriter<T> implements Closeable {
 
       ParquetProperties parquetProperties = parquetPropertiesBuilder.build();
       RecordDematerializer<T> dematerializer = Objects.requireNonNull(dematerializer());
+      ExportedParquetRecordWriter.RunSpiller<T> spiller = null;
+      if (sortOrder != null && sortScope == SortScope.FILE) {
+        spiller = new ParquetRunSpiller<>(spillDirectory, schema, this::dematerializer, this::materializer);
+      }
       ParquetFileWriter.Mode mode = enableOverwrite ? ParquetFileWriter.Mode.OVERWRITE : ParquetFileWriter.Mode.CREATE;
-      BytesInputCompressor compressor = codecFactory.getCompressor(codecName);
-
-      ParquetFileWriter fileWriter = new ParquetFileWriter(file, schema, mode, rowGroupSize, maxPaddingSize, parquetProperties.getColumnIndexTruncateLength(),
-          parquetProperties.getStatisticsTruncateLength(), parquetProperties.getPageWriteChecksumEnabled(), encryptionProperties);
-      fileWriter.start();
-      return new ExportedParquetRecordWriter<>(
-          fileWriter,
-          dematerializer,
-          schema,
-          extra,
-          rowGroupSize,
-          compressor,
-          enableValidation,
-          parquetProperties);
+      boolean concurrent = encodingExecutor != null || encodingThreads > 0 || maxInFlightRowGroups > 0;
+      BytesInputCompressor compressor;
+      if (concurrent) {
+        CompressionCodecFactory factory = codecFactory;
+        CompressionCodecName codec = codecName;
+        compressor = new ConcurrentBytesInputCompressor(codec, () -> factory.getCompressor(codec));
+      } else {
+        compressor = codecFactory.getCompressor(codecName);
+      }
+
+      // the file writer never closes its stream unless the file is ended
+      AbortableOutputFile output = new AbortableOutputFile(file);
+      WriterMemoryManager.Registration memory = null;
+      ExportedParquetRecordWriter<T> recordWriter;
+      try {
+        ParquetFileWriter fileWriter = new ParquetFileWriter(output, schema, mode, rowGroupSize, maxPaddingSize, parquetProperties.getColumnIndexTruncateLength(),
+            parquetProperties.getStatisticsTruncateLength(), parquetProperties.getPageWriteChecksumEnabled(), encryptionProperties);
+        fileWriter.start();
+        memory = memoryManager == null ? null : memoryManager.register(file.toString(), rowGroupSize);
+        recordWriter = new ExportedParquetRecordWriter<>(
+            fileWriter,
+            dematerializer,
+            schema,
+            extra,
+            rowGroupSize,
+            compressor,
+            enableValidation,
+            parquetProperties,
+            encodingExecutor,
+            encodingThreads,
+            maxInFlightRowGroups,
+            memory,
+            adaptiveBloomFilter);
+      } catch (IOException | RuntimeException e) {
+        if (memory != null) {
+          memory.close();
+        }
+        compressor.release();
+        try {
+          output.abort();
+        } catch (IOException suppressed) {
+          e.addSuppressed(suppressed);
+        }
+        throw e;
+      }
+      if (sortOrder != null) {
+        recordWriter.sortRecords(sortOrder, sortBufferSize, spiller);
+      }
+      return recordWriter;
     }
 
     public BUILDER withOverwrite(boolean enableOverwrite) {
@@ -215,6 +310,131 @@ public class ParquetWriter<T> implements Closeable {
       return self();
     }
 
+    /**
+     * Enable or disable bloom filters for the columns not specified by
+     * {@link #withBloomFilterEnabled(String, boolean)}. Bloom filters are disabled by default.
+     *
+     * @param enabled whether bloom filters should be written for all columns
+     * @return this builder for method chaining.
+     */
+    public BUILDER withBloomFilterEnabled(boolean enabled) {
+      parquetPropertiesBuilder.withBloomFilterEnabled(enabled);
+      return self();
+    }
+
+    /**
+     * Enable or disable the bloom filter for the specified column.
+     *
+     * @param columnPath the path of the column (dot-string)
+     * @param enabled    whether the bloom filter should be written
+     * @return this builder for method chaining.
+     */
+    public BUILDER withBloomFilterEnabled(String columnPath, boolean enabled) {
+      Objects.requireNonNull(columnPath);
+      parquetPropertiesBuilder.withBloomFilterEnabled(columnPath, enabled);
+      return self();
+    }
+
+    /**
+     * Set the expected number of distinct values of the specified column in a row group, which
+     * sizes its bloom filter and enables it. Without it, the bloom filter takes the maximum size.
+     *
+     * @param columnPath the path of the column (dot-string)
+     * @param ndv        the expected number of distinct values
+     * @return this builder for method chaining.
+     */
+    public BUILDER withBloomFilterNDV(String columnPath, long ndv) {
+      Objects.requireNonNull(columnPath);
+      parquetPropertiesBuilder.withBloomFilterNDV(columnPath, ndv);
+      return self();
+    }
+
+    /**
+     * Set the false positive probability of the bloom filter of the specified column, 0.01 by
+     * default. It only takes effect together with {@link #withBloomFilterNDV(String, long)}.
+     *
+     * @param columnPath the path of the column (dot-string)
+     * @param fpp        the false positive probability, between 0 and 1 exclusive
+     * @return this builder for method chaining.
+     */
+    public BUILDER withBloomFilterFPP(String columnPath, double fpp) {
+      Objects.requireNonNull(columnPath);
+      parquetPropertiesBuilder.withBloomFilterFPP(columnPath, fpp);
+      return self();
+    }
+
+    /**
+     * Set the maximum size of a bloom filter bitset, 1MB by default.
+     *
+     * @param maxBloomFilterBytes an integer size in bytes
+     * @return this builder for method chaining.
+     */
+    public BUILDER withMaxBloomFilterBytes(int maxBloomFilterBytes) {
+      parquetPropertiesBuilder.withMaxBloomFilterBytes(maxBloomFilterBytes);
+      return self();
+    }
+
+    /**
+     * Size the bloom filter of every column chunk by its observed number of distinct values, so
+     * that it reaches the false positive probability of the column without a configured NDV.
+     * Column chunks whose data pages are all dictionary encoded get no bloom filter.
+     *
+     * @param adaptiveBloomFilter whether bloom filters are sized adaptively
+     * @return this builder for method chaining.
+     * @see AdaptiveBloomFilterStore
+     */
+    public BUILDER withAdaptiveBloomFilter(boolean adaptiveBloomFilter) {
+      this.adaptiveBloomFilter = adaptiveBloomFilter;
+      return self();
+    }
+
+    /**
+     * Set the length to which the min/max values of the column indexes are truncated, 64 by
+     * default.
+     *
+     * @param length the truncate length in bytes
+     * @return this builder for method chaining.
+     */
+    public BUILDER withColumnIndexTruncateLength(int length) {
+      parquetPropertiesBuilder.withColumnIndexTruncateLength(length);
+      return self();
+    }
+
+    /**
+     * Set the length to which the min/max values of the row group statistics are truncated, which
+     * are not truncated by default.
+     *
+     * @param length the truncate length in bytes
+     * @return this builder for method chaining.
+     */
+    public BUILDER withStatisticsTruncateLength(int length) {
+      parquetPropertiesBuilder.withStatisticsTruncateLength(length);
+      return self();
+    }
+
+    /**
+     * Set the maximum number of rows of a page, 20000 by default. Smaller pages make the column
+     * indexes more selective.
+     *
+     * @param rowCount the maximum number of rows
+     * @return this builder for method chaining.
+     */
+    public BUILDER withPageRowCountLimit(int rowCount) {
+      parquetPropertiesBuilder.withPageRowCountLimit(rowCount);
+      return self();
+    }
+
+    /**
+     * Enable or disable writing page checksums, which are enabled by default.
+     *
+     * @param enabled whether page checksums should be written
+     * @return this builder for method chaining.
+     */
+    public BUILDER withPageWriteChecksumEnabled(boolean enabled) {
+      parquetPropertiesBuilder.withPageWriteChecksumEnabled(enabled);
+      return self();
+    }
+
     /**
      * Set the Parquet format max padding size.
      *
@@ -241,6 +461,111 @@ public class ParquetWriter<T> implements Closeable {
       parquetPropertiesBuilder.withWriterVersion(version);
       return self();
     }
+
+    /**
+     * Encode and compress the columns on the given number of threads, and write row groups to the
+     * file on a dedicated I/O thread. The codec factory must create a new compressor on every call
+     * and the allocator must be thread-safe, as the defaults are.
+     *
+     * @param encodingThreads the number of encoding threads, or 0 to encode on the caller thread
+     * @return this builder for method chaining.
+     */
+    public BUILDER withEncodingThreads(int encodingThreads) {
+      if (encodingThreads < 0) {
+        throw new IllegalArgumentException("encodingThreads must not be negative: " + encodingThreads);
+      }
+      this.encodingThreads = encodingThreads;
+      return self();
+    }
+
+    /**
+     * Encode and compress the columns on the given executor instead of an own thread pool. The
+     * executor is not shut down when the writer is closed.
+     *
+     * @param encodingExecutor the executor, or null to use the encoding threads
+     * @return this builder for method chaining.
+     * @see #withEncodingThreads(int)
+     */
+    public BUILDER withEncodingExecutor(ExecutorService encodingExecutor) {
+      this.encodingExecutor = encodingExecutor;
+      return self();
+    }
+
+    /**
+     * Write full row groups on a background thread while new records go to a fresh row group.
+     * {@link ParquetWriter#write(Object)} blocks while the given number of row groups are waiting
+     * to be written. The codec factory must create a new compressor on every call and the
+     * allocator must be thread-safe, as the defaults are.
+     *
+     * @param maxInFlightRowGroups the maximum number of row groups in flight, or 0 to write row
+     *                             groups on the caller thread, which is the default. With
+     *                             {@link #withEncodingThreads(int) parallel encoding} at least one
+     *                             row group is in flight.
+     * @return this builder for method chaining.
+     */
+    public BUILDER withMaxInFlightRowGroups(int maxInFlightRowGroups) {
+      if (maxInFlightRowGroups < 0) {
+        throw new IllegalArgumentException("maxInFlightRowGroups must not be negative: " + maxInFlightRowGroups);
+      }
+      this.maxInFlightRowGroups = maxInFlightRowGroups;
+      return self();
+    }
+
+    /**
+     * Register the writer at a memory manager shared with other writers. The row group size is
+     * scaled down while the writers together request more than the budget of the manager, and the
+     * current row group is flushed early when the buffered bytes of all writers exceed it.
+     *
+     * @param memoryManager the memory manager, or null to size row groups independently
+     * @return this builder for method chaining.
+     */
+    public BUILDER withMemoryManager(WriterMemoryManager memoryManager) {
+      this.memoryManager = memoryManager;
+      return self();
+    }
+
+    /**
+     * Sort the records before writing them, so that the statistics and column indexes of the
+     * sorted columns do not overlap. The written records are buffered and must not be modified
+     * afterwards. Sorting the whole file requires the builder to provide a
+     * {@link #materializer(MessageType) materializer}.
+     *
+     * @param sortOrder the order of the records, or null to write them in the given order
+     * @param scope     the scope in which the records are sorted
+     * @return this builder for method chaining.
+     * @throws IllegalArgumentException if the whole file is sorted without a materializer
+     */
+    public BUILDER withSortOrder(Comparator<? super T> sortOrder, SortScope scope) {
+      if (sortOrder != null && scope == SortScope.FILE && !hasMaterializer()) {
+        throw new IllegalArgumentException("Sorting the whole file requires a materializer: " + getClass().getName());
+      }
+      this.sortOrder = sortOrder;
+      this.sortScope = Objects.requireNonNull(scope);
+      return self();
+    }
+
+    /**
+     * @param sortBufferSize the number of records sorted in memory, which are the records of a
+     *                       row group or of a spilled run. The default is 65536.
+     * @return this builder for method chaining.
+     */
+    public BUILDER withSortBufferSize(int sortBufferSize) {
+      if (sortBufferSize <= 0) {
+        throw new IllegalArgumentException("sortBufferSize must be positive: " + sortBufferSize);
+      }
+      this.sortBufferSize = sortBufferSize;
+      return self();
+    }
+
+    /**
+     * @param spillDirectory the directory of the runs spilled when sorting the whole file, or null
+     *                       for the default temporary directory
+     * @return this builder for method chaining.
+     */
+    public BUILDER withSpillDirectory(Path spillDirectory) {
+      this.spillDirectory = spillDirectory;
+      return self();
+    }
   }
 
 }
@@ -0,0 +1,228 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.codec.PooledCodecFactory;
+import org.apache.parquet.compression.CompressionCodecFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Write records to one file per partition, keeping a bounded number of files open.
+ *
+ * <p>The writers of the partitions are kept in least recently used order. Opening the writer of a
+ * new partition while the maximum number is open closes the least recently used one, and a later
+ * record of the evicted partition goes to a new file with the next sequence number. All writers
+ * register at one {@link WriterMemoryManager} and take their compressors from one
+ * {@link PooledCodecFactory}, so that the memory does not grow with the number of partitions.
+ *
+ * @param <K> the type of the partition keys, which must implement {@code equals} and
+ *            {@code hashCode}
+ * @param <T> the type of the records
+ */
+public class PartitionedParquetWriter<K, T> implements Closeable {
+
+  private final Function<? super T, ? extends K> partitioner;
+  private final WriterFactory<K, T> factory;
+  private final int maxOpenWriters;
+  private final WriterMemoryManager memoryManager;
+  private final PooledCodecFactory codecFactory;
+  private final LinkedHashMap<K, ParquetWriter<T>> writers = new LinkedHashMap<>(16, 0.75f, true);
+  private final Map<K, Integer> sequences = new HashMap<>();
+  private long evictionCount = 0;
+  private boolean closed;
+
+  private PartitionedParquetWriter(Builder<K, T> builder) {
+    this.partitioner = builder.partitioner;
+    this.factory = builder.factory;
+    this.maxOpenWriters = builder.maxOpenWriters;
+    this.memoryManager = new WriterMemoryManager(builder.memoryBudget, builder.minRowGroupSize);
+    this.codecFactory = new PooledCodecFactory(builder.codecFactory);
+  }
+
+  /**
+   * @param partitioner the partition key of a record
+   * @param factory     creates the writer builder of a file of a partition
+   * @param <K>         the type of the partition keys
+   * @param <T>         the type of the records
+   * @return the builder of the partitioned writer
+   */
+  public static <K, T> Builder<K, T> builder(Function<? super T, ? extends K> partitioner, WriterFactory<K, T> factory) {
+    return new Builder<>(partitioner, factory);
+  }
+
+  public void write(T record) throws IOException {
+    if (closed) {
+      throw new IOException("The writer is closed");
+    }
+    K partition = partitioner.apply(record);
+    ParquetWriter<T> writer = writers.get(partition);
+    if (writer == null) {
+      writer = open(partition);
+    }
+    writer.write(record);
+  }
+
+  /**
+   * Close the file of a partition, if it is open.
+   *
+   * @param partition the partition key
+   */
+  public void closePartition(K partition) throws IOException {
+    ParquetWriter<T> writer = writers.remove(partition);
+    if (writer != null) {
+      writer.close();
+    }
+  }
+
+  public int getOpenWriterCount() {
+    return writers.size();
+  }
+
+  /**
+   * @return the number of writers closed to make room for another partition
+   */
+  public long getEvictionCount() {
+    return evictionCount;
+  }
+
+  public WriterMemoryManager getMemoryManager() {
+    return memoryManager;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    IOException failure = null;
+    for (Iterator<ParquetWriter<T>> it = writers.values().iterator(); it.hasNext(); ) {
+      ParquetWriter<T> writer = it.next();
+      it.remove();
+      try {
+        writer.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    codecFactory.release();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  private ParquetWriter<T> open(K partition) throws IOException {
+    if (writers.size() >= maxOpenWriters) {
+      Iterator<Map.Entry<K, ParquetWriter<T>>> eldest = writers.entrySet().iterator();
+      ParquetWriter<T> evicted = eldest.next().getValue();
+      eldest.remove();
+      evictionCount++;
+      evicted.close();
+    }
+    int sequence = sequences.merge(partition, 1, Integer::sum) - 1;
+    ParquetWriter.Builder<T, ? extends ParquetWriter<T>, ?> builder = factory.create(partition, sequence);
+    builder.withMemoryManager(memoryManager);
+    builder.withCodecFactory(codecFactory);
+    ParquetWriter<T> writer = builder.build();
+    writers.put(partition, writer);
+    return writer;
+  }
+
+  /**
+   * Creates the writer builder of a file of a partition. The memory manager and the codec factory
+   * of the builder are replaced by the shared ones.
+   *
+   * @param <K> the type of the partition keys
+   * @param <T> the type of the records
+   */
+  @FunctionalInterface
+  public interface WriterFactory<K, T> {
+    /**
+     * @param partition the partition key
+     * @param sequence  the number of files of the partition opened before
+     * @return the builder of the writer
+     */
+    ParquetWriter.Builder<T, ? extends ParquetWriter<T>, ?> create(K partition, int sequence) throws IOException;
+  }
+
+  public static class Builder<K, T> {
+    private final Function<? super T, ? extends K> partitioner;
+    private final WriterFactory<K, T> factory;
+    private int maxOpenWriters = 64;
+    private long memoryBudget = 256 * 1024 * 1024; // 256MB
+    private long minRowGroupSize = WriterMemoryManager.DEFAULT_MIN_ROW_GROUP_SIZE;
+    private CompressionCodecFactory codecFactory = new DefaultCodecFactory();
+
+    private Builder(Function<? super T, ? extends K> partitioner, WriterFactory<K, T> factory) {
+      this.partitioner = Objects.requireNonNull(partitioner);
+      this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * @param maxOpenWriters the maximum number of files open at once
+     * @return this builder for method chaining.
+     */
+    public Builder<K, T> withMaxOpenWriters(int maxOpenWriters) {
+      if (maxOpenWriters <= 0) {
+        throw new IllegalArgumentException("maxOpenWriters must be positive: " + maxOpenWriters);
+      }
+      this.maxOpenWriters = maxOpenWriters;
+      return this;
+    }
+
+    /**
+     * @param memoryBudget    the maximum number of bytes buffered by all open writers
+     * @param minRowGroupSize the size below which row groups are not scaled down
+     * @return this builder for method chaining.
+     * @see WriterMemoryManager
+     */
+    public Builder<K, T> withMemoryBudget(long memoryBudget, long minRowGroupSize) {
+      this.memoryBudget = memoryBudget;
+      this.minRowGroupSize = minRowGroupSize;
+      return this;
+    }
+
+    /**
+     * @param codecFactory the factory creating the pooled codecs, which must create a new codec on
+     *                     every call
+     * @return this builder for method chaining.
+     */
+    public Builder<K, T> withCodecFactory(CompressionCodecFactory codecFactory) {
+      this.codecFactory = Objects.requireNonNull(codecFactory);
+      return this;
+    }
+
+    public PartitionedParquetWriter<K, T> build() {
+      return new PartitionedParquetWriter<>(this);
+    }
+  }
+}
@@ -0,0 +1,373 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+/**
+ * Write records to a sequence of Parquet files, rolling over to the next file when the current one
+ * reaches a size, a row count or an age.
+ *
+ * <p>The next file is opened ahead of time and the previous file is closed on a background thread,
+ * so that rolling over does not stall {@link #write(Object)}. The size of a file is estimated by
+ * {@link ParquetWriter#getDataSize()}, including the buffered data. The age is only checked when a
+ * record is written. No file is created before the first record.
+ */
+public class RollingParquetWriter<T> implements Closeable {
+
+  private static final AtomicInteger WRITER_ID = new AtomicInteger();
+
+  private final IntFunction<Path> files;
+  private final WriterFactory<T> factory;
+  private final long maxFileSize;
+  private final long maxRowCount;
+  private final long maxFileAgeNanos;
+  private final boolean openAhead;
+  private final ExecutorService executor;
+  private final Deque<Future<RolledFile>> closing = new ArrayDeque<>();
+  private final List<RolledFile> manifest = new ArrayList<>();
+
+  private int fileIndex = 0;
+  private Path currentPath;
+  private ParquetWriter<T> current;
+  private long currentRowCount;
+  private long currentOpenedAt;
+  private Path nextPath;
+  private Future<ParquetWriter<T>> next;
+  private boolean closed;
+
+  private RollingParquetWriter(Builder<T> builder) {
+    this.files = builder.files;
+    this.factory = builder.factory;
+    this.maxFileSize = builder.maxFileSize;
+    this.maxRowCount = builder.maxRowCount;
+    this.maxFileAgeNanos = builder.maxFileAgeNanos;
+    this.openAhead = builder.openAhead;
+    String threadName = "parquet-rolling-writer-" + WRITER_ID.incrementAndGet();
+    this.executor = Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, threadName);
+      thread.setDaemon(true);
+      return thread;
+    });
+  }
+
+  /**
+   * @param files   the path of the i-th file, starting from 0
+   * @param factory creates the writer of a file
+   * @param <T>     the type of the records
+   * @return the builder of the rolling writer
+   */
+  public static <T> Builder<T> builder(IntFunction<Path> files, WriterFactory<T> factory) {
+    return new Builder<>(files, factory);
+  }
+
+  public void write(T record) throws IOException {
+    if (closed) {
+      throw new IOException("The writer is closed");
+    }
+    collectClosed();
+    if (current == null) {
+      openCurrent();
+    }
+    current.write(record);
+    currentRowCount++;
+    if (currentRowCount >= maxRowCount
+        || current.getDataSize() >= maxFileSize
+        || System.nanoTime() - currentOpenedAt >= maxFileAgeNanos) {
+      roll();
+    }
+  }
+
+  /**
+   * Close the current file and continue with the next one on the next record.
+   */
+  public void roll() throws IOException {
+    if (current == null) {
+      return;
+    }
+    ParquetWriter<T> writer = current;
+    Path path = currentPath;
+    current = null;
+    currentPath = null;
+    closing.addLast(executor.submit(() -> {
+      writer.close();
+      return new RolledFile(path, Files.size(path), writer.getFooter());
+    }));
+  }
+
+  /**
+   * @return the files closed so far in the order they were written, which are all files once the
+   * writer is closed
+   */
+  public List<RolledFile> getManifest() {
+    return Collections.unmodifiableList(new ArrayList<>(manifest));
+  }
+
+  /**
+   * @return the path of the file currently written, or null if the next record opens a new file
+   */
+  public Path getCurrentPath() {
+    return currentPath;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      roll();
+      IOException failure = null;
+      while (!closing.isEmpty()) {
+        try {
+          manifest.add(await(closing.removeFirst()));
+        } catch (IOException e) {
+          failure = suppress(failure, e);
+        }
+      }
+      if (next != null) {
+        // the file opened ahead is empty, close and drop it
+        Future<ParquetWriter<T>> opening = next;
+        next = null;
+        try {
+          await(opening).close();
+        } catch (IOException e) {
+          failure = suppress(failure, e);
+        } finally {
+          try {
+            Files.deleteIfExists(nextPath);
+          } catch (IOException e) {
+            failure = suppress(failure, e);
+          }
+        }
+      }
+      if (failure != null) {
+        throw failure;
+      }
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private static IOException suppress(IOException failure, IOException e) {
+    if (failure == null) {
+      return e;
+    }
+    failure.addSuppressed(e);
+    return failure;
+  }
+
+  private void openCurrent() throws IOException {
+    if (next == null) {
+      currentPath = files.apply(fileIndex++);
+      current = factory.create(currentPath);
+    } else {
+      currentPath = nextPath;
+      Future<ParquetWriter<T>> opening = next;
+      next = null;
+      nextPath = null;
+      current = await(opening);
+    }
+    currentRowCount = 0;
+    currentOpenedAt = System.nanoTime();
+    if (openAhead) {
+      Path path = files.apply(fileIndex++);
+      nextPath = path;
+      next = executor.submit(() -> factory.create(path));
+    }
+  }
+
+  private void collectClosed() throws IOException {
+    for (Future<RolledFile> head = closing.peekFirst(); head != null && head.isDone(); head = closing.peekFirst()) {
+      closing.removeFirst();
+      manifest.add(await(head));
+    }
+  }
+
+  private static <V> V await(Future<V> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while waiting for a file");
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+
+  /**
+   * Creates the writer of a file.
+   *
+   * @param <T> the type of the records
+   */
+  @FunctionalInterface
+  public interface WriterFactory<T> {
+    ParquetWriter<T> create(Path file) throws IOException;
+  }
+
+  /**
+   * A file written by a {@link RollingParquetWriter}.
+   */
+  public static final class RolledFile {
+
+    private final Path path;
+    private final long fileSize;
+    private final ParquetMetadata footer;
+    private final long rowCount;
+    private final Map<ColumnPath, Statistics<?>> statistics = new LinkedHashMap<>();
+
+    @SuppressWarnings({"rawtypes", "unchecked"})
+    private RolledFile(Path path, long fileSize, ParquetMetadata footer) {
+      this.path = path;
+      this.fileSize = fileSize;
+      this.footer = footer;
+      long rowCount = 0;
+      for (BlockMetaData block : footer.getBlocks()) {
+        rowCount += block.getRowCount();
+        for (ColumnChunkMetaData column : block.getColumns()) {
+          Statistics merged = statistics.computeIfAbsent(column.getPath(), p -> Statistics.createStats(column.getPrimitiveType()));
+          merged.mergeStatistics(column.getStatistics());
+        }
+      }
+      this.rowCount = rowCount;
+    }
+
+    public Path getPath() {
+      return path;
+    }
+
+    public long getFileSize() {
+      return fileSize;
+    }
+
+    public long getRowCount() {
+      return rowCount;
+    }
+
+    public ParquetMetadata getFooter() {
+      return footer;
+    }
+
+    /**
+     * @return the statistics of every column, merged over all row groups
+     */
+    public Map<ColumnPath, Statistics<?>> getStatistics() {
+      return Collections.unmodifiableMap(statistics);
+    }
+
+    @Override
+    public String toString() {
+      return path + " {rowCount=" + rowCount + ", fileSize=" + fileSize + "}";
+    }
+  }
+
+  public static class Builder<T> {
+    private final IntFunction<Path> files;
+    private final WriterFactory<T> factory;
+    private long maxFileSize = Long.MAX_VALUE;
+    private long maxRowCount = Long.MAX_VALUE;
+    private long maxFileAgeNanos = Long.MAX_VALUE;
+    private boolean openAhead = true;
+
+    private Builder(IntFunction<Path> files, WriterFactory<T> factory) {
+      this.files = Objects.requireNonNull(files);
+      this.factory = Objects.requireNonNull(factory);
+    }
+
+    /**
+     * @param maxFileSize the estimated size in bytes at which a file is rolled over
+     * @return this builder for method chaining.
+     */
+    public Builder<T> withMaxFileSize(long maxFileSize) {
+      if (maxFileSize <= 0) {
+        throw new IllegalArgumentException("maxFileSize must be positive: " + maxFileSize);
+      }
+      this.maxFileSize = maxFileSize;
+      return this;
+    }
+
+    /**
+     * @param maxRowCount the number of rows at which a file is rolled over
+     * @return this builder for method chaining.
+     */
+    public Builder<T> withMaxRowCount(long maxRowCount) {
+      if (maxRowCount <= 0) {
+        throw new IllegalArgumentException("maxRowCount must be positive: " + maxRowCount);
+      }
+      this.maxRowCount = maxRowCount;
+      return this;
+    }
+
+    /**
+     * @param maxFileAge the time after opening at which a file is rolled over
+     * @param unit       the unit of the time
+     * @return this builder for method chaining.
+     */
+    public Builder<T> withMaxFileAge(long maxFileAge, TimeUnit unit) {
+      if (maxFileAge <= 0) {
+        throw new IllegalArgumentException("maxFileAge must be positive: " + maxFileAge);
+      }
+      this.maxFileAgeNanos = unit.toNanos(maxFileAge);
+      return this;
+    }
+
+    /**
+     * @param openAhead whether to open the next file in the background, which is the default. An
+     *                  opened but unused file is deleted when the writer is closed.
+     * @return this builder for method chaining.
+     */
+    public Builder<T> withOpenAhead(boolean openAhead) {
+      this.openAhead = openAhead;
+      return this;
+    }
+
+    public RollingParquetWriter<T> build() {
+      return new RollingParquetWriter<>(this);
+    }
+  }
+}
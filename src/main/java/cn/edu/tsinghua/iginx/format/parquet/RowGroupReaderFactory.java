@@ -0,0 +1,168 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.FileMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Function;
+
+/**
+ * Opens record readers over subsets of the row groups of one file. The footer is parsed and the row
+ * groups are filtered once, and every reader opens its own stream of the shared input file, so the
+ * readers can be used from different threads.
+ *
+ * @param <T> the type of the materialized records
+ */
+public class RowGroupReaderFactory<T> {
+
+  private final InputFile file;
+  private final FileMetaData fileMetaData;
+  private final List<BlockMetaData> rowGroups;
+  private final ParquetReadOptions options;
+  private final DictionaryCache dictionaryCache;
+  private final String dictionaryCacheKey;
+  private final Function<MessageType, MessageType> schemaConverter;
+  private final MaterializerFactory<T> materializerFactory;
+
+  RowGroupReaderFactory(
+      InputFile file,
+      ParquetMetadata footer,
+      ParquetReadOptions options,
+      DictionaryCache dictionaryCache,
+      String dictionaryCacheKey,
+      Function<MessageType, MessageType> schemaConverter,
+      MaterializerFactory<T> materializerFactory)
+      throws IOException {
+    this(
+        file,
+        footer,
+        filterRowGroups(file, footer, options, dictionaryCache, dictionaryCacheKey),
+        options,
+        dictionaryCache,
+        dictionaryCacheKey,
+        schemaConverter,
+        materializerFactory);
+  }
+
+  /**
+   * @param rowGroups the row groups of the footer which passed the row group filters already
+   */
+  RowGroupReaderFactory(
+      InputFile file,
+      ParquetMetadata footer,
+      List<BlockMetaData> rowGroups,
+      ParquetReadOptions options,
+      DictionaryCache dictionaryCache,
+      String dictionaryCacheKey,
+      Function<MessageType, MessageType> schemaConverter,
+      MaterializerFactory<T> materializerFactory) {
+    this.file = Objects.requireNonNull(file);
+    this.fileMetaData = footer.getFileMetaData();
+    this.rowGroups = Collections.unmodifiableList(rowGroups);
+    this.dictionaryCache = dictionaryCache;
+    this.dictionaryCacheKey = dictionaryCacheKey;
+    this.schemaConverter = Objects.requireNonNull(schemaConverter);
+    this.materializerFactory = Objects.requireNonNull(materializerFactory);
+    // the row groups are filtered already, the readers only filter pages and records
+    this.options = ParquetReadOptions.builder()
+        .copy(options)
+        .useColumnIndexFilter(options.useColumnIndexFilter())
+        .withMaxAllocationInBytes(options.getMaxAllocationSize())
+        .useStatsFilter(false)
+        .useDictionaryFilter(false)
+        .useBloomFilter(false)
+        .build();
+  }
+
+  private static List<BlockMetaData> filterRowGroups(
+      InputFile file,
+      ParquetMetadata footer,
+      ParquetReadOptions options,
+      DictionaryCache dictionaryCache,
+      String dictionaryCacheKey)
+      throws IOException {
+    try (ParquetFileReader reader =
+        new ParquetFileReader(file, footer, options, dictionaryCache, dictionaryCacheKey)) {
+      return reader.getRowGroups();
+    }
+  }
+
+  public InputFile getFile() {
+    return file;
+  }
+
+  /**
+   * @return the row groups of the file passing the row group filters
+   */
+  public List<BlockMetaData> getRowGroups() {
+    return rowGroups;
+  }
+
+  /**
+   * @return whether the readers may drop records or pages of the row groups, in which case the row
+   * counts of the row groups are upper bounds only
+   */
+  public boolean isFiltering() {
+    return (options.useRecordFilter()
+            || options.useColumnIndexFilter()
+            || Boolean.parseBoolean(options.getProperty(ParquetFileReader.COMPILED_FILTER_ENABLED)))
+        && FilterCompat.isFilteringRequired(options.getRecordFilter());
+  }
+
+  /**
+   * Opens a record reader over the given row groups, which must be taken from
+   * {@link #getRowGroups()}. The row indexes reported by the reader are those of the whole file.
+   *
+   * @param rowGroups the row groups to read, in file order
+   * @return the record reader, to be closed by the caller
+   * @throws IOException if the reader cannot be opened
+   */
+  public ExportedParquetRecordReader<T> open(List<BlockMetaData> rowGroups) throws IOException {
+    ParquetMetadata footer = new ParquetMetadata(fileMetaData, rowGroups);
+    ParquetFileReader reader = new ParquetFileReader(file, footer, options, dictionaryCache, dictionaryCacheKey);
+    try {
+      MessageType requestedSchema = schemaConverter.apply(fileMetaData.getSchema());
+      RecordMaterializer<T> recordMaterializer =
+          materializerFactory.create(requestedSchema, fileMetaData.getKeyValueMetaData());
+      return new ExportedParquetRecordReader<>(recordMaterializer, reader, requestedSchema, options);
+    } catch (IOException | RuntimeException e) {
+      reader.close();
+      throw e;
+    }
+  }
+
+  interface MaterializerFactory<T> {
+    RecordMaterializer<T> create(MessageType schema, Map<String, String> extra) throws IOException;
+  }
+}
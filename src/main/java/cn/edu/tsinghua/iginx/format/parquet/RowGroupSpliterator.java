@@ -0,0 +1,155 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+/**
+ * Splits the row groups of a file between streams. Every split opens its own record reader over its
+ * row groups when it is first advanced, after which it cannot be split anymore. The readers of all
+ * the splits are closed when exhausted or when the root split is closed.
+ *
+ * <p>Without filtering, the sizes are exact and taken from the row counts of the row groups.
+ *
+ * @param <T> the type of the materialized records
+ */
+class RowGroupSpliterator<T> implements Spliterator<T>, Closeable {
+
+  private final RowGroupReaderFactory<T> factory;
+  private final List<BlockMetaData> rowGroups;
+  private final Set<ExportedParquetRecordReader<T>> openReaders;
+  private final boolean sized;
+  private int next;
+  private final int end;
+  private ExportedParquetRecordReader<T> current = null;
+  // the number of rows of the row groups from next to end, and then of the opened reader
+  private long remaining;
+
+  RowGroupSpliterator(RowGroupReaderFactory<T> factory) {
+    this(factory, ConcurrentHashMap.newKeySet(), 0, factory.getRowGroups().size());
+  }
+
+  private RowGroupSpliterator(RowGroupReaderFactory<T> factory, Set<ExportedParquetRecordReader<T>> openReaders, int from, int to) {
+    this.factory = factory;
+    this.rowGroups = factory.getRowGroups();
+    this.openReaders = openReaders;
+    this.sized = !factory.isFiltering();
+    this.next = from;
+    this.end = to;
+    this.remaining = countRows(from, to);
+  }
+
+  private long countRows(int from, int to) {
+    long rows = 0;
+    for (int i = from; i < to; i++) {
+      rows += rowGroups.get(i).getRowCount();
+    }
+    return rows;
+  }
+
+  @Override
+  public boolean tryAdvance(Consumer<? super T> action) {
+    try {
+      if (current == null) {
+        if (next == end) {
+          return false;
+        }
+        current = factory.open(rowGroups.subList(next, end));
+        openReaders.add(current);
+        next = end;
+      }
+      if (!current.nextKeyValue()) {
+        release();
+        remaining = 0;
+        return false;
+      }
+      T record = current.getCurrentValue();
+      if (remaining > 0) {
+        remaining--;
+      }
+      action.accept(record);
+      return true;
+    } catch (IOException e) {
+      throw new UncheckedIOException(e);
+    }
+  }
+
+  @Override
+  public Spliterator<T> trySplit() {
+    if (current != null || end - next < 2) {
+      return null;
+    }
+    int mid = (next + end) >>> 1;
+    RowGroupSpliterator<T> prefix = new RowGroupSpliterator<>(factory, openReaders, next, mid);
+    next = mid;
+    remaining -= prefix.remaining;
+    return prefix;
+  }
+
+  @Override
+  public long estimateSize() {
+    return remaining;
+  }
+
+  @Override
+  public int characteristics() {
+    return ORDERED | NONNULL | (sized ? SIZED | SUBSIZED : 0);
+  }
+
+  private void release() throws IOException {
+    if (current != null) {
+      openReaders.remove(current);
+      current.close();
+      current = null;
+    }
+  }
+
+  /**
+   * Close the readers of all the splits which are not exhausted yet.
+   */
+  @Override
+  public void close() throws IOException {
+    IOException failure = null;
+    for (ExportedParquetRecordReader<T> reader : openReaders) {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    openReaders.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+}
@@ -0,0 +1,73 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Creates executors running every task on a new virtual thread, on Java 21 and later. The
+ * executors are given to {@link ParquetReader.Builder#withExecutor} or
+ * {@link ParquetWriter.Builder#withEncodingExecutor}, so that many concurrent scans and writers
+ * block virtual threads instead of a pool of platform threads.
+ */
+public final class VirtualThreads {
+
+  private static final Method NEW_EXECUTOR = findExecutorFactory();
+
+  private VirtualThreads() {
+  }
+
+  private static Method findExecutorFactory() {
+    try {
+      Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+      ((ExecutorService) method.invoke(null)).shutdown();
+      return method;
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // not available, or a preview feature which is not enabled
+      return null;
+    }
+  }
+
+  /**
+   * @return whether the runtime supports virtual threads
+   */
+  public static boolean isSupported() {
+    return NEW_EXECUTOR != null;
+  }
+
+  /**
+   * @return a new executor starting a virtual thread per task, to be shut down by the caller
+   * @throws UnsupportedOperationException if the runtime does not support virtual threads
+   */
+  public static ExecutorService newExecutor() {
+    if (NEW_EXECUTOR == null) {
+      throw new UnsupportedOperationException("Virtual threads require Java 21 or later");
+    }
+    try {
+      return (ExecutorService) NEW_EXECUTOR.invoke(null);
+    } catch (IllegalAccessException e) {
+      throw new UnsupportedOperationException("Virtual threads are not accessible", e);
+    } catch (InvocationTargetException e) {
+      throw new UnsupportedOperationException("Virtual threads are not available", e.getCause());
+    }
+  }
+}
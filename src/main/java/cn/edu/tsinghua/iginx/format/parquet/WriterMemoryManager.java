@@ -0,0 +1,283 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Keeps the memory buffered by concurrently open writers within a global budget.
+ *
+ * <p>When the requested row group sizes of the registered writers add up to more than the budget,
+ * every writer's row group size is scaled down by the same ratio, but not below the minimum row
+ * group size. When the reported buffered bytes still exceed the budget, the writers with the
+ * largest buffers are asked to flush their current row group early.
+ *
+ * <p>The manager is thread-safe. Writers register through
+ * {@link ParquetWriter.Builder#withMemoryManager(WriterMemoryManager)}.
+ */
+public class WriterMemoryManager {
+
+  public static final long DEFAULT_MIN_ROW_GROUP_SIZE = 1024 * 1024; // 1MB
+
+  private final long budget;
+  private final long minRowGroupSize;
+  private final ReentrantLock lock = new ReentrantLock();
+  private final Set<Registration> registrations = new LinkedHashSet<>();
+  private long requestedSize = 0;
+  private long bufferedSize = 0;
+  private double scale = 1.0;
+  private long forcedFlushCount = 0;
+
+  public WriterMemoryManager(long budget) {
+    this(budget, DEFAULT_MIN_ROW_GROUP_SIZE);
+  }
+
+  /**
+   * @param budget          the maximum number of bytes buffered by all writers
+   * @param minRowGroupSize the size below which row groups are not scaled down
+   */
+  public WriterMemoryManager(long budget, long minRowGroupSize) {
+    if (budget <= 0) {
+      throw new IllegalArgumentException("budget must be positive: " + budget);
+    }
+    if (minRowGroupSize <= 0) {
+      throw new IllegalArgumentException("minRowGroupSize must be positive: " + minRowGroupSize);
+    }
+    this.budget = budget;
+    this.minRowGroupSize = minRowGroupSize;
+  }
+
+  /**
+   * Register a writer. The registration must be closed when the writer is closed.
+   *
+   * @param name         the name of the writer, such as the file it writes to
+   * @param rowGroupSize the row group size requested by the writer
+   * @return the registration of the writer
+   */
+  public Registration register(String name, long rowGroupSize) {
+    if (rowGroupSize <= 0) {
+      throw new IllegalArgumentException("rowGroupSize must be positive: " + rowGroupSize);
+    }
+    Registration registration = new Registration(Objects.requireNonNull(name), rowGroupSize);
+    lock.lock();
+    try {
+      registrations.add(registration);
+      requestedSize += rowGroupSize;
+      updateScale();
+      return registration;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void unregister(Registration registration) {
+    lock.lock();
+    try {
+      if (registrations.remove(registration)) {
+        requestedSize -= registration.requestedRowGroupSize;
+        bufferedSize -= registration.bufferedSize;
+        updateScale();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void update(Registration registration, long size) {
+    lock.lock();
+    try {
+      if (!registrations.contains(registration)) {
+        return;
+      }
+      bufferedSize += size - registration.bufferedSize;
+      registration.bufferedSize = size;
+      if (bufferedSize > budget) {
+        requestFlushes();
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void updateScale() {
+    scale = requestedSize <= budget ? 1.0 : (double) budget / requestedSize;
+    for (Registration registration : registrations) {
+      long scaled = (long) (registration.requestedRowGroupSize * scale);
+      registration.rowGroupSize = Math.min(registration.requestedRowGroupSize, Math.max(minRowGroupSize, scaled));
+    }
+  }
+
+  /**
+   * Ask the writers with the largest buffers to flush, until the remaining buffers fit the budget.
+   */
+  private void requestFlushes() {
+    List<Registration> candidates = new ArrayList<>(registrations);
+    candidates.sort(Comparator.comparingLong((Registration r) -> r.bufferedSize).reversed());
+    long remaining = bufferedSize;
+    for (Registration registration : candidates) {
+      if (remaining <= budget) {
+        break;
+      }
+      if (!registration.flushRequested) {
+        registration.flushRequested = true;
+        forcedFlushCount++;
+      }
+      remaining -= registration.bufferedSize;
+    }
+  }
+
+  public long getBudget() {
+    return budget;
+  }
+
+  public long getMinRowGroupSize() {
+    return minRowGroupSize;
+  }
+
+  /**
+   * @return the ratio by which the requested row group sizes are scaled down
+   */
+  public double getScale() {
+    lock.lock();
+    try {
+      return scale;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the bytes buffered by all writers, as last reported
+   */
+  public long getTotalBufferedSize() {
+    lock.lock();
+    try {
+      return bufferedSize;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the number of times a writer was asked to flush early
+   */
+  public long getForcedFlushCount() {
+    lock.lock();
+    try {
+      return forcedFlushCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * @return the registrations of the open writers
+   */
+  public List<Registration> getRegistrations() {
+    lock.lock();
+    try {
+      return Collections.unmodifiableList(new ArrayList<>(registrations));
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * The registration of one writer, through which it reports its buffered bytes and learns its
+   * row group size.
+   */
+  public final class Registration implements Closeable {
+
+    private final String name;
+    private final long requestedRowGroupSize;
+    private volatile long rowGroupSize;
+    private volatile long bufferedSize = 0;
+    private volatile boolean flushRequested = false;
+
+    private Registration(String name, long requestedRowGroupSize) {
+      this.name = name;
+      this.requestedRowGroupSize = requestedRowGroupSize;
+      this.rowGroupSize = requestedRowGroupSize;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getRequestedRowGroupSize() {
+      return requestedRowGroupSize;
+    }
+
+    /**
+     * @return the row group size of the writer after scaling
+     */
+    public long getRowGroupSize() {
+      return rowGroupSize;
+    }
+
+    /**
+     * @return the bytes buffered by the writer, as last reported
+     */
+    public long getBufferedSize() {
+      return bufferedSize;
+    }
+
+    /**
+     * @param bufferedSize the bytes currently buffered by the writer
+     */
+    public void update(long bufferedSize) {
+      WriterMemoryManager.this.update(this, bufferedSize);
+    }
+
+    /**
+     * @return whether the writer should flush its current row group, clearing the request
+     */
+    public boolean pollFlushRequest() {
+      if (!flushRequested) {
+        return false;
+      }
+      lock.lock();
+      try {
+        boolean requested = flushRequested;
+        flushRequested = false;
+        return requested;
+      } finally {
+        lock.unlock();
+      }
+    }
+
+    @Override
+    public void close() {
+      unregister(this);
+    }
+
+    @Override
+    public String toString() {
+      return name + " {rowGroupSize=" + rowGroupSize + ", bufferedSize=" + bufferedSize + "}";
+    }
+  }
+}
@@ -0,0 +1,258 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.cache;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.page.DictionaryPage;
+
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A memory-bounded LRU cache of dictionary pages shared by readers of the same files.
+ *
+ * <p>Entries are keyed by file identity and the starting offset of the column chunk, and hold the
+ * decompressed dictionary page together with its lazily decoded {@link Dictionary}. The capacity
+ * is accounted in uncompressed dictionary page bytes.
+ */
+public class DictionaryCache {
+
+  private final long capacity;
+  private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+  // a lock rather than a monitor, so that contended readers on virtual threads do not pin carriers
+  private final ReentrantLock lock = new ReentrantLock();
+
+  private long size = 0;
+  private long hitCount = 0;
+  private long missCount = 0;
+  private long evictionCount = 0;
+
+  /**
+   * @param capacity the maximum number of uncompressed dictionary bytes to retain
+   */
+  public DictionaryCache(long capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+  }
+
+  /**
+   * @param file        the identity of the file
+   * @param chunkOffset the starting position of the column chunk
+   * @return the cached decompressed dictionary page or null if it is not cached
+   */
+  public DictionaryPage getPage(String file, long chunkOffset) {
+    Entry entry = getEntry(new Key(file, chunkOffset));
+    return entry == null ? null : entry.page;
+  }
+
+  /**
+   * Caches a decompressed dictionary page. The bytes of the page are copied so that the returned
+   * page can be shared by concurrent readers.
+   *
+   * @param file        the identity of the file
+   * @param chunkOffset the starting position of the column chunk
+   * @param page        the decompressed dictionary page
+   * @return the page held by the cache
+   * @throws IOException if the page bytes cannot be read
+   */
+  public DictionaryPage putPage(String file, long chunkOffset, DictionaryPage page) throws IOException {
+    Objects.requireNonNull(page);
+    DictionaryPage copy = new DictionaryPage(
+        BytesInput.from(page.getBytes().toByteArray()),
+        page.getDictionarySize(),
+        page.getEncoding());
+    Entry entry = new Entry(copy);
+    lock.lock();
+    try {
+      Entry previous = entries.put(new Key(file, chunkOffset), entry);
+      if (previous != null) {
+        size -= previous.weight;
+      }
+      size += entry.weight;
+      evict();
+    } finally {
+      lock.unlock();
+    }
+    return copy;
+  }
+
+  /**
+   * Returns the decoded dictionary of a cached page. The dictionary is decoded at most once per
+   * cached page.
+   *
+   * @param file        the identity of the file
+   * @param chunkOffset the starting position of the column chunk
+   * @param descriptor  the column the dictionary belongs to
+   * @return the decoded dictionary or null if the page is not cached
+   * @throws IOException if the dictionary cannot be decoded
+   */
+  public Dictionary getDictionary(String file, long chunkOffset, ColumnDescriptor descriptor) throws IOException {
+    Entry entry = getEntry(new Key(file, chunkOffset));
+    if (entry == null) {
+      return null;
+    }
+    Dictionary dictionary = entry.dictionary;
+    if (dictionary == null) {
+      dictionary = entry.page.getEncoding().initDictionary(descriptor, entry.page);
+      entry.dictionary = dictionary;
+    }
+    return dictionary;
+  }
+
+  /**
+   * Drops all the entries of the given file.
+   *
+   * @param file the identity of the file
+   */
+  public void invalidate(String file) {
+    lock.lock();
+    try {
+      Iterator<Map.Entry<Key, Entry>> iterator = entries.entrySet().iterator();
+      while (iterator.hasNext()) {
+        Map.Entry<Key, Entry> next = iterator.next();
+        if (next.getKey().file.equals(file)) {
+          size -= next.getValue().weight;
+          iterator.remove();
+        }
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public void clear() {
+    lock.lock();
+    try {
+      entries.clear();
+      size = 0;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of uncompressed dictionary bytes currently retained
+   */
+  public long getSize() {
+    lock.lock();
+    try {
+      return size;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getHitCount() {
+    lock.lock();
+    try {
+      return hitCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getMissCount() {
+    lock.lock();
+    try {
+      return missCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  public long getEvictionCount() {
+    lock.lock();
+    try {
+      return evictionCount;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private Entry getEntry(Key key) {
+    lock.lock();
+    try {
+      Entry entry = entries.get(key);
+      if (entry == null) {
+        missCount++;
+      } else {
+        hitCount++;
+      }
+      return entry;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void evict() {
+    Iterator<Entry> iterator = entries.values().iterator();
+    while (size > capacity && iterator.hasNext()) {
+      Entry eldest = iterator.next();
+      size -= eldest.weight;
+      iterator.remove();
+      evictionCount++;
+    }
+  }
+
+  private static final class Key {
+    private final String file;
+    private final long chunkOffset;
+
+    private Key(String file, long chunkOffset) {
+      this.file = Objects.requireNonNull(file);
+      this.chunkOffset = chunkOffset;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Key key = (Key) o;
+      return chunkOffset == key.chunkOffset && file.equals(key.file);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(file, chunkOffset);
+    }
+  }
+
+  private static final class Entry {
+    private final DictionaryPage page;
+    private final long weight;
+    private volatile Dictionary dictionary;
+
+    private Entry(DictionaryPage page) {
+      this.page = page;
+      this.weight = page.getUncompressedSize();
+    }
+  }
+}
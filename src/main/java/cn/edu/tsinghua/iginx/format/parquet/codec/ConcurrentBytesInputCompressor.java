@@ -0,0 +1,77 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.codec;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Supplier;
+
+/**
+ * A compressor which can be used from several threads. Each thread compresses with its own
+ * compressor, so the output of a call stays valid until the same thread compresses again.
+ */
+public class ConcurrentBytesInputCompressor implements CompressionCodecFactory.BytesInputCompressor {
+
+  private final CompressionCodecName codecName;
+  private final Supplier<? extends CompressionCodecFactory.BytesInputCompressor> supplier;
+  private final List<CompressionCodecFactory.BytesInputCompressor> compressors = new CopyOnWriteArrayList<>();
+  private final ThreadLocal<CompressionCodecFactory.BytesInputCompressor> compressor;
+
+  /**
+   * @param codecName the codec of the created compressors
+   * @param supplier  creates a new compressor on every call, as {@link DefaultCodecFactory} does
+   */
+  public ConcurrentBytesInputCompressor(
+      CompressionCodecName codecName,
+      Supplier<? extends CompressionCodecFactory.BytesInputCompressor> supplier) {
+    this.codecName = Objects.requireNonNull(codecName);
+    this.supplier = Objects.requireNonNull(supplier);
+    this.compressor = ThreadLocal.withInitial(this::create);
+  }
+
+  private CompressionCodecFactory.BytesInputCompressor create() {
+    CompressionCodecFactory.BytesInputCompressor created = Objects.requireNonNull(supplier.get());
+    compressors.add(created);
+    return created;
+  }
+
+  @Override
+  public BytesInput compress(BytesInput bytes) throws IOException {
+    return compressor.get().compress(bytes);
+  }
+
+  @Override
+  public CompressionCodecName getCodecName() {
+    return codecName;
+  }
+
+  @Override
+  public void release() {
+    for (CompressionCodecFactory.BytesInputCompressor created : compressors) {
+      created.release();
+    }
+    compressors.clear();
+  }
+}
@@ -0,0 +1,204 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.codec;
+
+import org.apache.parquet.bytes.BytesInput;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A codec factory which keeps released compressors and decompressors for reuse, so that writers
+ * and readers opened one after another share a bounded set of codec instances.
+ *
+ * <p>A codec is handed out to one user at a time and returns to the pool on release, after which
+ * it must not be used by that user anymore. The factory is thread-safe.
+ */
+public class PooledCodecFactory implements CompressionCodecFactory {
+
+  private final CompressionCodecFactory delegate;
+  private final Map<CompressionCodecName, Deque<BytesInputCompressor>> compressors = new EnumMap<>(CompressionCodecName.class);
+  private final Map<CompressionCodecName, Deque<BytesInputDecompressor>> decompressors = new EnumMap<>(CompressionCodecName.class);
+  private final ReentrantLock lock = new ReentrantLock();
+
+  public PooledCodecFactory() {
+    this(new DefaultCodecFactory());
+  }
+
+  /**
+   * @param delegate the factory creating the codecs, which must create a new codec on every call
+   */
+  public PooledCodecFactory(CompressionCodecFactory delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  @Override
+  public BytesInputCompressor getCompressor(CompressionCodecName codecName) {
+    BytesInputCompressor compressor;
+    lock.lock();
+    try {
+      compressor = compressors.computeIfAbsent(codecName, c -> new ArrayDeque<>()).pollFirst();
+    } finally {
+      lock.unlock();
+    }
+    if (compressor == null) {
+      compressor = delegate.getCompressor(codecName);
+    }
+    return new PooledCompressor(codecName, compressor);
+  }
+
+  @Override
+  public BytesInputDecompressor getDecompressor(CompressionCodecName codecName) {
+    BytesInputDecompressor decompressor;
+    lock.lock();
+    try {
+      decompressor = decompressors.computeIfAbsent(codecName, c -> new ArrayDeque<>()).pollFirst();
+    } finally {
+      lock.unlock();
+    }
+    if (decompressor == null) {
+      decompressor = delegate.getDecompressor(codecName);
+    }
+    return new PooledDecompressor(codecName, decompressor);
+  }
+
+  /**
+   * @return the number of idle codecs in the pool
+   */
+  public int getIdleCount() {
+    lock.lock();
+    try {
+      int count = 0;
+      for (Deque<BytesInputCompressor> pool : compressors.values()) {
+        count += pool.size();
+      }
+      for (Deque<BytesInputDecompressor> pool : decompressors.values()) {
+        count += pool.size();
+      }
+      return count;
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  /**
+   * Release the idle codecs and the delegate factory.
+   */
+  @Override
+  public void release() {
+    lock.lock();
+    try {
+      for (Deque<BytesInputCompressor> pool : compressors.values()) {
+        pool.forEach(BytesInputCompressor::release);
+        pool.clear();
+      }
+      for (Deque<BytesInputDecompressor> pool : decompressors.values()) {
+        pool.forEach(BytesInputDecompressor::release);
+        pool.clear();
+      }
+    } finally {
+      lock.unlock();
+    }
+    delegate.release();
+  }
+
+  private void recycle(CompressionCodecName codecName, BytesInputCompressor compressor) {
+    lock.lock();
+    try {
+      compressors.computeIfAbsent(codecName, c -> new ArrayDeque<>()).addFirst(compressor);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private void recycle(CompressionCodecName codecName, BytesInputDecompressor decompressor) {
+    lock.lock();
+    try {
+      decompressors.computeIfAbsent(codecName, c -> new ArrayDeque<>()).addFirst(decompressor);
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  private class PooledCompressor implements BytesInputCompressor {
+
+    private final CompressionCodecName codecName;
+    private BytesInputCompressor compressor;
+
+    private PooledCompressor(CompressionCodecName codecName, BytesInputCompressor compressor) {
+      this.codecName = codecName;
+      this.compressor = compressor;
+    }
+
+    @Override
+    public BytesInput compress(BytesInput bytes) throws IOException {
+      return compressor.compress(bytes);
+    }
+
+    @Override
+    public CompressionCodecName getCodecName() {
+      return codecName;
+    }
+
+    @Override
+    public void release() {
+      if (compressor != null) {
+        recycle(codecName, compressor);
+        compressor = null;
+      }
+    }
+  }
+
+  private class PooledDecompressor implements BytesInputDecompressor {
+
+    private final CompressionCodecName codecName;
+    private BytesInputDecompressor decompressor;
+
+    private PooledDecompressor(CompressionCodecName codecName, BytesInputDecompressor decompressor) {
+      this.codecName = codecName;
+      this.decompressor = decompressor;
+    }
+
+    @Override
+    public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+      return decompressor.decompress(bytes, uncompressedSize);
+    }
+
+    @Override
+    public void decompress(ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize) throws IOException {
+      decompressor.decompress(input, compressedSize, output, uncompressedSize);
+    }
+
+    @Override
+    public void release() {
+      if (decompressor != null) {
+        recycle(codecName, decompressor);
+        decompressor = null;
+      }
+    }
+  }
+}
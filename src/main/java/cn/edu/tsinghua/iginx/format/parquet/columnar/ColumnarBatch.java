@@ -0,0 +1,184 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.columnar;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A batch of rows given as one array per column, to be written by a {@link ColumnarBatchWriter}.
+ *
+ * <p>Every array holds one slot per row. The slots of null rows are ignored. A column without
+ * values is written as all nulls. Nulls are given either by a bitmap, which marks the leaf values
+ * as null, or by the definition levels of the rows, which can also mark an enclosing group as null.
+ * Repeated fields are not supported.
+ */
+public class ColumnarBatch {
+
+  private final MessageType schema;
+  private final List<ColumnDescriptor> columns;
+  private final Map<String, Integer> indexes = new HashMap<>();
+  private final Object[] values;
+  private final BitSet[] nulls;
+  private final int[][] definitionLevels;
+  private int rowCount = 0;
+
+  public ColumnarBatch(MessageType schema) {
+    this.schema = Objects.requireNonNull(schema);
+    this.columns = schema.getColumns();
+    for (int i = 0; i < columns.size(); i++) {
+      ColumnDescriptor column = columns.get(i);
+      if (column.getMaxRepetitionLevel() > 0) {
+        throw new IllegalArgumentException("Repeated columns are not supported: " + Arrays.toString(column.getPath()));
+      }
+      indexes.put(String.join(".", column.getPath()), i);
+    }
+    this.values = new Object[columns.size()];
+    this.nulls = new BitSet[columns.size()];
+    this.definitionLevels = new int[columns.size()][];
+  }
+
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public int getRowCount() {
+    return rowCount;
+  }
+
+  public ColumnarBatch setRowCount(int rowCount) {
+    if (rowCount < 0) {
+      throw new IllegalArgumentException("rowCount must not be negative: " + rowCount);
+    }
+    this.rowCount = rowCount;
+    return this;
+  }
+
+  public ColumnarBatch setBooleans(String column, boolean[] values) {
+    return setValues(column, PrimitiveTypeName.BOOLEAN, values);
+  }
+
+  public ColumnarBatch setInts(String column, int[] values) {
+    return setValues(column, PrimitiveTypeName.INT32, values);
+  }
+
+  public ColumnarBatch setLongs(String column, long[] values) {
+    return setValues(column, PrimitiveTypeName.INT64, values);
+  }
+
+  public ColumnarBatch setFloats(String column, float[] values) {
+    return setValues(column, PrimitiveTypeName.FLOAT, values);
+  }
+
+  public ColumnarBatch setDoubles(String column, double[] values) {
+    return setValues(column, PrimitiveTypeName.DOUBLE, values);
+  }
+
+  /**
+   * Set the values of a binary, fixed length byte array or int96 column.
+   *
+   * @param column the path of the column (dot-string)
+   * @param values the values, which must not be modified until the batch is written
+   * @return this batch for method chaining
+   */
+  public ColumnarBatch setBinaries(String column, Binary[] values) {
+    return setValues(column, null, values);
+  }
+
+  /**
+   * @param column the path of the column (dot-string)
+   * @param nulls  the rows whose leaf value is null
+   * @return this batch for method chaining
+   */
+  public ColumnarBatch setNulls(String column, BitSet nulls) {
+    int index = indexOf(column);
+    if (nulls != null && columns.get(index).getMaxDefinitionLevel() == 0) {
+      throw new IllegalArgumentException("Required column cannot be null: " + column);
+    }
+    this.nulls[index] = nulls;
+    return this;
+  }
+
+  /**
+   * @param column           the path of the column (dot-string)
+   * @param definitionLevels the definition level of every row, where the maximum level marks a
+   *                         value
+   * @return this batch for method chaining
+   */
+  public ColumnarBatch setDefinitionLevels(String column, int[] definitionLevels) {
+    this.definitionLevels[indexOf(column)] = definitionLevels;
+    return this;
+  }
+
+  /**
+   * Remove the arrays of every column and reset the row count.
+   */
+  public void clear() {
+    Arrays.fill(values, null);
+    Arrays.fill(nulls, null);
+    Arrays.fill(definitionLevels, null);
+    rowCount = 0;
+  }
+
+  List<ColumnDescriptor> getColumns() {
+    return columns;
+  }
+
+  Object getValues(int column) {
+    return values[column];
+  }
+
+  BitSet getNulls(int column) {
+    return nulls[column];
+  }
+
+  int[] getDefinitionLevels(int column) {
+    return definitionLevels[column];
+  }
+
+  private ColumnarBatch setValues(String column, PrimitiveTypeName type, Object values) {
+    int index = indexOf(column);
+    PrimitiveTypeName actual = columns.get(index).getPrimitiveType().getPrimitiveTypeName();
+    boolean binary = actual == PrimitiveTypeName.BINARY
+        || actual == PrimitiveTypeName.FIXED_LEN_BYTE_ARRAY
+        || actual == PrimitiveTypeName.INT96;
+    if (type == null ? !binary : type != actual) {
+      throw new IllegalArgumentException("Cannot set " + (type == null ? "binary" : type) + " values to " + actual + " column " + column);
+    }
+    this.values[index] = values;
+    return this;
+  }
+
+  private int indexOf(String column) {
+    Integer index = indexes.get(column);
+    if (index == null) {
+      throw new IllegalArgumentException("No such column: " + column);
+    }
+    return index;
+  }
+}
@@ -0,0 +1,392 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.columnar;
+
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalOutputFile;
+import org.apache.parquet.bytes.ByteBufferAllocator;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.compression.CompressionCodecFactory;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.crypto.FileEncryptionProperties;
+import org.apache.parquet.hadoop.ColumnChunkPageWriteStore;
+import org.apache.parquet.hadoop.ParquetFileWriter;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import static java.lang.Math.min;
+
+/**
+ * Write {@link ColumnarBatch columnar batches} to a Parquet file. The arrays of a batch are written
+ * to the column writers directly, one column after another, without going through a
+ * {@link org.apache.parquet.io.api.RecordConsumer}.
+ */
+public class ColumnarBatchWriter implements Closeable {
+
+  // rows written to every column before the page sizes are checked
+  static final int SLICE_SIZE = 1024;
+
+  private final ParquetFileWriter fileWriter;
+  private final MessageType schema;
+  private final List<ColumnDescriptor> columns;
+  private final Map<String, String> extraMetaData;
+  private final long rowGroupSizeThreshold;
+  private final BytesInputCompressor compressor;
+  private final ParquetProperties props;
+
+  private ColumnWriteStore columnStore;
+  private ColumnChunkPageWriteStore pageStore;
+  private ColumnWriter[] writers;
+  private int rowGroupOrdinal = 0;
+  private long recordCount = 0;
+  private long nextRowGroupSize;
+  private long lastRowGroupEndPos = 0;
+  private boolean closed = false;
+
+  private ColumnarBatchWriter(
+      ParquetFileWriter fileWriter,
+      MessageType schema,
+      Map<String, String> extraMetaData,
+      long rowGroupSize,
+      BytesInputCompressor compressor,
+      ParquetProperties props) {
+    this.fileWriter = fileWriter;
+    this.schema = schema;
+    this.columns = schema.getColumns();
+    this.extraMetaData = extraMetaData;
+    this.rowGroupSizeThreshold = rowGroupSize;
+    this.nextRowGroupSize = rowGroupSize;
+    this.compressor = compressor;
+    this.props = props;
+    initStore();
+  }
+
+  public static Builder builder(OutputFile file, MessageType schema) {
+    return new Builder(file, schema);
+  }
+
+  public static Builder builder(Path file, MessageType schema) {
+    return new Builder(new LocalOutputFile(file, new HeapByteBufferAllocator(), Integer.MAX_VALUE), schema);
+  }
+
+  private void initStore() {
+    pageStore = new ColumnChunkPageWriteStore(DefaultCodecFactory.wrap(compressor), schema, props.getAllocator(),
+        props.getColumnIndexTruncateLength(), props.getPageWriteChecksumEnabled(),
+        fileWriter.getEncryptor(), rowGroupOrdinal);
+    columnStore = props.newColumnWriteStore(schema, pageStore, pageStore);
+    writers = new ColumnWriter[columns.size()];
+    for (int i = 0; i < writers.length; i++) {
+      writers[i] = columnStore.getColumnWriter(columns.get(i));
+    }
+  }
+
+  /**
+   * Write the rows of the batch. The batch can be cleared or refilled afterwards.
+   *
+   * @param batch the batch of the schema of this writer
+   * @throws IOException if the rows cannot be written
+   */
+  public void write(ColumnarBatch batch) throws IOException {
+    if (closed) {
+      throw new IOException("The writer is closed");
+    }
+    if (batch.getSchema() != schema && !schema.equals(batch.getSchema())) {
+      throw new IllegalArgumentException("The batch does not match the schema of the writer: " + batch.getSchema());
+    }
+    int rowCount = batch.getRowCount();
+    for (int i = 0; i < columns.size(); i++) {
+      checkColumn(batch, i, rowCount);
+    }
+    for (int from = 0; from < rowCount; from += SLICE_SIZE) {
+      int to = min(rowCount, from + SLICE_SIZE);
+      for (int i = 0; i < columns.size(); i++) {
+        writeColumn(batch, i, from, to);
+      }
+      for (int row = from; row < to; row++) {
+        columnStore.endRecord();
+      }
+      recordCount += to - from;
+      checkBlockSizeReached();
+    }
+  }
+
+  /**
+   * @return the total size of data written to the file and buffered in memory
+   */
+  public long getDataSize() {
+    return lastRowGroupEndPos + (columnStore == null ? 0 : columnStore.getBufferedSize());
+  }
+
+  /**
+   * @return the footer of the file, available after the writer is closed
+   */
+  public ParquetMetadata getFooter() {
+    return fileWriter.getFooter();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flushRowGroupToStore();
+      fileWriter.end(extraMetaData);
+    } finally {
+      compressor.release();
+    }
+  }
+
+  private void checkColumn(ColumnarBatch batch, int column, int rowCount) {
+    ColumnDescriptor descriptor = columns.get(column);
+    Object values = batch.getValues(column);
+    BitSet nulls = batch.getNulls(column);
+    int[] definitionLevels = batch.getDefinitionLevels(column);
+    String path = String.join(".", descriptor.getPath());
+    if (values == null && descriptor.getMaxDefinitionLevel() == 0 && rowCount > 0) {
+      throw new IllegalArgumentException("No values of required column " + path);
+    }
+    if (values != null && Array.getLength(values) < rowCount) {
+      throw new IllegalArgumentException("Less than " + rowCount + " values of column " + path);
+    }
+    if (definitionLevels != null && definitionLevels.length < rowCount) {
+      throw new IllegalArgumentException("Less than " + rowCount + " definition levels of column " + path);
+    }
+    if (nulls != null && definitionLevels != null) {
+      throw new IllegalArgumentException("Both nulls and definition levels of column " + path);
+    }
+  }
+
+  private void writeColumn(ColumnarBatch batch, int column, int from, int to) {
+    ColumnWriter writer = writers[column];
+    int maxDefinitionLevel = columns.get(column).getMaxDefinitionLevel();
+    Object values = batch.getValues(column);
+    BitSet nulls = batch.getNulls(column);
+    int[] definitionLevels = batch.getDefinitionLevels(column);
+
+    if (values == null) {
+      int nullLevel = maxDefinitionLevel - 1;
+      for (int row = from; row < to; row++) {
+        writer.writeNull(0, definitionLevels == null ? 0 : min(definitionLevels[row], nullLevel));
+      }
+      return;
+    }
+    if (nulls == null && definitionLevels == null) {
+      writeValues(writer, values, maxDefinitionLevel, from, to);
+      return;
+    }
+    // write the runs of values in bulk, and the nulls between them one by one
+    int row = from;
+    while (row < to) {
+      int end = row;
+      while (end < to && isDefined(nulls, definitionLevels, maxDefinitionLevel, end)) {
+        end++;
+      }
+      writeValues(writer, values, maxDefinitionLevel, row, end);
+      while (end < to && !isDefined(nulls, definitionLevels, maxDefinitionLevel, end)) {
+        writer.writeNull(0, definitionLevels == null ? maxDefinitionLevel - 1 : definitionLevels[end]);
+        end++;
+      }
+      row = end;
+    }
+  }
+
+  private static boolean isDefined(BitSet nulls, int[] definitionLevels, int maxDefinitionLevel, int row) {
+    return definitionLevels == null ? !nulls.get(row) : definitionLevels[row] == maxDefinitionLevel;
+  }
+
+  private static void writeValues(ColumnWriter writer, Object values, int definitionLevel, int from, int to) {
+    if (values instanceof long[]) {
+      long[] longs = (long[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(longs[row], 0, definitionLevel);
+      }
+    } else if (values instanceof int[]) {
+      int[] ints = (int[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(ints[row], 0, definitionLevel);
+      }
+    } else if (values instanceof double[]) {
+      double[] doubles = (double[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(doubles[row], 0, definitionLevel);
+      }
+    } else if (values instanceof float[]) {
+      float[] floats = (float[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(floats[row], 0, definitionLevel);
+      }
+    } else if (values instanceof boolean[]) {
+      boolean[] booleans = (boolean[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(booleans[row], 0, definitionLevel);
+      }
+    } else {
+      Binary[] binaries = (Binary[]) values;
+      for (int row = from; row < to; row++) {
+        writer.write(binaries[row], 0, definitionLevel);
+      }
+    }
+  }
+
+  private void checkBlockSizeReached() throws IOException {
+    long memSize = columnStore.getBufferedSize();
+    long recordSize = memSize / recordCount;
+    // flush the row group if it is within ~2 slices of the limit
+    if (memSize > (nextRowGroupSize - 2 * SLICE_SIZE * recordSize)) {
+      flushRowGroupToStore();
+      initStore();
+      lastRowGroupEndPos = fileWriter.getPos();
+    }
+  }
+
+  private void flushRowGroupToStore() throws IOException {
+    if (recordCount > 0) {
+      rowGroupOrdinal++;
+      fileWriter.startBlock(recordCount);
+      columnStore.flush();
+      pageStore.flushToFileWriter(fileWriter);
+      recordCount = 0;
+      fileWriter.endBlock();
+      nextRowGroupSize = min(fileWriter.getNextRowGroupSize(), rowGroupSizeThreshold);
+    }
+    columnStore = null;
+    pageStore = null;
+    writers = null;
+  }
+
+  public static class Builder {
+    private final OutputFile file;
+    private final MessageType schema;
+    private final ParquetProperties.Builder parquetPropertiesBuilder = ParquetProperties.builder();
+    private final Map<String, String> extraMetaData = new HashMap<>();
+    private CompressionCodecFactory codecFactory = new DefaultCodecFactory();
+    private CompressionCodecName codecName = CompressionCodecName.UNCOMPRESSED;
+    private long rowGroupSize = 128 * 1024 * 1024; // 128MB
+    private int maxPaddingSize = 8 * 1024 * 1024; // 8MB
+    private boolean enableOverwrite = false;
+
+    private Builder(OutputFile file, MessageType schema) {
+      this.file = Objects.requireNonNull(file);
+      this.schema = Objects.requireNonNull(schema);
+      new ColumnarBatch(schema); // rejects repeated columns
+    }
+
+    public Builder withOverwrite(boolean enableOverwrite) {
+      this.enableOverwrite = enableOverwrite;
+      return this;
+    }
+
+    public Builder withAllocator(ByteBufferAllocator allocator) {
+      Objects.requireNonNull(allocator);
+      parquetPropertiesBuilder.withAllocator(allocator);
+      return this;
+    }
+
+    public Builder withCodec(CompressionCodecName compressionCodecName) {
+      this.codecName = Objects.requireNonNull(compressionCodecName);
+      return this;
+    }
+
+    public Builder withCodecFactory(CompressionCodecFactory codecFactory) {
+      this.codecFactory = Objects.requireNonNull(codecFactory);
+      return this;
+    }
+
+    public Builder withRowGroupSize(long rowGroupSize) {
+      this.rowGroupSize = rowGroupSize;
+      return this;
+    }
+
+    public Builder withPageSize(int pageSize) {
+      parquetPropertiesBuilder.withPageSize(pageSize);
+      return this;
+    }
+
+    public Builder withDictionaryPageSize(int dictionaryPageSize) {
+      parquetPropertiesBuilder.withDictionaryPageSize(dictionaryPageSize);
+      return this;
+    }
+
+    public Builder withDictionaryEncoding(boolean enableDictionary) {
+      parquetPropertiesBuilder.withDictionaryEncoding(enableDictionary);
+      return this;
+    }
+
+    public Builder withDictionaryEncoding(String columnPath, boolean enableDictionary) {
+      Objects.requireNonNull(columnPath);
+      parquetPropertiesBuilder.withDictionaryEncoding(columnPath, enableDictionary);
+      return this;
+    }
+
+    public Builder withMaxPaddingSize(int maxPaddingSize) {
+      this.maxPaddingSize = maxPaddingSize;
+      return this;
+    }
+
+    public Builder withWriterVersion(ParquetProperties.WriterVersion version) {
+      parquetPropertiesBuilder.withWriterVersion(version);
+      return this;
+    }
+
+    /**
+     * @param key   the key of the extra metadata of the file
+     * @param value the value
+     * @return this builder for method chaining.
+     */
+    public Builder withExtraMetaData(String key, String value) {
+      extraMetaData.put(Objects.requireNonNull(key), Objects.requireNonNull(value));
+      return this;
+    }
+
+    public ColumnarBatchWriter build() throws IOException {
+      ParquetProperties props = parquetPropertiesBuilder.build();
+      ParquetFileWriter.Mode mode = enableOverwrite ? ParquetFileWriter.Mode.OVERWRITE : ParquetFileWriter.Mode.CREATE;
+      ParquetFileWriter fileWriter = new ParquetFileWriter(file, schema, mode, rowGroupSize, maxPaddingSize,
+          props.getColumnIndexTruncateLength(), props.getStatisticsTruncateLength(), props.getPageWriteChecksumEnabled(), (FileEncryptionProperties) null);
+      fileWriter.start();
+      return new ColumnarBatchWriter(
+          fileWriter,
+          schema,
+          Collections.unmodifiableMap(new HashMap<>(extraMetaData)),
+          rowGroupSize,
+          codecFactory.getCompressor(codecName),
+          props);
+    }
+  }
+}
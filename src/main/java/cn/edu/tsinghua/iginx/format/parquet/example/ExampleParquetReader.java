@@ -1,6 +1,9 @@
 package cn.edu.tsinghua.iginx.format.parquet.example;
 
+import cn.edu.tsinghua.iginx.format.parquet.ParallelParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.ParquetPublisher;
 import cn.edu.tsinghua.iginx.format.parquet.ParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.RowGroupReaderFactory;
 import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
@@ -18,7 +21,11 @@ public class ExampleParquetReader extends ParquetReader<Group> {
   private final ExportedParquetRecordReader<Group> recordReader;
 
   protected ExampleParquetReader(ExportedParquetRecordReader<Group> recordReader) {
-    super(recordReader);
+    this(recordReader, null);
+  }
+
+  protected ExampleParquetReader(ExportedParquetRecordReader<Group> recordReader, RowGroupReaderFactory<Group> readerFactory) {
+    super(recordReader, readerFactory);
     this.recordReader = recordReader;
   }
 
@@ -35,6 +42,8 @@ public class ExampleParquetReader extends ParquetReader<Group> {
 
     private ParquetMetadata metadata;
 
+    private boolean reusableGroups = false;
+
     public Builder(InputFile file) {
       this.file = file;
     }
@@ -53,12 +62,34 @@ public class ExampleParquetReader extends ParquetReader<Group> {
 
     @Override
     protected RecordMaterializer<Group> materializer(MessageType schema, Map<String, String> extra) throws IOException {
-      return new GroupRecordConverter(schema);
+      return reusableGroups ? new ReusableGroupRecordConverter(schema) : new GroupRecordConverter(schema);
+    }
+
+    /**
+     * Materialize the groups with a {@link ReusableGroupRecordConverter}, so that
+     * {@link ParquetReader#read(Object)} refills the given group instead of building a new one.
+     * Disabled by default.
+     *
+     * @param reusableGroups whether the read groups may be refilled
+     * @return this builder for method chaining.
+     */
+    public Builder withReusableGroups(boolean reusableGroups) {
+      this.reusableGroups = reusableGroups;
+      return this;
     }
 
     @Override
     public ExampleParquetReader build() throws IOException {
-      return new ExampleParquetReader(build(file, getMetadata()));
+      ExportedParquetRecordReader<Group> recordReader = build(file, getMetadata());
+      return new ExampleParquetReader(recordReader, readerFactory(file, recordReader));
+    }
+
+    public ParallelParquetReader<Group> buildParallel() throws IOException {
+      return buildParallel(file, getMetadata());
+    }
+
+    public ParquetPublisher<Group> buildPublisher() throws IOException {
+      return buildPublisher(file, getMetadata());
     }
   }
 }
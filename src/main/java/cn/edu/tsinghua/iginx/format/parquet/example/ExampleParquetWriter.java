@@ -5,13 +5,19 @@ import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
 import cn.edu.tsinghua.iginx.format.parquet.io.LocalOutputFile;
 import org.apache.parquet.bytes.HeapByteBufferAllocator;
 import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.convert.GroupRecordConverter;
 import org.apache.parquet.hadoop.ExportedParquetRecordWriter;
 import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
 import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Type;
 
 import java.io.IOException;
 import java.nio.file.Path;
 import java.util.Collections;
+import java.util.Comparator;
+import java.util.function.Function;
 
 public class ExampleParquetWriter extends ParquetWriter<Group> {
   public static final String OBJECT_MODEL_NAME_VALUE = "example";
@@ -43,6 +49,67 @@ public class ExampleParquetWriter extends ParquetWriter<Group> {
       return new GroupDematerializer(schema);
     }
 
+    @Override
+    protected RecordMaterializer<Group> materializer(MessageType schema) {
+      return new GroupRecordConverter(schema);
+    }
+
+    @Override
+    protected boolean hasMaterializer() {
+      return true;
+    }
+
+    /**
+     * Sort the records by the given top-level primitive columns, in ascending order of their
+     * {@link PrimitiveType#comparator() type order} with nulls first.
+     *
+     * @param scope   the scope in which the records are sorted
+     * @param columns the names of the key columns
+     * @return this builder for method chaining.
+     */
+    public Builder withSortColumns(SortScope scope, String... columns) {
+      Comparator<Group> comparator = null;
+      for (String column : columns) {
+        Comparator<Group> next = columnComparator(column);
+        comparator = comparator == null ? next : comparator.thenComparing(next);
+      }
+      return withSortOrder(comparator, scope);
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private Comparator<Group> columnComparator(String column) {
+      int index = schema.getFieldIndex(column);
+      Type type = schema.getType(index);
+      if (!type.isPrimitive() || type.isRepetition(Type.Repetition.REPEATED)) {
+        throw new IllegalArgumentException("Sort column must be a non-repeated primitive: " + column);
+      }
+      PrimitiveType primitive = type.asPrimitiveType();
+      Comparator values = primitive.comparator();
+      Function<Group, Object> getter;
+      switch (primitive.getPrimitiveTypeName()) {
+        case BOOLEAN:
+          getter = group -> group.getBoolean(index, 0);
+          break;
+        case INT32:
+          getter = group -> group.getInteger(index, 0);
+          break;
+        case INT64:
+          getter = group -> group.getLong(index, 0);
+          break;
+        case FLOAT:
+          getter = group -> group.getFloat(index, 0);
+          break;
+        case DOUBLE:
+          getter = group -> group.getDouble(index, 0);
+          break;
+        default:
+          getter = group -> group.getBinary(index, 0);
+          break;
+      }
+      Function<Group, Object> key = group -> group.getFieldRepetitionCount(index) == 0 ? null : getter.apply(group);
+      return Comparator.comparing(key, Comparator.nullsFirst(values));
+    }
+
     @Override
     public ExampleParquetWriter build() throws IOException {
       ExportedParquetRecordWriter<Group> recordWriter = build(
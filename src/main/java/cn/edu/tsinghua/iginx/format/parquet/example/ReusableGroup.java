@@ -0,0 +1,292 @@
+package cn.edu.tsinghua.iginx.format.parquet.example;
+
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.NanoTime;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+
+import java.util.Arrays;
+
+/**
+ * A {@link Group} which can be {@link #reset() reset} and filled again. Primitive values are kept
+ * unboxed in growable arrays, and the buffers and nested groups are kept across resets, so filling
+ * a reset group with a record of similar shape does not allocate.
+ */
+public class ReusableGroup extends Group {
+
+  private static final int INITIAL_CAPACITY = 1;
+
+  private final GroupType schema;
+  private final PrimitiveTypeName[] primitiveTypes;
+  private final int[] sizes;
+  private final long[][] primitives;
+  private final Binary[][] binaries;
+  private final Group[][] groups;
+
+  public ReusableGroup(GroupType schema) {
+    this.schema = schema;
+    int fieldCount = schema.getFieldCount();
+    this.primitiveTypes = new PrimitiveTypeName[fieldCount];
+    this.sizes = new int[fieldCount];
+    this.primitives = new long[fieldCount][];
+    this.binaries = new Binary[fieldCount][];
+    this.groups = new Group[fieldCount][];
+    for (int i = 0; i < fieldCount; i++) {
+      Type type = schema.getType(i);
+      if (type.isPrimitive()) {
+        primitiveTypes[i] = type.asPrimitiveType().getPrimitiveTypeName();
+      }
+    }
+  }
+
+  /**
+   * Remove all values, keeping the buffers and the nested groups for the next record.
+   */
+  public void reset() {
+    for (int i = 0; i < sizes.length; i++) {
+      if (binaries[i] != null) {
+        Arrays.fill(binaries[i], 0, sizes[i], null);
+      }
+      sizes[i] = 0;
+    }
+  }
+
+  @Override
+  public GroupType getType() {
+    return schema;
+  }
+
+  @Override
+  public int getFieldRepetitionCount(int fieldIndex) {
+    return sizes[fieldIndex];
+  }
+
+  @Override
+  public Group addGroup(int fieldIndex) {
+    int index = reserve(fieldIndex);
+    if (groups[fieldIndex] == null) {
+      groups[fieldIndex] = new Group[INITIAL_CAPACITY];
+    } else if (groups[fieldIndex].length <= index) {
+      groups[fieldIndex] = Arrays.copyOf(groups[fieldIndex], groups[fieldIndex].length * 2);
+    }
+    Group group = groups[fieldIndex][index];
+    if (group instanceof ReusableGroup) {
+      ((ReusableGroup) group).reset();
+    } else {
+      group = new ReusableGroup(schema.getType(fieldIndex).asGroupType());
+      groups[fieldIndex][index] = group;
+    }
+    return group;
+  }
+
+  @Override
+  public void add(int fieldIndex, Group value) {
+    int index = reserve(fieldIndex);
+    if (groups[fieldIndex] == null) {
+      groups[fieldIndex] = new Group[INITIAL_CAPACITY];
+    } else if (groups[fieldIndex].length <= index) {
+      groups[fieldIndex] = Arrays.copyOf(groups[fieldIndex], groups[fieldIndex].length * 2);
+    }
+    groups[fieldIndex][index] = value;
+  }
+
+  @Override
+  public Group getGroup(int fieldIndex, int index) {
+    checkIndex(fieldIndex, index);
+    return groups[fieldIndex][index];
+  }
+
+  @Override
+  public void add(int fieldIndex, int value) {
+    addPrimitive(fieldIndex, value);
+  }
+
+  @Override
+  public void add(int fieldIndex, long value) {
+    addPrimitive(fieldIndex, value);
+  }
+
+  @Override
+  public void add(int fieldIndex, boolean value) {
+    addPrimitive(fieldIndex, value ? 1 : 0);
+  }
+
+  @Override
+  public void add(int fieldIndex, float value) {
+    addPrimitive(fieldIndex, Float.floatToRawIntBits(value));
+  }
+
+  @Override
+  public void add(int fieldIndex, double value) {
+    addPrimitive(fieldIndex, Double.doubleToRawLongBits(value));
+  }
+
+  @Override
+  public void add(int fieldIndex, String value) {
+    add(fieldIndex, Binary.fromString(value));
+  }
+
+  @Override
+  public void add(int fieldIndex, NanoTime value) {
+    add(fieldIndex, value.toBinary());
+  }
+
+  @Override
+  public void add(int fieldIndex, Binary value) {
+    int index = reserve(fieldIndex);
+    if (binaries[fieldIndex] == null) {
+      binaries[fieldIndex] = new Binary[INITIAL_CAPACITY];
+    } else if (binaries[fieldIndex].length <= index) {
+      binaries[fieldIndex] = Arrays.copyOf(binaries[fieldIndex], binaries[fieldIndex].length * 2);
+    }
+    binaries[fieldIndex][index] = value;
+  }
+
+  private void addPrimitive(int fieldIndex, long value) {
+    int index = reserve(fieldIndex);
+    if (primitives[fieldIndex] == null) {
+      primitives[fieldIndex] = new long[INITIAL_CAPACITY];
+    } else if (primitives[fieldIndex].length <= index) {
+      primitives[fieldIndex] = Arrays.copyOf(primitives[fieldIndex], primitives[fieldIndex].length * 2);
+    }
+    primitives[fieldIndex][index] = value;
+  }
+
+  /**
+   * @return the index of the value to add
+   */
+  private int reserve(int fieldIndex) {
+    int size = sizes[fieldIndex];
+    if (size > 0 && !schema.getType(fieldIndex).isRepetition(Type.Repetition.REPEATED)) {
+      throw new IllegalStateException("field " + fieldIndex + " (" + schema.getFieldName(fieldIndex) + ") can not have more than one value");
+    }
+    sizes[fieldIndex] = size + 1;
+    return size;
+  }
+
+  private void checkIndex(int fieldIndex, int index) {
+    if (index < 0 || index >= sizes[fieldIndex]) {
+      throw new RuntimeException("not found " + fieldIndex + "(" + schema.getFieldName(fieldIndex) + ") element number " + index + " in group:\n" + this);
+    }
+  }
+
+  private long getPrimitive(int fieldIndex, int index) {
+    checkIndex(fieldIndex, index);
+    return primitives[fieldIndex][index];
+  }
+
+  @Override
+  public String getString(int fieldIndex, int index) {
+    return getBinary(fieldIndex, index).toStringUsingUTF8();
+  }
+
+  @Override
+  public int getInteger(int fieldIndex, int index) {
+    return (int) getPrimitive(fieldIndex, index);
+  }
+
+  @Override
+  public long getLong(int fieldIndex, int index) {
+    return getPrimitive(fieldIndex, index);
+  }
+
+  @Override
+  public double getDouble(int fieldIndex, int index) {
+    return Double.longBitsToDouble(getPrimitive(fieldIndex, index));
+  }
+
+  @Override
+  public float getFloat(int fieldIndex, int index) {
+    return Float.intBitsToFloat((int) getPrimitive(fieldIndex, index));
+  }
+
+  @Override
+  public boolean getBoolean(int fieldIndex, int index) {
+    return getPrimitive(fieldIndex, index) != 0;
+  }
+
+  @Override
+  public Binary getBinary(int fieldIndex, int index) {
+    checkIndex(fieldIndex, index);
+    return binaries[fieldIndex][index];
+  }
+
+  @Override
+  public Binary getInt96(int fieldIndex, int index) {
+    return getBinary(fieldIndex, index);
+  }
+
+  @Override
+  public String getValueToString(int fieldIndex, int index) {
+    PrimitiveTypeName type = primitiveTypes[fieldIndex];
+    if (type == null) {
+      return String.valueOf(getGroup(fieldIndex, index));
+    }
+    switch (type) {
+      case BOOLEAN:
+        return String.valueOf(getBoolean(fieldIndex, index));
+      case INT32:
+        return String.valueOf(getInteger(fieldIndex, index));
+      case INT64:
+        return String.valueOf(getLong(fieldIndex, index));
+      case FLOAT:
+        return String.valueOf(getFloat(fieldIndex, index));
+      case DOUBLE:
+        return String.valueOf(getDouble(fieldIndex, index));
+      case INT96:
+        return String.valueOf(getInt96(fieldIndex, index));
+      default:
+        return getString(fieldIndex, index);
+    }
+  }
+
+  @Override
+  public void writeValue(int field, int index, RecordConsumer recordConsumer) {
+    switch (primitiveTypes[field]) {
+      case BOOLEAN:
+        recordConsumer.addBoolean(getBoolean(field, index));
+        break;
+      case INT32:
+        recordConsumer.addInteger(getInteger(field, index));
+        break;
+      case INT64:
+        recordConsumer.addLong(getLong(field, index));
+        break;
+      case FLOAT:
+        recordConsumer.addFloat(getFloat(field, index));
+        break;
+      case DOUBLE:
+        recordConsumer.addDouble(getDouble(field, index));
+        break;
+      default:
+        recordConsumer.addBinary(getBinary(field, index));
+        break;
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toString("");
+  }
+
+  public String toString(String indent) {
+    StringBuilder builder = new StringBuilder();
+    for (int i = 0; i < sizes.length; i++) {
+      String name = schema.getFieldName(i);
+      for (int j = 0; j < sizes[i]; j++) {
+        builder.append(indent).append(name);
+        if (primitiveTypes[i] == null) {
+          Group group = groups[i][j];
+          builder.append('\n');
+          builder.append(group instanceof ReusableGroup ? ((ReusableGroup) group).toString(indent + "  ") : group.toString());
+        } else {
+          builder.append(": ").append(getValueToString(i, j)).append('\n');
+        }
+      }
+    }
+    return builder.toString();
+  }
+}
@@ -0,0 +1,129 @@
+package cn.edu.tsinghua.iginx.format.parquet.example;
+
+import cn.edu.tsinghua.iginx.format.parquet.api.ReusableRecordMaterializer;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+/**
+ * Materializes records into {@link ReusableGroup}s, which are reset and filled again when they are
+ * passed to {@link #reuse(Group)}.
+ */
+public class ReusableGroupRecordConverter extends RecordMaterializer<Group> implements ReusableRecordMaterializer<Group> {
+
+  private final MessageType schema;
+  private final ReusableGroupConverter root;
+  private ReusableGroup reuse;
+
+  public ReusableGroupRecordConverter(MessageType schema) {
+    this.schema = schema;
+    this.root = new ReusableGroupConverter(null, 0, schema);
+  }
+
+  @Override
+  public void reuse(Group record) {
+    if (record instanceof ReusableGroup && schema.equals(record.getType())) {
+      reuse = (ReusableGroup) record;
+    } else {
+      reuse = null;
+    }
+  }
+
+  @Override
+  public Group getCurrentRecord() {
+    return root.current;
+  }
+
+  @Override
+  public GroupConverter getRootConverter() {
+    return root;
+  }
+
+  private final class ReusableGroupConverter extends GroupConverter {
+    private final ReusableGroupConverter parent;
+    private final int index;
+    private final Converter[] converters;
+    private Group current;
+
+    private ReusableGroupConverter(ReusableGroupConverter parent, int index, GroupType type) {
+      this.parent = parent;
+      this.index = index;
+      this.converters = new Converter[type.getFieldCount()];
+      for (int i = 0; i < converters.length; i++) {
+        Type field = type.getType(i);
+        if (field.isPrimitive()) {
+          converters[i] = new ReusablePrimitiveConverter(this, i);
+        } else {
+          converters[i] = new ReusableGroupConverter(this, i, field.asGroupType());
+        }
+      }
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+      if (parent != null) {
+        current = parent.current.addGroup(index);
+      } else if (reuse != null) {
+        reuse.reset();
+        current = reuse;
+      } else {
+        current = new ReusableGroup(schema);
+      }
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+
+  private static final class ReusablePrimitiveConverter extends PrimitiveConverter {
+    private final ReusableGroupConverter parent;
+    private final int index;
+
+    private ReusablePrimitiveConverter(ReusableGroupConverter parent, int index) {
+      this.parent = parent;
+      this.index = index;
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      parent.current.add(index, value);
+    }
+
+    @Override
+    public void addBoolean(boolean value) {
+      parent.current.add(index, value);
+    }
+
+    @Override
+    public void addDouble(double value) {
+      parent.current.add(index, value);
+    }
+
+    @Override
+    public void addFloat(float value) {
+      parent.current.add(index, value);
+    }
+
+    @Override
+    public void addInt(int value) {
+      parent.current.add(index, value);
+    }
+
+    @Override
+    public void addLong(long value) {
+      parent.current.add(index, value);
+    }
+  }
+}
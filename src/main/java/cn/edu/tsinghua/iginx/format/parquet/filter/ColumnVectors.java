@@ -0,0 +1,355 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.filter;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnReadStore;
+import org.apache.parquet.column.ColumnReader;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.column.impl.ColumnReadStoreImpl;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A batch of decoded values of the non-repeated columns of a schema, one unboxed vector per
+ * column. Booleans and integers are kept in {@code long}s, floating point numbers in
+ * {@code double}s and the other types as {@link Binary}s. The batch is refilled in place by
+ * {@link #read(int)} from the last {@link #open(PageReadStore, String) opened} row group.
+ *
+ * <p>Binary values of dictionary encoded pages are kept as their dictionary ids and only looked
+ * up in the dictionary of the column chunk on {@link #getBinary(int, int)}, so that predicates can
+ * be evaluated over the ids.
+ */
+public class ColumnVectors {
+
+  private final MessageType schema;
+  private final List<ColumnDescriptor> columns;
+  private final Map<ColumnPath, Integer> indexes = new HashMap<>();
+  private final long[][] longs;
+  private final double[][] doubles;
+  private final Binary[][] binaries;
+  private final boolean[][] nulls;
+  private final int[][] dictionaryIds;
+  private final Dictionary[] dictionaries;
+  private final ColumnReader[] readers;
+  private final int capacity;
+  private int size = 0;
+  private int row = 0; // the row written by the converters
+
+  /**
+   * @param schema   the columns of the vectors, which must not be repeated
+   * @param capacity the maximum number of rows in a batch
+   */
+  public ColumnVectors(MessageType schema, int capacity) {
+    if (capacity <= 0) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.schema = schema;
+    this.columns = schema.getColumns();
+    this.capacity = capacity;
+    this.longs = new long[columns.size()][];
+    this.doubles = new double[columns.size()][];
+    this.binaries = new Binary[columns.size()][];
+    this.nulls = new boolean[columns.size()][];
+    this.dictionaryIds = new int[columns.size()][];
+    this.dictionaries = new Dictionary[columns.size()];
+    this.readers = new ColumnReader[columns.size()];
+    for (int i = 0; i < columns.size(); i++) {
+      ColumnDescriptor column = columns.get(i);
+      if (column.getMaxRepetitionLevel() > 0) {
+        throw new IllegalArgumentException("Repeated column " + ColumnPath.get(column.getPath()).toDotString() + " cannot be read into vectors");
+      }
+      indexes.put(ColumnPath.get(column.getPath()), i);
+      nulls[i] = new boolean[capacity];
+      switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+        case BOOLEAN:
+        case INT32:
+        case INT64:
+          longs[i] = new long[capacity];
+          break;
+        case FLOAT:
+        case DOUBLE:
+          doubles[i] = new double[capacity];
+          break;
+        default:
+          binaries[i] = new Binary[capacity];
+          dictionaryIds[i] = new int[capacity];
+          break;
+      }
+    }
+  }
+
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  public List<ColumnDescriptor> getColumns() {
+    return columns;
+  }
+
+  /**
+   * @return the index of the column in the vectors, or -1 if it is not in the schema
+   */
+  public int indexOf(ColumnPath path) {
+    Integer index = indexes.get(path);
+    return index == null ? -1 : index;
+  }
+
+  public int getCapacity() {
+    return capacity;
+  }
+
+  /**
+   * @return the number of rows in the current batch
+   */
+  public int getSize() {
+    return size;
+  }
+
+  /**
+   * Start reading the rows of a row group, and empty the batch.
+   *
+   * @param pages     the pages of the columns of the row group
+   * @param createdBy the writer of the file
+   */
+  public void open(PageReadStore pages, String createdBy) {
+    for (int i = 0; i < columns.size(); i++) {
+      dictionaries[i] = null;
+    }
+    ColumnReadStore store = new ColumnReadStoreImpl(pages, new VectorGroupConverter(schema, new ArrayList<>()), schema, createdBy);
+    for (int i = 0; i < columns.size(); i++) {
+      readers[i] = store.getColumnReader(columns.get(i));
+    }
+    size = 0;
+  }
+
+  /**
+   * Replace the batch with the next rows of every column of the opened row group.
+   *
+   * @param count the number of rows to read, at most the capacity and the remaining rows
+   */
+  public void read(int count) {
+    if (count < 0 || count > capacity) {
+      throw new IllegalArgumentException("Invalid row count: " + count);
+    }
+    for (int i = 0; i < columns.size(); i++) {
+      read(i, readers[i], count);
+    }
+    size = count;
+  }
+
+  private void read(int index, ColumnReader reader, int count) {
+    ColumnDescriptor column = columns.get(index);
+    int maxDefinitionLevel = column.getMaxDefinitionLevel();
+    boolean[] isNull = nulls[index];
+    switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+      case BOOLEAN:
+        for (int row = 0; row < count; row++) {
+          if (!(isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel)) {
+            longs[index][row] = reader.getBoolean() ? 1 : 0;
+          }
+          reader.consume();
+        }
+        break;
+      case INT32:
+        for (int row = 0; row < count; row++) {
+          if (!(isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel)) {
+            longs[index][row] = reader.getInteger();
+          }
+          reader.consume();
+        }
+        break;
+      case INT64:
+        for (int row = 0; row < count; row++) {
+          if (!(isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel)) {
+            longs[index][row] = reader.getLong();
+          }
+          reader.consume();
+        }
+        break;
+      case FLOAT:
+        for (int row = 0; row < count; row++) {
+          if (!(isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel)) {
+            doubles[index][row] = reader.getFloat();
+          }
+          reader.consume();
+        }
+        break;
+      case DOUBLE:
+        for (int row = 0; row < count; row++) {
+          if (!(isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel)) {
+            doubles[index][row] = reader.getDouble();
+          }
+          reader.consume();
+        }
+        break;
+      default:
+        // the converter of the column stores either the dictionary id or the value
+        for (int row = 0; row < count; row++) {
+          if (isNull[row] = reader.getCurrentDefinitionLevel() != maxDefinitionLevel) {
+            binaries[index][row] = null;
+            dictionaryIds[index][row] = -1;
+          } else {
+            this.row = row;
+            reader.writeCurrentValueToConverter();
+          }
+          reader.consume();
+        }
+        break;
+    }
+  }
+
+  public boolean isNull(int column, int row) {
+    return nulls[column][row];
+  }
+
+  /**
+   * @return the value of a boolean, int32 or int64 column, where booleans are 0 or 1
+   */
+  public long getLong(int column, int row) {
+    return longs[column][row];
+  }
+
+  /**
+   * @return the value of a float or double column
+   */
+  public double getDouble(int column, int row) {
+    return doubles[column][row];
+  }
+
+  /**
+   * @return the value of a binary, fixed length or int96 column, or null
+   */
+  public Binary getBinary(int column, int row) {
+    int id = dictionaryIds[column][row];
+    return id < 0 ? binaries[column][row] : dictionaries[column].decodeToBinary(id);
+  }
+
+  /**
+   * @return the dictionary id of the value of a binary, fixed length or int96 column, or -1 if the
+   * value is null or not dictionary encoded
+   */
+  public int getDictionaryId(int column, int row) {
+    return dictionaryIds[column][row];
+  }
+
+  /**
+   * @return the dictionary of the column in the opened row group, or null if it has none
+   */
+  public Dictionary getDictionary(int column) {
+    return dictionaries[column];
+  }
+
+  long[] longs(int column) {
+    return longs[column];
+  }
+
+  double[] doubles(int column) {
+    return doubles[column];
+  }
+
+  Binary[] binaries(int column) {
+    return binaries[column];
+  }
+
+  boolean[] nulls(int column) {
+    return nulls[column];
+  }
+
+  int[] dictionaryIds(int column) {
+    return dictionaryIds[column];
+  }
+
+  private final class VectorGroupConverter extends GroupConverter {
+
+    private final Converter[] converters;
+
+    private VectorGroupConverter(GroupType type, List<String> path) {
+      this.converters = new Converter[type.getFieldCount()];
+      for (int i = 0; i < converters.length; i++) {
+        Type field = type.getType(i);
+        List<String> fieldPath = new ArrayList<>(path);
+        fieldPath.add(field.getName());
+        if (!field.isPrimitive()) {
+          converters[i] = new VectorGroupConverter(field.asGroupType(), fieldPath);
+        } else {
+          int index = indexOf(ColumnPath.get(fieldPath.toArray(new String[0])));
+          converters[i] = binaries[index] == null ? new PrimitiveConverter() {
+          } : new BinaryConverter(index);
+        }
+      }
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+    }
+
+    @Override
+    public void end() {
+    }
+  }
+
+  private final class BinaryConverter extends PrimitiveConverter {
+
+    private final int column;
+
+    private BinaryConverter(int column) {
+      this.column = column;
+    }
+
+    @Override
+    public boolean hasDictionarySupport() {
+      return true;
+    }
+
+    @Override
+    public void setDictionary(Dictionary dictionary) {
+      dictionaries[column] = dictionary;
+    }
+
+    @Override
+    public void addValueFromDictionary(int dictionaryId) {
+      binaries[column][row] = null;
+      dictionaryIds[column][row] = dictionaryId;
+    }
+
+    @Override
+    public void addBinary(Binary value) {
+      binaries[column][row] = value;
+      dictionaryIds[column][row] = -1;
+    }
+  }
+}
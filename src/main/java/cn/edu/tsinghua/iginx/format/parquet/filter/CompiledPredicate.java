@@ -0,0 +1,748 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.filter;
+
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.LogicalInverseRewriter;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.filter2.predicate.SchemaCompatibilityValidator;
+import org.apache.parquet.filter2.predicate.UserDefinedPredicate;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveComparator;
+import org.apache.parquet.schema.PrimitiveType;
+
+import java.util.*;
+
+/**
+ * A {@link FilterPredicate} compiled into a tree of evaluators specialized by column type and
+ * operator. A batch of {@link ColumnVectors} is evaluated column by column into a selection bitmap,
+ * where bit {@code i % 64} of word {@code i / 64} is set if row {@code i} matches. Values are
+ * compared unboxed, in the order of the comparator of their column, and the operator is resolved
+ * once when compiling rather than once per value. Only user-defined predicates see boxed values.
+ * Comparisons and sets of binary values are evaluated once per dictionary entry, and then over the
+ * dictionary ids of the rows.
+ *
+ * <p>Nulls are handled like the record filters of parquet-mr, except that {@code notIn} keeps the
+ * values which are not in the set. A filter column which is not in the schema is null in every
+ * row. Instances keep scratch bitmaps and must not be shared between threads.
+ */
+public final class CompiledPredicate {
+
+  // the outcomes of a comparison with the target which match, indexed by its sign + 1
+  private static final int LT = 0b001;
+  private static final int EQ = 0b010;
+  private static final int GT = 0b100;
+
+  private final MessageType schema;
+  private final Node root;
+  private final Set<ColumnPath> columns;
+
+  private CompiledPredicate(MessageType schema, Node root, Set<ColumnPath> columns) {
+    this.schema = schema;
+    this.root = root;
+    this.columns = Collections.unmodifiableSet(columns);
+  }
+
+  /**
+   * Compile a predicate against the columns of vectors of the given schema.
+   *
+   * @param predicate the predicate to compile
+   * @param schema    the schema of the vectors which will be evaluated
+   * @return the compiled predicate
+   * @throws IllegalArgumentException if a column of the predicate is repeated or does not match the
+   *                                  type of the column in the schema
+   */
+  public static CompiledPredicate compile(FilterPredicate predicate, MessageType schema) {
+    SchemaCompatibilityValidator.validate(predicate, schema);
+    Compiler compiler = new Compiler(schema);
+    Node root = LogicalInverseRewriter.rewrite(predicate).accept(compiler);
+    return new CompiledPredicate(schema, root, compiler.columns);
+  }
+
+  /**
+   * @return the compiled predicate of the filter, or null if it is not a predicate filter or uses a
+   * repeated column of the schema
+   */
+  public static CompiledPredicate compile(FilterCompat.Filter filter, MessageType schema) {
+    if (!(filter instanceof FilterCompat.FilterPredicateCompat)) {
+      return null;
+    }
+    FilterPredicate predicate = ((FilterCompat.FilterPredicateCompat) filter).getFilterPredicate();
+    Compiler compiler = new Compiler(schema);
+    Node root = LogicalInverseRewriter.rewrite(predicate).accept(compiler);
+    if (compiler.repeated) {
+      return null;
+    }
+    SchemaCompatibilityValidator.validate(predicate, schema);
+    return new CompiledPredicate(schema, root, compiler.columns);
+  }
+
+  /**
+   * @return the schema of the vectors the predicate was compiled against
+   */
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  /**
+   * @return the columns read by the predicate which are in the schema
+   */
+  public Set<ColumnPath> getColumns() {
+    return columns;
+  }
+
+  /**
+   * Evaluate the predicate over the current batch of the vectors.
+   *
+   * @param vectors   the vectors, of the schema the predicate was compiled against
+   * @param selection the bitmap to fill, of at least {@link #words(int) words(size)} words
+   * @return the number of matching rows
+   */
+  public int evaluate(ColumnVectors vectors, long[] selection) {
+    if (vectors.getSchema() != schema && !vectors.getSchema().equals(schema)) {
+      throw new IllegalArgumentException("The vectors do not match the schema of the predicate");
+    }
+    int size = vectors.getSize();
+    root.evaluate(vectors, size, selection);
+    int count = 0;
+    for (int word = 0, words = words(size); word < words; word++) {
+      count += Long.bitCount(selection[word]);
+    }
+    return count;
+  }
+
+  /**
+   * @return the number of words of the selection bitmap of the given number of rows
+   */
+  public static int words(int rows) {
+    return (rows + 63) >>> 6;
+  }
+
+  private static void fill(long[] out, int size, boolean value) {
+    int words = words(size);
+    Arrays.fill(out, 0, words, value ? -1L : 0L);
+    clearTail(out, size);
+  }
+
+  private static void clearTail(long[] out, int size) {
+    if ((size & 63) != 0) {
+      out[size >>> 6] &= (1L << size) - 1;
+    }
+  }
+
+  private abstract static class Node {
+
+    /**
+     * Fill the first {@code words(size)} words of the bitmap, leaving the bits after the batch clear.
+     */
+    abstract void evaluate(ColumnVectors vectors, int size, long[] out);
+  }
+
+  private static final class Constant extends Node {
+
+    private final boolean value;
+
+    private Constant(boolean value) {
+      this.value = value;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      fill(out, size, value);
+    }
+  }
+
+  private static final class And extends Node {
+
+    private final Node left;
+    private final Node right;
+    private long[] scratch = new long[0];
+
+    private And(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      left.evaluate(vectors, size, out);
+      int words = words(size);
+      long any = 0;
+      for (int word = 0; word < words; word++) {
+        any |= out[word];
+      }
+      if (any == 0) {
+        return;
+      }
+      if (scratch.length < words) {
+        scratch = new long[words];
+      }
+      right.evaluate(vectors, size, scratch);
+      for (int word = 0; word < words; word++) {
+        out[word] &= scratch[word];
+      }
+    }
+  }
+
+  private static final class Or extends Node {
+
+    private final Node left;
+    private final Node right;
+    private long[] scratch = new long[0];
+
+    private Or(Node left, Node right) {
+      this.left = left;
+      this.right = right;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      left.evaluate(vectors, size, out);
+      int words = words(size);
+      if (scratch.length < words) {
+        scratch = new long[words];
+      }
+      right.evaluate(vectors, size, scratch);
+      for (int word = 0; word < words; word++) {
+        out[word] |= scratch[word];
+      }
+    }
+  }
+
+  private static final class Not extends Node {
+
+    private final Node child;
+
+    private Not(Node child) {
+      this.child = child;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      child.evaluate(vectors, size, out);
+      for (int word = 0, words = words(size); word < words; word++) {
+        out[word] = ~out[word];
+      }
+      clearTail(out, size);
+    }
+  }
+
+  private static final class IsNull extends Node {
+
+    private final int column;
+    private final boolean whenNull;
+
+    private IsNull(int column, boolean whenNull) {
+      this.column = column;
+      this.whenNull = whenNull;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      boolean[] nulls = vectors.nulls(column);
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          if (nulls[i] == whenNull) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+  }
+
+  /**
+   * Compares the keys of boolean, int32 and int64 values, where the key of {@code x} is
+   * {@code (x & mask) ^ bias}, so that unsigned values are compared as signed longs.
+   */
+  private static final class LongCompare extends Node {
+
+    private final int column;
+    private final int signs;
+    private final boolean whenNull;
+    private final long target;
+    private final long mask;
+    private final long bias;
+
+    private LongCompare(int column, int signs, boolean whenNull, long target, long mask, long bias) {
+      this.column = column;
+      this.signs = signs;
+      this.whenNull = whenNull;
+      this.target = target;
+      this.mask = mask;
+      this.bias = bias;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      long[] values = vectors.longs(column);
+      boolean[] nulls = vectors.nulls(column);
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          boolean match = nulls[i]
+              ? whenNull
+              : ((signs >>> (Long.compare((values[i] & mask) ^ bias, target) + 1)) & 1) != 0;
+          if (match) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+  }
+
+  /**
+   * Compares float and double values by their {@link #sortable(double) sortable} keys.
+   */
+  private static final class DoubleCompare extends Node {
+
+    private final int column;
+    private final int signs;
+    private final boolean whenNull;
+    private final long target;
+
+    private DoubleCompare(int column, int signs, boolean whenNull, long target) {
+      this.column = column;
+      this.signs = signs;
+      this.whenNull = whenNull;
+      this.target = target;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      double[] values = vectors.doubles(column);
+      boolean[] nulls = vectors.nulls(column);
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          boolean match = nulls[i]
+              ? whenNull
+              : ((signs >>> (Long.compare(sortable(values[i]), target) + 1)) & 1) != 0;
+          if (match) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+  }
+
+  /**
+   * Evaluates a test of binary values. The test is translated once per column chunk into the
+   * matching ids of its dictionary, so that dictionary encoded values are never looked up.
+   */
+  private abstract static class BinaryLeaf extends Node {
+
+    private final int column;
+    private final boolean whenNull;
+    private Dictionary dictionary = null;
+    private boolean[] dictionaryMatches = null;
+
+    private BinaryLeaf(int column, boolean whenNull) {
+      this.column = column;
+      this.whenNull = whenNull;
+    }
+
+    abstract boolean test(Binary value);
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      Binary[] values = vectors.binaries(column);
+      int[] ids = vectors.dictionaryIds(column);
+      boolean[] nulls = vectors.nulls(column);
+      boolean[] matches = translate(vectors.getDictionary(column));
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          boolean match;
+          if (nulls[i]) {
+            match = whenNull;
+          } else {
+            int id = ids[i];
+            match = id >= 0 ? matches[id] : test(values[i]);
+          }
+          if (match) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+
+    private boolean[] translate(Dictionary dictionary) {
+      if (dictionary != null && dictionary != this.dictionary) {
+        boolean[] matches = new boolean[dictionary.getMaxId() + 1];
+        for (int id = 0; id < matches.length; id++) {
+          matches[id] = test(dictionary.decodeToBinary(id));
+        }
+        this.dictionary = dictionary;
+        this.dictionaryMatches = matches;
+      }
+      return dictionaryMatches;
+    }
+  }
+
+  private static final class BinaryCompare extends BinaryLeaf {
+
+    private final int signs;
+    private final Binary target;
+    private final PrimitiveComparator<Binary> comparator;
+
+    private BinaryCompare(int column, int signs, boolean whenNull, Binary target, PrimitiveComparator<Binary> comparator) {
+      super(column, whenNull);
+      this.signs = signs;
+      this.target = target;
+      this.comparator = comparator;
+    }
+
+    @Override
+    boolean test(Binary value) {
+      return ((signs >>> (Integer.signum(comparator.compare(value, target)) + 1)) & 1) != 0;
+    }
+  }
+
+  /**
+   * Looks up the keys of boolean, int32 and int64 values, or the sortable keys of float and double
+   * values, in a sorted array.
+   */
+  private static final class KeyIn extends Node {
+
+    private final int column;
+    private final boolean floating;
+    private final long[] keys;
+    private final boolean whenFound;
+    private final boolean whenNull;
+    private final long mask;
+    private final long bias;
+
+    private KeyIn(int column, boolean floating, long[] keys, boolean whenFound, boolean whenNull, long mask, long bias) {
+      this.column = column;
+      this.floating = floating;
+      this.keys = keys;
+      this.whenFound = whenFound;
+      this.whenNull = whenNull;
+      this.mask = mask;
+      this.bias = bias;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      boolean[] nulls = vectors.nulls(column);
+      long[] longs = floating ? null : vectors.longs(column);
+      double[] doubles = floating ? vectors.doubles(column) : null;
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          boolean match;
+          if (nulls[i]) {
+            match = whenNull;
+          } else {
+            long key = floating ? sortable(doubles[i]) : (longs[i] & mask) ^ bias;
+            match = (Arrays.binarySearch(keys, key) >= 0) == whenFound;
+          }
+          if (match) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+  }
+
+  private static final class BinaryIn extends BinaryLeaf {
+
+    private final Binary[] values;
+    private final PrimitiveComparator<Binary> comparator;
+    private final boolean whenFound;
+
+    private BinaryIn(int column, Binary[] values, PrimitiveComparator<Binary> comparator, boolean whenFound, boolean whenNull) {
+      super(column, whenNull);
+      this.values = values;
+      this.comparator = comparator;
+      this.whenFound = whenFound;
+    }
+
+    @Override
+    boolean test(Binary value) {
+      return (Arrays.binarySearch(values, value, comparator) >= 0) == whenFound;
+    }
+  }
+
+  @SuppressWarnings({"rawtypes", "unchecked"})
+  private static final class UserDefined extends Node {
+
+    private final int column;
+    private final PrimitiveType.PrimitiveTypeName type;
+    private final UserDefinedPredicate predicate;
+    private final boolean whenKept;
+    private final boolean whenNull;
+
+    private UserDefined(int column, PrimitiveType.PrimitiveTypeName type, UserDefinedPredicate predicate, boolean whenKept) {
+      this.column = column;
+      this.type = type;
+      this.predicate = predicate;
+      this.whenKept = whenKept;
+      this.whenNull = predicate.acceptsNullValue() == whenKept;
+    }
+
+    @Override
+    void evaluate(ColumnVectors vectors, int size, long[] out) {
+      boolean[] nulls = vectors.nulls(column);
+      for (int word = 0, base = 0; base < size; word++, base += 64) {
+        long bits = 0;
+        for (int i = base, end = Math.min(size, base + 64); i < end; i++) {
+          boolean match = nulls[i] ? whenNull : predicate.keep(box(vectors, i)) == whenKept;
+          if (match) {
+            bits |= 1L << i;
+          }
+        }
+        out[word] = bits;
+      }
+    }
+
+    private Comparable<?> box(ColumnVectors vectors, int row) {
+      switch (type) {
+        case BOOLEAN:
+          return vectors.getLong(column, row) != 0;
+        case INT32:
+          return (int) vectors.getLong(column, row);
+        case INT64:
+          return vectors.getLong(column, row);
+        case FLOAT:
+          return (float) vectors.getDouble(column, row);
+        case DOUBLE:
+          return vectors.getDouble(column, row);
+        default:
+          return vectors.getBinary(column, row);
+      }
+    }
+  }
+
+  /**
+   * @return a key of the value whose signed order is the order of {@link Double#compare}
+   */
+  private static long sortable(double value) {
+    long bits = Double.doubleToLongBits(value);
+    return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+  }
+
+  private static final class Compiler implements FilterPredicate.Visitor<Node> {
+
+    private final MessageType schema;
+    private final Map<ColumnPath, Integer> indexes = new HashMap<>();
+    private final Set<ColumnPath> columns = new LinkedHashSet<>();
+    private boolean repeated = false;
+
+    private Compiler(MessageType schema) {
+      this.schema = schema;
+      List<ColumnDescriptor> descriptors = schema.getColumns();
+      for (int i = 0; i < descriptors.size(); i++) {
+        indexes.put(ColumnPath.get(descriptors.get(i).getPath()), i);
+      }
+    }
+
+    /**
+     * @return the index of the column in the vectors, or -1 if it is always null
+     */
+    private int indexOf(Operators.Column<?> column) {
+      Integer index = indexes.get(column.getColumnPath());
+      if (index == null) {
+        return -1;
+      }
+      columns.add(column.getColumnPath());
+      repeated |= schema.getColumns().get(index).getMaxRepetitionLevel() > 0;
+      return index;
+    }
+
+    private PrimitiveType typeOf(int index) {
+      return schema.getColumns().get(index).getPrimitiveType();
+    }
+
+    private Node compare(Operators.Column<?> column, Object value, int signs, boolean whenNull) {
+      int index = indexOf(column);
+      if (index < 0) {
+        return new Constant(whenNull);
+      }
+      PrimitiveType type = typeOf(index);
+      switch (type.getPrimitiveTypeName()) {
+        case BOOLEAN:
+        case INT32:
+        case INT64:
+          return new LongCompare(index, signs, whenNull, key(type, value), mask(type), bias(type));
+        case FLOAT:
+        case DOUBLE:
+          return new DoubleCompare(index, signs, whenNull, sortable(((Number) value).doubleValue()));
+        default:
+          return new BinaryCompare(index, signs, whenNull, (Binary) value, type.comparator());
+      }
+    }
+
+    private Node isNull(Operators.Column<?> column, boolean whenNull) {
+      int index = indexOf(column);
+      return index < 0 ? new Constant(whenNull) : new IsNull(index, whenNull);
+    }
+
+    private Node in(Operators.Column<?> column, Set<?> values, boolean whenFound) {
+      boolean containsNull = values.contains(null);
+      boolean whenNull = containsNull == whenFound;
+      int index = indexOf(column);
+      if (index < 0) {
+        return new Constant(whenNull);
+      }
+      PrimitiveType type = typeOf(index);
+      int size = values.size() - (containsNull ? 1 : 0);
+      switch (type.getPrimitiveTypeName()) {
+        case BOOLEAN:
+        case INT32:
+        case INT64:
+        case FLOAT:
+        case DOUBLE: {
+          boolean floating = type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.FLOAT
+              || type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.DOUBLE;
+          long[] keys = new long[size];
+          int i = 0;
+          for (Object value : values) {
+            if (value != null) {
+              keys[i++] = floating ? sortable(((Number) value).doubleValue()) : key(type, value);
+            }
+          }
+          Arrays.sort(keys);
+          return new KeyIn(index, floating, keys, whenFound, whenNull, mask(type), bias(type));
+        }
+        default: {
+          PrimitiveComparator<Binary> comparator = type.comparator();
+          Binary[] sorted = new Binary[size];
+          int i = 0;
+          for (Object value : values) {
+            if (value != null) {
+              sorted[i++] = (Binary) value;
+            }
+          }
+          Arrays.sort(sorted, comparator);
+          return new BinaryIn(index, sorted, comparator, whenFound, whenNull);
+        }
+      }
+    }
+
+    private static long key(PrimitiveType type, Object value) {
+      long x;
+      if (value instanceof Boolean) {
+        x = (Boolean) value ? 1 : 0;
+      } else {
+        x = ((Number) value).longValue();
+      }
+      return (x & mask(type)) ^ bias(type);
+    }
+
+    private static long mask(PrimitiveType type) {
+      return type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.INT32 && isUnsigned(type) ? 0xFFFFFFFFL : -1L;
+    }
+
+    private static long bias(PrimitiveType type) {
+      return type.getPrimitiveTypeName() == PrimitiveType.PrimitiveTypeName.INT64 && isUnsigned(type) ? Long.MIN_VALUE : 0L;
+    }
+
+    private static boolean isUnsigned(PrimitiveType type) {
+      LogicalTypeAnnotation annotation = type.getLogicalTypeAnnotation();
+      return annotation instanceof LogicalTypeAnnotation.IntLogicalTypeAnnotation
+          && !((LogicalTypeAnnotation.IntLogicalTypeAnnotation) annotation).isSigned();
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.Eq<T> eq) {
+      return eq.getValue() == null ? isNull(eq.getColumn(), true) : compare(eq.getColumn(), eq.getValue(), EQ, false);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.NotEq<T> notEq) {
+      return notEq.getValue() == null ? isNull(notEq.getColumn(), false) : compare(notEq.getColumn(), notEq.getValue(), LT | GT, true);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.Lt<T> lt) {
+      return compare(lt.getColumn(), lt.getValue(), LT, false);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.LtEq<T> ltEq) {
+      return compare(ltEq.getColumn(), ltEq.getValue(), LT | EQ, false);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.Gt<T> gt) {
+      return compare(gt.getColumn(), gt.getValue(), GT, false);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.GtEq<T> gtEq) {
+      return compare(gtEq.getColumn(), gtEq.getValue(), GT | EQ, false);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.In<T> in) {
+      return in(in.getColumn(), in.getValues(), true);
+    }
+
+    @Override
+    public <T extends Comparable<T>> Node visit(Operators.NotIn<T> notIn) {
+      return in(notIn.getColumn(), notIn.getValues(), false);
+    }
+
+    @Override
+    public Node visit(Operators.And and) {
+      return new And(and.getLeft().accept(this), and.getRight().accept(this));
+    }
+
+    @Override
+    public Node visit(Operators.Or or) {
+      return new Or(or.getLeft().accept(this), or.getRight().accept(this));
+    }
+
+    @Override
+    public Node visit(Operators.Not not) {
+      return new Not(not.getPredicate().accept(this));
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Node visit(Operators.UserDefined<T, U> udp) {
+      return userDefined(udp.getColumn(), udp.getUserDefinedPredicate(), true);
+    }
+
+    @Override
+    public <T extends Comparable<T>, U extends UserDefinedPredicate<T>> Node visit(Operators.LogicalNotUserDefined<T, U> udp) {
+      return userDefined(udp.getUserDefined().getColumn(), udp.getUserDefined().getUserDefinedPredicate(), false);
+    }
+
+    private Node userDefined(Operators.Column<?> column, UserDefinedPredicate<?> predicate, boolean whenKept) {
+      int index = indexOf(column);
+      if (index < 0) {
+        return new Constant(predicate.acceptsNullValue() == whenKept);
+      }
+      return new UserDefined(index, typeOf(index).getPrimitiveTypeName(), predicate, whenKept);
+    }
+  }
+}
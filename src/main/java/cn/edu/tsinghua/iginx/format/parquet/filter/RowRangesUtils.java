@@ -0,0 +1,163 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.filter;
+
+import org.apache.parquet.internal.column.columnindex.OffsetIndex;
+import org.apache.parquet.internal.filter2.columnindex.RowRanges;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Helpers to build and combine {@link RowRanges}, whose constructors are not accessible outside
+ * parquet-column.
+ */
+public final class RowRangesUtils {
+
+  private RowRangesUtils() {
+  }
+
+  /**
+   * @param rowCount the number of rows in the row group
+   * @return the ranges containing every row of the row group
+   */
+  public static RowRanges all(long rowCount) {
+    if (rowCount <= 0) {
+      return RowRanges.EMPTY;
+    }
+    return RowRanges.createSingle(rowCount);
+  }
+
+  /**
+   * Creates row ranges from inclusive bounds. The ranges must be in ascending order, adjacent or
+   * overlapping ranges are merged.
+   *
+   * @param from the first row index of each range
+   * @param to   the last row index of each range
+   * @param size the number of ranges
+   * @return the row ranges
+   */
+  public static RowRanges create(long[] from, long[] to, int size) {
+    if (size == 0) {
+      return RowRanges.EMPTY;
+    }
+    long[] froms = Arrays.copyOf(from, size);
+    long[] tos = Arrays.copyOf(to, size);
+    return RowRanges.create(tos[size - 1] + 1, IntStream.range(0, size).iterator(), new BoundsOffsetIndex(froms, tos));
+  }
+
+  /**
+   * @param ranges   the ranges to complement
+   * @param rowCount the number of rows in the row group
+   * @return the rows of the row group which are not in {@code ranges}
+   */
+  public static RowRanges complement(RowRanges ranges, long rowCount) {
+    List<RowRanges.Range> list = ranges.getRanges();
+    long[] from = new long[list.size() + 1];
+    long[] to = new long[list.size() + 1];
+    int size = 0;
+    long next = 0;
+    for (RowRanges.Range range : list) {
+      if (range.from > next) {
+        from[size] = next;
+        to[size] = range.from - 1;
+        size++;
+      }
+      next = Math.max(next, range.to + 1);
+    }
+    if (next < rowCount) {
+      from[size] = next;
+      to[size] = rowCount - 1;
+      size++;
+    }
+    return create(from, to, size);
+  }
+
+  /**
+   * @param left     the ranges to subtract from
+   * @param right    the ranges to subtract
+   * @param rowCount the number of rows in the row group
+   * @return the rows of {@code left} which are not in {@code right}
+   */
+  public static RowRanges subtract(RowRanges left, RowRanges right, long rowCount) {
+    if (right.rowCount() == 0) {
+      return left;
+    }
+    return RowRanges.intersection(left, complement(right, rowCount));
+  }
+
+  /**
+   * @param ranges the ranges to look up
+   * @param from   the first row index, inclusive
+   * @param to     the last row index, inclusive
+   * @return whether every row of {@code [from, to]} is in {@code ranges}
+   */
+  public static boolean contains(RowRanges ranges, long from, long to) {
+    for (RowRanges.Range range : ranges.getRanges()) {
+      if (range.from <= from && to <= range.to) {
+        return true;
+      }
+      if (range.from > from) {
+        return false;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * An offset index whose pages are the requested ranges, used only to feed
+   * {@link RowRanges#create(long, java.util.PrimitiveIterator.OfInt, OffsetIndex)}.
+   */
+  private static final class BoundsOffsetIndex implements OffsetIndex {
+
+    private final long[] from;
+    private final long[] to;
+
+    private BoundsOffsetIndex(long[] from, long[] to) {
+      this.from = from;
+      this.to = to;
+    }
+
+    @Override
+    public int getPageCount() {
+      return from.length;
+    }
+
+    @Override
+    public long getOffset(int pageIndex) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public int getCompressedPageSize(int pageIndex) {
+      throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public long getFirstRowIndex(int pageIndex) {
+      return from[pageIndex];
+    }
+
+    @Override
+    public long getLastRowIndex(int pageIndex, long rowGroupRowCount) {
+      return to[pageIndex];
+    }
+  }
+}
@@ -0,0 +1,57 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.filter;
+
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Helpers to derive the requested schemas of readers from file schemas.
+ */
+public final class SchemaUtils {
+
+  private SchemaUtils() {
+  }
+
+  /**
+   * Prunes the schema to the given columns.
+   *
+   * @param schema the schema to prune
+   * @param paths  the paths of the columns to keep, which may name groups
+   * @return the pruned schema
+   */
+  public static MessageType project(MessageType schema, Collection<ColumnPath> paths) {
+    MessageType projection = new MessageType(schema.getName());
+    for (ColumnPath path : paths) {
+      String[] names = path.toArray();
+      Type type = schema.getType(names);
+      for (int depth = names.length - 1; depth > 0; depth--) {
+        GroupType parent = schema.getType(Arrays.copyOf(names, depth)).asGroupType();
+        type = parent.withNewFields(type);
+      }
+      projection = projection.union(new MessageType(schema.getName(), type));
+    }
+    return projection;
+  }
+}
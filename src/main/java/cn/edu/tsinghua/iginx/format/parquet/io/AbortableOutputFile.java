@@ -0,0 +1,90 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.io;
+
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.PositionOutputStream;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Objects;
+
+/**
+ * An output file which keeps the stream it creates, so that a writer failing before the file is
+ * complete can close the stream and drop the file, as {@code ParquetFileWriter} never closes its
+ * stream in that case.
+ */
+public class AbortableOutputFile implements OutputFile {
+
+  private final OutputFile delegate;
+  private PositionOutputStream stream = null;
+
+  public AbortableOutputFile(OutputFile delegate) {
+    this.delegate = Objects.requireNonNull(delegate);
+  }
+
+  @Override
+  public PositionOutputStream create(long blockSizeHint) throws IOException {
+    stream = delegate.create(blockSizeHint);
+    return stream;
+  }
+
+  @Override
+  public PositionOutputStream createOrOverwrite(long blockSizeHint) throws IOException {
+    stream = delegate.createOrOverwrite(blockSizeHint);
+    return stream;
+  }
+
+  @Override
+  public boolean supportsBlockSize() {
+    return delegate.supportsBlockSize();
+  }
+
+  @Override
+  public long defaultBlockSize() {
+    return delegate.defaultBlockSize();
+  }
+
+  @Override
+  public String getPath() {
+    return delegate.getPath();
+  }
+
+  /**
+   * Closes the created stream, if any, and deletes the file if it is a {@link LocalOutputFile}.
+   * Other files are only closed. Nothing is done if no stream was created, so an existing file is
+   * never deleted.
+   *
+   * @throws IOException if the stream cannot be closed or the file cannot be deleted
+   */
+  public void abort() throws IOException {
+    if (stream == null) {
+      return;
+    }
+    try {
+      stream.close();
+    } finally {
+      stream = null;
+      if (delegate instanceof LocalOutputFile) {
+        Files.deleteIfExists(Paths.get(delegate.getPath()));
+      }
+    }
+  }
+}
@@ -24,11 +24,13 @@ package cn.edu.tsinghua.iginx.format.parquet.io;
 import org.apache.parquet.io.InputFile;
 import org.apache.parquet.io.SeekableInputStream;
 
+import java.io.EOFException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class LocalInputFile implements InputFile {
 
@@ -43,57 +45,82 @@ public class LocalInputFile implements InputFile {
     return Files.size(path);
   }
 
+  /**
+   * Open a stream reading the file through a {@link FileChannel} at its own position, so that
+   * seeking does not touch the file and the reads do not contend on the position lock of the
+   * channel. The reads block the calling thread in the file system only, without holding a monitor,
+   * which keeps them cheap for virtual threads.
+   */
   @Override
   public SeekableInputStream newStream() throws IOException {
 
+    FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
     return new SeekableInputStream() {
 
-      private final RandomAccessFile randomAccessFile = new RandomAccessFile(path.toFile(), "r");
+      private final byte[] single = new byte[1];
+      private long pos = 0;
 
       @Override
       public int read() throws IOException {
-        return randomAccessFile.read();
+        int code = read(single, 0, 1);
+        return code <= 0 ? -1 : single[0] & 0xFF;
       }
 
       @Override
-      public long getPos() throws IOException {
-        return randomAccessFile.getFilePointer();
+      public long getPos() {
+        return pos;
       }
 
       @Override
-      public void seek(long newPos) throws IOException {
-        randomAccessFile.seek(newPos);
+      public void seek(long newPos) {
+        pos = newPos;
       }
 
       @Override
       public void readFully(byte[] bytes) throws IOException {
-        randomAccessFile.readFully(bytes);
+        readFully(bytes, 0, bytes.length);
       }
 
       @Override
       public void readFully(byte[] bytes, int start, int len) throws IOException {
-        randomAccessFile.readFully(bytes, start, len);
+        readFully(ByteBuffer.wrap(bytes, start, len));
+      }
+
+      @Override
+      public int read(byte[] bytes, int start, int len) throws IOException {
+        if (len == 0) {
+          return 0;
+        }
+        return read(ByteBuffer.wrap(bytes, start, len));
       }
 
       @Override
       public int read(ByteBuffer buf) throws IOException {
-        byte[] buffer = new byte[buf.remaining()];
-        int code = read(buffer);
-        buf.put(buffer, buf.position() + buf.arrayOffset(), buf.remaining());
+        int code = channel.read(buf, pos);
+        if (code > 0) {
+          pos += code;
+        }
         return code;
       }
 
       @Override
       public void readFully(ByteBuffer buf) throws IOException {
-        byte[] buffer = new byte[buf.remaining()];
-        readFully(buffer);
-        buf.put(buffer, buf.position() + buf.arrayOffset(), buf.remaining());
+        while (buf.hasRemaining()) {
+          if (read(buf) < 0) {
+            throw new EOFException("Reached the end of " + path + " with " + buf.remaining() + " bytes left to read");
+          }
+        }
       }
 
       @Override
       public void close() throws IOException {
-        randomAccessFile.close();
+        channel.close();
       }
     };
   }
+
+  @Override
+  public String toString() {
+    return path.toAbsolutePath().toString();
+  }
 }
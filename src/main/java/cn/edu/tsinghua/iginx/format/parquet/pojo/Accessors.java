@@ -0,0 +1,145 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandleProxies;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Executable;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * Generates the accessors of bean properties as lambdas with {@link LambdaMetafactory}, so that
+ * they are called like hand-written code and primitive values are not boxed. Classes which are not
+ * accessible from this package fall back to {@link MethodHandleProxies}.
+ */
+final class Accessors {
+
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+  private Accessors() {
+  }
+
+  public interface BooleanGetter {
+    boolean get(Object bean);
+  }
+
+  public interface BooleanSetter {
+    void set(Object bean, boolean value);
+  }
+
+  public interface IntGetter {
+    int get(Object bean);
+  }
+
+  public interface IntSetter {
+    void set(Object bean, int value);
+  }
+
+  public interface LongGetter {
+    long get(Object bean);
+  }
+
+  public interface LongSetter {
+    void set(Object bean, long value);
+  }
+
+  public interface FloatGetter {
+    float get(Object bean);
+  }
+
+  public interface FloatSetter {
+    void set(Object bean, float value);
+  }
+
+  public interface DoubleGetter {
+    double get(Object bean);
+  }
+
+  public interface DoubleSetter {
+    void set(Object bean, double value);
+  }
+
+  @SuppressWarnings("unchecked")
+  static <T> Supplier<T> constructor(Constructor<T> constructor) {
+    return generate(Supplier.class, "get", MethodType.methodType(Object.class), constructor);
+  }
+
+  /**
+   * @param getter the getter of a property
+   * @param type   one of the getter interfaces above, or {@link Function}
+   */
+  static <F> F getter(Method getter, Class<F> type) {
+    Class<?> returnType = getter.getReturnType();
+    MethodType samType = MethodType.methodType(returnType.isPrimitive() ? returnType : Object.class, Object.class);
+    return generate(type, type == Function.class ? "apply" : "get", samType, getter);
+  }
+
+  /**
+   * @param setter the setter of a property
+   * @param type   one of the setter interfaces above, or {@link BiConsumer}
+   */
+  static <F> F setter(Method setter, Class<F> type) {
+    Class<?> valueType = setter.getParameterTypes()[0];
+    MethodType samType = MethodType.methodType(void.class, Object.class, valueType.isPrimitive() ? valueType : Object.class);
+    return generate(type, type == BiConsumer.class ? "accept" : "set", samType, setter);
+  }
+
+  private static <F> F generate(Class<F> type, String name, MethodType samType, Executable executable) {
+    MethodHandle handle;
+    try {
+      executable.setAccessible(true);
+      handle = executable instanceof Method
+          ? LOOKUP.unreflect((Method) executable)
+          : LOOKUP.unreflectConstructor((Constructor<?>) executable);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      throw new IllegalArgumentException("Cannot access " + executable, e);
+    }
+    if (isAccessible(executable)) {
+      try {
+        CallSite site = LambdaMetafactory.metafactory(
+            LOOKUP, name, MethodType.methodType(type), samType, handle, handle.type());
+        return type.cast(site.getTarget().invoke());
+      } catch (Throwable e) {
+        // fall back to a proxy below
+      }
+    }
+    return MethodHandleProxies.asInterfaceInstance(type, handle.asType(samType));
+  }
+
+  private static boolean isAccessible(Executable executable) {
+    if (!Modifier.isPublic(executable.getModifiers())) {
+      return false;
+    }
+    for (Class<?> c = executable.getDeclaringClass(); c != null; c = c.getEnclosingClass()) {
+      if (!Modifier.isPublic(c.getModifiers())) {
+        return false;
+      }
+    }
+    return true;
+  }
+}
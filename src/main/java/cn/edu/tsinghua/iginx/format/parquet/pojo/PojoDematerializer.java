@@ -0,0 +1,49 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
+import org.apache.parquet.io.api.RecordConsumer;
+
+import java.util.Objects;
+
+/**
+ * Writes beans of a {@link PojoModel} with the schema of the model. Null values of optional
+ * properties are written as missing fields.
+ */
+public class PojoDematerializer<T> extends RecordDematerializer<T> {
+  private final PojoModel<T> model;
+  private RecordConsumer recordConsumer;
+
+  public PojoDematerializer(PojoModel<T> model) {
+    this.model = Objects.requireNonNull(model);
+  }
+
+  @Override
+  public void prepare(RecordConsumer recordConsumer) {
+    this.recordConsumer = recordConsumer;
+  }
+
+  @Override
+  public void write(T record) {
+    recordConsumer.startMessage();
+    model.writeFields(recordConsumer, record);
+    recordConsumer.endMessage();
+  }
+}
@@ -0,0 +1,910 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.Converter;
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.PrimitiveConverter;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.GroupType;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType.PrimitiveTypeName;
+import org.apache.parquet.schema.Type;
+import org.apache.parquet.schema.Types;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.lang.reflect.ParameterizedType;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * The Parquet mapping of a Java bean class, introspected once per class.
+ *
+ * <p>The properties are the non-static, non-transient fields of the class and its superclasses, in
+ * declaration order, which have a public getter and setter. Primitive properties map to required
+ * columns; boxed primitives, {@link String}, {@code byte[]}, enums, nested beans and {@link List}s
+ * of these map to optional columns, lists with the standard three-level {@code LIST} layout. The
+ * bean must have a no-argument constructor.
+ *
+ * <p>The accessors are generated at runtime by {@link Accessors}, so reading and writing neither
+ * reflects nor builds an intermediate record: primitive values go straight between the column
+ * converters and the fields.
+ */
+public final class PojoModel<T> {
+
+  private static final Map<Class<?>, PojoModel<?>> MODELS = new ConcurrentHashMap<>();
+
+  private final Class<T> type;
+  private final Supplier<T> constructor;
+  private final List<Property> properties;
+  private final Map<String, Property> propertiesByName;
+  private final MessageType schema;
+
+  private PojoModel(Class<T> type, Deque<Class<?>> visiting) {
+    this.type = type;
+    Constructor<T> noArgs;
+    try {
+      noArgs = type.getDeclaredConstructor();
+    } catch (NoSuchMethodException e) {
+      throw new IllegalArgumentException("Bean class must have a no-argument constructor: " + type.getName(), e);
+    }
+    this.constructor = Accessors.constructor(noArgs);
+
+    visiting.push(type);
+    List<Property> properties = new ArrayList<>();
+    List<Class<?>> hierarchy = new ArrayList<>();
+    for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+      hierarchy.add(0, c);
+    }
+    for (Class<?> c : hierarchy) {
+      for (Field field : c.getDeclaredFields()) {
+        int modifiers = field.getModifiers();
+        if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()) {
+          continue;
+        }
+        Method getter = findGetter(type, field);
+        Method setter = findSetter(type, field);
+        if (getter != null && setter != null) {
+          properties.add(property(field, properties.size(), getter, setter, visiting));
+        }
+      }
+    }
+    visiting.pop();
+    if (properties.isEmpty()) {
+      throw new IllegalArgumentException("Bean class has no property: " + type.getName());
+    }
+
+    this.properties = Collections.unmodifiableList(properties);
+    this.propertiesByName = new LinkedHashMap<>();
+    List<Type> fields = new ArrayList<>();
+    for (Property property : properties) {
+      propertiesByName.put(property.name, property);
+      fields.add(property.type);
+    }
+    this.schema = new MessageType(type.getSimpleName(), fields);
+  }
+
+  /**
+   * @param type the bean class
+   * @return the model of the bean class
+   * @throws IllegalArgumentException if the class cannot be mapped
+   */
+  public static <T> PojoModel<T> of(Class<T> type) {
+    return of(type, new ArrayDeque<>());
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> PojoModel<T> of(Class<T> type, Deque<Class<?>> visiting) {
+    PojoModel<?> model = MODELS.get(type);
+    if (model == null) {
+      if (visiting.contains(type)) {
+        throw new IllegalArgumentException("Bean class must not contain itself: " + type.getName());
+      }
+      model = new PojoModel<>(type, visiting);
+      PojoModel<?> existing = MODELS.putIfAbsent(type, model);
+      if (existing != null) {
+        model = existing;
+      }
+    }
+    return (PojoModel<T>) model;
+  }
+
+  public Class<T> getType() {
+    return type;
+  }
+
+  /**
+   * @return the schema of the bean class
+   */
+  public MessageType getSchema() {
+    return schema;
+  }
+
+  /**
+   * Project a file schema on the properties of the bean class, dropping the columns which are not
+   * read into a property.
+   *
+   * @param fileSchema the schema of a file
+   * @return the requested schema
+   */
+  public MessageType project(MessageType fileSchema) {
+    List<Type> fields = new ArrayList<>();
+    for (Type field : fileSchema.getFields()) {
+      if (propertiesByName.containsKey(field.getName())) {
+        fields.add(field);
+      }
+    }
+    return new MessageType(fileSchema.getName(), fields);
+  }
+
+  T newInstance() {
+    return constructor.get();
+  }
+
+  void writeFields(RecordConsumer consumer, Object bean) {
+    for (Property property : properties) {
+      property.write(consumer, bean);
+    }
+  }
+
+  /**
+   * @param requested the requested type of the bean, whose fields may be a subset of the properties
+   * @param sink      receives every bean once its group ends
+   */
+  BeanConverter newConverter(GroupType requested, Consumer<Object> sink) {
+    return new BeanConverter(requested, sink);
+  }
+
+  private static Method findGetter(Class<?> type, Field field) {
+    String suffix = capitalize(field.getName());
+    Method getter = findMethod(type, "get" + suffix);
+    if (getter == null && field.getType() == boolean.class) {
+      getter = findMethod(type, "is" + suffix);
+    }
+    return getter != null && getter.getReturnType() == field.getType() ? getter : null;
+  }
+
+  private static Method findSetter(Class<?> type, Field field) {
+    Method setter = findMethod(type, "set" + capitalize(field.getName()), field.getType());
+    return setter != null && setter.getReturnType() == void.class ? setter : null;
+  }
+
+  private static Method findMethod(Class<?> type, String name, Class<?>... parameterTypes) {
+    try {
+      Method method = type.getMethod(name, parameterTypes);
+      return Modifier.isStatic(method.getModifiers()) ? null : method;
+    } catch (NoSuchMethodException e) {
+      return null;
+    }
+  }
+
+  private static String capitalize(String name) {
+    return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+  }
+
+  private static Property property(Field field, int index, Method getter, Method setter, Deque<Class<?>> visiting) {
+    String name = field.getName();
+    Class<?> fieldType = field.getType();
+    if (fieldType == boolean.class) {
+      return new BooleanProperty(name, index,
+          Accessors.getter(getter, Accessors.BooleanGetter.class), Accessors.setter(setter, Accessors.BooleanSetter.class));
+    } else if (fieldType == int.class) {
+      return new IntProperty(name, index,
+          Accessors.getter(getter, Accessors.IntGetter.class), Accessors.setter(setter, Accessors.IntSetter.class));
+    } else if (fieldType == long.class) {
+      return new LongProperty(name, index,
+          Accessors.getter(getter, Accessors.LongGetter.class), Accessors.setter(setter, Accessors.LongSetter.class));
+    } else if (fieldType == float.class) {
+      return new FloatProperty(name, index,
+          Accessors.getter(getter, Accessors.FloatGetter.class), Accessors.setter(setter, Accessors.FloatSetter.class));
+    } else if (fieldType == double.class) {
+      return new DoubleProperty(name, index,
+          Accessors.getter(getter, Accessors.DoubleGetter.class), Accessors.setter(setter, Accessors.DoubleSetter.class));
+    }
+    ValueType valueType = valueType(field.getGenericType(), field, visiting);
+    @SuppressWarnings("unchecked")
+    Function<Object, Object> objectGetter = Accessors.getter(getter, Function.class);
+    @SuppressWarnings("unchecked")
+    BiConsumer<Object, Object> objectSetter = Accessors.setter(setter, BiConsumer.class);
+    return new ObjectProperty(name, index, valueType, objectGetter, objectSetter);
+  }
+
+  private static ValueType valueType(java.lang.reflect.Type javaType, Field field, Deque<Class<?>> visiting) {
+    if (javaType == Boolean.class) {
+      return new BooleanValue();
+    } else if (javaType == Integer.class) {
+      return new IntValue();
+    } else if (javaType == Long.class) {
+      return new LongValue();
+    } else if (javaType == Float.class) {
+      return new FloatValue();
+    } else if (javaType == Double.class) {
+      return new DoubleValue();
+    } else if (javaType == String.class) {
+      return new StringValue();
+    } else if (javaType == byte[].class) {
+      return new BytesValue();
+    } else if (javaType instanceof Class && ((Class<?>) javaType).isEnum()) {
+      return new EnumValue((Class<?>) javaType);
+    } else if (javaType instanceof ParameterizedType && ((ParameterizedType) javaType).getRawType() == List.class) {
+      java.lang.reflect.Type elementType = ((ParameterizedType) javaType).getActualTypeArguments()[0];
+      return new ListValue(valueType(elementType, field, visiting));
+    } else if (javaType instanceof Class
+        && !((Class<?>) javaType).isPrimitive()
+        && !((Class<?>) javaType).isArray()
+        && !((Class<?>) javaType).isInterface()
+        && !Modifier.isAbstract(((Class<?>) javaType).getModifiers())
+        && !((Class<?>) javaType).getName().startsWith("java.")) {
+      return new BeanValue(of((Class<?>) javaType, visiting));
+    }
+    throw new IllegalArgumentException("Unsupported type " + javaType.getTypeName() + " of " + field);
+  }
+
+  private static void checkPrimitive(Type requested, PrimitiveTypeName expected) {
+    if (!requested.isPrimitive() || requested.asPrimitiveType().getPrimitiveTypeName() != expected) {
+      throw new IllegalArgumentException("Column " + requested + " cannot be read as " + expected);
+    }
+  }
+
+  /**
+   * Converts a group into a bean, setting the requested properties and ignoring unknown fields.
+   */
+  final class BeanConverter extends GroupConverter implements Parent {
+
+    private final Converter[] converters;
+    private final Consumer<Object> sink;
+    private Object current;
+
+    private BeanConverter(GroupType requested, Consumer<Object> sink) {
+      this.sink = sink;
+      this.converters = new Converter[requested.getFieldCount()];
+      for (int i = 0; i < converters.length; i++) {
+        Type field = requested.getType(i);
+        Property property = propertiesByName.get(field.getName());
+        converters[i] = property == null ? ignoring(field) : property.converter(field, this);
+      }
+    }
+
+    @Override
+    public Converter getConverter(int fieldIndex) {
+      return converters[fieldIndex];
+    }
+
+    @Override
+    public void start() {
+      current = newInstance();
+    }
+
+    @Override
+    public void end() {
+      sink.accept(current);
+    }
+
+    @Override
+    public Object getCurrent() {
+      return current;
+    }
+  }
+
+  /**
+   * The group converter of the bean whose properties are being set.
+   */
+  private interface Parent {
+    Object getCurrent();
+  }
+
+  private static Converter ignoring(Type type) {
+    if (type.isPrimitive()) {
+      return new PrimitiveConverter() {
+      };
+    }
+    GroupType group = type.asGroupType();
+    Converter[] converters = new Converter[group.getFieldCount()];
+    for (int i = 0; i < converters.length; i++) {
+      converters[i] = ignoring(group.getType(i));
+    }
+    return new GroupConverter() {
+      @Override
+      public Converter getConverter(int fieldIndex) {
+        return converters[fieldIndex];
+      }
+
+      @Override
+      public void start() {
+      }
+
+      @Override
+      public void end() {
+      }
+    };
+  }
+
+  private abstract static class Property {
+    final String name;
+    final int index;
+    final Type type;
+
+    Property(String name, int index, Type type) {
+      this.name = name;
+      this.index = index;
+      this.type = type;
+    }
+
+    abstract void write(RecordConsumer consumer, Object bean);
+
+    abstract Converter converter(Type requested, Parent parent);
+  }
+
+  private static final class BooleanProperty extends Property {
+    private final Accessors.BooleanGetter getter;
+    private final Accessors.BooleanSetter setter;
+
+    BooleanProperty(String name, int index, Accessors.BooleanGetter getter, Accessors.BooleanSetter setter) {
+      super(name, index, Types.required(PrimitiveTypeName.BOOLEAN).named(name));
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      consumer.startField(name, index);
+      consumer.addBoolean(getter.get(bean));
+      consumer.endField(name, index);
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      checkPrimitive(requested, PrimitiveTypeName.BOOLEAN);
+      return new PrimitiveConverter() {
+        @Override
+        public void addBoolean(boolean value) {
+          setter.set(parent.getCurrent(), value);
+        }
+      };
+    }
+  }
+
+  private static final class IntProperty extends Property {
+    private final Accessors.IntGetter getter;
+    private final Accessors.IntSetter setter;
+
+    IntProperty(String name, int index, Accessors.IntGetter getter, Accessors.IntSetter setter) {
+      super(name, index, Types.required(PrimitiveTypeName.INT32).named(name));
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      consumer.startField(name, index);
+      consumer.addInteger(getter.get(bean));
+      consumer.endField(name, index);
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      checkPrimitive(requested, PrimitiveTypeName.INT32);
+      return new PrimitiveConverter() {
+        @Override
+        public void addInt(int value) {
+          setter.set(parent.getCurrent(), value);
+        }
+      };
+    }
+  }
+
+  private static final class LongProperty extends Property {
+    private final Accessors.LongGetter getter;
+    private final Accessors.LongSetter setter;
+
+    LongProperty(String name, int index, Accessors.LongGetter getter, Accessors.LongSetter setter) {
+      super(name, index, Types.required(PrimitiveTypeName.INT64).named(name));
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      consumer.startField(name, index);
+      consumer.addLong(getter.get(bean));
+      consumer.endField(name, index);
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      checkPrimitive(requested, PrimitiveTypeName.INT64);
+      return new PrimitiveConverter() {
+        @Override
+        public void addLong(long value) {
+          setter.set(parent.getCurrent(), value);
+        }
+      };
+    }
+  }
+
+  private static final class FloatProperty extends Property {
+    private final Accessors.FloatGetter getter;
+    private final Accessors.FloatSetter setter;
+
+    FloatProperty(String name, int index, Accessors.FloatGetter getter, Accessors.FloatSetter setter) {
+      super(name, index, Types.required(PrimitiveTypeName.FLOAT).named(name));
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      consumer.startField(name, index);
+      consumer.addFloat(getter.get(bean));
+      consumer.endField(name, index);
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      checkPrimitive(requested, PrimitiveTypeName.FLOAT);
+      return new PrimitiveConverter() {
+        @Override
+        public void addFloat(float value) {
+          setter.set(parent.getCurrent(), value);
+        }
+      };
+    }
+  }
+
+  private static final class DoubleProperty extends Property {
+    private final Accessors.DoubleGetter getter;
+    private final Accessors.DoubleSetter setter;
+
+    DoubleProperty(String name, int index, Accessors.DoubleGetter getter, Accessors.DoubleSetter setter) {
+      super(name, index, Types.required(PrimitiveTypeName.DOUBLE).named(name));
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      consumer.startField(name, index);
+      consumer.addDouble(getter.get(bean));
+      consumer.endField(name, index);
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      checkPrimitive(requested, PrimitiveTypeName.DOUBLE);
+      return new PrimitiveConverter() {
+        @Override
+        public void addDouble(double value) {
+          setter.set(parent.getCurrent(), value);
+        }
+      };
+    }
+  }
+
+  private static final class ObjectProperty extends Property {
+    private final ValueType valueType;
+    private final Function<Object, Object> getter;
+    private final BiConsumer<Object, Object> setter;
+
+    ObjectProperty(String name, int index, ValueType valueType, Function<Object, Object> getter, BiConsumer<Object, Object> setter) {
+      super(name, index, valueType.type(name, Type.Repetition.OPTIONAL));
+      this.valueType = valueType;
+      this.getter = getter;
+      this.setter = setter;
+    }
+
+    @Override
+    void write(RecordConsumer consumer, Object bean) {
+      Object value = getter.apply(bean);
+      if (value != null) {
+        consumer.startField(name, index);
+        valueType.write(consumer, value);
+        consumer.endField(name, index);
+      }
+    }
+
+    @Override
+    Converter converter(Type requested, Parent parent) {
+      return valueType.converter(requested, value -> setter.accept(parent.getCurrent(), value));
+    }
+  }
+
+  /**
+   * The mapping of the values of an optional property or of a list element.
+   */
+  private interface ValueType {
+    Type type(String name, Type.Repetition repetition);
+
+    void write(RecordConsumer consumer, Object value);
+
+    Converter converter(Type requested, Consumer<Object> sink);
+  }
+
+  private static final class BooleanValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.BOOLEAN, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addBoolean((Boolean) value);
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.BOOLEAN);
+      return new PrimitiveConverter() {
+        @Override
+        public void addBoolean(boolean value) {
+          sink.accept(value);
+        }
+      };
+    }
+  }
+
+  private static final class IntValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.INT32, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addInteger((Integer) value);
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.INT32);
+      return new PrimitiveConverter() {
+        @Override
+        public void addInt(int value) {
+          sink.accept(value);
+        }
+      };
+    }
+  }
+
+  private static final class LongValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.INT64, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addLong((Long) value);
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.INT64);
+      return new PrimitiveConverter() {
+        @Override
+        public void addLong(long value) {
+          sink.accept(value);
+        }
+      };
+    }
+  }
+
+  private static final class FloatValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.FLOAT, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addFloat((Float) value);
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.FLOAT);
+      return new PrimitiveConverter() {
+        @Override
+        public void addFloat(float value) {
+          sink.accept(value);
+        }
+      };
+    }
+  }
+
+  private static final class DoubleValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.DOUBLE, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addDouble((Double) value);
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.DOUBLE);
+      return new PrimitiveConverter() {
+        @Override
+        public void addDouble(double value) {
+          sink.accept(value);
+        }
+      };
+    }
+  }
+
+  private static final class BytesValue implements ValueType {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.BINARY, repetition).named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addBinary(Binary.fromConstantByteArray((byte[]) value));
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.BINARY);
+      return new PrimitiveConverter() {
+        @Override
+        public void addBinary(Binary value) {
+          sink.accept(value.getBytes());
+        }
+      };
+    }
+  }
+
+  /**
+   * Decodes every dictionary entry once, so that dictionary encoded values are not decoded again
+   * for every row.
+   */
+  private abstract static class DecodingValue implements ValueType {
+
+    abstract Object decode(Binary value);
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      checkPrimitive(requested, PrimitiveTypeName.BINARY);
+      return new PrimitiveConverter() {
+        private Object[] dictionary;
+
+        @Override
+        public boolean hasDictionarySupport() {
+          return true;
+        }
+
+        @Override
+        public void setDictionary(Dictionary dictionary) {
+          this.dictionary = new Object[dictionary.getMaxId() + 1];
+          for (int id = 0; id < this.dictionary.length; id++) {
+            this.dictionary[id] = decode(dictionary.decodeToBinary(id));
+          }
+        }
+
+        @Override
+        public void addValueFromDictionary(int dictionaryId) {
+          sink.accept(dictionary[dictionaryId]);
+        }
+
+        @Override
+        public void addBinary(Binary value) {
+          sink.accept(decode(value));
+        }
+      };
+    }
+  }
+
+  private static final class StringValue extends DecodingValue {
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.BINARY, repetition)
+          .as(LogicalTypeAnnotation.stringType())
+          .named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addBinary(Binary.fromString((String) value));
+    }
+
+    @Override
+    Object decode(Binary value) {
+      return value.toStringUsingUTF8();
+    }
+  }
+
+  private static final class EnumValue extends DecodingValue {
+    private final Map<String, Object> constants = new LinkedHashMap<>();
+
+    EnumValue(Class<?> enumType) {
+      for (Object constant : enumType.getEnumConstants()) {
+        constants.put(((Enum<?>) constant).name(), constant);
+      }
+    }
+
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.primitive(PrimitiveTypeName.BINARY, repetition)
+          .as(LogicalTypeAnnotation.enumType())
+          .named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.addBinary(Binary.fromString(((Enum<?>) value).name()));
+    }
+
+    @Override
+    Object decode(Binary value) {
+      String name = value.toStringUsingUTF8();
+      Object constant = constants.get(name);
+      if (constant == null) {
+        throw new IllegalArgumentException("Unknown enum constant: " + name);
+      }
+      return constant;
+    }
+  }
+
+  private static final class BeanValue implements ValueType {
+    private final PojoModel<?> model;
+
+    BeanValue(PojoModel<?> model) {
+      this.model = model;
+    }
+
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return new GroupType(repetition, name, model.getSchema().getFields());
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      consumer.startGroup();
+      model.writeFields(consumer, value);
+      consumer.endGroup();
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      if (requested.isPrimitive()) {
+        throw new IllegalArgumentException("Column " + requested + " cannot be read as " + model.getType().getName());
+      }
+      return model.newConverter(requested.asGroupType(), sink);
+    }
+  }
+
+  private static final class ListValue implements ValueType {
+    private static final String REPEATED = "list";
+    private static final String ELEMENT = "element";
+
+    private final ValueType element;
+
+    ListValue(ValueType element) {
+      this.element = element;
+    }
+
+    @Override
+    public Type type(String name, Type.Repetition repetition) {
+      return Types.buildGroup(repetition)
+          .as(LogicalTypeAnnotation.listType())
+          .addField(new GroupType(Type.Repetition.REPEATED, REPEATED, element.type(ELEMENT, Type.Repetition.OPTIONAL)))
+          .named(name);
+    }
+
+    @Override
+    public void write(RecordConsumer consumer, Object value) {
+      List<?> list = (List<?>) value;
+      consumer.startGroup();
+      if (!list.isEmpty()) {
+        consumer.startField(REPEATED, 0);
+        for (Object item : list) {
+          consumer.startGroup();
+          if (item != null) {
+            consumer.startField(ELEMENT, 0);
+            element.write(consumer, item);
+            consumer.endField(ELEMENT, 0);
+          }
+          consumer.endGroup();
+        }
+        consumer.endField(REPEATED, 0);
+      }
+      consumer.endGroup();
+    }
+
+    @Override
+    public Converter converter(Type requested, Consumer<Object> sink) {
+      GroupType list = requested.isPrimitive() ? null : requested.asGroupType();
+      if (list == null
+          || list.getFieldCount() != 1
+          || list.getType(0).isPrimitive()
+          || !list.getType(0).isRepetition(Type.Repetition.REPEATED)
+          || list.getType(0).asGroupType().getFieldCount() != 1) {
+        throw new IllegalArgumentException("Column " + requested + " is not a three-level list");
+      }
+      return new ListConverter(list.getType(0).asGroupType().getType(0), sink);
+    }
+
+    private final class ListConverter extends GroupConverter {
+      private final Consumer<Object> sink;
+      private final GroupConverter repeated;
+      private List<Object> current;
+      private boolean added;
+
+      private ListConverter(Type requestedElement, Consumer<Object> sink) {
+        this.sink = sink;
+        Converter elementConverter = element.converter(requestedElement, value -> {
+          current.add(value);
+          added = true;
+        });
+        this.repeated = new GroupConverter() {
+          @Override
+          public Converter getConverter(int fieldIndex) {
+            return elementConverter;
+          }
+
+          @Override
+          public void start() {
+            added = false;
+          }
+
+          @Override
+          public void end() {
+            if (!added) {
+              current.add(null);
+            }
+          }
+        };
+      }
+
+      @Override
+      public Converter getConverter(int fieldIndex) {
+        return repeated;
+      }
+
+      @Override
+      public void start() {
+        current = new ArrayList<>();
+      }
+
+      @Override
+      public void end() {
+        sink.accept(current);
+      }
+    }
+  }
+}
@@ -0,0 +1,98 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import cn.edu.tsinghua.iginx.format.parquet.ParallelParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.ParquetPublisher;
+import cn.edu.tsinghua.iginx.format.parquet.ParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.RowGroupReaderFactory;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import org.apache.parquet.hadoop.ExportedParquetRecordReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Read the records of a Parquet file into Java beans. By default, only the columns of the
+ * properties of the bean class are read.
+ */
+public class PojoParquetReader<T> extends ParquetReader<T> {
+
+  protected PojoParquetReader(ExportedParquetRecordReader<T> recordReader) {
+    super(recordReader);
+  }
+
+  protected PojoParquetReader(ExportedParquetRecordReader<T> recordReader, RowGroupReaderFactory<T> readerFactory) {
+    super(recordReader, readerFactory);
+  }
+
+  public static <T> Builder<T> builder(Path path, Class<T> type) {
+    return new Builder<>(new LocalInputFile(path), type);
+  }
+
+  public static class Builder<T> extends ParquetReader.Builder<T, PojoParquetReader<T>, Builder<T>> {
+    private final InputFile file;
+    private final PojoModel<T> model;
+
+    private ParquetMetadata metadata;
+
+    public Builder(InputFile file, Class<T> type) {
+      this.file = Objects.requireNonNull(file);
+      this.model = PojoModel.of(type);
+      withSchemaConverter(model::project);
+    }
+
+    private ParquetMetadata getMetadata() throws IOException {
+      if (metadata == null) {
+        metadata = readFooter(file);
+      }
+      return metadata;
+    }
+
+    @Override
+    protected Builder<T> self() {
+      return this;
+    }
+
+    @Override
+    protected RecordMaterializer<T> materializer(MessageType schema, Map<String, String> extra) {
+      return new PojoRecordMaterializer<>(model, schema);
+    }
+
+    @Override
+    public PojoParquetReader<T> build() throws IOException {
+      ExportedParquetRecordReader<T> recordReader = build(file, getMetadata());
+      return new PojoParquetReader<>(recordReader, readerFactory(file, recordReader));
+    }
+
+    public ParallelParquetReader<T> buildParallel() throws IOException {
+      return buildParallel(file, getMetadata());
+    }
+
+    public ParquetPublisher<T> buildPublisher() throws IOException {
+      return buildPublisher(file, getMetadata());
+    }
+  }
+}
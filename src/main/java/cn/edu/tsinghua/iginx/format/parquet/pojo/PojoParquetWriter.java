@@ -0,0 +1,87 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import cn.edu.tsinghua.iginx.format.parquet.ParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalOutputFile;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.hadoop.ExportedParquetRecordWriter;
+import org.apache.parquet.io.OutputFile;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.Objects;
+
+/**
+ * Write Java beans to a Parquet file with the schema of their {@link PojoModel}.
+ */
+public class PojoParquetWriter<T> extends ParquetWriter<T> {
+  public static final String OBJECT_MODEL_NAME_VALUE = "pojo";
+
+  protected PojoParquetWriter(ExportedParquetRecordWriter<T> recordWriter) {
+    super(recordWriter);
+  }
+
+  public static <T> Builder<T> builder(Path file, Class<T> type) {
+    return new Builder<>(new LocalOutputFile(file, new HeapByteBufferAllocator(), Integer.MAX_VALUE), type);
+  }
+
+  public static class Builder<T> extends ParquetWriter.Builder<T, PojoParquetWriter<T>, Builder<T>> {
+    private final OutputFile file;
+    private final PojoModel<T> model;
+
+    public Builder(OutputFile file, Class<T> type) {
+      this.file = Objects.requireNonNull(file);
+      this.model = PojoModel.of(type);
+    }
+
+    @Override
+    protected Builder<T> self() {
+      return this;
+    }
+
+    @Override
+    protected RecordDematerializer<T> dematerializer() {
+      return new PojoDematerializer<>(model);
+    }
+
+    @Override
+    protected RecordMaterializer<T> materializer(MessageType schema) {
+      return new PojoRecordMaterializer<>(model, schema);
+    }
+
+    @Override
+    protected boolean hasMaterializer() {
+      return true;
+    }
+
+    @Override
+    public PojoParquetWriter<T> build() throws IOException {
+      ExportedParquetRecordWriter<T> recordWriter = build(
+          file,
+          model.getSchema(),
+          Collections.singletonMap(OBJECT_MODEL_NAME_PROP, OBJECT_MODEL_NAME_VALUE));
+      return new PojoParquetWriter<>(recordWriter);
+    }
+  }
+}
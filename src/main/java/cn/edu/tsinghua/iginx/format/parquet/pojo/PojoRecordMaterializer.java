@@ -0,0 +1,52 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import org.apache.parquet.io.api.GroupConverter;
+import org.apache.parquet.io.api.RecordMaterializer;
+import org.apache.parquet.schema.MessageType;
+
+import java.util.Objects;
+
+/**
+ * Materializes the records of a requested schema into beans of a {@link PojoModel}. Properties
+ * which are not requested keep the value set by the no-argument constructor.
+ */
+public class PojoRecordMaterializer<T> extends RecordMaterializer<T> {
+
+  private final GroupConverter root;
+  private T current;
+
+  @SuppressWarnings("unchecked")
+  public PojoRecordMaterializer(PojoModel<T> model, MessageType requestedSchema) {
+    Objects.requireNonNull(model);
+    Objects.requireNonNull(requestedSchema);
+    this.root = model.newConverter(requestedSchema, record -> current = (T) record);
+  }
+
+  @Override
+  public T getCurrentRecord() {
+    return current;
+  }
+
+  @Override
+  public GroupConverter getRootConverter() {
+    return root;
+  }
+}
@@ -0,0 +1,312 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.parquet.hadoop;
+
+import cn.edu.tsinghua.iginx.format.parquet.AdaptiveBloomFilterStore;
+import cn.edu.tsinghua.iginx.format.parquet.WriterMemoryManager;
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A record writer which encodes the records on the caller thread like
+ * {@link InternalParquetRecordWriter}, but finalizes and writes full row groups on a background
+ * thread. New records go to a fresh column store meanwhile, and {@link #write(Object)} blocks once
+ * the given number of row groups are waiting to be written. Without row groups in flight, the row
+ * groups are written on the caller thread.
+ *
+ * <p>If a memory manager registration is given, the row group size is the scaled one, and the
+ * current row group is flushed early when the manager asks for it.
+ *
+ * <p>The allocator of the properties and the compressor are used from two threads at once.
+ */
+class AsyncFlushParquetRecordWriter<T> implements ExportedParquetRecordWriter.RecordWriter<T> {
+
+  private final ParquetFileWriter parquetFileWriter;
+  private final WriteSupport<T> writeSupport;
+  private final MessageType schema;
+  private final Map<String, String> extraMetaData;
+  private final long rowGroupSizeThreshold;
+  private final BytesInputCompressor compressor;
+  private final boolean validating;
+  private final ParquetProperties props;
+  private final int maxInFlightRowGroups;
+  private final ExecutorService ioExecutor;
+  private final Deque<RowGroup> inFlight = new ArrayDeque<>();
+  private final WriterMemoryManager.Registration memory;
+  private final boolean adaptiveBloomFilter;
+
+  private boolean closed;
+
+  private long recordCount = 0;
+  private long recordCountForNextMemCheck;
+  private volatile long lastRowGroupEndPos = 0;
+  private volatile long nextRowGroupSize;
+  private volatile Throwable failure;
+
+  private ColumnWriteStore columnStore;
+  private ColumnChunkPageWriteStore pageStore;
+  private RecordConsumer recordConsumer;
+  private int rowGroupOrdinal = 0;
+
+  /**
+   * @param maxInFlightRowGroups the maximum number of full row groups waiting to be written, or 0
+   *                             to write them on the caller thread
+   * @param memory               the registration at a memory manager, or null
+   * @param adaptiveBloomFilter  whether to size the bloom filters by the observed distinct values
+   */
+  AsyncFlushParquetRecordWriter(
+      ParquetFileWriter parquetFileWriter,
+      WriteSupport<T> writeSupport,
+      MessageType schema,
+      Map<String, String> extraMetaData,
+      long rowGroupSize,
+      BytesInputCompressor compressor,
+      boolean validating,
+      ParquetProperties props,
+      int maxInFlightRowGroups,
+      WriterMemoryManager.Registration memory,
+      boolean adaptiveBloomFilter) {
+    if (maxInFlightRowGroups < 0) {
+      throw new IllegalArgumentException("maxInFlightRowGroups must not be negative: " + maxInFlightRowGroups);
+    }
+    this.parquetFileWriter = parquetFileWriter;
+    this.writeSupport = Objects.requireNonNull(writeSupport, "writeSupport cannot be null");
+    this.schema = schema;
+    this.extraMetaData = extraMetaData;
+    this.rowGroupSizeThreshold = rowGroupSize;
+    this.nextRowGroupSize = rowGroupSize;
+    this.compressor = compressor;
+    this.validating = validating;
+    this.props = props;
+    this.maxInFlightRowGroups = maxInFlightRowGroups;
+    this.memory = memory;
+    this.adaptiveBloomFilter = adaptiveBloomFilter;
+    this.ioExecutor = maxInFlightRowGroups == 0 ? null : Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "parquet-writer-flush");
+      thread.setDaemon(true);
+      return thread;
+    });
+    initStore();
+    recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+  }
+
+  private void initStore() {
+    pageStore = new ColumnChunkPageWriteStore(DefaultCodecFactory.wrap(compressor), schema, props.getAllocator(),
+        props.getColumnIndexTruncateLength(), props.getPageWriteChecksumEnabled(),
+        parquetFileWriter.getEncryptor(), rowGroupOrdinal);
+    if (adaptiveBloomFilter) {
+      AdaptiveBloomFilterStore bloomFilterStore = new AdaptiveBloomFilterStore(pageStore, pageStore, props);
+      columnStore = props.newColumnWriteStore(schema, bloomFilterStore, bloomFilterStore);
+    } else {
+      columnStore = props.newColumnWriteStore(schema, pageStore, pageStore);
+    }
+    MessageColumnIO columnIO = new ColumnIOFactory(validating).getColumnIO(schema);
+    this.recordConsumer = columnIO.getRecordWriter(columnStore);
+    writeSupport.prepareForWrite(recordConsumer);
+  }
+
+  @Override
+  public void write(T value) throws IOException, InterruptedException {
+    if (failure != null) {
+      throw new IOException("Failed to write row group to " + parquetFileWriter, failure);
+    }
+    writeSupport.write(value);
+    ++recordCount;
+    if (memory != null && memory.pollFlushRequest()) {
+      flushRowGroupToStore();
+      initStore();
+      recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+      memory.update(getBufferedSize());
+    } else {
+      checkBlockSizeReached();
+    }
+  }
+
+  @Override
+  public void flushRowGroup() throws IOException, InterruptedException {
+    if (recordCount > 0) {
+      flushRowGroupToStore();
+      initStore();
+      recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+    }
+  }
+
+  @Override
+  public long getDataSize() {
+    return lastRowGroupEndPos + getBufferedSize();
+  }
+
+  private long getBufferedSize() {
+    long size = columnStore == null ? 0 : columnStore.getBufferedSize();
+    for (RowGroup rowGroup : inFlight) {
+      if (!rowGroup.flushed.isDone()) {
+        size += rowGroup.bufferedSize;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      flushRowGroupToStore();
+      awaitInFlight(0);
+      WriteSupport.FinalizedWriteContext finalWriteContext = writeSupport.finalizeWrite();
+      Map<String, String> finalMetadata = new HashMap<>(extraMetaData);
+      String modelName = writeSupport.getName();
+      if (modelName != null) {
+        finalMetadata.put(ParquetWriter.OBJECT_MODEL_NAME_PROP, modelName);
+      }
+      finalMetadata.putAll(finalWriteContext.getExtraMetaData());
+      parquetFileWriter.end(finalMetadata);
+    } finally {
+      if (ioExecutor != null) {
+        ioExecutor.shutdownNow();
+      }
+      if (memory != null) {
+        memory.close();
+      }
+    }
+  }
+
+  private void checkBlockSizeReached() throws IOException, InterruptedException {
+    if (recordCount >= recordCountForNextMemCheck) { // checking the memory size is relatively expensive, so let's not do it for every record.
+      long memSize = columnStore.getBufferedSize();
+      long recordSize = memSize / recordCount;
+      long rowGroupSize = memory == null ? nextRowGroupSize : min(nextRowGroupSize, memory.getRowGroupSize());
+      // flush the row group if it is within ~2 records of the limit
+      // it is much better to be slightly under size than to be over at all
+      if (memSize > (rowGroupSize - 2 * recordSize)) {
+        flushRowGroupToStore();
+        initStore();
+        recordCountForNextMemCheck = min(max(props.getMinRowCountForPageSizeCheck(), recordCount / 2),
+            props.getMaxRowCountForPageSizeCheck());
+      } else {
+        recordCountForNextMemCheck = min(
+            max(props.getMinRowCountForPageSizeCheck(),
+                (recordCount + (long) (rowGroupSize / ((float) recordSize))) / 2), // will check halfway
+            recordCount + props.getMaxRowCountForPageSizeCheck() // will not look more than max records ahead
+        );
+      }
+      if (memory != null) {
+        memory.update(getBufferedSize());
+      }
+    }
+  }
+
+  /**
+   * Hands the current row group to the background thread, after waiting until less than
+   * {@code maxInFlightRowGroups} row groups are in flight.
+   */
+  private void flushRowGroupToStore() throws IOException, InterruptedException {
+    recordConsumer.flush();
+    if (recordCount > 0) {
+      awaitInFlight(maxInFlightRowGroups - 1);
+      RowGroup rowGroup = new RowGroup(columnStore, pageStore, recordCount);
+      inFlight.addLast(rowGroup);
+      if (ioExecutor == null) {
+        rowGroup.write();
+        awaitInFlight(0);
+      } else {
+        ioExecutor.execute(rowGroup::write);
+      }
+      rowGroupOrdinal++;
+      recordCount = 0;
+    }
+    columnStore = null;
+    pageStore = null;
+  }
+
+  private void awaitInFlight(int limit) throws IOException, InterruptedException {
+    for (RowGroup head = inFlight.peekFirst(); head != null; head = inFlight.peekFirst()) {
+      if (inFlight.size() <= limit && !head.flushed.isDone()) {
+        return;
+      }
+      try {
+        head.flushed.get();
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to write row group to " + parquetFileWriter, e.getCause());
+      }
+      inFlight.removeFirst();
+    }
+  }
+
+  /**
+   * A full row group, whose last pages are encoded and compressed when it is written.
+   */
+  private final class RowGroup {
+
+    private final ColumnWriteStore columnStore;
+    private final ColumnChunkPageWriteStore pageStore;
+    private final long recordCount;
+    private final long bufferedSize;
+    private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+
+    private RowGroup(ColumnWriteStore columnStore, ColumnChunkPageWriteStore pageStore, long recordCount) {
+      this.columnStore = columnStore;
+      this.pageStore = pageStore;
+      this.recordCount = recordCount;
+      this.bufferedSize = columnStore.getBufferedSize();
+    }
+
+    private void write() {
+      if (failure != null) {
+        flushed.completeExceptionally(failure);
+        return;
+      }
+      try {
+        parquetFileWriter.startBlock(recordCount);
+        columnStore.flush();
+        pageStore.flushToFileWriter(parquetFileWriter);
+        parquetFileWriter.endBlock();
+        lastRowGroupEndPos = parquetFileWriter.getPos();
+        nextRowGroupSize = min(parquetFileWriter.getNextRowGroupSize(), rowGroupSizeThreshold);
+        flushed.complete(null);
+      } catch (Throwable e) {
+        failure = e;
+        flushed.completeExceptionally(e);
+      }
+    }
+  }
+}
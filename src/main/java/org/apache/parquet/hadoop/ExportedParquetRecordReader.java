@@ -31,27 +31,85 @@ import java.io.IOException;
 import java.util.Map;
 
 public class ExportedParquetRecordReader<T> implements Closeable {
-  private final InternalParquetRecordReader<T> internalReader;
+  private InternalParquetRecordReader<T> internalReader;
   private final ParquetFileReader reader;
+  private final RecordMaterializer<T> recordMaterializer;
+  private final ReadSupport<T> readSupport;
+  private final FilterCompat.Filter filter;
+  private final ParquetReadOptions options;
   private boolean isEnd = false;
+  private long toSkip = 0;
+  private long remaining = Long.MAX_VALUE;
+  private long[] selectionFrom = null;
+  private long[] selectionTo = null;
+  private int selectionCursor = 0;
 
   public ExportedParquetRecordReader(
       RecordMaterializer<T> recordMaterializer,
       ParquetFileReader reader,
       MessageType requestedSchema,
       ParquetReadOptions options) {
+    this(recordMaterializer, reader, requestedSchema, options, 0, Long.MAX_VALUE);
+  }
+
+  /**
+   * @param offset the number of leading records to skip
+   * @param limit  the maximum number of records to return
+   */
+  public ExportedParquetRecordReader(
+      RecordMaterializer<T> recordMaterializer,
+      ParquetFileReader reader,
+      MessageType requestedSchema,
+      ParquetReadOptions options,
+      long offset,
+      long limit) {
     FilterCompat.Filter filter =
         options.getRecordFilter() == null || !options.useRecordFilter()
             ? FilterCompat.NOOP
             : options.getRecordFilter();
 
-    ReadSupport<T> readSupport = new DelegateReadSupport<>(recordMaterializer, requestedSchema);
-
+    this.recordMaterializer = recordMaterializer;
+    this.readSupport = new DelegateReadSupport<>(recordMaterializer, requestedSchema);
+    this.filter = filter;
+    this.options = options;
     this.reader = reader;
     this.internalReader = new InternalParquetRecordReader<>(
         readSupport,
         filter);
 
+    boolean windowed = offset > 0 || limit != Long.MAX_VALUE;
+    if (windowed) {
+      reader.setRowWindow(offset, limit);
+    }
+
+    internalReader.initialize(reader, options);
+
+    if (windowed) {
+      this.toSkip = FilterCompat.isFilteringRequired(options.getRecordFilter())
+          ? offset
+          : reader.getRowWindowSkip();
+      this.remaining = limit;
+    }
+  }
+
+  /**
+   * Restarts reading from the given rows of the file, discarding the offset and the limit. Only the
+   * pages containing selected rows are read.
+   *
+   * @param from the first row index in the file of each range, in ascending order
+   * @param to   the last row index in the file of each range, inclusive
+   */
+  public void selectRows(long[] from, long[] to) {
+    reader.setRowWindow(0, Long.MAX_VALUE);
+    reader.setRowSelection(from, to);
+    this.selectionFrom = from.clone();
+    this.selectionTo = to.clone();
+    this.selectionCursor = 0;
+    this.toSkip = 0;
+    this.remaining = Long.MAX_VALUE;
+    this.isEnd = false;
+    // the previous reader is dropped without closing, as it would close the shared file reader
+    this.internalReader = new InternalParquetRecordReader<>(readSupport, filter);
     internalReader.initialize(reader, options);
   }
 
@@ -64,6 +122,10 @@ public class ExportedParquetRecordReader<T> implements Closeable {
     return reader;
   }
 
+  public RecordMaterializer<T> getRecordMaterializer() {
+    return recordMaterializer;
+  }
+
   public T getCurrentValue() throws IOException {
     try {
       return internalReader.getCurrentValue();
@@ -81,17 +143,72 @@ public class ExportedParquetRecordReader<T> implements Closeable {
   }
 
   public boolean nextKeyValue() throws IOException {
+    if (selectionCursor < 0) {
+      isEnd = true;
+      return false;
+    }
     try {
-      boolean hasNext = internalReader.nextKeyValue();
-      if (!hasNext) {
+      for (; toSkip > 0; toSkip--) {
+        if (!nextInternal()) {
+          isEnd = true;
+          return false;
+        }
+      }
+      if (remaining == 0) {
         isEnd = true;
+        return false;
+      }
+      boolean hasNext;
+      do {
+        hasNext = nextInternal();
+      } while (hasNext && !isSelected());
+      if (!hasNext || selectionCursor < 0) {
+        isEnd = true;
+        return false;
+      }
+      if (remaining != Long.MAX_VALUE) {
+        remaining--;
       }
-      return hasNext;
+      return true;
     } catch (InterruptedException e) {
       throw new RuntimeException(e);
     }
   }
 
+  /**
+   * The row count expected by the internal reader is an upper bound when the compiled filter drops
+   * rows while reading the row groups, so running out of row groups ends the records.
+   */
+  private boolean nextInternal() throws IOException, InterruptedException {
+    try {
+      return internalReader.nextKeyValue();
+    } catch (IOException e) {
+      if (reader.hasNextRowGroup()) {
+        throw e;
+      }
+      return false;
+    }
+  }
+
+  /**
+   * Checks the current row against the row selection, for the rows read from row groups which could
+   * not be pruned to the selected pages. Sets the cursor to -1 once all the selected rows are passed.
+   */
+  private boolean isSelected() {
+    if (selectionFrom == null) {
+      return true;
+    }
+    long rowIndex = internalReader.getCurrentRowIndex();
+    while (selectionCursor < selectionTo.length && selectionTo[selectionCursor] < rowIndex) {
+      selectionCursor++;
+    }
+    if (selectionCursor == selectionTo.length) {
+      selectionCursor = -1;
+      return true;
+    }
+    return selectionFrom[selectionCursor] <= rowIndex;
+  }
+
   /**
    * Returns the row index of the current row. If no row has been processed or if the
    * row index information is unavailable, returns -1.
@@ -18,6 +18,8 @@
  */
 package org.apache.parquet.hadoop;
 
+import cn.edu.tsinghua.iginx.format.parquet.AdaptiveBloomFilterStore;
+import cn.edu.tsinghua.iginx.format.parquet.WriterMemoryManager;
 import cn.edu.tsinghua.iginx.format.parquet.api.RecordDematerializer;
 import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
 import org.apache.hadoop.conf.Configuration;
@@ -29,12 +31,23 @@ import org.apache.parquet.schema.MessageType;
 
 import java.io.Closeable;
 import java.io.IOException;
+import java.util.Comparator;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.function.Function;
 
 public class ExportedParquetRecordWriter<T> implements Closeable {
   private final ParquetFileWriter parquetFileWriter;
-  private final InternalParquetRecordWriter<T> internalWriter;
+  private RecordWriter<T> internalWriter; // null until first used or sorted in the serial case
+  private Function<Boolean, RecordWriter<T>> serialWriter = null; // given whether to flush on demand
+  private final BytesInputCompressor compressor;
 
+  /**
+   * Create a record writer which encodes and writes the row groups on the caller thread.
+   *
+   * @param compressor the compressor of the pages, which is owned by the writer and released when
+   *                   the writer is closed
+   */
   public ExportedParquetRecordWriter(
       ParquetFileWriter parquetFileWriter,
       RecordDematerializer<T> recordDematerializer,
@@ -44,30 +57,127 @@ public class ExportedParquetRecordWriter<T> implements Closeable {
       BytesInputCompressor compressor,
       boolean validating,
       ParquetProperties props) {
+    this(parquetFileWriter, recordDematerializer, schema, extraMetaData, rowGroupSize, compressor, validating, props, null, 0, 0);
+  }
+
+  /**
+   * Create a record writer which encodes the columns in parallel if an encoding executor or a
+   * positive number of encoding threads is given, and writes full row groups in the background if
+   * the columns are encoded in parallel or {@code maxInFlightRowGroups} is positive. The compressor
+   * and the allocator of the properties must be thread-safe in these cases. The compressor is
+   * released when the writer is closed.
+   *
+   * @param encodingExecutor     the executor encoding the columns, or null
+   * @param encodingThreads      the number of threads of an own encoding pool if no executor is
+   *                             given, or 0 to encode on the caller thread
+   * @param maxInFlightRowGroups the maximum number of full row groups waiting to be written before
+   *                             {@link #write(Object)} blocks, or 0 to write them synchronously;
+   *                             at least one if the columns are encoded in parallel
+   */
+  public ExportedParquetRecordWriter(
+      ParquetFileWriter parquetFileWriter,
+      RecordDematerializer<T> recordDematerializer,
+      MessageType schema,
+      Map<String, String> extraMetaData,
+      long rowGroupSize,
+      BytesInputCompressor compressor,
+      boolean validating,
+      ParquetProperties props,
+      ExecutorService encodingExecutor,
+      int encodingThreads,
+      int maxInFlightRowGroups) {
+    this(parquetFileWriter, recordDematerializer, schema, extraMetaData, rowGroupSize, compressor, validating, props,
+        encodingExecutor, encodingThreads, maxInFlightRowGroups, null, false);
+  }
+
+  /**
+   * Create a record writer like above, whose row group size and early flushes are governed by the
+   * given memory manager registration. The registration is closed when the writer is closed.
+   *
+   * @param memory              the registration at a memory manager, or null
+   * @param adaptiveBloomFilter whether to size the bloom filters by the distinct values observed in
+   *                            each column chunk, see {@link AdaptiveBloomFilterStore}
+   */
+  public ExportedParquetRecordWriter(
+      ParquetFileWriter parquetFileWriter,
+      RecordDematerializer<T> recordDematerializer,
+      MessageType schema,
+      Map<String, String> extraMetaData,
+      long rowGroupSize,
+      BytesInputCompressor compressor,
+      boolean validating,
+      ParquetProperties props,
+      ExecutorService encodingExecutor,
+      int encodingThreads,
+      int maxInFlightRowGroups,
+      WriterMemoryManager.Registration memory,
+      boolean adaptiveBloomFilter) {
     this.parquetFileWriter = parquetFileWriter;
-    this.internalWriter = new InternalParquetRecordWriter<>(
-        parquetFileWriter,
-        new DelegateWriteSupport<>(recordDematerializer, schema, extraMetaData),
-        schema,
-        extraMetaData,
-        rowGroupSize,
-        DefaultCodecFactory.wrap(compressor),
-        validating,
-        props);
+    this.compressor = compressor;
+    DelegateWriteSupport<T> writeSupport = new DelegateWriteSupport<>(recordDematerializer, schema, extraMetaData);
+    if (encodingExecutor != null || encodingThreads > 0) {
+      this.internalWriter = new ParallelParquetRecordWriter<>(
+          parquetFileWriter,
+          writeSupport,
+          schema,
+          extraMetaData,
+          rowGroupSize,
+          compressor,
+          validating,
+          props,
+          encodingExecutor,
+          encodingThreads,
+          Math.max(1, maxInFlightRowGroups),
+          memory,
+          adaptiveBloomFilter);
+    } else {
+      if (maxInFlightRowGroups > 0 || memory != null || adaptiveBloomFilter) {
+        this.internalWriter = new AsyncFlushParquetRecordWriter<>(
+            parquetFileWriter,
+            writeSupport,
+            schema,
+            extraMetaData,
+            rowGroupSize,
+            compressor,
+            validating,
+            props,
+            maxInFlightRowGroups,
+            memory,
+            adaptiveBloomFilter);
+      } else {
+        // created on first use, as sorting needs a writer which flushes row groups on demand
+        this.serialWriter = flushable -> flushable
+            ? new AsyncFlushParquetRecordWriter<>(
+                parquetFileWriter, writeSupport, schema, extraMetaData, rowGroupSize, compressor, validating, props,
+                0, null, false)
+            : new InternalRecordWriter<>(new InternalParquetRecordWriter<>(
+                parquetFileWriter, writeSupport, schema, extraMetaData, rowGroupSize,
+                DefaultCodecFactory.wrap(compressor), validating, props));
+      }
+    }
+  }
+
+  private RecordWriter<T> internalWriter() {
+    if (internalWriter == null) {
+      internalWriter = serialWriter.apply(false);
+    }
+    return internalWriter;
   }
 
   @Override
   public void close() throws IOException {
     try {
-      internalWriter.close();
+      internalWriter().close();
     } catch (InterruptedException e) {
       throw new RuntimeException(e);
+    } finally {
+      compressor.release();
     }
   }
 
   public void write(T value) throws IOException {
     try {
-      internalWriter.write(value);
+      internalWriter().write(value);
     } catch (InterruptedException e) {
       throw new RuntimeException(e);
     }
@@ -77,13 +187,98 @@ public class ExportedParquetRecordWriter<T> implements Closeable {
    * @return the total size of data written to the file and buffered in memory
    */
   public long getDataSize() {
-    return internalWriter.getDataSize();
+    return internalWriter().getDataSize();
   }
 
   public ParquetFileWriter getWriter() {
     return parquetFileWriter;
   }
 
+  /**
+   * Sort the records before writing them. Up to {@code sortBufferSize} records are buffered and
+   * sorted. Without a spiller, every sorted buffer is written as a row group of its own, splitting
+   * it further if it exceeds the row group size. With a spiller, full buffers are spilled as sorted
+   * runs, which are merged into the file when the writer is closed. The written records must not be
+   * modified afterwards. Must be called before the first record is written.
+   *
+   * @param comparator     the order of the records
+   * @param sortBufferSize the number of records sorted in memory
+   * @param spiller        spills the sorted runs to sort the whole file, or null to sort within
+   *                       the row groups only
+   * @throws IllegalStateException if a record was written already
+   */
+  public void sortRecords(Comparator<? super T> comparator, int sortBufferSize, RunSpiller<T> spiller) {
+    if (internalWriter instanceof InternalRecordWriter) {
+      throw new IllegalStateException("Records must be sorted before the first one is written");
+    }
+    RecordWriter<T> writer = internalWriter == null ? serialWriter.apply(true) : internalWriter;
+    this.internalWriter = new SortingRecordWriter<>(writer, comparator, sortBufferSize, spiller);
+  }
+
+  /**
+   * Spills sorted runs of records for an external sort.
+   *
+   * @param <T> the type of the records
+   */
+  public interface RunSpiller<T> {
+    /**
+     * @param records the records of the run, in order, which are read to the end but not closed
+     * @return the run, which reads the records back in order
+     */
+    Run<T> spill(Run<T> records) throws IOException;
+  }
+
+  /**
+   * A sorted run of records. Closing a run releases its resources, such as the spill file.
+   *
+   * @param <T> the type of the records
+   */
+  public interface Run<T> extends Closeable {
+    /**
+     * @return the next record of the run, or null at the end
+     */
+    T next() throws IOException;
+  }
+
+  interface RecordWriter<T> {
+    void write(T value) throws IOException, InterruptedException;
+
+    long getDataSize();
+
+    void flushRowGroup() throws IOException, InterruptedException;
+
+    void close() throws IOException, InterruptedException;
+  }
+
+  private static class InternalRecordWriter<T> implements RecordWriter<T> {
+
+    private final InternalParquetRecordWriter<T> writer;
+
+    InternalRecordWriter(InternalParquetRecordWriter<T> writer) {
+      this.writer = writer;
+    }
+
+    @Override
+    public void write(T value) throws IOException, InterruptedException {
+      writer.write(value);
+    }
+
+    @Override
+    public long getDataSize() {
+      return writer.getDataSize();
+    }
+
+    @Override
+    public void flushRowGroup() {
+      throw new UnsupportedOperationException("Row groups are flushed by size only");
+    }
+
+    @Override
+    public void close() throws IOException, InterruptedException {
+      writer.close();
+    }
+  }
+
   private static class DelegateWriteSupport<T> extends WriteSupport<T> {
 
     private final RecordDematerializer<T> recordDematerializer;
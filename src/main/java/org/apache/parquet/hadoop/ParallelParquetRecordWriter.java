@@ -0,0 +1,770 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.parquet.hadoop;
+
+import cn.edu.tsinghua.iginx.format.parquet.AdaptiveBloomFilterStore;
+import cn.edu.tsinghua.iginx.format.parquet.WriterMemoryManager;
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import org.apache.parquet.column.ColumnDescriptor;
+import org.apache.parquet.column.ColumnWriteStore;
+import org.apache.parquet.column.ColumnWriter;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.compression.CompressionCodecFactory.BytesInputCompressor;
+import org.apache.parquet.hadoop.api.WriteSupport;
+import org.apache.parquet.io.ColumnIOFactory;
+import org.apache.parquet.io.MessageColumnIO;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.io.api.RecordConsumer;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.Type;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * A record writer which encodes and compresses the columns on a pool of threads, and writes row
+ * groups to the file on a dedicated I/O thread.
+ *
+ * <p>The caller thread only shreds the records into per-column buffers. Every batch of records is
+ * handed to the lane of each column, which replays the values into the column writer of the row
+ * group on the encoding pool. The lanes of different columns run concurrently, the batches of one
+ * column run in order. When all columns of a row group are finalized, the I/O thread writes the
+ * row group to the file while the next row group is being encoded.
+ *
+ * <p>If a memory manager registration is given, the row group size is the scaled one, and the
+ * current row group is flushed early when the manager asks for it.
+ *
+ * <p>The allocator of the properties and the compressor are used from several threads at once.
+ */
+class ParallelParquetRecordWriter<T> implements ExportedParquetRecordWriter.RecordWriter<T> {
+
+  static final int BATCH_RECORD_COUNT = 1024;
+  static final long BATCH_BYTE_SIZE = 1024 * 1024;
+  private static final int QUEUED_BATCHES_PER_COLUMN = 2;
+  private static final AtomicInteger WRITER_ID = new AtomicInteger();
+
+  private final ParquetFileWriter parquetFileWriter;
+  private final WriteSupport<T> writeSupport;
+  private final MessageType schema;
+  private final Map<String, String> extraMetaData;
+  private final long rowGroupSizeThreshold;
+  private final BytesInputCompressor compressor;
+  private final ParquetProperties props;
+  private final int maxInFlightRowGroups;
+
+  private final List<ColumnDescriptor> columns;
+  private final List<MessageType> columnSchemas;
+  private final ColumnBuffer[] buffers;
+  private final List<Queue<ColumnBuffer>> freeBuffers;
+  private final List<Lane> lanes;
+  private final Semaphore queuedBatches;
+  private final RecordConsumer recordConsumer;
+
+  private final ExecutorService encodingExecutor;
+  private final boolean ownsEncodingExecutor;
+  private final ExecutorService ioExecutor;
+  private final AtomicReference<Throwable> failure = new AtomicReference<>();
+
+  private boolean closed;
+  private boolean flushBatch;
+  private int batchRecordCount = 0;
+  private long batchByteSize = 0;
+
+  private long recordCount = 0;
+  private long recordCountForNextMemCheck;
+  private int rowGroupOrdinal = 0;
+  private RowGroup current;
+  private final Deque<RowGroup> flushing = new ArrayDeque<>();
+  private volatile long lastRowGroupEndPos = 0;
+  private volatile long nextRowGroupSize;
+  private final WriterMemoryManager.Registration memory;
+  private final boolean adaptiveBloomFilter;
+
+  /**
+   * @param encodingExecutor     the executor encoding the columns, or null to use an own pool
+   * @param encodingThreads      the number of threads of the own pool
+   * @param maxInFlightRowGroups the maximum number of full row groups being finalized or written
+   * @param memory               the registration at a memory manager, or null
+   * @param adaptiveBloomFilter  whether to size the bloom filters by the observed distinct values
+   */
+  ParallelParquetRecordWriter(
+      ParquetFileWriter parquetFileWriter,
+      WriteSupport<T> writeSupport,
+      MessageType schema,
+      Map<String, String> extraMetaData,
+      long rowGroupSize,
+      BytesInputCompressor compressor,
+      boolean validating,
+      ParquetProperties props,
+      ExecutorService encodingExecutor,
+      int encodingThreads,
+      int maxInFlightRowGroups,
+      WriterMemoryManager.Registration memory,
+      boolean adaptiveBloomFilter) {
+    if (maxInFlightRowGroups <= 0) {
+      throw new IllegalArgumentException("maxInFlightRowGroups must be positive: " + maxInFlightRowGroups);
+    }
+    this.parquetFileWriter = parquetFileWriter;
+    this.writeSupport = Objects.requireNonNull(writeSupport, "writeSupport cannot be null");
+    this.schema = schema;
+    this.extraMetaData = extraMetaData;
+    this.rowGroupSizeThreshold = rowGroupSize;
+    this.nextRowGroupSize = rowGroupSize;
+    this.compressor = compressor;
+    this.props = props;
+    this.maxInFlightRowGroups = maxInFlightRowGroups;
+    this.memory = memory;
+    this.adaptiveBloomFilter = adaptiveBloomFilter;
+    this.columns = schema.getColumns();
+    this.columnSchemas = new ArrayList<>(columns.size());
+    this.buffers = new ColumnBuffer[columns.size()];
+    this.freeBuffers = new ArrayList<>(columns.size());
+    this.lanes = new ArrayList<>(columns.size());
+    for (int i = 0; i < columns.size(); i++) {
+      columnSchemas.add(columnSchema(schema, columns.get(i)));
+      buffers[i] = new ColumnBuffer(columns.get(i));
+      freeBuffers.add(new ConcurrentLinkedQueue<>());
+      lanes.add(new Lane());
+    }
+    this.queuedBatches = new Semaphore(max(1, columns.size() * QUEUED_BATCHES_PER_COLUMN));
+
+    int writerId = WRITER_ID.incrementAndGet();
+    if (encodingExecutor == null) {
+      if (encodingThreads <= 0) {
+        throw new IllegalArgumentException("encodingThreads must be positive: " + encodingThreads);
+      }
+      this.encodingExecutor = Executors.newFixedThreadPool(encodingThreads, daemonThreads("parquet-encoder-" + writerId));
+      this.ownsEncodingExecutor = true;
+    } else {
+      this.encodingExecutor = encodingExecutor;
+      this.ownsEncodingExecutor = false;
+    }
+    this.ioExecutor = Executors.newSingleThreadExecutor(daemonThreads("parquet-writer-io-" + writerId));
+
+    MessageColumnIO columnIO = new ColumnIOFactory(validating).getColumnIO(schema);
+    this.recordConsumer = columnIO.getRecordWriter(new BufferingColumnWriteStore());
+    writeSupport.prepareForWrite(recordConsumer);
+    this.current = new RowGroup();
+    this.recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+  }
+
+  @Override
+  public void write(T value) throws IOException, InterruptedException {
+    checkFailure();
+    try {
+      writeSupport.write(value);
+    } catch (ParallelWriteException e) {
+      throw e.getCause();
+    }
+    ++recordCount;
+    if (memory != null && memory.pollFlushRequest()) {
+      dispatchRowGroup();
+      current = new RowGroup();
+      recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+      memory.update(getBufferedSize());
+    } else {
+      checkBlockSizeReached();
+    }
+  }
+
+  @Override
+  public void flushRowGroup() throws IOException, InterruptedException {
+    checkFailure();
+    if (recordCount > 0) {
+      dispatchRowGroup();
+      current = new RowGroup();
+      recordCountForNextMemCheck = props.getMinRowCountForPageSizeCheck();
+    }
+  }
+
+  @Override
+  public long getDataSize() {
+    return lastRowGroupEndPos + getBufferedSize();
+  }
+
+  private long getBufferedSize() {
+    long size = current.getBufferedSize() + batchByteSize;
+    for (RowGroup rowGroup : flushing) {
+      if (!rowGroup.flushed.isDone()) {
+        size += rowGroup.bufferedSize;
+      }
+    }
+    return size;
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try {
+      dispatchRowGroup();
+      awaitFlushing(0);
+      WriteSupport.FinalizedWriteContext finalWriteContext = writeSupport.finalizeWrite();
+      Map<String, String> finalMetadata = new HashMap<>(extraMetaData);
+      String modelName = writeSupport.getName();
+      if (modelName != null) {
+        finalMetadata.put(ParquetWriter.OBJECT_MODEL_NAME_PROP, modelName);
+      }
+      finalMetadata.putAll(finalWriteContext.getExtraMetaData());
+      parquetFileWriter.end(finalMetadata);
+    } finally {
+      ioExecutor.shutdownNow();
+      if (ownsEncodingExecutor) {
+        encodingExecutor.shutdownNow();
+      }
+      if (memory != null) {
+        memory.close();
+      }
+    }
+  }
+
+  private void checkBlockSizeReached() throws IOException, InterruptedException {
+    if (recordCount >= recordCountForNextMemCheck) { // checking the memory size is relatively expensive, so let's not do it for every record.
+      long memSize = current.getBufferedSize() + batchByteSize;
+      long recordSize = memSize / recordCount;
+      long rowGroupSize = memory == null ? nextRowGroupSize : min(nextRowGroupSize, memory.getRowGroupSize());
+      // flush the row group if it is within ~2 records of the limit
+      // it is much better to be slightly under size than to be over at all
+      if (memSize > (rowGroupSize - 2 * recordSize)) {
+        dispatchRowGroup();
+        current = new RowGroup();
+        recordCountForNextMemCheck = min(max(props.getMinRowCountForPageSizeCheck(), recordCount / 2),
+            props.getMaxRowCountForPageSizeCheck());
+      } else {
+        recordCountForNextMemCheck = min(
+            max(props.getMinRowCountForPageSizeCheck(),
+                (recordCount + (long) (rowGroupSize / ((float) recordSize))) / 2), // will check halfway
+            recordCount + props.getMaxRowCountForPageSizeCheck() // will not look more than max records ahead
+        );
+      }
+      if (memory != null) {
+        memory.update(getBufferedSize());
+      }
+    }
+  }
+
+  /**
+   * Hands the current row group to the lanes for finalizing, after waiting until less than
+   * {@code maxInFlightRowGroups} row groups are in flight.
+   */
+  private void dispatchRowGroup() throws IOException, InterruptedException {
+    recordConsumer.flush();
+    dispatchBatch();
+    if (recordCount == 0) {
+      return;
+    }
+    awaitFlushing(maxInFlightRowGroups - 1);
+    RowGroup rowGroup = current;
+    rowGroup.recordCount = recordCount;
+    rowGroup.bufferedSize = rowGroup.getBufferedSize();
+    rowGroupOrdinal++;
+    recordCount = 0;
+    for (int i = 0; i < lanes.size(); i++) {
+      int column = i;
+      lanes.get(i).execute(() -> rowGroup.finish(column));
+    }
+    flushing.addLast(rowGroup);
+  }
+
+  private void awaitFlushing(int limit) throws IOException, InterruptedException {
+    for (RowGroup head = flushing.peekFirst(); head != null; head = flushing.peekFirst()) {
+      if (flushing.size() <= limit && !head.flushed.isDone()) {
+        return;
+      }
+      try {
+        head.flushed.get();
+      } catch (ExecutionException e) {
+        throw new IOException("Failed to write row group to " + parquetFileWriter, e.getCause());
+      }
+      flushing.removeFirst();
+    }
+  }
+
+  /**
+   * Hands the buffered values of every column to its lane.
+   */
+  private void dispatchBatch() throws IOException, InterruptedException {
+    flushBatch = false;
+    if (batchRecordCount == 0) {
+      return;
+    }
+    checkFailure();
+    RowGroup rowGroup = current;
+    for (int i = 0; i < buffers.length; i++) {
+      ColumnBuffer buffer = buffers[i];
+      ColumnBuffer next = freeBuffers.get(i).poll();
+      buffers[i] = next == null ? new ColumnBuffer(columns.get(i)) : next;
+
+      queuedBatches.acquire();
+      rowGroup.queuedBytes.addAndGet(buffer.byteSize);
+      int column = i;
+      lanes.get(i).execute(() -> rowGroup.encode(column, buffer));
+    }
+    batchRecordCount = 0;
+    batchByteSize = 0;
+  }
+
+  private void checkFailure() throws IOException {
+    Throwable cause = failure.get();
+    if (cause != null) {
+      if (cause instanceof InterruptedException) {
+        throw new InterruptedIOException("Interrupted while encoding columns");
+      }
+      throw new IOException("Failed to encode columns", cause);
+    }
+  }
+
+  private void fail(RowGroup rowGroup, Throwable cause) {
+    failure.compareAndSet(null, cause);
+    rowGroup.flushed.completeExceptionally(failure.get());
+  }
+
+  private static MessageType columnSchema(MessageType schema, ColumnDescriptor column) {
+    String[] path = column.getPath();
+    Type type = schema.getType(path);
+    for (int i = path.length - 1; i > 0; i--) {
+      type = schema.getType(Arrays.copyOf(path, i)).asGroupType().withNewFields(type);
+    }
+    return new MessageType(schema.getName(), type);
+  }
+
+  private static ThreadFactory daemonThreads(String prefix) {
+    AtomicInteger threadId = new AtomicInteger();
+    return runnable -> {
+      Thread thread = new Thread(runnable, prefix + "-" + threadId.incrementAndGet());
+      thread.setDaemon(true);
+      return thread;
+    };
+  }
+
+  /**
+   * The pages of one row group, encoded by the lanes and written by the I/O thread.
+   */
+  private final class RowGroup {
+
+    private final ColumnChunkPageWriteStore pageStore;
+    private final ColumnWriteStore[] stores = new ColumnWriteStore[columns.size()];
+    private final ColumnWriter[] writers = new ColumnWriter[columns.size()];
+    private final AtomicLongArray encodedSizes = new AtomicLongArray(columns.size());
+    private final AtomicLong queuedBytes = new AtomicLong();
+    private final AtomicInteger remaining = new AtomicInteger(columns.size());
+    private final CompletableFuture<Void> flushed = new CompletableFuture<>();
+    private long recordCount;
+    private volatile long bufferedSize;
+
+    private RowGroup() {
+      this.pageStore = new ColumnChunkPageWriteStore(DefaultCodecFactory.wrap(compressor), schema, props.getAllocator(),
+          props.getColumnIndexTruncateLength(), props.getPageWriteChecksumEnabled(),
+          parquetFileWriter.getEncryptor(), rowGroupOrdinal);
+      for (int i = 0; i < stores.length; i++) {
+        MessageType columnSchema = columnSchemas.get(i);
+        if (adaptiveBloomFilter) {
+          AdaptiveBloomFilterStore bloomFilterStore = new AdaptiveBloomFilterStore(pageStore, pageStore, props);
+          stores[i] = props.newColumnWriteStore(columnSchema, bloomFilterStore, bloomFilterStore);
+        } else {
+          stores[i] = props.newColumnWriteStore(columnSchema, pageStore, pageStore);
+        }
+        writers[i] = stores[i].getColumnWriter(columnSchema.getColumns().get(0));
+      }
+    }
+
+    private long getBufferedSize() {
+      long size = queuedBytes.get();
+      for (int i = 0; i < encodedSizes.length(); i++) {
+        size += encodedSizes.get(i);
+      }
+      return size;
+    }
+
+    private void encode(int column, ColumnBuffer buffer) {
+      try {
+        if (failure.get() == null) {
+          buffer.replay(writers[column], stores[column]);
+          encodedSizes.set(column, stores[column].getBufferedSize());
+        }
+      } catch (Throwable e) {
+        fail(this, e);
+      } finally {
+        queuedBytes.addAndGet(-buffer.byteSize);
+        buffer.clear();
+        freeBuffers.get(column).offer(buffer);
+        queuedBatches.release();
+      }
+    }
+
+    private void finish(int column) {
+      try {
+        if (failure.get() != null) {
+          fail(this, failure.get());
+          return;
+        }
+        stores[column].flush();
+        if (remaining.decrementAndGet() == 0) {
+          ioExecutor.execute(this::write);
+        }
+      } catch (Throwable e) {
+        fail(this, e);
+      }
+    }
+
+    private void write() {
+      try {
+        parquetFileWriter.startBlock(recordCount);
+        pageStore.flushToFileWriter(parquetFileWriter);
+        parquetFileWriter.endBlock();
+        lastRowGroupEndPos = parquetFileWriter.getPos();
+        nextRowGroupSize = min(parquetFileWriter.getNextRowGroupSize(), rowGroupSizeThreshold);
+        flushed.complete(null);
+      } catch (Throwable e) {
+        fail(this, e);
+      }
+    }
+  }
+
+  /**
+   * Runs the tasks of one column in submission order on the encoding executor.
+   */
+  private final class Lane implements Runnable {
+
+    private final Queue<Runnable> tasks = new ArrayDeque<>();
+    private boolean running = false;
+
+    private void execute(Runnable task) {
+      synchronized (this) {
+        tasks.add(task);
+        if (running) {
+          return;
+        }
+        running = true;
+      }
+      try {
+        encodingExecutor.execute(this);
+      } catch (RejectedExecutionException e) {
+        synchronized (this) {
+          tasks.clear();
+          running = false;
+        }
+        throw e;
+      }
+    }
+
+    @Override
+    public void run() {
+      while (true) {
+        Runnable task;
+        synchronized (this) {
+          task = tasks.poll();
+          if (task == null) {
+            running = false;
+            return;
+          }
+        }
+        task.run();
+      }
+    }
+  }
+
+  /**
+   * The shredded values of one column of a batch of complete records.
+   */
+  private static final class ColumnBuffer {
+
+    private final ColumnDescriptor column;
+    private final int maxDefinitionLevel;
+    private int size = 0;
+    private long byteSize = 0;
+    private int[] repetitionLevels = new int[64];
+    private int[] definitionLevels = new int[64];
+    private int[] ints;
+    private long[] longs;
+    private boolean[] booleans;
+    private float[] floats;
+    private double[] doubles;
+    private Binary[] binaries;
+
+    private ColumnBuffer(ColumnDescriptor column) {
+      this.column = column;
+      this.maxDefinitionLevel = column.getMaxDefinitionLevel();
+      switch (column.getPrimitiveType().getPrimitiveTypeName()) {
+        case INT32:
+          ints = new int[64];
+          break;
+        case INT64:
+          longs = new long[64];
+          break;
+        case BOOLEAN:
+          booleans = new boolean[64];
+          break;
+        case FLOAT:
+          floats = new float[64];
+          break;
+        case DOUBLE:
+          doubles = new double[64];
+          break;
+        default:
+          binaries = new Binary[64];
+          break;
+      }
+    }
+
+    private int append(int repetitionLevel, int definitionLevel, long bytes) {
+      if (size == repetitionLevels.length) {
+        int capacity = size * 2;
+        repetitionLevels = Arrays.copyOf(repetitionLevels, capacity);
+        definitionLevels = Arrays.copyOf(definitionLevels, capacity);
+        if (ints != null) ints = Arrays.copyOf(ints, capacity);
+        if (longs != null) longs = Arrays.copyOf(longs, capacity);
+        if (booleans != null) booleans = Arrays.copyOf(booleans, capacity);
+        if (floats != null) floats = Arrays.copyOf(floats, capacity);
+        if (doubles != null) doubles = Arrays.copyOf(doubles, capacity);
+        if (binaries != null) binaries = Arrays.copyOf(binaries, capacity);
+      }
+      repetitionLevels[size] = repetitionLevel;
+      definitionLevels[size] = definitionLevel;
+      byteSize += 8 + bytes;
+      return size++;
+    }
+
+    private UnsupportedOperationException unsupported(String type) {
+      return new UnsupportedOperationException(
+          "Cannot write " + type + " to " + column.getPrimitiveType().getPrimitiveTypeName() + " column " + column);
+    }
+
+    /**
+     * Writes the values to the column writer, ending a record before every value starting a new one.
+     */
+    private void replay(ColumnWriter writer, ColumnWriteStore store) {
+      for (int i = 0; i < size; i++) {
+        int repetitionLevel = repetitionLevels[i];
+        int definitionLevel = definitionLevels[i];
+        if (repetitionLevel == 0 && i > 0) {
+          store.endRecord();
+        }
+        if (definitionLevel < maxDefinitionLevel) {
+          writer.writeNull(repetitionLevel, definitionLevel);
+        } else if (ints != null) {
+          writer.write(ints[i], repetitionLevel, definitionLevel);
+        } else if (longs != null) {
+          writer.write(longs[i], repetitionLevel, definitionLevel);
+        } else if (booleans != null) {
+          writer.write(booleans[i], repetitionLevel, definitionLevel);
+        } else if (floats != null) {
+          writer.write(floats[i], repetitionLevel, definitionLevel);
+        } else if (doubles != null) {
+          writer.write(doubles[i], repetitionLevel, definitionLevel);
+        } else {
+          writer.write(binaries[i], repetitionLevel, definitionLevel);
+        }
+      }
+      if (size > 0) {
+        store.endRecord();
+      }
+    }
+
+    private void clear() {
+      if (binaries != null) {
+        Arrays.fill(binaries, 0, size, null);
+      }
+      size = 0;
+      byteSize = 0;
+    }
+  }
+
+  /**
+   * Collects the values of the record consumer into the column buffers, and cuts a batch after the
+   * record completing it.
+   */
+  private final class BufferingColumnWriteStore implements ColumnWriteStore {
+
+    private final Map<ColumnDescriptor, ColumnWriter> writers = new HashMap<>();
+
+    private BufferingColumnWriteStore() {
+      for (int i = 0; i < columns.size(); i++) {
+        writers.put(columns.get(i), new BufferingColumnWriter(i));
+      }
+    }
+
+    @Override
+    public ColumnWriter getColumnWriter(ColumnDescriptor path) {
+      return writers.get(path);
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void endRecord() {
+      batchRecordCount++;
+      if (flushBatch) {
+        try {
+          dispatchBatch();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new ParallelWriteException(new InterruptedIOException("Interrupted while encoding columns"));
+        } catch (IOException e) {
+          throw new ParallelWriteException(e);
+        }
+      }
+    }
+
+    @Override
+    public long getAllocatedSize() {
+      return batchByteSize;
+    }
+
+    @Override
+    public long getBufferedSize() {
+      return batchByteSize;
+    }
+
+    @Override
+    public String memUsageString() {
+      return "Batch {" + batchRecordCount + " records, " + batchByteSize + " bytes}";
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public boolean isColumnFlushNeeded() {
+      // the cached nulls are written before ending the last record of a batch
+      flushBatch = batchRecordCount + 1 >= BATCH_RECORD_COUNT || batchByteSize >= BATCH_BYTE_SIZE;
+      return flushBatch;
+    }
+  }
+
+  private final class BufferingColumnWriter implements ColumnWriter {
+
+    private final int column;
+
+    private BufferingColumnWriter(int column) {
+      this.column = column;
+    }
+
+    private ColumnBuffer buffer(long bytes) {
+      batchByteSize += 8 + bytes;
+      return buffers[column];
+    }
+
+    @Override
+    public void write(int value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(4);
+      if (buffer.ints == null) {
+        throw buffer.unsupported("int");
+      }
+      int index = buffer.append(repetitionLevel, definitionLevel, 4);
+      buffer.ints[index] = value;
+    }
+
+    @Override
+    public void write(long value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(8);
+      if (buffer.longs == null) {
+        throw buffer.unsupported("long");
+      }
+      int index = buffer.append(repetitionLevel, definitionLevel, 8);
+      buffer.longs[index] = value;
+    }
+
+    @Override
+    public void write(boolean value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(1);
+      if (buffer.booleans == null) {
+        throw buffer.unsupported("boolean");
+      }
+      int index = buffer.append(repetitionLevel, definitionLevel, 1);
+      buffer.booleans[index] = value;
+    }
+
+    @Override
+    public void write(Binary value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(value.length());
+      if (buffer.binaries == null) {
+        throw buffer.unsupported("binary");
+      }
+      // the bytes of the value may be reused by the caller before the value is encoded
+      int index = buffer.append(repetitionLevel, definitionLevel, value.length());
+      buffer.binaries[index] = value.copy();
+    }
+
+    @Override
+    public void write(float value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(4);
+      if (buffer.floats == null) {
+        throw buffer.unsupported("float");
+      }
+      int index = buffer.append(repetitionLevel, definitionLevel, 4);
+      buffer.floats[index] = value;
+    }
+
+    @Override
+    public void write(double value, int repetitionLevel, int definitionLevel) {
+      ColumnBuffer buffer = buffer(8);
+      if (buffer.doubles == null) {
+        throw buffer.unsupported("double");
+      }
+      int index = buffer.append(repetitionLevel, definitionLevel, 8);
+      buffer.doubles[index] = value;
+    }
+
+    @Override
+    public void writeNull(int repetitionLevel, int definitionLevel) {
+      buffer(0).append(repetitionLevel, definitionLevel, 0);
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public long getBufferedSizeInMemory() {
+      return buffers[column].byteSize;
+    }
+  }
+
+  /**
+   * Carries a failure of the pipeline through the record consumer, which cannot throw checked
+   * exceptions.
+   */
+  static final class ParallelWriteException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    ParallelWriteException(IOException cause) {
+      super(cause);
+    }
+
+    @Override
+    public synchronized IOException getCause() {
+      return (IOException) super.getCause();
+    }
+  }
+}
@@ -23,6 +23,12 @@
 
 package org.apache.parquet.hadoop;
 
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
+import cn.edu.tsinghua.iginx.format.parquet.filter.ColumnVectors;
+import cn.edu.tsinghua.iginx.format.parquet.filter.CompiledPredicate;
+import cn.edu.tsinghua.iginx.format.parquet.filter.RowRangesUtils;
+import cn.edu.tsinghua.iginx.format.parquet.filter.SchemaUtils;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
 import org.apache.hadoop.fs.Path;
 import org.apache.parquet.ParquetReadOptions;
 import org.apache.parquet.bytes.ByteBufferInputStream;
@@ -79,6 +85,18 @@ import static org.apache.parquet.hadoop.ParquetFileWriter.MAGIC;
 public class ParquetFileReader implements Closeable {
 
   private static final Logger LOG = LoggerFactory.getLogger(ParquetFileReader.class);
+
+  /**
+   * The property of the read options which enables the compiled evaluation of the record filter,
+   * "true" or "false" (the default). The filter columns of each row group are decoded first and the
+   * filter is evaluated over them in batches, so that only the matching rows of the requested
+   * columns are read and assembled. This applies to row groups with offset indexes and filters
+   * without repeated columns; the record filter still applies to the assembled records.
+   */
+  public static final String COMPILED_FILTER_ENABLED = "parquet.filter.compiled.enabled";
+
+  private static final int COMPILED_FILTER_BATCH_SIZE = 1024;
+
   protected final SeekableInputStream f;
   private final ParquetMetadataConverter converter;
   private final CRC32 crc;
@@ -89,6 +107,14 @@ public class ParquetFileReader implements Closeable {
   private final List<BlockMetaData> blocks;
   private final List<ColumnIndexStore> blockIndexStores;
   private final List<RowRanges> blockRowRanges;
+  private List<RowRanges> blockWindowRanges = null; // not null if a row window is pushed down
+  private long rowWindowOffset = 0;
+  private long rowWindowLimit = Long.MAX_VALUE;
+  private long rowWindowSkip = 0;
+  private long[] rowSelectionFrom = null; // not null if a row selection is pushed down
+  private long[] rowSelectionTo = null;
+  private List<RowRanges> blockSelectionRanges = null;
+  private CompiledPredicate compiledFilter = null; // not null if the compiled filter is enabled
   // not final. in some cases, this may be lazily loaded for backward-compat.
   private final ParquetMetadata footer;
   private int currentBlock = 0;
@@ -96,12 +122,44 @@ public class ParquetFileReader implements Closeable {
   private DictionaryPageReader nextDictionaryReader = null;
   private InternalFileDecryptor fileDecryptor = null;
   private MessageType requestedSchema = null;
+  private final DictionaryCache dictionaryCache; // may be null
+  private final String dictionaryCacheKey; // may be null
 
   public ParquetFileReader(InputFile file, ParquetMetadata footer, ParquetReadOptions options)
       throws IOException {
+    this(file, footer, options, null);
+  }
+
+  /**
+   * @param dictionaryCache the cache of dictionary pages shared by readers, or null to disable it. It
+   * is bypassed unless the file has an identity, see {@link #dictionaryCacheKey(InputFile)}
+   */
+  public ParquetFileReader(
+      InputFile file,
+      ParquetMetadata footer,
+      ParquetReadOptions options,
+      DictionaryCache dictionaryCache)
+      throws IOException {
+    this(file, footer, options, dictionaryCache, dictionaryCache == null ? null : dictionaryCacheKey(file));
+  }
+
+  /**
+   * @param dictionaryCache the cache of dictionary pages shared by readers, or null to disable it
+   * @param dictionaryCacheKey the identity of the file in the cache, or null to bypass the cache.
+   * Readers of the same key must read the same content.
+   */
+  public ParquetFileReader(
+      InputFile file,
+      ParquetMetadata footer,
+      ParquetReadOptions options,
+      DictionaryCache dictionaryCache,
+      String dictionaryCacheKey)
+      throws IOException {
     this.converter = new ParquetMetadataConverter(options);
     this.file = file;
     this.options = options;
+    this.dictionaryCache = dictionaryCacheKey == null ? null : dictionaryCache;
+    this.dictionaryCacheKey = dictionaryCache == null ? null : dictionaryCacheKey;
     this.f = file.newStream();
     try {
       this.footer = footer;
@@ -115,6 +173,16 @@ public class ParquetFileReader implements Closeable {
       this.blocks = filterRowGroups(footer.getBlocks());
       this.blockIndexStores = listWithNulls(this.blocks.size());
       this.blockRowRanges = listWithNulls(this.blocks.size());
+      if (Boolean.parseBoolean(options.getProperty(COMPILED_FILTER_ENABLED))
+          && FilterCompat.isFilteringRequired(options.getRecordFilter())) {
+        MessageType schema = fileMetaData.getSchema();
+        CompiledPredicate predicate = CompiledPredicate.compile(options.getRecordFilter(), schema);
+        if (predicate != null) {
+          // compile again against the filter columns only, which are the columns decoded
+          this.compiledFilter = CompiledPredicate.compile(
+              options.getRecordFilter(), SchemaUtils.project(schema, predicate.getColumns()));
+        }
+      }
       for (ColumnDescriptor col : footer.getFileMetaData().getSchema().getColumns()) {
         paths.put(ColumnPath.get(col.getPath()), col);
       }
@@ -232,22 +300,326 @@ public class ParquetFileReader implements Closeable {
     return total;
   }
 
+  /**
+   * @return the number of rows left by the column index filtering, the row window and the row
+   * selection, which is an upper bound if the compiled filter is enabled, since that filter is only
+   * evaluated when a row group is read
+   */
   public long getFilteredRecordCount() {
-    if (!options.useColumnIndexFilter()
-        || !FilterCompat.isFilteringRequired(options.getRecordFilter())) {
+    if (!isRowRangesFilteringRequired()) {
       return getRecordCount();
     }
     long total = 0L;
     for (int i = 0, n = blocks.size(); i < n; ++i) {
-      total += getRowRanges(i).rowCount();
+      total += getFilteredRowRanges(i).rowCount();
     }
     return total;
   }
 
+  /**
+   * Restricts the filtered reads to the given rows. Row groups and pages without any selected row
+   * are not read at all. The selection is combined with the column index filtering and the row
+   * window, and resets the reader to the first row group.
+   *
+   * <p>Row groups without offset indexes are read entirely, so the caller must still drop the rows
+   * which are not selected.
+   *
+   * @param from the first row index in the file of each range, in ascending order
+   * @param to   the last row index in the file of each range, inclusive
+   */
+  public void setRowSelection(long[] from, long[] to) {
+    if (from.length != to.length) {
+      throw new IllegalArgumentException("The bounds of the row selection do not match");
+    }
+    for (int i = 0; i < from.length; i++) {
+      if (from[i] > to[i] || (i > 0 && from[i] <= to[i - 1])) {
+        throw new IllegalArgumentException("The ranges of the row selection must be ascending and disjoint");
+      }
+    }
+    this.rowSelectionFrom = from.clone();
+    this.rowSelectionTo = to.clone();
+    this.blockSelectionRanges = null;
+    this.currentBlock = 0;
+    this.currentRowGroup = null;
+    this.nextDictionaryReader = null;
+  }
+
+  /**
+   * Drops the row selection, if any, and resets the reader to the first row group.
+   */
+  public void clearRowSelection() {
+    this.rowSelectionFrom = null;
+    this.rowSelectionTo = null;
+    this.blockSelectionRanges = null;
+    this.currentBlock = 0;
+    this.currentRowGroup = null;
+    this.nextDictionaryReader = null;
+  }
+
+  private boolean isRowRangesFilteringRequired() {
+    return isRowWindowPushedDown()
+        || rowSelectionFrom != null
+        || compiledFilter != null
+        || (options.useColumnIndexFilter()
+            && FilterCompat.isFilteringRequired(options.getRecordFilter()));
+  }
+
+  /**
+   * @return the rows of the block to read according to the column index filtering, the row window
+   * and the row selection, before evaluating the compiled filter
+   */
+  private RowRanges getFilteredRowRanges(int blockIndex) {
+    RowRanges rowRanges = null;
+    if (options.useColumnIndexFilter()
+        && FilterCompat.isFilteringRequired(options.getRecordFilter())) {
+      rowRanges = getRowRanges(blockIndex);
+    }
+    if (isRowWindowPushedDown()) {
+      rowRanges = intersect(rowRanges, getWindowRowRanges(blockIndex));
+    }
+    if (rowSelectionFrom != null) {
+      rowRanges = intersect(rowRanges, getSelectionRowRanges(blockIndex));
+    }
+    return rowRanges == null ? RowRangesUtils.all(blocks.get(blockIndex).getRowCount()) : rowRanges;
+  }
+
+  private static RowRanges intersect(RowRanges left, RowRanges right) {
+    return left == null ? right : RowRanges.intersection(left, right);
+  }
+
+  /**
+   * Reads the candidate rows of the block which pass the compiled filter. The filter columns are
+   * read once over the candidate rows: their pages are decoded to evaluate the filter, then kept for
+   * the requested columns, except for the pages without any matching row.
+   *
+   * @return the row group, or null if no candidate row matches
+   */
+  private ColumnChunkPageReadStore readCompiledRowGroup(int blockIndex, RowRanges candidate)
+      throws IOException {
+    BlockMetaData block = blocks.get(blockIndex);
+    Map<ColumnPath, ColumnDescriptor> filterColumns = new HashMap<>();
+    for (ColumnDescriptor column : compiledFilter.getSchema().getColumns()) {
+      filterColumns.put(ColumnPath.get(column.getPath()), column);
+    }
+    Set<ColumnPath> columns = new HashSet<>(paths.keySet());
+    columns.addAll(filterColumns.keySet());
+    ColumnIndexStore ciStore = ColumnIndexStoreImpl.create(this, block, columns);
+    try {
+      for (ColumnPath path : columns) {
+        ciStore.getOffsetIndex(path);
+      }
+    } catch (ColumnIndexStore.MissingOffsetIndexException e) {
+      // the pages cannot be pruned, so the record filter drops the rows instead
+      return readFilteredRowGroup(blockIndex, candidate);
+    }
+
+    List<ChunkPages> filterPages = readFilteredChunkPages(block, candidate, ciStore, filterColumns);
+    ColumnChunkPageReadStore filterGroup =
+        new ColumnChunkPageReadStore(candidate, block.getRowIndexOffset());
+    for (ChunkPages pages : filterPages) {
+      filterGroup.addColumn(pages.column, pages.reader());
+    }
+    RowRanges rowRanges = evaluateCompiledFilter(filterGroup, candidate);
+    if (rowRanges.rowCount() == 0) {
+      return null;
+    }
+
+    ColumnChunkPageReadStore rowGroup =
+        new ColumnChunkPageReadStore(rowRanges, block.getRowIndexOffset());
+    Map<ColumnPath, ColumnDescriptor> otherColumns = new HashMap<>(paths);
+    for (ChunkPages pages : filterPages) {
+      ColumnPath path = ColumnPath.get(pages.column.getPath());
+      ColumnDescriptor column = otherColumns.remove(path);
+      if (column != null) {
+        OffsetIndex offsetIndex =
+            filterOffsetIndex(ciStore.getOffsetIndex(path), rowRanges, block.getRowCount());
+        rowGroup.addColumn(column, pages.reader(offsetIndex));
+      }
+    }
+    for (ChunkPages pages : readFilteredChunkPages(block, rowRanges, ciStore, otherColumns)) {
+      rowGroup.addColumn(pages.column, pages.reader());
+    }
+    return rowGroup;
+  }
+
+  /**
+   * Evaluates the compiled filter over the candidate rows of the filter columns.
+   *
+   * @return the matching rows
+   */
+  private RowRanges evaluateCompiledFilter(PageReadStore pages, RowRanges candidate) {
+    MessageType schema = compiledFilter.getSchema();
+    ColumnVectors vectors = new ColumnVectors(schema, COMPILED_FILTER_BATCH_SIZE);
+    vectors.open(pages, fileMetaData.getCreatedBy());
+    long[] selection = new long[CompiledPredicate.words(COMPILED_FILTER_BATCH_SIZE)];
+    long[] from = new long[16];
+    long[] to = new long[16];
+    int size = 0;
+    PrimitiveIterator.OfLong rows = candidate.iterator();
+    for (long remaining = candidate.rowCount(); remaining > 0; remaining -= vectors.getSize()) {
+      vectors.read((int) Math.min(remaining, COMPILED_FILTER_BATCH_SIZE));
+      compiledFilter.evaluate(vectors, selection);
+      for (int row = 0; row < vectors.getSize(); row++) {
+        long rowIndex = rows.nextLong();
+        if ((selection[row >>> 6] & (1L << row)) == 0) {
+          continue;
+        }
+        if (size > 0 && to[size - 1] == rowIndex - 1) {
+          to[size - 1] = rowIndex;
+          continue;
+        }
+        if (size == from.length) {
+          from = Arrays.copyOf(from, size * 2);
+          to = Arrays.copyOf(to, size * 2);
+        }
+        from[size] = rowIndex;
+        to[size] = rowIndex;
+        size++;
+      }
+    }
+    return RowRangesUtils.create(from, to, size);
+  }
+
+  private RowRanges getSelectionRowRanges(int blockIndex) {
+    if (blockSelectionRanges == null) {
+      blockSelectionRanges = listWithNulls(blocks.size());
+    }
+    RowRanges rowRanges = blockSelectionRanges.get(blockIndex);
+    if (rowRanges == null) {
+      rowRanges = calculateSelectionRowRanges(blockIndex);
+      blockSelectionRanges.set(blockIndex, rowRanges);
+    }
+    return rowRanges;
+  }
+
+  private RowRanges calculateSelectionRowRanges(int blockIndex) {
+    BlockMetaData block = blocks.get(blockIndex);
+    long rowCount = block.getRowCount();
+    long first = block.getRowIndexOffset();
+    if (first < 0) {
+      // the position of the block is unknown, the caller drops the unselected rows
+      return RowRangesUtils.all(rowCount);
+    }
+    long last = first + rowCount - 1;
+    int start = Arrays.binarySearch(rowSelectionTo, first);
+    if (start < 0) {
+      start = -start - 1;
+    }
+    long[] from = new long[rowSelectionFrom.length - start];
+    long[] to = new long[from.length];
+    int size = 0;
+    for (int i = start; i < rowSelectionFrom.length && rowSelectionFrom[i] <= last; i++) {
+      from[size] = Math.max(rowSelectionFrom[i], first) - first;
+      to[size] = Math.min(rowSelectionTo[i], last) - first;
+      size++;
+    }
+    if (size == 0) {
+      return RowRanges.EMPTY;
+    }
+    if (size == 1 && from[0] == 0 && to[0] == rowCount - 1) {
+      return RowRangesUtils.all(rowCount);
+    }
+    if (!hasOffsetIndexes(blockIndex)) {
+      return RowRangesUtils.all(rowCount);
+    }
+    return RowRangesUtils.create(from, to, size);
+  }
+
+  /**
+   * Restricts the filtered reads to the rows {@code [offset, offset + limit)} of the row groups of
+   * this reader. Row groups and pages out of the window are not read at all. The window is ignored
+   * if records are filtered, as the position of the matching rows is unknown until they are read.
+   *
+   * <p>Row groups without offset indexes are read entirely, so the caller must still skip the
+   * first {@link #getRowWindowSkip()} rows and stop after {@code limit} rows. Must be called before
+   * reading any row group.
+   *
+   * @param offset the number of leading rows to skip
+   * @param limit  the maximum number of rows to read
+   */
+  public void setRowWindow(long offset, long limit) {
+    if (offset < 0 || limit < 0) {
+      throw new IllegalArgumentException(
+          String.format("Invalid row window, offset: %s, limit: %s", offset, limit));
+    }
+    this.rowWindowOffset = offset;
+    this.rowWindowLimit = limit;
+    this.blockWindowRanges = null;
+  }
+
+  /**
+   * @return the number of leading rows of the row window which could not be pruned by the row group
+   * and page skipping and are still returned by the filtered reads
+   */
+  public long getRowWindowSkip() {
+    if (!isRowWindowPushedDown()) {
+      return 0;
+    }
+    calculateWindowRowRanges();
+    return rowWindowSkip;
+  }
+
+  private boolean isRowWindowPushedDown() {
+    return (rowWindowOffset > 0 || rowWindowLimit != Long.MAX_VALUE)
+        && !FilterCompat.isFilteringRequired(options.getRecordFilter());
+  }
+
+  private RowRanges getWindowRowRanges(int blockIndex) {
+    calculateWindowRowRanges();
+    return blockWindowRanges.get(blockIndex);
+  }
+
+  private void calculateWindowRowRanges() {
+    if (blockWindowRanges != null) {
+      return;
+    }
+    long windowEnd = rowWindowOffset + rowWindowLimit;
+    if (windowEnd < 0) {
+      windowEnd = Long.MAX_VALUE;
+    }
+    List<RowRanges> windows = new ArrayList<>(blocks.size());
+    long skip = 0;
+    long blockStart = 0;
+    for (int i = 0, n = blocks.size(); i < n; ++i) {
+      long rowCount = blocks.get(i).getRowCount();
+      long from = Math.max(0, rowWindowOffset - blockStart);
+      long to = Math.min(rowCount, windowEnd - blockStart);
+      if (from >= to) {
+        windows.add(RowRanges.EMPTY);
+      } else if (from == 0 && to == rowCount) {
+        windows.add(RowRangesUtils.all(rowCount));
+      } else if (hasOffsetIndexes(i)) {
+        windows.add(RowRangesUtils.create(new long[] {from}, new long[] {to - 1}, 1));
+      } else {
+        windows.add(RowRangesUtils.all(rowCount));
+        skip += from;
+      }
+      blockStart += rowCount;
+    }
+    this.rowWindowSkip = skip;
+    this.blockWindowRanges = windows;
+  }
+
+  private boolean hasOffsetIndexes(int blockIndex) {
+    ColumnIndexStore ciStore = getColumnIndexStore(blockIndex);
+    try {
+      for (ColumnPath path : paths.keySet()) {
+        ciStore.getOffsetIndex(path);
+      }
+      return true;
+    } catch (ColumnIndexStore.MissingOffsetIndexException e) {
+      return false;
+    }
+  }
+
   public String getFile() {
     return file.toString();
   }
 
+  public ParquetReadOptions getOptions() {
+    return options;
+  }
+
   public List<BlockMetaData> filterRowGroups(List<BlockMetaData> blocks) throws IOException {
     FilterCompat.Filter recordFilter = options.getRecordFilter();
     if (FilterCompat.isFilteringRequired(recordFilter)) {
@@ -288,6 +660,11 @@ public class ParquetFileReader implements Closeable {
     for (ColumnDescriptor col : projection.getColumns()) {
       paths.put(ColumnPath.get(col.getPath()), col);
     }
+    // the index stores and the row ranges depend on the offset indexes of the requested columns
+    Collections.fill(blockIndexStores, null);
+    Collections.fill(blockRowRanges, null);
+    blockWindowRanges = null;
+    blockSelectionRanges = null;
   }
 
   /**
@@ -364,7 +741,7 @@ public class ParquetFileReader implements Closeable {
       consecutiveChunks.readAll(f, builder);
     }
     for (Chunk chunk : builder.build()) {
-      readChunkPages(chunk, block, rowGroup);
+      rowGroup.addColumn(chunk.descriptor.col, readChunkPages(chunk, block).reader());
     }
 
     return rowGroup;
@@ -387,8 +764,7 @@ public class ParquetFileReader implements Closeable {
     }
 
     // Filtering not required -> fall back to the non-filtering path
-    if (!options.useColumnIndexFilter()
-        || !FilterCompat.isFilteringRequired(options.getRecordFilter())) {
+    if (!isRowRangesFilteringRequired()) {
       return internalReadRowGroup(blockIndex);
     }
 
@@ -397,7 +773,10 @@ public class ParquetFileReader implements Closeable {
       throw new ParquetEmptyBlockException("Illegal row group of 0 rows");
     }
 
-    RowRanges rowRanges = getRowRanges(blockIndex);
+    RowRanges rowRanges = getFilteredRowRanges(blockIndex);
+    if (compiledFilter != null && rowRanges.rowCount() > 0) {
+      return readCompiledRowGroup(blockIndex, rowRanges);
+    }
     return readFilteredRowGroup(blockIndex, rowRanges);
   }
 
@@ -444,7 +823,7 @@ public class ParquetFileReader implements Closeable {
       return internalReadRowGroup(blockIndex);
     }
 
-    return internalReadFilteredRowGroup(block, rowRanges, getColumnIndexStore(blockIndex));
+    return internalReadFilteredRowGroup(block, rowRanges, getColumnIndexStore(blockIndex), paths);
   }
 
   /**
@@ -461,8 +840,7 @@ public class ParquetFileReader implements Closeable {
       return null;
     }
     // Filtering not required -> fall back to the non-filtering path
-    if (!options.useColumnIndexFilter()
-        || !FilterCompat.isFilteringRequired(options.getRecordFilter())) {
+    if (!isRowRangesFilteringRequired()) {
       return readNextRowGroup();
     }
     BlockMetaData block = blocks.get(currentBlock);
@@ -472,21 +850,29 @@ public class ParquetFileReader implements Closeable {
       advanceToNextBlock();
       return readNextFilteredRowGroup();
     }
-    RowRanges rowRanges = getRowRanges(currentBlock);
+    RowRanges rowRanges = getFilteredRowRanges(currentBlock);
     long rowCount = rowRanges.rowCount();
     if (rowCount == 0) {
       // There are no matching rows -> skipping this row-group
       advanceToNextBlock();
       return readNextFilteredRowGroup();
     }
-    if (rowCount == block.getRowCount()) {
+    if (compiledFilter != null) {
+      ColumnChunkPageReadStore rowGroup = readCompiledRowGroup(currentBlock, rowRanges);
+      if (rowGroup == null) {
+        // No row passes the compiled filter -> skipping this row-group
+        advanceToNextBlock();
+        return readNextFilteredRowGroup();
+      }
+      this.currentRowGroup = rowGroup;
+    } else if (rowCount == block.getRowCount()) {
       // All rows are matching -> fall back to the non-filtering path
       return readNextRowGroup();
+    } else {
+      this.currentRowGroup =
+          internalReadFilteredRowGroup(block, rowRanges, getColumnIndexStore(currentBlock), paths);
     }
 
-    this.currentRowGroup =
-        internalReadFilteredRowGroup(block, rowRanges, getColumnIndexStore(currentBlock));
-
     // avoid re-reading bytes the dictionary reader is used after this call
     if (nextDictionaryReader != null) {
       nextDictionaryReader.setRowGroup(currentRowGroup);
@@ -498,16 +884,35 @@ public class ParquetFileReader implements Closeable {
   }
 
   private ColumnChunkPageReadStore internalReadFilteredRowGroup(
-      BlockMetaData block, RowRanges rowRanges, ColumnIndexStore ciStore) throws IOException {
+      BlockMetaData block,
+      RowRanges rowRanges,
+      ColumnIndexStore ciStore,
+      Map<ColumnPath, ColumnDescriptor> columns)
+      throws IOException {
     ColumnChunkPageReadStore rowGroup =
         new ColumnChunkPageReadStore(rowRanges, block.getRowIndexOffset());
+    for (ChunkPages pages : readFilteredChunkPages(block, rowRanges, ciStore, columns)) {
+      rowGroup.addColumn(pages.column, pages.reader());
+    }
+    return rowGroup;
+  }
+
+  /**
+   * @param columns the columns to read, which are the requested ones except for the compiled filter
+   */
+  private List<ChunkPages> readFilteredChunkPages(
+      BlockMetaData block,
+      RowRanges rowRanges,
+      ColumnIndexStore ciStore,
+      Map<ColumnPath, ColumnDescriptor> columns)
+      throws IOException {
     // prepare the list of consecutive parts to read them in one scan
     ChunkListBuilder builder = new ChunkListBuilder(block.getRowCount());
     List<ConsecutivePartList> allParts = new ArrayList<>();
     ConsecutivePartList currentParts = null;
     for (ColumnChunkMetaData mc : block.getColumns()) {
       ColumnPath pathKey = mc.getPath();
-      ColumnDescriptor columnDescriptor = paths.get(pathKey);
+      ColumnDescriptor columnDescriptor = columns.get(pathKey);
       if (columnDescriptor != null) {
         OffsetIndex offsetIndex = ciStore.getOffsetIndex(mc.getPath());
 
@@ -532,33 +937,30 @@ public class ParquetFileReader implements Closeable {
     for (ConsecutivePartList consecutiveChunks : allParts) {
       consecutiveChunks.readAll(f, builder);
     }
-    for (Chunk chunk : builder.build()) {
-      readChunkPages(chunk, block, rowGroup);
+    List<Chunk> chunks = builder.build();
+    List<ChunkPages> pages = new ArrayList<>(chunks.size());
+    for (Chunk chunk : chunks) {
+      pages.add(readChunkPages(chunk, block));
     }
-
-    return rowGroup;
+    return pages;
   }
 
-  private void readChunkPages(Chunk chunk, BlockMetaData block, ColumnChunkPageReadStore rowGroup)
-      throws IOException {
+  private ChunkPages readChunkPages(Chunk chunk, BlockMetaData block) throws IOException {
     if (null == fileDecryptor || fileDecryptor.plaintextFile()) {
-      rowGroup.addColumn(chunk.descriptor.col, chunk.readAllPages());
-      return;
+      return chunk.readAllPages();
     }
     // Encrypted file
     ColumnPath columnPath = ColumnPath.get(chunk.descriptor.col.getPath());
     InternalColumnDecryptionSetup columnDecryptionSetup = fileDecryptor.getColumnSetup(columnPath);
     if (!columnDecryptionSetup.isEncrypted()) { // plaintext column
-      rowGroup.addColumn(chunk.descriptor.col, chunk.readAllPages());
+      return chunk.readAllPages();
     } else { // encrypted column
-      rowGroup.addColumn(
-          chunk.descriptor.col,
-          chunk.readAllPages(
-              columnDecryptionSetup.getMetaDataDecryptor(),
-              columnDecryptionSetup.getDataDecryptor(),
-              fileDecryptor.getFileAAD(),
-              block.getOrdinal(),
-              columnDecryptionSetup.getOrdinal()));
+      return chunk.readAllPages(
+          columnDecryptionSetup.getMetaDataDecryptor(),
+          columnDecryptionSetup.getDataDecryptor(),
+          fileDecryptor.getFileAAD(),
+          block.getOrdinal(),
+          columnDecryptionSetup.getOrdinal());
     }
   }
 
@@ -589,6 +991,13 @@ public class ParquetFileReader implements Closeable {
     return rowRanges;
   }
 
+  /**
+   * @return whether a row group is left to read or to skip
+   */
+  public boolean hasNextRowGroup() {
+    return currentBlock < blocks.size();
+  }
+
   public boolean skipNextRowGroup() {
     return advanceToNextBlock();
   }
@@ -643,6 +1052,14 @@ public class ParquetFileReader implements Closeable {
       return null;
     }
 
+    boolean cacheable = isDictionaryCacheable(meta);
+    if (cacheable) {
+      DictionaryPage cached = dictionaryCache.getPage(dictionaryCacheKey, meta.getStartingPos());
+      if (cached != null) {
+        return cached;
+      }
+    }
+
     // TODO: this should use getDictionaryPageOffset() but it isn't reliable.
     if (f.getPos() != meta.getStartingPos()) {
       f.seek(meta.getStartingPos());
@@ -692,10 +1109,57 @@ public class ParquetFileReader implements Closeable {
     BytesInputDecompressor decompressor =
         options.getCodecFactory().getDecompressor(meta.getCodec());
 
-    return new DictionaryPage(
-        decompressor.decompress(compressedPage.getBytes(), compressedPage.getUncompressedSize()),
-        compressedPage.getDictionarySize(),
-        compressedPage.getEncoding());
+    DictionaryPage page =
+        new DictionaryPage(
+            decompressor.decompress(compressedPage.getBytes(), compressedPage.getUncompressedSize()),
+            compressedPage.getDictionarySize(),
+            compressedPage.getEncoding());
+    if (cacheable) {
+      page = dictionaryCache.putPage(dictionaryCacheKey, meta.getStartingPos(), page);
+    }
+    return page;
+  }
+
+  /**
+   * Encrypted dictionaries are never cached, so that decrypted bytes do not outlive the reader.
+   */
+  private boolean isDictionaryCacheable(ColumnChunkMetaData meta) {
+    if (dictionaryCache == null) {
+      return false;
+    }
+    if (null != fileDecryptor && !fileDecryptor.plaintextFile()) {
+      return !fileDecryptor.getColumnSetup(meta.getPath()).isEncrypted();
+    }
+    return true;
+  }
+
+  /**
+   * @return the dictionary cache used by this reader, or null if there is none
+   */
+  public DictionaryCache getDictionaryCache() {
+    return dictionaryCache;
+  }
+
+  /**
+   * @return the identity of the file in the dictionary cache, or null if the cache is not used
+   */
+  public String getDictionaryCacheKey() {
+    return dictionaryCacheKey;
+  }
+
+  /**
+   * Only local files have an identity by default, as the names of other input files are not
+   * guaranteed to be unique. The length guards against files rewritten in place.
+   *
+   * @param file the file to read
+   * @return the default identity of the file in a dictionary cache, or null if it has none
+   * @throws IOException if the length of the file cannot be read
+   */
+  public static String dictionaryCacheKey(InputFile file) throws IOException {
+    if (!(file instanceof LocalInputFile)) {
+      return null;
+    }
+    return file + "#" + file.getLength();
   }
 
   private DictionaryPage readCompressedDictionary(
@@ -985,6 +1449,41 @@ public class ParquetFileReader implements Closeable {
     }
   }
 
+  /**
+   * Hands out the already decompressed bytes of a cached dictionary page unchanged, and delegates
+   * all other pages to the codec decompressor.
+   */
+  private static class CachedDictionaryDecompressor implements BytesInputDecompressor {
+
+    private final BytesInputDecompressor delegate;
+    private final BytesInput dictionaryBytes;
+
+    CachedDictionaryDecompressor(BytesInputDecompressor delegate, BytesInput dictionaryBytes) {
+      this.delegate = delegate;
+      this.dictionaryBytes = dictionaryBytes;
+    }
+
+    @Override
+    public BytesInput decompress(BytesInput bytes, int uncompressedSize) throws IOException {
+      if (bytes == dictionaryBytes) {
+        return bytes;
+      }
+      return delegate.decompress(bytes, uncompressedSize);
+    }
+
+    @Override
+    public void decompress(
+        ByteBuffer input, int compressedSize, ByteBuffer output, int uncompressedSize)
+        throws IOException {
+      delegate.decompress(input, compressedSize, output, uncompressedSize);
+    }
+
+    @Override
+    public void release() {
+      delegate.release();
+    }
+  }
+
   /**
    * The data for a column chunk
    */
@@ -1037,11 +1536,11 @@ public class ParquetFileReader implements Closeable {
      *
      * @return the list of pages
      */
-    public ColumnChunkPageReader readAllPages() throws IOException {
+    public ChunkPages readAllPages() throws IOException {
       return readAllPages(null, null, null, -1, -1);
     }
 
-    public ColumnChunkPageReader readAllPages(
+    public ChunkPages readAllPages(
         BlockCipher.Decryptor headerBlockDecryptor,
         BlockCipher.Decryptor pageBlockDecryptor,
         byte[] aadPrefix,
@@ -1089,6 +1588,10 @@ public class ParquetFileReader implements Closeable {
               throw new ParquetDecodingException(
                   "more than one dictionary page in column " + descriptor.col);
             }
+            if (null == pageBlockDecryptor && dictionaryCache != null) {
+              dictionaryPage = readCachedDictionaryPage(pageHeader);
+              break;
+            }
             pageBytes = this.readAsBytesInput(compressedPageSize);
             if (options.usePageChecksumVerification() && pageHeader.isSetCrc()) {
               verifyCrc(
@@ -1182,7 +1685,11 @@ public class ParquetFileReader implements Closeable {
       }
       BytesInputDecompressor decompressor =
           options.getCodecFactory().getDecompressor(descriptor.metadata.getCodec());
-      return new ColumnChunkPageReader(
+      if (dictionaryPage != null && null == pageBlockDecryptor && dictionaryCache != null) {
+        decompressor = new CachedDictionaryDecompressor(decompressor, dictionaryPage.getBytes());
+      }
+      return new ChunkPages(
+          descriptor.col,
           decompressor,
           pagesInChunk,
           dictionaryPage,
@@ -1194,6 +1701,37 @@ public class ParquetFileReader implements Closeable {
           columnOrdinal);
     }
 
+    /**
+     * Looks up the decompressed dictionary page of this chunk in the dictionary cache, skipping the
+     * page bytes on a hit and caching the decompressed page on a miss.
+     */
+    private DictionaryPage readCachedDictionaryPage(PageHeader pageHeader) throws IOException {
+      long chunkOffset = descriptor.metadata.getStartingPos();
+      int compressedPageSize = pageHeader.getCompressed_page_size();
+      DictionaryPage cached = dictionaryCache.getPage(dictionaryCacheKey, chunkOffset);
+      if (cached != null) {
+        stream.skipFully(compressedPageSize);
+        return cached;
+      }
+      BytesInput pageBytes = this.readAsBytesInput(compressedPageSize);
+      if (options.usePageChecksumVerification() && pageHeader.isSetCrc()) {
+        verifyCrc(
+            pageHeader.getCrc(),
+            pageBytes.toByteArray(),
+            "could not verify dictionary page integrity, CRC checksum verification failed");
+      }
+      DictionaryPageHeader dicHeader = pageHeader.getDictionary_page_header();
+      int uncompressedPageSize = pageHeader.getUncompressed_page_size();
+      BytesInputDecompressor decompressor =
+          options.getCodecFactory().getDecompressor(descriptor.metadata.getCodec());
+      DictionaryPage page =
+          new DictionaryPage(
+              decompressor.decompress(pageBytes, uncompressedPageSize),
+              dicHeader.getNum_values(),
+              converter.getEncoding(dicHeader.getEncoding()));
+      return dictionaryCache.putPage(dictionaryCacheKey, chunkOffset, page);
+    }
+
     private boolean hasMorePages(long valuesCountReadSoFar, int dataPageCountReadSoFar) {
       return offsetIndex == null
           ? valuesCountReadSoFar < descriptor.metadata.getValueCount()
@@ -1218,6 +1756,78 @@ public class ParquetFileReader implements Closeable {
     }
   }
 
+  /**
+   * The compressed pages of a column chunk, which may back several page readers.
+   */
+  private static class ChunkPages {
+
+    final ColumnDescriptor column;
+    private final BytesInputDecompressor decompressor;
+    private final List<DataPage> pages;
+    private final DictionaryPage dictionaryPage;
+    private final OffsetIndex offsetIndex;
+    private final long rowCount;
+    private final BlockCipher.Decryptor pageBlockDecryptor;
+    private final byte[] aadPrefix;
+    private final int rowGroupOrdinal;
+    private final int columnOrdinal;
+
+    ChunkPages(
+        ColumnDescriptor column,
+        BytesInputDecompressor decompressor,
+        List<DataPage> pages,
+        DictionaryPage dictionaryPage,
+        OffsetIndex offsetIndex,
+        long rowCount,
+        BlockCipher.Decryptor pageBlockDecryptor,
+        byte[] aadPrefix,
+        int rowGroupOrdinal,
+        int columnOrdinal) {
+      this.column = column;
+      this.decompressor = decompressor;
+      this.pages = pages;
+      this.dictionaryPage = dictionaryPage;
+      this.offsetIndex = offsetIndex;
+      this.rowCount = rowCount;
+      this.pageBlockDecryptor = pageBlockDecryptor;
+      this.aadPrefix = aadPrefix;
+      this.rowGroupOrdinal = rowGroupOrdinal;
+      this.columnOrdinal = columnOrdinal;
+    }
+
+    ColumnChunkPageReader reader() {
+      return reader(pages, offsetIndex);
+    }
+
+    /**
+     * @param filteredOffsetIndex the offset index of the pages to keep, which were all read
+     * @return a reader over the kept pages only
+     */
+    ColumnChunkPageReader reader(OffsetIndex filteredOffsetIndex) {
+      List<DataPage> kept = new ArrayList<>(filteredOffsetIndex.getPageCount());
+      for (int i = 0, j = 0; j < filteredOffsetIndex.getPageCount(); i++) {
+        if (offsetIndex.getPageOrdinal(i) == filteredOffsetIndex.getPageOrdinal(j)) {
+          kept.add(pages.get(i));
+          j++;
+        }
+      }
+      return reader(kept, filteredOffsetIndex);
+    }
+
+    private ColumnChunkPageReader reader(List<DataPage> pages, OffsetIndex offsetIndex) {
+      return new ColumnChunkPageReader(
+          decompressor,
+          pages,
+          dictionaryPage,
+          offsetIndex,
+          rowCount,
+          pageBlockDecryptor,
+          aadPrefix,
+          rowGroupOrdinal,
+          columnOrdinal);
+    }
+  }
+
   /**
    * deals with a now fixed bug where compressedLength was missing a few bytes.
    */
@@ -0,0 +1,243 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.parquet.hadoop;
+
+import org.apache.parquet.hadoop.ExportedParquetRecordWriter.Run;
+import org.apache.parquet.hadoop.ExportedParquetRecordWriter.RunSpiller;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Objects;
+import java.util.PriorityQueue;
+
+/**
+ * A record writer which sorts the records before handing them to another record writer, either
+ * within row groups or across the whole file by merging spilled runs. The sort is stable.
+ */
+class SortingRecordWriter<T> implements ExportedParquetRecordWriter.RecordWriter<T> {
+
+  /**
+   * The maximum number of runs merged at once, as every run being merged holds a row group of its
+   * spill file in memory. More runs are merged in several passes.
+   */
+  static final int MAX_MERGE_FAN_IN = 64;
+
+  private final ExportedParquetRecordWriter.RecordWriter<T> delegate;
+  private final Comparator<? super T> comparator;
+  private final int sortBufferSize;
+  private final RunSpiller<T> spiller;
+  private final List<T> buffer = new ArrayList<>();
+  private final List<Run<T>> runs = new ArrayList<>();
+
+  /**
+   * @param spiller spills the sorted runs, or null to sort within the row groups
+   */
+  SortingRecordWriter(
+      ExportedParquetRecordWriter.RecordWriter<T> delegate,
+      Comparator<? super T> comparator,
+      int sortBufferSize,
+      RunSpiller<T> spiller) {
+    if (sortBufferSize <= 0) {
+      throw new IllegalArgumentException("sortBufferSize must be positive: " + sortBufferSize);
+    }
+    this.delegate = Objects.requireNonNull(delegate);
+    this.comparator = Objects.requireNonNull(comparator);
+    this.sortBufferSize = sortBufferSize;
+    this.spiller = spiller;
+  }
+
+  @Override
+  public void write(T value) throws IOException, InterruptedException {
+    buffer.add(value);
+    if (buffer.size() >= sortBufferSize) {
+      buffer.sort(comparator);
+      if (spiller == null) {
+        writeBuffer();
+        delegate.flushRowGroup();
+      } else {
+        runs.add(spiller.spill(new BufferRun<>(buffer)));
+        buffer.clear();
+      }
+    }
+  }
+
+  /**
+   * @return the size of the data written by the delegate, without the records buffered for sorting
+   */
+  @Override
+  public long getDataSize() {
+    return delegate.getDataSize();
+  }
+
+  /**
+   * Writes the buffered records as a row group. In the file scope, only the records of the current
+   * sort buffer are sorted, so the row group may overlap with the runs spilled before.
+   */
+  @Override
+  public void flushRowGroup() throws IOException, InterruptedException {
+    buffer.sort(comparator);
+    writeBuffer();
+    delegate.flushRowGroup();
+  }
+
+  @Override
+  public void close() throws IOException, InterruptedException {
+    try {
+      buffer.sort(comparator);
+      if (runs.isEmpty()) {
+        writeBuffer();
+      } else {
+        merge();
+      }
+    } finally {
+      try {
+        closeRuns();
+      } finally {
+        delegate.close();
+      }
+    }
+  }
+
+  private void writeBuffer() throws IOException, InterruptedException {
+    for (T record : buffer) {
+      delegate.write(record);
+    }
+    buffer.clear();
+  }
+
+  /**
+   * Merges the spilled runs and the sorted buffer into the delegate. While there are more runs than
+   * {@link #MAX_MERGE_FAN_IN}, consecutive runs are merged into spilled runs first.
+   */
+  private void merge() throws IOException, InterruptedException {
+    runs.add(new BufferRun<>(new ArrayList<>(buffer)));
+    buffer.clear();
+    while (runs.size() > MAX_MERGE_FAN_IN) {
+      List<Run<T>> pass = new ArrayList<>(runs);
+      runs.clear();
+      try {
+        for (int from = 0; from < pass.size(); from += MAX_MERGE_FAN_IN) {
+          List<Run<T>> group = pass.subList(from, Math.min(from + MAX_MERGE_FAN_IN, pass.size()));
+          runs.add(spiller.spill(new MergingRun(group)));
+        }
+      } finally {
+        closeRuns(pass);
+      }
+    }
+    Run<T> merged = new MergingRun(runs);
+    for (T record = merged.next(); record != null; record = merged.next()) {
+      delegate.write(record);
+    }
+  }
+
+  private void closeRuns() throws IOException {
+    closeRuns(runs);
+  }
+
+  private static <T> void closeRuns(List<Run<T>> runs) throws IOException {
+    IOException failure = null;
+    for (Run<T> run : runs) {
+      try {
+        run.close();
+      } catch (IOException e) {
+        if (failure == null) {
+          failure = e;
+        } else {
+          failure.addSuppressed(e);
+        }
+      }
+    }
+    runs.clear();
+    if (failure != null) {
+      throw failure;
+    }
+  }
+
+  /**
+   * Merges sorted runs lazily. Ties are taken from the earlier run, which keeps the sort stable. A
+   * record is only replaced in its run once the next record is requested, so the runs may reuse
+   * their records. Closing does not close the merged runs.
+   */
+  private final class MergingRun implements Run<T> {
+    private final List<Run<T>> sources;
+    private final PriorityQueue<Cursor> queue;
+    private Cursor last = null;
+
+    private MergingRun(List<Run<T>> sources) throws IOException {
+      this.sources = sources;
+      this.queue = new PriorityQueue<>(sources.size(), (a, b) -> {
+        int result = comparator.compare(a.head, b.head);
+        return result != 0 ? result : Integer.compare(a.index, b.index);
+      });
+      for (int i = 0; i < sources.size(); i++) {
+        T head = sources.get(i).next();
+        if (head != null) {
+          queue.add(new Cursor(i, head));
+        }
+      }
+    }
+
+    @Override
+    public T next() throws IOException {
+      if (last != null) {
+        last.head = sources.get(last.index).next();
+        if (last.head != null) {
+          queue.add(last);
+        }
+      }
+      last = queue.poll();
+      return last == null ? null : last.head;
+    }
+
+    @Override
+    public void close() {
+      queue.clear();
+    }
+  }
+
+  private static final class BufferRun<T> implements Run<T> {
+    private final List<T> records;
+    private int next = 0;
+
+    private BufferRun(List<T> records) {
+      this.records = records;
+    }
+
+    @Override
+    public T next() {
+      return next < records.size() ? records.get(next++) : null;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+
+  private final class Cursor {
+    private final int index;
+    private T head;
+
+    private Cursor(int index, T head) {
+      this.index = index;
+      this.head = head;
+    }
+  }
+}
@@ -0,0 +1,109 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.values.bloomfilter.BlockSplitBloomFilter;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+class AdaptiveBloomFilterStoreTest {
+
+  @Test
+  public void testShrink() {
+    BloomFilter large = new BlockSplitBloomFilter(1024 * 1024);
+    BloomFilter expected = new BlockSplitBloomFilter(2048);
+    for (long i = 0; i < 1000; i++) {
+      large.insertHash(large.hash(i * 7919));
+      expected.insertHash(expected.hash(i * 7919));
+    }
+
+    BloomFilter shrunk = AdaptiveBloomFilterStore.shrink(large, 0.01);
+    assertEquals(2048, shrunk.getBitsetSize());
+    assertEquals(expected, shrunk);
+    for (long i = 0; i < 1000; i++) {
+      assertTrue(shrunk.findHash(shrunk.hash(i * 7919)));
+    }
+  }
+
+  @Test
+  public void testEstimateDistinctValues() throws Exception {
+    BlockSplitBloomFilter filter = new BlockSplitBloomFilter(64 * 1024);
+    for (long i = 0; i < 20000; i++) {
+      filter.insertHash(filter.hash(i));
+      filter.insertHash(filter.hash(i));
+    }
+    assertEquals(20000, AdaptiveBloomFilterStore.estimateDistinctValues(toBitset(filter)), 1000);
+    assertEquals(0, AdaptiveBloomFilterStore.estimateDistinctValues(new byte[1024]));
+    byte[] saturated = new byte[1024];
+    Arrays.fill(saturated, (byte) -1);
+    assertEquals(-1, AdaptiveBloomFilterStore.estimateDistinctValues(saturated));
+  }
+
+  @Test
+  public void testWriteAdaptiveBloomFilters() throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withRowGroupSize(64 * 1024)
+        .withDictionaryEncoding("id", false)
+        .withBloomFilterEnabled("id", true)
+        .withBloomFilterEnabled("name", true)
+        .withBloomFilterEnabled("phoneNumbers.phone.kind", true)
+        .withAdaptiveBloomFilter(true)
+        .build()) {
+      for (PhoneBook.User user : data) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      List<BlockMetaData> blocks = reader.getFooter().getBlocks();
+      assertTrue(blocks.size() > 1);
+      for (BlockMetaData block : blocks) {
+        ColumnChunkMetaData id = block.getColumns().get(0);
+        BloomFilter ids = reader.readBloomFilter(id);
+        int optimalBytes = BlockSplitBloomFilter.optimalNumOfBits(block.getRowCount(), 0.01) / 8;
+        assertTrue(ids.getBitsetSize() <= 4 * optimalBytes);
+        long min = (Long) id.getStatistics().genericGetMin();
+        long max = (Long) id.getStatistics().genericGetMax();
+        for (long value = min; value <= max; value++) {
+          assertTrue(ids.findHash(ids.hash(value)));
+        }
+
+        // unique names fall back to plain encoding, the single kind is covered by the dictionary
+        ColumnChunkMetaData name = block.getColumns().get(1);
+        assertEquals("name", name.getPath().toDotString());
+        assertNotNull(reader.readBloomFilter(name));
+        ColumnChunkMetaData kind = block.getColumns().get(5);
+        assertEquals("phoneNumbers.phone.kind", kind.getPath().toDotString());
+        assertNull(reader.readBloomFilter(kind));
+      }
+    }
+    Files.delete(file);
+  }
+
+  private static byte[] toBitset(BloomFilter filter) throws IOException {
+    ByteArrayOutputStream out = new ByteArrayOutputStream();
+    filter.writeTo(out);
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,124 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.Dictionary;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Types;
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.apache.parquet.filter2.predicate.FilterApi.gtEq;
+import static org.apache.parquet.filter2.predicate.FilterApi.longColumn;
+import static org.junit.jupiter.api.Assertions.*;
+
+class FlatRowReaderTest {
+
+  @Test
+  public void testRead() throws Exception {
+    Path file = Files.createTempFile("flat.", ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(1000);
+    PhoneBookGroups.writeUsers(
+        ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+            .withOverwrite(true)
+            .withPageSize(1024)
+            .withRowGroupSize(16 * 1024),
+        data);
+
+    MessageType flat = Types.buildMessage()
+        .addFields(PhoneBook.SCHEMA.getType("id"), PhoneBook.SCHEMA.getType("name"), PhoneBook.SCHEMA.getType("location"))
+        .named(PhoneBook.SCHEMA.getName());
+    try (FlatRowReader reader = FlatRowReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withSchemaConverter(schema -> flat)
+        .withFilter(FilterCompat.get(gtEq(longColumn("id"), 250L)))
+        .build()) {
+      FlatRow row = reader.getRow();
+      int id = row.indexOf("id");
+      int name = row.indexOf("name");
+      int lon = row.indexOf("location.lon");
+      int lat = row.indexOf("location.lat");
+      ByteBuffer buffer = null;
+      for (PhoneBook.User user : data.subList(250, data.size())) {
+        assertTrue(reader.next());
+        assertEquals(user.getId(), row.getLong(id));
+        buffer = row.getBinary(name, buffer);
+        assertEquals(user.getName(), buffer == null ? null : StandardCharsets.UTF_8.decode(buffer).toString());
+        PhoneBook.Location location = user.getLocation();
+        assertEquals(location == null || location.getLon() == null, row.isNull(lon));
+        if (!row.isNull(lon)) {
+          assertEquals(location.getLon(), row.getDouble(lon));
+        }
+        assertEquals(location == null || location.getLat() == null, row.isNull(lat));
+        if (!row.isNull(lat)) {
+          assertEquals(location.getLat(), row.getDouble(lat));
+        }
+      }
+      assertFalse(reader.next());
+    }
+
+    assertThrows(IllegalArgumentException.class, () -> FlatRowReader.builder(file).build());
+    Files.delete(file);
+  }
+
+  @Test
+  public void testDictionaryIds() throws Exception {
+    Path file = Files.createTempFile("flat.", ".parquet");
+    MessageType schema = Types.buildMessage()
+        .required(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("kind")
+        .named("test");
+    SimpleGroupFactory factory = new SimpleGroupFactory(schema);
+    try (ExampleParquetWriter writer = ExampleParquetWriter.builder(file, schema)
+        .withOverwrite(true)
+        .withPageSize(1024)
+        .withRowGroupSize(4 * 1024)
+        .build()) {
+      for (int i = 0; i < 10000; i++) {
+        writer.write(factory.newGroup().append("kind", "k" + i % 5));
+      }
+    }
+
+    // group by the ids of each dictionary, and look up the keys once per dictionary
+    Map<String, Long> counts = new HashMap<>();
+    try (FlatRowReader reader = FlatRowReader.builder(file).withAllocator(new HeapByteBufferAllocator()).build()) {
+      FlatRow row = reader.getRow();
+      Dictionary dictionary = null;
+      long[] groups = new long[0];
+      while (true) {
+        boolean hasNext = reader.next();
+        if (!hasNext || row.getDictionary(0) != dictionary) {
+          for (int id = 0; id < groups.length; id++) {
+            counts.merge(dictionary.decodeToBinary(id).toStringUsingUTF8(), groups[id], Long::sum);
+          }
+          if (!hasNext) {
+            break;
+          }
+          dictionary = row.getDictionary(0);
+          groups = new long[dictionary.getMaxId() + 1];
+        }
+        int id = row.getDictionaryId(0);
+        assertTrue(id >= 0);
+        assertSame(dictionary.decodeToBinary(id), row.getBinary(0));
+        groups[id]++;
+      }
+    }
+    assertEquals(5, counts.size());
+    for (int i = 0; i < 5; i++) {
+      assertEquals(2000L, counts.get("k" + i));
+    }
+    Files.delete(file);
+  }
+}
@@ -0,0 +1,143 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.apache.parquet.filter2.predicate.FilterApi.*;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ParquetAggregatorTest {
+  private static final Path FILE_V1;
+  private static final Path FILE_V2;
+  private static final List<PhoneBook.User> DATA = Collections.unmodifiableList(PhoneBook.makeUsers(1000));
+
+  static {
+    try {
+      FILE_V1 = Files.createTempFile("File_v1.", ".parquet");
+      FILE_V2 = Files.createTempFile("File_v2.", ".parquet");
+    } catch (IOException e) {
+      throw new RuntimeException(e);
+    }
+  }
+
+  private static Stream<? extends Arguments> provideArguments() {
+    return Stream.of(
+        Arguments.of(FILE_V1),
+        Arguments.of(FILE_V2)
+    );
+  }
+
+  @BeforeAll
+  public static void createFiles() throws IOException {
+    writePhoneBookToFile(FILE_V1, ParquetProperties.WriterVersion.PARQUET_1_0);
+    writePhoneBookToFile(FILE_V2, ParquetProperties.WriterVersion.PARQUET_2_0);
+  }
+
+  @AfterAll
+  public static void deleteFiles() throws IOException {
+    Files.deleteIfExists(FILE_V1);
+    Files.deleteIfExists(FILE_V2);
+  }
+
+  private static void writePhoneBookToFile(Path file, ParquetProperties.WriterVersion parquetVersion)
+      throws IOException {
+    int pageSize = DATA.size() / 10; // Ensure that several pages will be created
+    int rowGroupSize = pageSize * 6 * 5; // Ensure that there are more row-groups created
+
+    PhoneBookGroups.writeUsers(
+        ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+            .withOverwrite(true)
+            .withRowGroupSize(rowGroupSize)
+            .withPageSize(pageSize)
+            .withWriterVersion(parquetVersion),
+        DATA);
+  }
+
+  private static ParquetAggregator.Result aggregate(Path path, FilterPredicate predicate) throws IOException {
+    return ParquetAggregator.builder(new LocalInputFile(path))
+        .withFilter(predicate == null ? FilterCompat.NOOP : FilterCompat.get(predicate))
+        .aggregate("id", "name", "location.lon", "location.lat");
+  }
+
+  private static void assertAggregates(ParquetAggregator.Result result, Predicate<PhoneBook.User> predicate) {
+    List<PhoneBook.User> users = DATA.stream().filter(predicate).collect(Collectors.toList());
+    assertEquals(users.size(), result.getCount());
+
+    Statistics<?> id = result.getStatistics("id");
+    assertEquals(users.stream().mapToLong(PhoneBook.User::getId).min().getAsLong(), id.genericGetMin());
+    assertEquals(users.stream().mapToLong(PhoneBook.User::getId).max().getAsLong(), id.genericGetMax());
+    assertEquals(0, id.getNumNulls());
+
+    List<Double> lons = users.stream()
+        .map(u -> u.getLocation() == null ? null : u.getLocation().getLon())
+        .collect(Collectors.toList());
+    Statistics<?> lon = result.getStatistics("location.lon");
+    assertEquals(lons.stream().filter(Objects::nonNull).min(Double::compare).get(), lon.genericGetMin());
+    assertEquals(lons.stream().filter(Objects::nonNull).max(Double::compare).get(), lon.genericGetMax());
+    assertEquals(lons.stream().filter(Objects::isNull).count(), lon.getNumNulls());
+
+    long latNulls = users.stream()
+        .filter(u -> u.getLocation() == null || u.getLocation().getLat() == null)
+        .count();
+    assertEquals(latNulls, result.getStatistics("location.lat").getNumNulls());
+    assertEquals(0, result.getStatistics("name").getNumNulls());
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testNoFiltering(Path path) throws Exception {
+    ParquetAggregator.Result result = aggregate(path, null);
+    assertAggregates(result, u -> true);
+    // binary statistics may be truncated, so only the name column is decoded
+    assertEquals(DATA.size(), result.getDecodedRowCount());
+
+    result = ParquetAggregator.builder(new LocalInputFile(path)).aggregate("id", "location.lon");
+    assertEquals(0, result.getDecodedRowCount());
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testRangeFiltering(Path path) throws Exception {
+    ParquetAggregator.Result result = aggregate(path, and(gtEq(longColumn("id"), 123L), lt(longColumn("id"), 789L)));
+    assertAggregates(result, u -> u.getId() >= 123 && u.getId() < 789);
+    assertTrue(result.getDecodedRowCount() < DATA.size());
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testNullableFiltering(Path path) throws Exception {
+    ParquetAggregator.Result result = aggregate(path, gt(doubleColumn("location.lon"), 500.0));
+    assertAggregates(result, u -> u.getLocation() != null && u.getLocation().getLon() > 500.0);
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testCountOnly(Path path) throws Exception {
+    ParquetAggregator.Result result = ParquetAggregator.builder(new LocalInputFile(path))
+        .withFilter(FilterCompat.get(ltEq(longColumn("id"), 499L)))
+        .aggregate();
+    assertEquals(500, result.getCount());
+  }
+}
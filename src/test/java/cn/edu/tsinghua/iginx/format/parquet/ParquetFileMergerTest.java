@@ -0,0 +1,139 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ParquetFileMergerTest {
+
+  @Test
+  public void testMerge() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    List<Path> inputs = new ArrayList<>();
+    int inputRowGroups = 0;
+    for (int i = 0; i < 4; i++) {
+      Path input = dir.resolve("part-" + i + ".parquet");
+      try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(input, PhoneBook.SCHEMA)
+          .withAllocator(new HeapByteBufferAllocator())
+          .withCodec(CompressionCodecName.SNAPPY)
+          .withRowGroupSize(i == 3 ? 1024 * 1024 : 16 * 1024)
+          .withPageSize(4 * 1024)
+          .withBloomFilterEnabled("id", true)
+          .build()) {
+        for (PhoneBook.User user : data.subList(i * 2500, (i + 1) * 2500)) {
+          writer.write(parseUser(user));
+        }
+        writer.close();
+        inputRowGroups += writer.getFooter().getBlocks().size();
+      }
+      inputs.add(input);
+    }
+
+    Path copied = dir.resolve("copied.parquet");
+    ParquetMetadata footer = ParquetFileMerger.builder(copied).build().merge(inputs);
+    assertEquals(inputRowGroups, footer.getBlocks().size());
+    assertMerged(data, copied, footer);
+
+    Path compacted = dir.resolve("compacted.parquet");
+    footer = ParquetFileMerger.builder(compacted)
+        .withMinRowGroupSize(64 * 1024)
+        .withRowGroupSize(1024 * 1024)
+        .build()
+        .merge(inputs);
+    assertTrue(footer.getBlocks().size() < inputRowGroups);
+    assertEquals(CompressionCodecName.SNAPPY, footer.getBlocks().get(0).getColumns().get(0).getCodec());
+    assertMerged(data, compacted, footer);
+
+    for (Path input : inputs) {
+      Files.delete(input);
+    }
+    Files.delete(copied);
+    Files.delete(compacted);
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testMergeFailureDropsOutput() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    Path input = dir.resolve("part.parquet");
+    try (ParquetWriter<Group> writer = ExampleParquetWriter.builder(input, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      for (PhoneBook.User user : PhoneBook.makeUsers(100)) {
+        writer.write(parseUser(user));
+      }
+    }
+    // the footer can be read, but not the row groups
+    InputFile broken = new InputFile() {
+      private final InputFile file = new LocalInputFile(input);
+      private int streams = 0;
+
+      @Override
+      public long getLength() throws IOException {
+        return file.getLength();
+      }
+
+      @Override
+      public SeekableInputStream newStream() throws IOException {
+        if (streams++ > 0) {
+          throw new IOException("broken");
+        }
+        return file.newStream();
+      }
+    };
+
+    Path output = dir.resolve("merged.parquet");
+    ParquetFileMerger merger = ParquetFileMerger.builder(output).build();
+    assertThrows(IOException.class, () -> merger.mergeFiles(Collections.singletonList(broken)));
+    assertFalse(Files.exists(output));
+
+    Files.delete(input);
+    Files.delete(dir);
+  }
+
+  private static void assertMerged(List<PhoneBook.User> data, Path file, ParquetMetadata footer) throws Exception {
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      for (PhoneBook.User user : data) {
+        assertEquals(user, PhoneBookGroups.parseUser(reader.read()));
+      }
+      assertNull(reader.read());
+
+      for (BlockMetaData block : footer.getBlocks()) {
+        ColumnChunkMetaData id = block.getColumns().get(0);
+        BloomFilter ids = reader.readBloomFilter(id);
+        long min = (Long) id.getStatistics().genericGetMin();
+        long max = (Long) id.getStatistics().genericGetMax();
+        for (long value = min; value <= max; value++) {
+          assertTrue(ids.findHash(ids.hash(value)));
+        }
+        assertTrue(id.getColumnIndexReference() != null);
+        assertTrue(id.getOffsetIndexReference() != null);
+      }
+    }
+  }
+}
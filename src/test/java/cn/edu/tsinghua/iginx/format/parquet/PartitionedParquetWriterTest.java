@@ -0,0 +1,74 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionedParquetWriterTest {
+
+  @Test
+  public void testEvictLeastRecentlyUsed() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    List<PhoneBook.User> data = PhoneBook.makeUsers(1000);
+    PartitionedParquetWriter<Long, Group> writer = PartitionedParquetWriter.<Long, Group>builder(
+            group -> group.getLong("id", 0) / 100 % 5,
+            (partition, sequence) -> ExampleParquetWriter.builder(dir.resolve("p" + partition + "-" + sequence + ".parquet"), PhoneBook.SCHEMA)
+                .withAllocator(new HeapByteBufferAllocator())
+                .withCodec(CompressionCodecName.SNAPPY)
+                .withPageSize(4 * 1024))
+        .withMaxOpenWriters(3)
+        .withMemoryBudget(3 * 1024 * 1024, 64 * 1024)
+        .build();
+    try (PartitionedParquetWriter<Long, Group> w = writer) {
+      for (PhoneBook.User user : data) {
+        w.write(parseUser(user));
+        assertTrue(w.getOpenWriterCount() <= 3);
+      }
+      assertEquals(3, w.getMemoryManager().getRegistrations().size());
+    }
+    assertEquals(0, writer.getOpenWriterCount());
+    assertEquals(7, writer.getEvictionCount());
+    assertTrue(writer.getMemoryManager().getRegistrations().isEmpty());
+
+    for (long partition = 0; partition < 5; partition++) {
+      List<PhoneBook.User> expected = new ArrayList<>();
+      for (PhoneBook.User user : data) {
+        if (user.getId() / 100 % 5 == partition) {
+          expected.add(user);
+        }
+      }
+      List<PhoneBook.User> actual = new ArrayList<>();
+      for (int sequence = 0; sequence < 2; sequence++) {
+        Path file = dir.resolve("p" + partition + "-" + sequence + ".parquet");
+        try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+            .withAllocator(new HeapByteBufferAllocator())
+            .build()) {
+          for (Group group = reader.read(); group != null; group = reader.read()) {
+            actual.add(PhoneBookGroups.parseUser(group));
+          }
+        }
+        Files.delete(file);
+      }
+      assertEquals(expected, actual);
+    }
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(0, files.collect(Collectors.toList()).size());
+    }
+    Files.delete(dir);
+  }
+}
@@ -0,0 +1,97 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.statistics.Statistics;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.ColumnPath;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+class RollingParquetWriterTest {
+
+  @Test
+  public void testRollByRowCount() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    RollingParquetWriter<Group> writer = RollingParquetWriter.<Group>builder(
+            i -> dir.resolve("part-" + i + ".parquet"),
+            path -> ExampleParquetWriter.builder(path, PhoneBook.SCHEMA)
+                .withAllocator(new HeapByteBufferAllocator())
+                .build())
+        .withMaxRowCount(3000)
+        .build();
+    try (RollingParquetWriter<Group> w = writer) {
+      for (PhoneBook.User user : data) {
+        w.write(parseUser(user));
+      }
+    }
+
+    List<RollingParquetWriter.RolledFile> manifest = writer.getManifest();
+    assertEquals(4, manifest.size());
+    try (Stream<Path> files = Files.list(dir)) {
+      assertEquals(4, files.count());
+    }
+    Iterator<PhoneBook.User> expected = data.iterator();
+    for (int i = 0; i < manifest.size(); i++) {
+      RollingParquetWriter.RolledFile file = manifest.get(i);
+      assertEquals(dir.resolve("part-" + i + ".parquet"), file.getPath());
+      assertEquals(i == 3 ? 1000 : 3000, file.getRowCount());
+      assertEquals(Files.size(file.getPath()), file.getFileSize());
+      Statistics<?> ids = file.getStatistics().get(ColumnPath.get("id"));
+      assertEquals(i * 3000L, ids.genericGetMin());
+      assertEquals(i * 3000L + file.getRowCount() - 1, ids.genericGetMax());
+      try (ExampleParquetReader reader = ExampleParquetReader.builder(file.getPath())
+          .withAllocator(new HeapByteBufferAllocator())
+          .build()) {
+        for (long r = 0; r < file.getRowCount(); r++) {
+          assertEquals(expected.next(), PhoneBookGroups.parseUser(reader.read()));
+        }
+        assertNull(reader.read());
+      }
+      Files.delete(file.getPath());
+    }
+    assertFalse(expected.hasNext());
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testRollByFileSize() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    RollingParquetWriter<Group> writer = RollingParquetWriter.<Group>builder(
+            i -> dir.resolve("part-" + i + ".parquet"),
+            path -> ExampleParquetWriter.builder(path, PhoneBook.SCHEMA)
+                .withAllocator(new HeapByteBufferAllocator())
+                .withRowGroupSize(16 * 1024)
+                .withPageSize(4 * 1024)
+                .build())
+        .withMaxFileSize(64 * 1024)
+        .withOpenAhead(false)
+        .build();
+    try (RollingParquetWriter<Group> w = writer) {
+      for (PhoneBook.User user : data) {
+        w.write(parseUser(user));
+      }
+    }
+
+    List<RollingParquetWriter.RolledFile> manifest = writer.getManifest();
+    assertTrue(manifest.size() > 1);
+    assertEquals(data.size(), manifest.stream().mapToLong(RollingParquetWriter.RolledFile::getRowCount).sum());
+    for (RollingParquetWriter.RolledFile file : manifest) {
+      Files.delete(file.getPath());
+    }
+    Files.delete(dir);
+  }
+}
@@ -0,0 +1,118 @@
+package cn.edu.tsinghua.iginx.format.parquet;
+
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
+import cn.edu.tsinghua.iginx.format.parquet.codec.PooledCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.lang.reflect.Method;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class VirtualThreadsTest {
+
+  private static final int SCANS = 10000;
+  private static final int USERS = 100;
+
+  /**
+   * Scans a file concurrently with a shared dictionary cache and codec pool. Before Java 21, the
+   * scans run on platform threads and the pinning of virtual threads is not checked.
+   */
+  @Test
+  public void testConcurrentScans() throws Exception {
+    Path file = Files.createTempFile("virtual.", ".parquet");
+    PhoneBookGroups.writeUsers(
+        ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+            .withOverwrite(true)
+            .withCodec(CompressionCodecName.SNAPPY),
+        PhoneBook.makeUsers(USERS));
+
+    DictionaryCache dictionaryCache = new DictionaryCache(1024 * 1024);
+    PooledCodecFactory codecFactory = new PooledCodecFactory();
+    boolean virtual = VirtualThreads.isSupported();
+    AtomicLong pinned = new AtomicLong();
+    AutoCloseable noEvents = () -> {
+    };
+    try (AutoCloseable events = virtual ? countEvents("jdk.VirtualThreadPinned", pinned) : noEvents) {
+
+      ExecutorService executor = virtual ? VirtualThreads.newExecutor() : Executors.newFixedThreadPool(16);
+      List<Future<Integer>> scans = new ArrayList<>();
+      for (int i = 0; i < SCANS; i++) {
+        scans.add(executor.submit(() -> {
+          int count = 0;
+          try (ParquetReader<Group> reader = ExampleParquetReader.builder(file)
+              .withAllocator(new HeapByteBufferAllocator())
+              .withDictionaryCache(dictionaryCache)
+              .withCodecFactory(codecFactory)
+              .build()) {
+            while (reader.read() != null) {
+              count++;
+            }
+          }
+          return count;
+        }));
+      }
+      for (Future<Integer> scan : scans) {
+        assertEquals(USERS, scan.get(5, TimeUnit.MINUTES));
+      }
+      executor.shutdown();
+      assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+    }
+    // every pinning is counted, and it should stay rare, not happen per scan
+    assertTrue(pinned.get() < SCANS / 100, "pinned " + pinned.get() + " times");
+    codecFactory.release();
+    Files.delete(file);
+  }
+
+  /**
+   * Count the JFR events of the given name, whatever their duration. JFR event streaming is reached
+   * through reflection, as it is not available on Java 8, which the tests are compiled for.
+   *
+   * @return closes the event stream once the events recorded so far are counted
+   */
+  private static AutoCloseable countEvents(String name, AtomicLong counter) throws Exception {
+    Class<?> type = Class.forName("jdk.jfr.consumer.RecordingStream");
+    AutoCloseable stream = (AutoCloseable) type.getConstructor().newInstance();
+    Method stop;
+    try {
+      Object settings = type.getMethod("enable", String.class).invoke(stream, name);
+      Class.forName("jdk.jfr.EventSettings")
+          .getMethod("withThreshold", Duration.class)
+          .invoke(settings, Duration.ZERO);
+      Consumer<Object> handler = event -> counter.incrementAndGet();
+      type.getMethod("onEvent", String.class, Consumer.class).invoke(stream, name, handler);
+      // available since Java 20, so wherever virtual threads are
+      stop = type.getMethod("stop");
+      type.getMethod("startAsync").invoke(stream);
+    } catch (Exception e) {
+      stream.close();
+      throw e;
+    }
+    return () -> {
+      try {
+        // unlike closing, stopping waits until the recorded events are handed to the handler
+        stop.invoke(stream);
+      } finally {
+        stream.close();
+      }
+    };
+  }
+}
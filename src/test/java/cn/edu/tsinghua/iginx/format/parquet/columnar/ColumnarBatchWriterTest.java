@@ -0,0 +1,123 @@
+package cn.edu.tsinghua.iginx.format.parquet.columnar;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetReader;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.ParquetProperties;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.hadoop.metadata.CompressionCodecName;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.MessageType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+
+import static org.apache.parquet.schema.MessageTypeParser.parseMessageType;
+import static org.junit.jupiter.api.Assertions.*;
+
+class ColumnarBatchWriterTest {
+
+  private static final MessageType SCHEMA = parseMessageType("message test { "
+      + "required int64 id; "
+      + "optional binary name (UTF8); "
+      + "required boolean flag; "
+      + "optional int32 count; "
+      + "optional group location { "
+      + "  required double lon; "
+      + "  optional float lat; "
+      + "} "
+      + "} ");
+
+  @ParameterizedTest
+  @EnumSource(ParquetProperties.WriterVersion.class)
+  public void testWriteBatches(ParquetProperties.WriterVersion version) throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    int batchSize = 3000;
+    int batchCount = 4;
+
+    ColumnarBatch batch = new ColumnarBatch(SCHEMA);
+    try (ColumnarBatchWriter writer = ColumnarBatchWriter.builder(file, SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withCodec(CompressionCodecName.SNAPPY)
+        .withWriterVersion(version)
+        .withRowGroupSize(16 * 1024)
+        .withPageSize(1024)
+        .build()) {
+      for (int b = 0; b < batchCount; b++) {
+        long[] ids = new long[batchSize];
+        Binary[] names = new Binary[batchSize];
+        BitSet nullNames = new BitSet();
+        boolean[] flags = new boolean[batchSize];
+        double[] lons = new double[batchSize];
+        int[] lonLevels = new int[batchSize];
+        float[] lats = new float[batchSize];
+        int[] latLevels = new int[batchSize];
+        for (int i = 0; i < batchSize; i++) {
+          long id = (long) b * batchSize + i;
+          ids[i] = id;
+          if (id % 7 == 0) {
+            nullNames.set(i);
+          } else {
+            names[i] = Binary.fromString("name_" + id % 100);
+          }
+          flags[i] = id % 2 == 0;
+          lons[i] = id * 0.5;
+          lonLevels[i] = id % 5 == 0 ? 0 : 1;
+          lats[i] = id * 0.25f;
+          latLevels[i] = id % 5 == 0 ? 0 : id % 3 == 0 ? 1 : 2;
+        }
+        batch.clear();
+        batch.setRowCount(batchSize)
+            .setLongs("id", ids)
+            .setBinaries("name", names)
+            .setNulls("name", nullNames)
+            .setBooleans("flag", flags)
+            .setDoubles("location.lon", lons)
+            .setDefinitionLevels("location.lon", lonLevels)
+            .setFloats("location.lat", lats)
+            .setDefinitionLevels("location.lat", latLevels);
+        writer.write(batch);
+      }
+    }
+
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      assertTrue(reader.getFooter().getBlocks().size() > 1);
+      for (long id = 0; id < (long) batchSize * batchCount; id++) {
+        Group group = reader.read();
+        assertEquals(id, group.getLong("id", 0));
+        if (id % 7 == 0) {
+          assertEquals(0, group.getFieldRepetitionCount("name"));
+        } else {
+          assertEquals("name_" + id % 100, group.getString("name", 0));
+        }
+        assertEquals(id % 2 == 0, group.getBoolean("flag", 0));
+        assertEquals(0, group.getFieldRepetitionCount("count"));
+        if (id % 5 == 0) {
+          assertEquals(0, group.getFieldRepetitionCount("location"));
+        } else {
+          Group location = group.getGroup("location", 0);
+          assertEquals(id * 0.5, location.getDouble("lon", 0));
+          if (id % 3 == 0) {
+            assertEquals(0, location.getFieldRepetitionCount("lat"));
+          } else {
+            assertEquals(id * 0.25f, location.getFloat("lat", 0));
+          }
+        }
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @Test
+  public void testRejectRepeatedColumns() {
+    MessageType schema = parseMessageType("message test { repeated int64 values; }");
+    assertThrows(IllegalArgumentException.class, () -> new ColumnarBatch(schema));
+  }
+}
@@ -1,12 +1,24 @@
 package cn.edu.tsinghua.iginx.format.parquet.example;
 
+import cn.edu.tsinghua.iginx.format.parquet.ParallelParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.ParquetPublisher;
 import cn.edu.tsinghua.iginx.format.parquet.ParquetReader;
+import cn.edu.tsinghua.iginx.format.parquet.cache.DictionaryCache;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
 import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import cn.edu.tsinghua.iginx.format.parquet.test.TrackingInputFile;
 import org.apache.parquet.bytes.HeapByteBufferAllocator;
 import org.apache.parquet.bytes.TrackingByteBufferAllocator;
 import org.apache.parquet.column.ParquetProperties;
 import org.apache.parquet.example.data.Group;
 import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.hadoop.metadata.BlockMetaData;
+import org.apache.parquet.hadoop.metadata.ColumnChunkMetaData;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.schema.MessageType;
 import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.BeforeAll;
@@ -18,12 +30,34 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
+import static org.apache.parquet.filter2.predicate.FilterApi.and;
+import static org.apache.parquet.filter2.predicate.FilterApi.binaryColumn;
+import static org.apache.parquet.filter2.predicate.FilterApi.doubleColumn;
+import static org.apache.parquet.filter2.predicate.FilterApi.eq;
+import static org.apache.parquet.filter2.predicate.FilterApi.gt;
+import static org.apache.parquet.filter2.predicate.FilterApi.gtEq;
 import static org.apache.parquet.filter2.predicate.FilterApi.in;
 import static org.apache.parquet.filter2.predicate.FilterApi.longColumn;
+import static org.apache.parquet.filter2.predicate.FilterApi.lt;
+import static org.apache.parquet.filter2.predicate.FilterApi.not;
+import static org.apache.parquet.filter2.predicate.FilterApi.notEq;
+import static org.apache.parquet.filter2.predicate.FilterApi.notIn;
+import static org.apache.parquet.filter2.predicate.FilterApi.or;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 class ExampleParquetReaderTest {
   private static final Path FILE_V1;
@@ -192,4 +226,392 @@ class ExampleParquetReaderTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testDictionaryCache(Path path) throws Exception {
+    DictionaryCache cache = new DictionaryCache(1 << 20);
+    for (int i = 0; i < 2; i++) {
+      try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator())) {
+        List<PhoneBook.User> users = PhoneBookGroups.readUsers(
+            ExampleParquetReader.builder(path)
+                .withAllocator(new HeapByteBufferAllocator())
+                .withDictionaryCache(cache));
+        assertEquals(DATA, users);
+      }
+    }
+    long misses = cache.getMissCount();
+    assertTrue(misses > 0);
+    assertTrue(cache.getHitCount() >= misses);
+
+    FilterCompat.Filter filter = FilterCompat.get(eq(binaryColumn("name"), Binary.fromString("missing")));
+    try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator())) {
+      List<PhoneBook.User> users = PhoneBookGroups.readUsers(
+          ExampleParquetReader.builder(path)
+              .withAllocator(new HeapByteBufferAllocator())
+              .withFilter(filter)
+              .useStatsFilter(false)
+              .useDictionaryFilter(true)
+              .withDictionaryCache(cache));
+      assertTrue(users.isEmpty());
+    }
+    assertEquals(misses, cache.getMissCount());
+
+    // other input files have no identity unless one is given
+    long hits = cache.getHitCount();
+    TrackingInputFile file = new TrackingInputFile(new LocalInputFile(path));
+    assertEquals(DATA, PhoneBookGroups.readUsers(
+        new ExampleParquetReader.Builder(file).withDictionaryCache(cache)));
+    assertEquals(hits, cache.getHitCount());
+    assertEquals(misses, cache.getMissCount());
+    assertEquals(DATA, PhoneBookGroups.readUsers(
+        new ExampleParquetReader.Builder(file).withDictionaryCache(cache, "tracked:" + path)));
+    assertTrue(cache.getMissCount() > misses);
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testOffsetAndLimit(Path path) throws Exception {
+    long[][] windows = {{0, 10}, {123, 456}, {990, 100}, {1000, 5}, {0, 0}, {500, Long.MAX_VALUE}};
+    for (long[] window : windows) {
+      int from = (int) Math.min(window[0], DATA.size());
+      int to = (int) Math.min(window[0] + Math.min(window[1], DATA.size()), DATA.size());
+      try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator())) {
+        List<Map.Entry<Long, PhoneBook.User>> users = PhoneBookGroups.readUsersWithRowIndex(
+            ExampleParquetReader.builder(path)
+                .withAllocator(new HeapByteBufferAllocator())
+                .withOffset(window[0])
+                .withLimit(window[1]));
+        validateRowIndexes(users);
+        assertEquals(DATA.subList(from, to), users.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+      }
+    }
+
+    try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator())) {
+      List<Map.Entry<Long, PhoneBook.User>> users = PhoneBookGroups.readUsersWithRowIndex(
+          ExampleParquetReader.builder(path)
+              .withAllocator(new HeapByteBufferAllocator())
+              .withFilter(FilterCompat.get(gtEq(longColumn("id"), 500L)))
+              .withOffset(10)
+              .withLimit(20));
+      validateRowIndexes(users);
+      assertEquals(DATA.subList(510, 530), users.stream().map(Map.Entry::getValue).collect(Collectors.toList()));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testRandomAccess(Path path) throws Exception {
+    try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator());
+         ParquetReader<Group> reader = ExampleParquetReader.builder(path).withAllocator(new HeapByteBufferAllocator()).build()) {
+      reader.seekToRow(567);
+      assertEquals(DATA.get(567), PhoneBookGroups.parseUser(reader.read()));
+      assertEquals(567, reader.getCurrentRowIndex());
+      assertEquals(DATA.get(568), PhoneBookGroups.parseUser(reader.read()));
+
+      long[] rowIndexes = {3, 4, 5, 250, 251, 600, 998, 999};
+      List<Group> groups = reader.readRows(rowIndexes);
+      assertEquals(rowIndexes.length, groups.size());
+      for (int i = 0; i < rowIndexes.length; i++) {
+        assertEquals(DATA.get((int) rowIndexes[i]), PhoneBookGroups.parseUser(groups.get(i)));
+      }
+      assertEquals(null, reader.read());
+      assertThrows(IllegalArgumentException.class, () -> reader.readRows(new long[] {3, 3}));
+      assertThrows(IllegalArgumentException.class, () -> reader.readRows(new long[] {DATA.size()}));
+
+      reader.seekToRow(10);
+      assertEquals(DATA.get(10), PhoneBookGroups.parseUser(reader.read()));
+    }
+
+    try (TrackingByteBufferAllocator allocator = new TrackingByteBufferAllocator(new HeapByteBufferAllocator());
+         ParquetReader<Group> reader = ExampleParquetReader.builder(path)
+             .withAllocator(new HeapByteBufferAllocator())
+             .withFilter(FilterCompat.get(gtEq(longColumn("id"), 500L)))
+             .build()) {
+      List<Group> groups = reader.readRows(new long[] {100, 499, 500, 700});
+      assertEquals(2, groups.size());
+      assertEquals(DATA.get(500), PhoneBookGroups.parseUser(groups.get(0)));
+      assertEquals(DATA.get(700), PhoneBookGroups.parseUser(groups.get(1)));
+      assertEquals(DATA.get(701), PhoneBookGroups.parseUser(reader.read()));
+    }
+  }
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testParallelReading(Path path) throws Exception {
+    try (ParallelParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withParallelism(3)
+        .withReadAhead(2)
+        .buildParallel()) {
+      List<PhoneBook.User> users = new ArrayList<>();
+      for (Group group = reader.read(); group != null; group = reader.read()) {
+        assertEquals(users.size(), reader.getCurrentRowIndex());
+        users.add(PhoneBookGroups.parseUser(group));
+      }
+      assertEquals(DATA, users);
+    }
+
+    try (ParallelParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withFilter(FilterCompat.get(gtEq(longColumn("id"), 500L)))
+        .withParallelism(4)
+        .withOrdered(false)
+        .buildParallel()) {
+      List<PhoneBook.User> users = new ArrayList<>();
+      for (Group group = reader.read(); group != null; group = reader.read()) {
+        PhoneBook.User user = PhoneBookGroups.parseUser(group);
+        assertEquals(user.getId(), reader.getCurrentRowIndex());
+        users.add(user);
+      }
+      users.sort(Comparator.comparingLong(PhoneBook.User::getId));
+      assertEquals(DATA.subList(500, DATA.size()), users);
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testParallelReadingFailure(Path path) throws Exception {
+    InputFile local = new LocalInputFile(path);
+    AtomicBoolean failing = new AtomicBoolean();
+    InputFile file = new InputFile() {
+      @Override
+      public long getLength() throws IOException {
+        return local.getLength();
+      }
+
+      @Override
+      public SeekableInputStream newStream() throws IOException {
+        if (failing.get()) {
+          throw new IOException("unavailable");
+        }
+        return local.newStream();
+      }
+    };
+    try (ParallelParquetReader<Group> reader = new ExampleParquetReader.Builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withParallelism(2)
+        .buildParallel()) {
+      failing.set(true);
+      IOException failure = assertThrows(IOException.class, reader::read);
+      assertSame(failure, assertThrows(IOException.class, reader::read));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testReadReuse(Path path) throws Exception {
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withReusableGroups(true)
+        .build()) {
+      List<PhoneBook.User> users = new ArrayList<>();
+      Group first = null;
+      for (Group group = reader.read((Group) null); group != null; group = reader.read(group)) {
+        if (first == null) {
+          first = group;
+        }
+        assertSame(first, group);
+        users.add(PhoneBookGroups.parseUser(group));
+      }
+      assertEquals(DATA, users);
+    }
+
+    // without the flag, the groups are independent
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      Group first = reader.read((Group) null);
+      assertNotSame(first, reader.read(first));
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testStream(Path path) throws Exception {
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path).withAllocator(new HeapByteBufferAllocator()).build();
+         Stream<Group> stream = reader.stream()) {
+      Spliterator<Group> spliterator = stream.spliterator();
+      assertEquals(DATA.size(), spliterator.getExactSizeIfKnown());
+      assertTrue(spliterator.hasCharacteristics(Spliterator.SUBSIZED));
+    }
+
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path).withAllocator(new HeapByteBufferAllocator()).build();
+         Stream<Group> stream = reader.stream()) {
+      assertEquals(DATA, stream.parallel().map(PhoneBookGroups::parseUser).collect(Collectors.toList()));
+    }
+
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withFilter(FilterCompat.get(gtEq(longColumn("id"), 500L)))
+        .build();
+         Stream<Group> stream = reader.stream()) {
+      assertEquals(DATA.subList(500, DATA.size()), stream.parallel().map(PhoneBookGroups::parseUser).collect(Collectors.toList()));
+    }
+
+    // only the compiled filter drops the rows, so the size is unknown as well
+    try (ParquetReader<Group> reader = ExampleParquetReader.builder(path)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withFilter(FilterCompat.get(gtEq(longColumn("id"), 500L)))
+        .useRecordFilter(false)
+        .useColumnIndexFilter(false)
+        .useCompiledFilter(true)
+        .build();
+         Stream<Group> stream = reader.stream()) {
+      Spliterator<Group> spliterator = stream.spliterator();
+      assertFalse(spliterator.hasCharacteristics(Spliterator.SIZED));
+      List<PhoneBook.User> users = new ArrayList<>();
+      spliterator.forEachRemaining(group -> users.add(PhoneBookGroups.parseUser(group)));
+      assertEquals(DATA.subList(500, DATA.size()), users);
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testPublisher(Path path) throws Exception {
+    ExecutorService executor = Executors.newFixedThreadPool(2);
+    try {
+      ParquetPublisher<Group> publisher = ExampleParquetReader.builder(path)
+          .withAllocator(new HeapByteBufferAllocator())
+          .withReadAhead(1)
+          .withExecutor(executor)
+          .buildPublisher();
+      List<PhoneBook.User> users = Collections.synchronizedList(new ArrayList<>());
+      CompletableFuture<Void> done = new CompletableFuture<>();
+      publisher.subscribe(new ParquetPublisher.Subscriber<List<Group>>() {
+        private ParquetPublisher.Subscription subscription;
+
+        @Override
+        public void onSubscribe(ParquetPublisher.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Group> batch) {
+          batch.forEach(group -> users.add(PhoneBookGroups.parseUser(group)));
+          subscription.request(1);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          done.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          done.complete(null);
+        }
+      });
+      done.get(1, TimeUnit.MINUTES);
+      assertEquals(DATA, users);
+
+      CompletableFuture<List<Group>> first = new CompletableFuture<>();
+      publisher.subscribe(new ParquetPublisher.Subscriber<List<Group>>() {
+        private ParquetPublisher.Subscription subscription;
+
+        @Override
+        public void onSubscribe(ParquetPublisher.Subscription subscription) {
+          this.subscription = subscription;
+          subscription.request(1);
+        }
+
+        @Override
+        public void onNext(List<Group> batch) {
+          subscription.cancel();
+          first.complete(batch);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+          first.completeExceptionally(throwable);
+        }
+
+        @Override
+        public void onComplete() {
+          first.completeExceptionally(new AssertionError("completed without demand"));
+        }
+      });
+      assertEquals(DATA.subList(0, first.get(1, TimeUnit.MINUTES).size()),
+          first.get().stream().map(PhoneBookGroups::parseUser).collect(Collectors.toList()));
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testProjection(Path path) throws Exception {
+    TrackingInputFile file = new TrackingInputFile(new LocalInputFile(path));
+    ParquetMetadata footer;
+    List<Group> groups = new ArrayList<>();
+    try (ExampleParquetReader reader = new ExampleParquetReader.Builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withProjection("id", "location.lat", "phoneNumbers.kind")
+        .build()) {
+      footer = reader.getFooter();
+      for (Group group = reader.read(); group != null; group = reader.read()) {
+        groups.add(group);
+      }
+    }
+
+    assertEquals(DATA.size(), groups.size());
+    for (int i = 0; i < groups.size(); i++) {
+      Group group = groups.get(i);
+      PhoneBook.User user = DATA.get(i);
+      assertEquals(3, group.getType().getFieldCount());
+      assertEquals(user.getId(), group.getLong("id", 0));
+      assertEquals(1, group.getType().getType("location").asGroupType().getFieldCount());
+      PhoneBook.Location location = user.getLocation();
+      boolean hasLat = location != null && location.getLat() != null;
+      assertEquals(hasLat, group.getFieldRepetitionCount("location") > 0
+          && group.getGroup("location", 0).getFieldRepetitionCount("lat") > 0);
+      if (hasLat) {
+        assertEquals(location.getLat(), group.getGroup("location", 0).getDouble("lat", 0));
+      }
+    }
+
+    for (BlockMetaData block : footer.getBlocks()) {
+      for (ColumnChunkMetaData column : block.getColumns()) {
+        String name = column.getPath().toDotString();
+        boolean requested = name.equals("id") || name.equals("location.lat") || name.equals("phoneNumbers.phone.kind");
+        long start = column.getStartingPos();
+        assertEquals(requested, file.isRead(start, start + column.getTotalSize()), name);
+      }
+    }
+  }
+
+  @ParameterizedTest
+  @MethodSource("provideArguments")
+  public void testCompiledFilter(Path path) throws Exception {
+    assertCompiledFilter(path, and(gtEq(longColumn("id"), 123L), lt(longColumn("id"), 789L)),
+        u -> u.getId() >= 123 && u.getId() < 789);
+    assertCompiledFilter(path, not(gtEq(longColumn("id"), 10L)), u -> u.getId() < 10);
+    assertCompiledFilter(path, gt(doubleColumn("location.lon"), 500.0),
+        u -> u.getLocation() != null && u.getLocation().getLon() > 500.0);
+    assertCompiledFilter(path, eq(doubleColumn("location.lat"), null),
+        u -> u.getLocation() == null || u.getLocation().getLat() == null);
+    assertCompiledFilter(path, notEq(doubleColumn("location.lat"), 2.0),
+        u -> u.getLocation() == null || u.getLocation().getLat() == null || u.getLocation().getLat() != 2.0);
+    assertCompiledFilter(path, and(lt(longColumn("id"), 10L), notIn(longColumn("id"), new HashSet<>(Arrays.asList(0L, 1L, 2L)))),
+        u -> u.getId() >= 3 && u.getId() < 10);
+    Set<Binary> names = new HashSet<>(Arrays.asList(Binary.fromString("p5"), Binary.fromString("p900")));
+    assertCompiledFilter(path, or(in(binaryColumn("name"), names), eq(longColumn("id"), 42L)),
+        u -> u.getName().equals("p5") || u.getName().equals("p900") || u.getId() == 42);
+  }
+
+  private static void assertCompiledFilter(Path path, FilterPredicate predicate, Predicate<PhoneBook.User> expected)
+      throws IOException {
+    // without the record filter, only the compiled filter drops the rows
+    List<Map.Entry<Long, PhoneBook.User>> users = PhoneBookGroups.readUsersWithRowIndex(
+        ExampleParquetReader.builder(path)
+            .withAllocator(new HeapByteBufferAllocator())
+            .withFilter(FilterCompat.get(predicate))
+            .useRecordFilter(false)
+            .useCompiledFilter(true));
+    validateRowIndexes(users);
+    assertEquals(
+        DATA.stream().filter(expected).collect(Collectors.toList()),
+        users.stream().map(Map.Entry::getValue).collect(Collectors.toList()),
+        predicate.toString());
+  }
+}
@@ -1,8 +1,15 @@
 package cn.edu.tsinghua.iginx.format.parquet.example;
 
 import cn.edu.tsinghua.iginx.format.parquet.ParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.WriterMemoryManager;
 import cn.edu.tsinghua.iginx.format.parquet.test.FileSystemUtils;
 import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.column.values.bloomfilter.BloomFilter;
+import org.apache.parquet.filter2.compat.FilterCompat;
+import org.apache.parquet.hadoop.ParquetFileReader;
 import org.apache.parquet.bytes.HeapByteBufferAllocator;
 import org.apache.parquet.bytes.TrackingByteBufferAllocator;
 import org.apache.parquet.column.Encoding;
@@ -17,17 +24,22 @@ import org.apache.parquet.io.api.Binary;
 import org.apache.parquet.schema.MessageType;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Random;
 
 import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
 import static org.apache.parquet.column.Encoding.*;
+import static org.apache.parquet.filter2.predicate.FilterApi.*;
 import static org.apache.parquet.column.ParquetProperties.WriterVersion.PARQUET_1_0;
 import static org.apache.parquet.column.ParquetProperties.WriterVersion.PARQUET_2_0;
 import static org.apache.parquet.hadoop.metadata.CompressionCodecName.UNCOMPRESSED;
@@ -163,4 +175,288 @@ class ExampleParquetWriterTest {
     }
 
   }
-}
\ No newline at end of file
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 1, 3})
+  public void testAsyncFlush(int encodingThreads) throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withCodec(CompressionCodecName.SNAPPY)
+        .withRowGroupSize(32 * 1024)
+        .withPageSize(4 * 1024)
+        .withEncodingThreads(encodingThreads)
+        .withMaxInFlightRowGroups(2);
+    try (ParquetWriter<Group> writer = builder.build()) {
+      for (PhoneBook.User user : data) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    ExampleParquetReader.Builder readerBuilder = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator());
+    try (ExampleParquetReader reader = readerBuilder.build()) {
+      assertTrue(reader.getFooter().getBlocks().size() > 2);
+      for (PhoneBook.User u : data) {
+        assertEquals(u, PhoneBookGroups.parseUser(reader.read()));
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @ParameterizedTest
+  @ValueSource(ints = {0, 2})
+  public void testMemoryManager(int encodingThreads) throws Exception {
+    WriterMemoryManager memoryManager = new WriterMemoryManager(96 * 1024, 16 * 1024);
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    List<Path> files = new ArrayList<>();
+    List<ParquetWriter<Group>> writers = new ArrayList<>();
+    for (int i = 0; i < 3; i++) {
+      Path file = Files.createTempFile(null, ".parquet");
+      files.add(file);
+      writers.add(ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+          .withAllocator(new HeapByteBufferAllocator())
+          .withOverwrite(true)
+          .withRowGroupSize(1024 * 1024)
+          .withPageSize(4 * 1024)
+          .withEncodingThreads(encodingThreads)
+          .withMemoryManager(memoryManager)
+          .build());
+    }
+    assertEquals(3, memoryManager.getRegistrations().size());
+    assertEquals(96.0 / 3072, memoryManager.getScale(), 1e-9);
+    for (WriterMemoryManager.Registration registration : memoryManager.getRegistrations()) {
+      assertEquals(32 * 1024, registration.getRowGroupSize());
+    }
+
+    for (PhoneBook.User user : data) {
+      for (ParquetWriter<Group> writer : writers) {
+        writer.write(parseUser(user));
+      }
+      assertTrue(memoryManager.getTotalBufferedSize() <= 2 * memoryManager.getBudget());
+    }
+    for (ParquetWriter<Group> writer : writers) {
+      writer.close();
+    }
+    assertTrue(memoryManager.getRegistrations().isEmpty());
+    assertEquals(0, memoryManager.getTotalBufferedSize());
+
+    for (Path file : files) {
+      try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+          .withAllocator(new HeapByteBufferAllocator())
+          .build()) {
+        assertTrue(reader.getFooter().getBlocks().size() > 2);
+        for (PhoneBook.User u : data) {
+          assertEquals(u, PhoneBookGroups.parseUser(reader.read()));
+        }
+        assertNull(reader.read());
+      }
+      Files.delete(file);
+    }
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"UNCOMPRESSED", "SNAPPY", "ZSTD"})
+  public void testParallelEncoding(String codecName) throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    CompressionCodecName codec = CompressionCodecName.valueOf(codecName);
+    for (ParquetProperties.WriterVersion version : ParquetProperties.WriterVersion.values()) {
+      ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+          .withAllocator(new HeapByteBufferAllocator())
+          .withOverwrite(true)
+          .withCodec(codec)
+          .withWriterVersion(version)
+          .withRowGroupSize(64 * 1024)
+          .withPageSize(4 * 1024)
+          .withEncodingThreads(4);
+      try (ParquetWriter<Group> writer = builder.build()) {
+        for (PhoneBook.User user : data) {
+          writer.write(parseUser(user));
+        }
+      }
+
+      ExampleParquetReader.Builder readerBuilder = ExampleParquetReader.builder(file)
+          .withAllocator(new HeapByteBufferAllocator());
+      try (ExampleParquetReader reader = readerBuilder.build()) {
+        assertTrue(reader.getFooter().getBlocks().size() > 1);
+        for (PhoneBook.User u : data) {
+          assertEquals(u, PhoneBookGroups.parseUser(reader.read()));
+        }
+        assertNull(reader.read());
+      }
+    }
+    Files.delete(file);
+  }
+
+  @ParameterizedTest
+  @EnumSource(ParquetWriter.SortScope.class)
+  public void testSortOnWrite(ParquetWriter.SortScope scope) throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    List<PhoneBook.User> shuffled = new ArrayList<>(data);
+    Collections.shuffle(shuffled, new Random(42));
+    ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withRowGroupSize(64 * 1024)
+        .withPageSize(1024)
+        .withSortColumns(scope, "id")
+        .withSortBufferSize(1500);
+    try (ParquetWriter<Group> writer = builder.build()) {
+      for (PhoneBook.User user : shuffled) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      List<BlockMetaData> blocks = reader.getFooter().getBlocks();
+      if (scope == ParquetWriter.SortScope.FILE) {
+        assertTrue(blocks.size() > 1);
+        for (int i = 1; i < blocks.size(); i++) {
+          long previousMax = (Long) blocks.get(i - 1).getColumns().get(0).getStatistics().genericGetMax();
+          long min = (Long) blocks.get(i).getColumns().get(0).getStatistics().genericGetMin();
+          assertTrue(previousMax < min);
+        }
+        for (PhoneBook.User u : data) {
+          assertEquals(u, PhoneBookGroups.parseUser(reader.read()));
+        }
+      } else {
+        assertEquals(7, blocks.size());
+        long previous = Long.MIN_VALUE;
+        long rows = 0;
+        int block = 0;
+        for (Group group = reader.read(); group != null; group = reader.read()) {
+          if (rows == blocks.get(block).getRowCount()) {
+            rows = 0;
+            block++;
+            previous = Long.MIN_VALUE;
+          }
+          long id = group.getLong("id", 0);
+          assertTrue(previous < id);
+          previous = id;
+          rows++;
+        }
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @Test
+  public void testSortManyRunsOnWrite() throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    // more runs than merged at once, so some are merged into intermediate runs first
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    List<PhoneBook.User> shuffled = new ArrayList<>(data);
+    Collections.shuffle(shuffled, new Random(42));
+    ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withSortColumns(ParquetWriter.SortScope.FILE, "id")
+        .withSortBufferSize(70);
+    try (ParquetWriter<Group> writer = builder.build()) {
+      for (PhoneBook.User user : shuffled) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      for (PhoneBook.User u : data) {
+        assertEquals(u, PhoneBookGroups.parseUser(reader.read()));
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @Test
+  public void testFailedBuildDropsFile() throws Exception {
+    Path dir = Files.createTempDirectory(null);
+    Path file = dir.resolve("failed.parquet");
+    // the memory manager rejects the row group size once the header is written
+    ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withRowGroupSize(0)
+        .withMemoryManager(new WriterMemoryManager(1024 * 1024));
+    assertThrows(IllegalArgumentException.class, builder::build);
+    assertFalse(Files.exists(file));
+    Files.delete(dir);
+  }
+
+  @Test
+  public void testBloomFilter() throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(10000);
+    ExampleParquetWriter.Builder builder = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withRowGroupSize(64 * 1024)
+        .withBloomFilterNDV("name", 5000)
+        .withBloomFilterFPP("name", 0.001)
+        .withBloomFilterEnabled("id", true)
+        .withMaxBloomFilterBytes(4 * 1024)
+        .withColumnIndexTruncateLength(8)
+        .withPageRowCountLimit(500);
+    try (ParquetWriter<Group> writer = builder.build()) {
+      for (PhoneBook.User user : data) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      List<BlockMetaData> blocks = reader.getFooter().getBlocks();
+      assertTrue(blocks.size() > 1);
+      for (BlockMetaData block : blocks) {
+        for (ColumnChunkMetaData column : block.getColumns()) {
+          String path = column.getPath().toDotString();
+          BloomFilter bloomFilter = reader.readBloomFilter(column);
+          if (path.equals("name") || path.equals("id")) {
+            assertNotNull(bloomFilter, path);
+          } else {
+            assertNull(bloomFilter, path);
+          }
+        }
+        ColumnChunkMetaData id = block.getColumns().get(0);
+        BloomFilter ids = reader.readBloomFilter(id);
+        assertTrue(ids.findHash(ids.hash((long) id.getStatistics().genericGetMin())));
+      }
+    }
+
+    ParquetReadOptions options = ParquetReadOptions.builder()
+        .withAllocator(new HeapByteBufferAllocator())
+        .withCodecFactory(new DefaultCodecFactory())
+        .withRecordFilter(FilterCompat.get(eq(binaryColumn("name"), Binary.fromString("p5000x"))))
+        .useDictionaryFilter(false)
+        .useBloomFilter(true)
+        .build();
+    try (ParquetFileReader reader = new ParquetFileReader(new LocalInputFile(file), readFooter(file), options)) {
+      assertTrue(reader.getRowGroups().isEmpty());
+    }
+    try (ParquetFileReader reader = new ParquetFileReader(new LocalInputFile(file), readFooter(file), ParquetReadOptions.builder().copy(options).useBloomFilter(false).build())) {
+      assertFalse(reader.getRowGroups().isEmpty());
+      for (BlockMetaData block : reader.getRowGroups()) {
+        ColumnChunkMetaData id = block.getColumns().get(0);
+        assertTrue(block.getRowCount() / 500 <= reader.readOffsetIndex(id).getPageCount());
+      }
+    }
+    Files.delete(file);
+  }
+
+  private static ParquetMetadata readFooter(Path file) throws Exception {
+    try (ExampleParquetReader reader = ExampleParquetReader.builder(file)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      return reader.getFooter();
+    }
+  }
+}
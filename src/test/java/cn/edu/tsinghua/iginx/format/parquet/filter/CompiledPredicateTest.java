@@ -0,0 +1,103 @@
+package cn.edu.tsinghua.iginx.format.parquet.filter;
+
+import cn.edu.tsinghua.iginx.format.parquet.codec.DefaultCodecFactory;
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.io.LocalInputFile;
+import org.apache.parquet.ParquetReadOptions;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.column.page.PageReadStore;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.example.data.simple.SimpleGroupFactory;
+import org.apache.parquet.filter2.predicate.FilterPredicate;
+import org.apache.parquet.filter2.predicate.Operators;
+import org.apache.parquet.hadoop.ParquetFileReader;
+import org.apache.parquet.hadoop.metadata.ParquetMetadata;
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+import org.apache.parquet.io.api.Binary;
+import org.apache.parquet.schema.LogicalTypeAnnotation;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.PrimitiveType;
+import org.apache.parquet.schema.Types;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.HashSet;
+
+import static org.apache.parquet.filter2.predicate.FilterApi.binaryColumn;
+import static org.apache.parquet.filter2.predicate.FilterApi.eq;
+import static org.apache.parquet.filter2.predicate.FilterApi.in;
+import static org.apache.parquet.filter2.predicate.FilterApi.notIn;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class CompiledPredicateTest {
+
+  private static final MessageType SCHEMA = Types.buildMessage()
+      .required(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("kind")
+      .optional(PrimitiveType.PrimitiveTypeName.BINARY).as(LogicalTypeAnnotation.stringType()).named("tag")
+      .named("test");
+  private static final int ROWS = 1000;
+
+  @Test
+  public void testDictionaryIds() throws Exception {
+    for (boolean dictionary : new boolean[] {true, false}) {
+      Path file = Files.createTempFile("compiled.", ".parquet");
+      SimpleGroupFactory factory = new SimpleGroupFactory(SCHEMA);
+      try (ExampleParquetWriter writer = ExampleParquetWriter.builder(file, SCHEMA)
+          .withOverwrite(true)
+          .withPageSize(1024)
+          .withDictionaryEncoding(dictionary)
+          .build()) {
+        for (int i = 0; i < ROWS; i++) {
+          Group group = factory.newGroup().append("kind", "k" + i % 5);
+          if (i % 7 != 0) {
+            group.append("tag", "t" + i % 3);
+          }
+          writer.write(group);
+        }
+      }
+
+      Operators.BinaryColumn kind = binaryColumn("kind");
+      Operators.BinaryColumn tag = binaryColumn("tag");
+      assertEquals(ROWS / 5, count(file, eq(kind, Binary.fromString("k1")), dictionary));
+      assertEquals(ROWS * 2 / 5, count(file, in(kind, new HashSet<>(Arrays.asList(Binary.fromString("k2"), Binary.fromString("k4")))), dictionary));
+      long expected = 0;
+      for (int i = 0; i < ROWS; i++) {
+        if (i % 7 != 0 && i % 3 != 0) {
+          expected++;
+        }
+      }
+      assertEquals(expected, count(file, notIn(tag, new HashSet<>(Arrays.asList(Binary.fromString("t0"), null))), dictionary));
+      Files.delete(file);
+    }
+  }
+
+  private static long count(Path path, FilterPredicate predicate, boolean dictionary) throws Exception {
+    InputFile file = new LocalInputFile(path);
+    ParquetReadOptions options = ParquetReadOptions.builder()
+        .withAllocator(new HeapByteBufferAllocator())
+        .withCodecFactory(new DefaultCodecFactory())
+        .build();
+    ParquetMetadata footer;
+    try (SeekableInputStream in = file.newStream()) {
+      footer = ParquetFileReader.readFooter(file, options, in);
+    }
+    CompiledPredicate compiled = CompiledPredicate.compile(predicate, SCHEMA);
+    ColumnVectors vectors = new ColumnVectors(SCHEMA, 256);
+    long[] selection = new long[CompiledPredicate.words(vectors.getCapacity())];
+    long count = 0;
+    try (ParquetFileReader reader = new ParquetFileReader(file, footer, options)) {
+      for (PageReadStore pages = reader.readNextRowGroup(); pages != null; pages = reader.readNextRowGroup()) {
+        vectors.open(pages, footer.getFileMetaData().getCreatedBy());
+        for (long remaining = pages.getRowCount(); remaining > 0; remaining -= vectors.getSize()) {
+          vectors.read((int) Math.min(remaining, vectors.getCapacity()));
+          assertEquals(dictionary, vectors.getDictionaryId(0, 0) >= 0);
+          count += compiled.evaluate(vectors, selection);
+        }
+      }
+    }
+    return count;
+  }
+}
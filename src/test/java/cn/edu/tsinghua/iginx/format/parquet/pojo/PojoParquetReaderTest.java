@@ -0,0 +1,148 @@
+package cn.edu.tsinghua.iginx.format.parquet.pojo;
+
+import cn.edu.tsinghua.iginx.format.parquet.example.ExampleParquetWriter;
+import cn.edu.tsinghua.iginx.format.parquet.test.AddressBook;
+import cn.edu.tsinghua.iginx.format.parquet.test.PhoneBook;
+import org.apache.parquet.bytes.HeapByteBufferAllocator;
+import org.apache.parquet.example.data.Group;
+import org.apache.parquet.schema.MessageType;
+import org.apache.parquet.schema.MessageTypeParser;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static cn.edu.tsinghua.iginx.format.parquet.example.PhoneBookGroups.parseUser;
+import static org.junit.jupiter.api.Assertions.*;
+
+class PojoParquetReaderTest {
+
+  @Test
+  public void testSchema() {
+    MessageType expected = MessageTypeParser.parseMessageType("message Contact {\n"
+        + "  required int64 id;\n"
+        + "  required int32 age;\n"
+        + "  required boolean active;\n"
+        + "  required double score;\n"
+        + "  optional int32 rank;\n"
+        + "  optional binary name (STRING);\n"
+        + "  optional binary kind (ENUM);\n"
+        + "  optional binary avatar;\n"
+        + "  optional group address {\n"
+        + "    optional binary city (STRING);\n"
+        + "    optional double lon;\n"
+        + "    optional double lat;\n"
+        + "  }\n"
+        + "  optional group tags (LIST) {\n"
+        + "    repeated group list {\n"
+        + "      optional binary element (STRING);\n"
+        + "    }\n"
+        + "  }\n"
+        + "  optional group previous (LIST) {\n"
+        + "    repeated group list {\n"
+        + "      optional group element {\n"
+        + "        optional binary city (STRING);\n"
+        + "        optional double lon;\n"
+        + "        optional double lat;\n"
+        + "      }\n"
+        + "    }\n"
+        + "  }\n"
+        + "}\n");
+    assertEquals(expected, PojoModel.of(AddressBook.Contact.class).getSchema());
+  }
+
+  @Test
+  public void testWriteAndRead() throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<AddressBook.Contact> data = AddressBook.makeContacts(10000);
+    try (PojoParquetWriter<AddressBook.Contact> writer = PojoParquetWriter.builder(file, AddressBook.Contact.class)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .withRowGroupSize(64 * 1024)
+        .build()) {
+      for (AddressBook.Contact contact : data) {
+        writer.write(contact);
+      }
+    }
+
+    try (PojoParquetReader<AddressBook.Contact> reader = PojoParquetReader.builder(file, AddressBook.Contact.class)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      for (AddressBook.Contact expected : data) {
+        assertEquals(expected, reader.read());
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @Test
+  public void testReadProjection() throws Exception {
+    Path file = Files.createTempFile(null, ".parquet");
+    List<PhoneBook.User> data = PhoneBook.makeUsers(1000);
+    try (ExampleParquetWriter writer = ExampleParquetWriter.builder(file, PhoneBook.SCHEMA)
+        .withAllocator(new HeapByteBufferAllocator())
+        .withOverwrite(true)
+        .build()) {
+      for (PhoneBook.User user : data) {
+        writer.write(parseUser(user));
+      }
+    }
+
+    try (PojoParquetReader<User> reader = PojoParquetReader.builder(file, User.class)
+        .withAllocator(new HeapByteBufferAllocator())
+        .build()) {
+      for (PhoneBook.User expected : data) {
+        User actual = reader.read();
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getLocation() == null ? null : expected.getLocation().getLon(),
+            actual.getLocation() == null ? null : actual.getLocation().getLon());
+        assertEquals(-1, actual.getAge());
+      }
+      assertNull(reader.read());
+    }
+    Files.delete(file);
+  }
+
+  @SuppressWarnings("unused")
+  private static class User {
+    private long id;
+    private String name;
+    private AddressBook.Address location;
+    private int age = -1;
+
+    public long getId() {
+      return id;
+    }
+
+    public void setId(long id) {
+      this.id = id;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public AddressBook.Address getLocation() {
+      return location;
+    }
+
+    public void setLocation(AddressBook.Address location) {
+      this.location = location;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+  }
+}
@@ -0,0 +1,229 @@
+package cn.edu.tsinghua.iginx.format.parquet.test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Java beans for the pojo object model.
+ */
+public class AddressBook {
+
+  public static List<Contact> makeContacts(int rowCount) {
+    List<Contact> contacts = new ArrayList<>();
+    for (int i = 0; i < rowCount; i++) {
+      Contact contact = new Contact();
+      contact.setId(i);
+      contact.setAge(i % 100);
+      contact.setActive(i % 2 == 0);
+      contact.setScore(i * 0.5);
+      contact.setRank(i % 5 == 0 ? null : i % 7);
+      contact.setName(i % 11 == 0 ? null : "c" + i);
+      contact.setKind(Kind.values()[i % 3]);
+      contact.setAvatar(i % 4 == 0 ? null : new byte[] {(byte) i, (byte) (i >> 8)});
+      if (i % 3 != 0) {
+        contact.setAddress(new Address("city" + i % 10, (double) i, i % 2 == 0 ? null : (double) -i));
+      }
+      if (i % 6 == 1) {
+        contact.setTags(Collections.emptyList());
+      } else if (i % 6 != 0) {
+        contact.setTags(Arrays.asList("t" + i % 4, null, "u" + i));
+      }
+      if (i % 5 == 2) {
+        contact.setPrevious(Arrays.asList(new Address("old" + i, null, null), null));
+      }
+      contacts.add(contact);
+    }
+    return contacts;
+  }
+
+  public enum Kind {
+    FRIEND, FAMILY, WORK
+  }
+
+  public static class Address {
+    private String city;
+    private Double lon;
+    private Double lat;
+
+    public Address() {
+    }
+
+    public Address(String city, Double lon, Double lat) {
+      this.city = city;
+      this.lon = lon;
+      this.lat = lat;
+    }
+
+    public String getCity() {
+      return city;
+    }
+
+    public void setCity(String city) {
+      this.city = city;
+    }
+
+    public Double getLon() {
+      return lon;
+    }
+
+    public void setLon(Double lon) {
+      this.lon = lon;
+    }
+
+    public Double getLat() {
+      return lat;
+    }
+
+    public void setLat(Double lat) {
+      this.lat = lat;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Address address = (Address) o;
+      return Objects.equals(city, address.city) && Objects.equals(lon, address.lon) && Objects.equals(lat, address.lat);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(city, lon, lat);
+    }
+  }
+
+  public static class Contact {
+    private long id;
+    private int age;
+    private boolean active;
+    private double score;
+    private Integer rank;
+    private String name;
+    private Kind kind;
+    private byte[] avatar;
+    private Address address;
+    private List<String> tags;
+    private List<Address> previous;
+    private transient String cached;
+
+    public long getId() {
+      return id;
+    }
+
+    public void setId(long id) {
+      this.id = id;
+    }
+
+    public int getAge() {
+      return age;
+    }
+
+    public void setAge(int age) {
+      this.age = age;
+    }
+
+    public boolean isActive() {
+      return active;
+    }
+
+    public void setActive(boolean active) {
+      this.active = active;
+    }
+
+    public double getScore() {
+      return score;
+    }
+
+    public void setScore(double score) {
+      this.score = score;
+    }
+
+    public Integer getRank() {
+      return rank;
+    }
+
+    public void setRank(Integer rank) {
+      this.rank = rank;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public void setName(String name) {
+      this.name = name;
+    }
+
+    public Kind getKind() {
+      return kind;
+    }
+
+    public void setKind(Kind kind) {
+      this.kind = kind;
+    }
+
+    public byte[] getAvatar() {
+      return avatar;
+    }
+
+    public void setAvatar(byte[] avatar) {
+      this.avatar = avatar;
+    }
+
+    public Address getAddress() {
+      return address;
+    }
+
+    public void setAddress(Address address) {
+      this.address = address;
+    }
+
+    public List<String> getTags() {
+      return tags;
+    }
+
+    public void setTags(List<String> tags) {
+      this.tags = tags;
+    }
+
+    public List<Address> getPrevious() {
+      return previous;
+    }
+
+    public void setPrevious(List<Address> previous) {
+      this.previous = previous;
+    }
+
+    public String getCached() {
+      return cached;
+    }
+
+    public void setCached(String cached) {
+      this.cached = cached;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) return true;
+      if (o == null || getClass() != o.getClass()) return false;
+      Contact contact = (Contact) o;
+      return id == contact.id && age == contact.age && active == contact.active && Double.compare(score, contact.score) == 0
+          && Objects.equals(rank, contact.rank) && Objects.equals(name, contact.name) && kind == contact.kind
+          && Arrays.equals(avatar, contact.avatar) && Objects.equals(address, contact.address)
+          && Objects.equals(tags, contact.tags) && Objects.equals(previous, contact.previous);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(id, name);
+    }
+
+    @Override
+    public String toString() {
+      return "Contact[id=" + id + ", name=" + name + "]";
+    }
+  }
+}
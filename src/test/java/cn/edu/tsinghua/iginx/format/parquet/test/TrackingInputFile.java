@@ -0,0 +1,117 @@
+package cn.edu.tsinghua.iginx.format.parquet.test;
+
+import org.apache.parquet.io.InputFile;
+import org.apache.parquet.io.SeekableInputStream;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An input file which records the byte ranges read from the delegate.
+ */
+public class TrackingInputFile implements InputFile {
+
+  private final InputFile delegate;
+  private final List<long[]> ranges = Collections.synchronizedList(new ArrayList<>());
+
+  public TrackingInputFile(InputFile delegate) {
+    this.delegate = delegate;
+  }
+
+  /**
+   * @return the start and the end (exclusive) of every read
+   */
+  public List<long[]> getRanges() {
+    return ranges;
+  }
+
+  /**
+   * @return whether any read overlaps the given range
+   */
+  public boolean isRead(long start, long end) {
+    synchronized (ranges) {
+      for (long[] range : ranges) {
+        if (range[0] < end && start < range[1]) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+  @Override
+  public long getLength() throws IOException {
+    return delegate.getLength();
+  }
+
+  @Override
+  public SeekableInputStream newStream() throws IOException {
+    SeekableInputStream in = delegate.newStream();
+    return new SeekableInputStream() {
+      private long track(long start, long read) {
+        if (read > 0) {
+          ranges.add(new long[] {start, start + read});
+        }
+        return read;
+      }
+
+      @Override
+      public long getPos() throws IOException {
+        return in.getPos();
+      }
+
+      @Override
+      public void seek(long newPos) throws IOException {
+        in.seek(newPos);
+      }
+
+      @Override
+      public int read() throws IOException {
+        long start = in.getPos();
+        int value = in.read();
+        track(start, value < 0 ? 0 : 1);
+        return value;
+      }
+
+      @Override
+      public int read(byte[] bytes, int off, int len) throws IOException {
+        long start = in.getPos();
+        return (int) track(start, in.read(bytes, off, len));
+      }
+
+      @Override
+      public void readFully(byte[] bytes) throws IOException {
+        readFully(bytes, 0, bytes.length);
+      }
+
+      @Override
+      public void readFully(byte[] bytes, int start, int len) throws IOException {
+        long pos = in.getPos();
+        in.readFully(bytes, start, len);
+        track(pos, len);
+      }
+
+      @Override
+      public int read(ByteBuffer buf) throws IOException {
+        long start = in.getPos();
+        return (int) track(start, in.read(buf));
+      }
+
+      @Override
+      public void readFully(ByteBuffer buf) throws IOException {
+        long start = in.getPos();
+        int len = buf.remaining();
+        in.readFully(buf);
+        track(start, len);
+      }
+
+      @Override
+      public void close() throws IOException {
+        in.close();
+      }
+    };
+  }
+}